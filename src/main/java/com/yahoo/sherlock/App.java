@@ -243,6 +243,9 @@ class App {
         // Routes to delete Email
         post("/DeleteEmail", Routes::deleteEmail);
 
+        // Route for the Prometheus metrics
+        get("/metrics", Routes::metrics);
+
         // Enable debug routes only in debug mode
         if (CLISettings.DEBUG_MODE) {
             // Routes to get the database as a JSON dump
@@ -255,6 +258,11 @@ class App {
             get("/Debug/BackfillReports", Routes::debugBackfillForm, thymeleafTemplateEngine);
             // Debug back fill jobs post
             post("/Debug/BackfillReports", Routes::debugRunBackfillJob);
+            // Debug back fill progress
+            get("/Debug/BackfillProgress", Routes::debugBackfillProgress);
+            get("/Debug/BackfillProgress/:id", Routes::debugBackfillProgress);
+            // Debug cancel back fill
+            post("/Debug/BackfillCancel/:id", Routes::debugCancelBackfill);
             // Debug remove reports for job
             get("/Debug/DeleteJobReports/:id", Routes::debugClearJobReports);
             // Debug remove debug jobs
@@ -267,6 +275,16 @@ class App {
             get("/Debug/Restore", Routes::restoreRedisDBForm, thymeleafTemplateEngine);
             // Restore redis db
             post("/Debug/Restore", Routes::restoreRedisDB);
+            // Execution worker pool statistics
+            get("/Debug/ExecutionStats", Routes::debugExecutionStats);
+            // Druid cluster query limiter statistics
+            get("/Debug/ClusterQueryStats", Routes::debugClusterQueryStats);
+            // Druid broker failover and hedging statistics
+            get("/Debug/BrokerStats", Routes::debugBrokerStats);
+            // Job pipeline stage latency statistics
+            get("/Debug/PipelineStats", Routes::debugPipelineStats);
+            // Spread queued jobs over the hour
+            post("/Debug/RebalanceJobs", Routes::debugRebalanceJobs);
         }
 
         initRoutes();
@@ -11,6 +11,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 import com.yahoo.egads.data.Anomaly;
+import com.yahoo.sherlock.enums.ExecutionLane;
 import com.yahoo.sherlock.enums.Granularity;
 import com.yahoo.sherlock.enums.JobStatus;
 import com.yahoo.sherlock.enums.Triggers;
@@ -20,6 +21,7 @@ import com.yahoo.sherlock.exception.JobNotFoundException;
 import com.yahoo.sherlock.exception.SchedulerException;
 import com.yahoo.sherlock.exception.SherlockException;
 import com.yahoo.sherlock.model.AnomalyReport;
+import com.yahoo.sherlock.model.BackfillProgress;
 import com.yahoo.sherlock.model.DruidCluster;
 import com.yahoo.sherlock.model.DetectorResult;
 import com.yahoo.sherlock.model.EmailMetaData;
@@ -30,13 +32,24 @@ import com.yahoo.sherlock.model.UserQuery;
 import com.yahoo.sherlock.query.DetectorConfig;
 import com.yahoo.sherlock.query.Query;
 import com.yahoo.sherlock.query.QueryBuilder;
+import com.yahoo.sherlock.scheduler.BackfillExecutor;
+import com.yahoo.sherlock.scheduler.CatchUpExecutor;
+import com.yahoo.sherlock.scheduler.ExecutionTask;
+import com.yahoo.sherlock.scheduler.JobPipeline;
 import com.yahoo.sherlock.service.JobExecutionService;
 import com.yahoo.sherlock.service.SchedulerService;
+import com.yahoo.sherlock.service.ClusterQueryLimiter;
+import com.yahoo.sherlock.service.ClusterHealthCache;
 import com.yahoo.sherlock.service.DetectorService;
+import com.yahoo.sherlock.service.DruidBrokerSelector;
+import com.yahoo.sherlock.service.DruidDatasourceCache;
 import com.yahoo.sherlock.service.DruidQueryService;
+import com.yahoo.sherlock.service.PipelineMetrics;
+import com.yahoo.sherlock.service.PrometheusExporter;
 import com.yahoo.sherlock.service.EmailService;
 import com.yahoo.sherlock.service.SecretProviderService;
 import com.yahoo.sherlock.service.ServiceFactory;
+import com.yahoo.sherlock.service.TimeSeriesWindowCache;
 import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.settings.Constants;
 import com.yahoo.sherlock.settings.DatabaseConstants;
@@ -47,8 +60,10 @@ import com.yahoo.sherlock.store.EmailMetadataAccessor;
 import com.yahoo.sherlock.store.JobMetadataAccessor;
 import com.yahoo.sherlock.store.JsonDumper;
 import com.yahoo.sherlock.store.Store;
+import com.yahoo.sherlock.store.core.RedisCommandLatencyCollector;
 import com.yahoo.sherlock.utils.BackupUtils;
 import com.yahoo.sherlock.utils.NumberUtils;
+import com.yahoo.sherlock.utils.SHttpClient;
 import com.yahoo.sherlock.utils.TimeUtils;
 import com.yahoo.sherlock.utils.Utils;
 
@@ -66,6 +81,7 @@ import java.lang.reflect.Type;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
@@ -141,6 +157,7 @@ public class Routes {
         schedulerService.startMainScheduler();
         schedulerService.startEmailSenderScheduler();
         schedulerService.startBackupScheduler();
+        schedulerService.startClusterHealthScheduler();
         jobTimeline = new JobTimeline();
     }
 
@@ -665,28 +682,37 @@ public class Routes {
             return "Invalid Jobs!";
         }
         log.info("Launching the jobs id:[{}] requested by user", jobIds.stream().collect(Collectors.joining(Constants.COMMA_DELIMITER)));
-        JobMetadata jobMetadata;
+        List<JobMetadata> jobs = new ArrayList<>(jobIds.size());
         for (String id : jobIds) {
             try {
                 // get jobinfo from database
-                jobMetadata = jobAccessor.getJobMetadata(id);
+                JobMetadata jobMetadata = jobAccessor.getJobMetadata(id);
                 if (jobMetadata.isRunning()) {
                     continue;
                 }
                 DruidCluster cluster = clusterAccessor.getDruidCluster(jobMetadata.getClusterId());
                 jobMetadata.setHoursOfLag(cluster.getHoursOfLag());
-                log.info("Scheduling job.");
-                // schedule the job
-                schedulerService.scheduleJob(jobMetadata);
-                // change the job status as running
-                jobMetadata.setJobStatus(JobStatus.RUNNING.getValue());
-                jobAccessor.putJobMetadata(jobMetadata);
+                jobs.add(jobMetadata);
             } catch (Exception e) {
                 log.error("Exception while launching the jobs {}!", id, e);
                 response.status(500);
                 return e.getMessage();
             }
         }
+        try {
+            log.info("Scheduling [{}] jobs", jobs.size());
+            // schedule the jobs together, reading the queue occupancy once
+            schedulerService.scheduleJobs(jobs);
+            for (JobMetadata jobMetadata : jobs) {
+                // change the job status as running
+                jobMetadata.setJobStatus(JobStatus.RUNNING.getValue());
+                jobAccessor.putJobMetadata(jobMetadata);
+            }
+        } catch (Exception e) {
+            log.error("Exception while launching the jobs!", e);
+            response.status(500);
+            return e.getMessage();
+        }
         response.status(200);
         return Constants.SUCCESS;
     }
@@ -1010,6 +1036,10 @@ public class Routes {
                 return String.format("Cannot delete cluster with %d associated jobs", associatedJobs.size());
             }
             clusterAccessor.deleteDruidCluster(clusterId.toString());
+            SHttpClient.getSHttpClient().closeDruidHttpClients(clusterId);
+            DruidDatasourceCache.getInstance().invalidate(clusterId);
+            TimeSeriesWindowCache.getInstance().invalidate(clusterId);
+            ClusterHealthCache.getInstance().invalidate(clusterId);
             response.status(200);
             return Constants.SUCCESS;
         } catch (IOException | ClusterNotFoundException e) {
@@ -1043,6 +1073,11 @@ public class Routes {
             existingCluster.update(updatedCluster);
             // Put updated cluster in DB
             clusterAccessor.putDruidCluster(existingCluster);
+            // Rebuild the HTTP clients of the cluster with its new settings
+            SHttpClient.getSHttpClient().closeDruidHttpClients(clusterId);
+            DruidDatasourceCache.getInstance().invalidate(clusterId);
+            TimeSeriesWindowCache.getInstance().invalidate(clusterId);
+            ClusterHealthCache.getInstance().invalidate(clusterId);
             if (requireReschedule) {
                 log.info("Hours of lag has changed, rescheduling jobs for cluster");
                 List<JobMetadata> jobs = jobAccessor.getJobsAssociatedWithCluster(clusterId.toString());
@@ -1299,11 +1334,12 @@ public class Routes {
     }
 
     /**
-     * Process and run a backfill job.
+     * Start backfill jobs in the background. The backfill range and
+     * the cluster of every job are checked before any is started.
      *
      * @param request  HTTP request
      * @param response HTTP response
-     * @return an error message or 'success'
+     * @return an error message or the started backfill IDs as a JSON array
      */
     public static String debugRunBackfillJob(Request request, Response response) {
         try {
@@ -1314,19 +1350,69 @@ public class Routes {
             String[] jobIds = params.get("jobId").split(Constants.COMMA_DELIMITER);
             ZonedDateTime startTime = TimeUtils.parseDateTime(params.get("fillStartTime"));
             ZonedDateTime endTime = ("".equals(params.get("fillEndTime")) || params.get("fillEndTime") == null) ? null : TimeUtils.parseDateTime(params.get("fillEndTime"));
+            JobExecutionService executionService = serviceFactory.newJobExecutionService();
+            List<JobMetadata> jobs = new ArrayList<>(jobIds.length);
             for (String jobId : jobIds) {
                 JobMetadata job = jobAccessor.getJobMetadata(jobId);
-                serviceFactory.newJobExecutionService().performBackfillJob(job, startTime, endTime);
+                executionService.validateBackfillJob(job, startTime, endTime);
+                jobs.add(job);
+            }
+            List<String> backfillIds = new ArrayList<>(jobs.size());
+            for (JobMetadata job : jobs) {
+                backfillIds.add(executionService.startBackfillJob(job, startTime, endTime).getId());
             }
             response.status(200);
-            return "Success";
-        } catch (SherlockException | IOException | JobNotFoundException e) {
+            return new Gson().toJson(backfillIds);
+        } catch (SherlockException | ClusterNotFoundException e) {
+            log.error("Invalid job backfill!", e);
+            response.status(400);
+            return e.getMessage();
+        } catch (IOException | JobNotFoundException e) {
             log.error("Error occurred during job backfill!", e);
             response.status(500);
             return e.getMessage();
         }
     }
 
+    /**
+     * Endpoint returning the progress of backfills. If an ID
+     * is given only that backfill is returned.
+     *
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @return backfill progress as a JSON string
+     */
+    public static String debugBackfillProgress(Request request, Response response) {
+        BackfillExecutor backfillExecutor = BackfillExecutor.getInstance();
+        response.type("application/json");
+        String id = request.params(Constants.ID);
+        if (id == null) {
+            return new Gson().toJson(backfillExecutor.getAllProgress());
+        }
+        BackfillProgress progress = backfillExecutor.getProgress(id);
+        if (progress == null) {
+            response.status(404);
+            return "Unknown backfill";
+        }
+        return new Gson().toJson(progress);
+    }
+
+    /**
+     * Endpoint used to cancel a running backfill.
+     *
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @return 'success' or an error message
+     */
+    public static String debugCancelBackfill(Request request, Response response) {
+        if (BackfillExecutor.getInstance().cancel(request.params(Constants.ID))) {
+            response.status(200);
+            return Constants.SUCCESS;
+        }
+        response.status(404);
+        return "No running backfill with this ID";
+    }
+
     /**
      * Endpoint used to clear all reports associated with a job.
      *
@@ -1387,6 +1473,116 @@ public class Routes {
         }
     }
 
+    /**
+     * Endpoint returning the execution worker pool statistics
+     * and the number of due jobs waiting in the queue of each lane,
+     * and the statistics of the job pipeline pools.
+     *
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @return statistics as a JSON string or an error message
+     */
+    public static String debugExecutionStats(Request request, Response response) {
+        Map<ExecutionLane, ExecutionTask> executionTasks = schedulerService.getExecutionTasks();
+        if (executionTasks.isEmpty()) {
+            response.status(404);
+            return "Execution task is not running";
+        }
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            for (Map.Entry<ExecutionLane, ExecutionTask> entry : executionTasks.entrySet()) {
+                Map<String, Object> laneStats = new LinkedHashMap<>(entry.getValue().getWorkerPool().getStats());
+                laneStats.put("queueDepth", entry.getValue().getQueueDepth());
+                stats.put(entry.getKey().toString(), laneStats);
+            }
+            stats.put("pipeline", JobPipeline.getInstance().getStats());
+            stats.put("catchUp", CatchUpExecutor.getInstance().getStats());
+            response.type("application/json");
+            return new Gson().toJson(stats);
+        } catch (IOException e) {
+            log.error("Error while reading execution stats!", e);
+            response.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Endpoint returning the query limiter statistics of each
+     * Druid cluster, including the time spent waiting for a permit.
+     *
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @return statistics as a JSON string
+     */
+    public static String debugClusterQueryStats(Request request, Response response) {
+        response.type("application/json");
+        return new Gson().toJson(ClusterQueryLimiter.getInstance().getStats());
+    }
+
+    /**
+     * Endpoint returning the state and response count of each Druid
+     * broker, and the number of hedged queries.
+     *
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @return statistics as a JSON string
+     */
+    public static String debugBrokerStats(Request request, Response response) {
+        response.type("application/json");
+        return new Gson().toJson(DruidBrokerSelector.getInstance().getStats());
+    }
+
+    /**
+     * Endpoint returning the Sherlock telemetry in the
+     * Prometheus text format.
+     *
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @return the metrics
+     */
+    public static String metrics(Request request, Response response) {
+        response.type(PrometheusExporter.CONTENT_TYPE);
+        return new PrometheusExporter(
+            schedulerService,
+            PipelineMetrics.getInstance(),
+            RedisCommandLatencyCollector.getInstance(),
+            CatchUpExecutor.getInstance()
+        ).scrape();
+    }
+
+    /**
+     * Endpoint returning the latency statistics of each stage
+     * of the job runs, by job frequency, cluster and framework.
+     *
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @return statistics as a JSON string
+     */
+    public static String debugPipelineStats(Request request, Response response) {
+        response.type("application/json");
+        return new Gson().toJson(PipelineMetrics.getInstance().getStats());
+    }
+
+    /**
+     * Endpoint spreading the queued jobs evenly over the hour.
+     *
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @return the number of moved jobs or an error message
+     */
+    public static String debugRebalanceJobs(Request request, Response response) {
+        try {
+            List<JobMetadata> movedJobs = schedulerService.rebalanceJobs();
+            jobAccessor.putEffectiveRunTimes(movedJobs);
+            response.status(200);
+            return "Rebalanced " + movedJobs.size() + " jobs";
+        } catch (SchedulerException | IOException e) {
+            log.error("Error while rebalancing jobs!", e);
+            response.status(500);
+            return e.getMessage();
+        }
+    }
+
     /**
      * Display a query page with EGADS configurable params.
      *
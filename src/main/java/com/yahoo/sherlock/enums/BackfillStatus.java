@@ -0,0 +1,26 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.enums;
+
+/**
+ * Enum type specifying the state of a backfill.
+ */
+public enum BackfillStatus {
+
+    QUEUED,         // When the backfill waits for a free coordinator
+    RUNNING,        // When the backfill intervals are being detected
+    COMPLETED,      // When every interval has been detected and stored
+    CANCELLED,      // When the backfill was cancelled by the user
+    FAILED;         // When an error stopped the backfill
+
+    /**
+     * @return true if the backfill will not make further progress
+     */
+    public boolean isFinished() {
+        return this == COMPLETED || this == CANCELLED || this == FAILED;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.enums;
+
+import com.yahoo.sherlock.settings.CLISettings;
+
+/**
+ * Execution lanes that jobs are scheduled in according to their
+ * frequency. Each lane has its own queue, workers and dispatcher,
+ * so that slow daily jobs cannot hold back minute jobs.
+ */
+public enum ExecutionLane {
+    MINUTE(".minute"), HOUR(".hour"), DAY("");
+
+    /**
+     * Suffix appended to the base queue name.
+     */
+    private final String queueSuffix;
+
+    /**
+     * Initialization.
+     *
+     * @param queueSuffix suffix of the lane queue name
+     */
+    ExecutionLane(String queueSuffix) {
+        this.queueSuffix = queueSuffix;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Get the queue name of the lane. The day lane
+     * uses the base queue name, so that it also runs
+     * the jobs queued before lanes were introduced.
+     *
+     * @param baseQueueName the base queue name
+     * @return the queue name of the lane
+     */
+    public String getQueueName(String baseQueueName) {
+        return baseQueueName + queueSuffix;
+    }
+
+    /**
+     * @return the number of workers of the lane
+     */
+    public int getThreads() {
+        switch (this) {
+            case MINUTE:
+                return CLISettings.MINUTE_LANE_THREADS;
+            case HOUR:
+                return CLISettings.HOUR_LANE_THREADS;
+            case DAY:
+            default:
+                return CLISettings.EXECUTION_THREADS;
+        }
+    }
+
+    /**
+     * Get the lane of a job frequency. Daily, weekly
+     * and monthly jobs and unknown frequencies share the day lane.
+     *
+     * @param frequency the job frequency
+     * @return the lane of the frequency
+     */
+    public static ExecutionLane of(String frequency) {
+        Triggers trigger = Triggers.getValue(frequency);
+        if (trigger == Triggers.MINUTE) {
+            return MINUTE;
+        }
+        if (trigger == Triggers.HOUR) {
+            return HOUR;
+        }
+        return DAY;
+    }
+}
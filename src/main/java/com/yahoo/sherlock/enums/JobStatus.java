@@ -19,6 +19,7 @@ public enum JobStatus {
     STOPPED("STOPPED"),       // When the job is stopped (by user or due to some error)
     ERROR("ERROR"),           // When the exception causes during the execution
     NODATA("NODATA"),         // When druid response has no data or incomplete data
+    TIMEOUT("TIMEOUT"),       // When the last run exceeded its deadline and was cancelled
     ZOMBIE("ZOMBIE");         // When the job has unexpected scheduling behavior
 
     /**
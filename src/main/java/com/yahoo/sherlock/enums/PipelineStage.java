@@ -0,0 +1,29 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.enums;
+
+/**
+ * Stages of a job run whose latency is recorded.
+ */
+public enum PipelineStage {
+    JOB,                 // The whole job run
+    DATASOURCE_CHECK,    // Checking that the queried datasources exist
+    DRUID_QUERY,         // Druid broker request, until the response headers
+    RESPONSE_PARSE,      // Reading and parsing the Druid response body
+    TIMESERIES_ASSEMBLY, // Building the time series from the parsed response
+    MODEL_FILL,          // Filling missing data points of the series
+    MODEL_TRAIN,         // Training and forecasting, the Prophet service call
+    MODEL_DETECT,        // Detecting anomalies on the series, including training for EGADS
+    REPORT_MAPPING,      // Mapping anomalies to reports
+    REPORT_WRITE,        // Writing reports to Redis
+    EMAIL;               // Sending or queueing report emails
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.model;
+
+import com.yahoo.sherlock.enums.BackfillStatus;
+
+import lombok.Data;
+
+import java.util.UUID;
+
+/**
+ * Progress of a single backfill, which is updated by the
+ * thread running the backfill and read by the debug routes.
+ */
+@Data
+public class BackfillProgress {
+
+    /** Unique ID of the backfill. */
+    private final String id;
+
+    /** ID of the job being backfilled. */
+    private final Integer jobId;
+
+    /** Current state of the backfill. */
+    private volatile BackfillStatus status;
+
+    /** Number of intervals to detect. */
+    private volatile int totalIntervals;
+
+    /** Number of intervals detected so far. */
+    private volatile int completedIntervals;
+
+    /** Number of reports written to the backend so far. */
+    private volatile int reportsWritten;
+
+    /** Time the backfill was created in epoch millis. */
+    private final long createdAt;
+
+    /** Time the backfill finished in epoch millis or 0. */
+    private volatile long finishedAt;
+
+    /** Error message if the backfill failed. */
+    private volatile String message;
+
+    /** Whether cancellation of the backfill has been requested. */
+    private volatile boolean cancelRequested;
+
+    /**
+     * Create progress for a new backfill of a job.
+     *
+     * @param jobId ID of the job being backfilled
+     */
+    public BackfillProgress(Integer jobId) {
+        this.id = UUID.randomUUID().toString();
+        this.jobId = jobId;
+        this.status = BackfillStatus.QUEUED;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Record a detected interval.
+     */
+    public void intervalCompleted() {
+        completedIntervals++;
+    }
+
+    /**
+     * Record reports written to the backend.
+     *
+     * @param count number of written reports
+     */
+    public void reportsWritten(int count) {
+        reportsWritten += count;
+    }
+
+    /**
+     * Mark the backfill as finished with the given status.
+     *
+     * @param finalStatus the final status
+     * @param finalMessage an optional message
+     */
+    public void finish(BackfillStatus finalStatus, String finalMessage) {
+        this.message = finalMessage;
+        this.finishedAt = System.currentTimeMillis();
+        this.status = finalStatus;
+    }
+}
@@ -7,14 +7,17 @@
 package com.yahoo.sherlock.model;
 
 import com.yahoo.sherlock.exception.SherlockException;
-import com.yahoo.sherlock.service.HttpService;
+import com.yahoo.sherlock.service.ClusterHealthCache;
 import com.yahoo.sherlock.settings.Constants;
 import com.yahoo.sherlock.store.Attribute;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.httpclient.HttpStatus;
 
 import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Deserializer class for a Druid cluster. This object is built from a request
@@ -68,6 +71,26 @@ public class DruidCluster implements Serializable {
     @Attribute
     private String principalName = "";
 
+    /** Maximum number of queries running at once on the cluster, no limit if null. **/
+    @Attribute
+    private Integer maxConcurrentQueries;
+
+    /** Maximum number of queries sent to the cluster per second, no limit if null. **/
+    @Attribute
+    private Double maxQueriesPerSecond;
+
+    /** Whether queries and responses are Smile encoded rather than JSON text. **/
+    @Attribute
+    private Boolean smileEncoding = false;
+
+    /** Other brokers of the cluster as comma separated host:port pairs, sharing the broker endpoint. **/
+    @Attribute
+    private String additionalBrokers = "";
+
+    /** Whether the queries of minute jobs are hedged with a second broker. **/
+    @Attribute
+    private Boolean hedgeRequests = false;
+
     /** Empty constructor. */
     public DruidCluster() {
     }
@@ -106,26 +129,24 @@ public class DruidCluster implements Serializable {
     }
 
     /**
-     * Get a String that represents the status of this cluster.
-     * @return "OK" if the cluster can be contacted,
-     * "ERROR" if not, or an error code otherwise
+     * Get a String that represents the status of this cluster, as of
+     * the last poll of its brokers. Does not contact the cluster.
+     * @return "OK" if the brokers can be contacted, "DEGRADED" if only
+     * some of them can, "ERROR" if none can, an error code if the main
+     * broker answers with one, or "UNKNOWN" if it was not polled yet
      */
     public String getStatus() {
-        String clusterStatus;
-        try {
-            int status = new HttpService().queryDruidClusterStatus(this);
-            switch (status) {
-                case HttpStatus.SC_OK:
-                    clusterStatus = "OK";
-                    break;
-                default:
-                    clusterStatus = String.valueOf(status);
-                    break;
-            }
-        } catch (Exception e) {
-            clusterStatus = "ERROR";
-        }
-        return clusterStatus;
+        ClusterHealthCache.Health health = ClusterHealthCache.getInstance().getHealth(clusterId);
+        return health == null ? ClusterHealthCache.UNKNOWN : health.getStatus();
+    }
+
+    /**
+     * Get the time the status of this cluster was checked.
+     * @return the time of the last poll, or "never"
+     */
+    public String getStatusCheckedAt() {
+        ClusterHealthCache.Health health = ClusterHealthCache.getInstance().getHealth(clusterId);
+        return health == null ? "never" : Instant.ofEpochMilli(health.getCheckedAtMillis()).toString();
     }
 
     /**
@@ -151,6 +172,12 @@ public class DruidCluster implements Serializable {
             errorMsg = "Broker host or port specified is not allowed!";
         } else if (isSSLAuth && protocol.equalsIgnoreCase(Constants.HTTP)) {
             errorMsg = "Cannot use HTTP with SSL authentication!";
+        } else if (maxConcurrentQueries != null && maxConcurrentQueries < 1) {
+            errorMsg = "Max concurrent queries must be at least 1!";
+        } else if (maxQueriesPerSecond != null && maxQueriesPerSecond <= 0) {
+            errorMsg = "Max queries per second must be positive!";
+        } else if (!areValidBrokers(additionalBrokers)) {
+            errorMsg = "Additional brokers must be comma separated host:port pairs of allowed brokers!";
         } else {
             if (clusterDescription == null) {
                 clusterDescription = "";
@@ -159,6 +186,7 @@ public class DruidCluster implements Serializable {
             clusterDescription = clusterDescription.trim();
             brokerHost = brokerHost.trim();
             brokerEndpoint = brokerEndpoint.trim();
+            additionalBrokers = additionalBrokers == null ? "" : String.join(",", splitBrokers(additionalBrokers));
             int endpointStart = 0;
             int endpointEnd = brokerEndpoint.length();
             if (brokerEndpoint.charAt(0) == '/') {
@@ -192,6 +220,11 @@ public class DruidCluster implements Serializable {
         setProtocol(newCluster.getProtocol());
         setIsSSLAuth(newCluster.getIsSSLAuth());
         setPrincipalName(newCluster.getPrincipalName());
+        setMaxConcurrentQueries(newCluster.getMaxConcurrentQueries());
+        setMaxQueriesPerSecond(newCluster.getMaxQueriesPerSecond());
+        setSmileEncoding(newCluster.getSmileEncoding());
+        setAdditionalBrokers(newCluster.getAdditionalBrokers());
+        setHedgeRequests(newCluster.getHedgeRequests());
     }
 
     /**
@@ -204,6 +237,76 @@ public class DruidCluster implements Serializable {
         return Constants.VALID_DRUID_BROKERS == null || Constants.VALID_DRUID_BROKERS.contains(String.format("%s:%s", host, port));
     }
 
+    /**
+     * Check a list of additional brokers.
+     * @param brokers comma separated host:port pairs
+     * @return true if every broker has a valid and allowed host and port
+     */
+    private boolean areValidBrokers(String brokers) {
+        if (brokers == null) {
+            return true;
+        }
+        for (String broker : splitBrokers(brokers)) {
+            String[] hostPort = broker.split(":");
+            if (hostPort.length != 2 || hostPort[0].isEmpty() || hostPort[0].contains("/") || !hostPort[1].matches("\\d{1,5}")
+                || !isAllowedHost(hostPort[0], Integer.valueOf(hostPort[1]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param brokers comma separated host:port pairs
+     * @return the trimmed, non-empty pairs
+     */
+    private static List<String> splitBrokers(String brokers) {
+        List<String> split = new ArrayList<>();
+        for (String broker : brokers.split(",")) {
+            if (!broker.trim().isEmpty()) {
+                split.add(broker.trim());
+            }
+        }
+        return split;
+    }
+
+    /**
+     * Get every broker of this cluster, the main broker first.
+     * @return the host:port pairs of the brokers
+     */
+    public List<String> getBrokers() {
+        List<String> brokers = new ArrayList<>();
+        brokers.add(String.format("%s:%s", brokerHost, brokerPort));
+        if (additionalBrokers != null) {
+            for (String broker : splitBrokers(additionalBrokers)) {
+                if (!brokers.contains(broker)) {
+                    brokers.add(broker);
+                }
+            }
+        }
+        return brokers;
+    }
+
+    /**
+     * Build and get the base URL of each broker for this cluster.
+     * @return base broker URLs, the main broker first
+     */
+    public List<String> getBaseUrls() {
+        return getBrokers().stream()
+            .map(broker -> String.format("%s://%s/", protocol, broker))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Build and get the URL of each broker for this cluster.
+     * @return broker URLs, the main broker first
+     */
+    public List<String> getBrokerUrls() {
+        return getBaseUrls().stream()
+            .map(baseUrl -> String.format("%s%s/", baseUrl, brokerEndpoint))
+            .collect(Collectors.toList());
+    }
+
     /**
      * Build and get the base broker URL for this cluster.
      * @return base broker URL
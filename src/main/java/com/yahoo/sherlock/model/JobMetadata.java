@@ -204,6 +204,13 @@ public class JobMetadata implements Serializable, Cloneable {
     @Attribute
     private String prophetDailySeasonality = DetectorConfig.ProphetSeasonality.auto.toString();
 
+    /**
+     * Time in minutes a run of the job may take before it is
+     * cancelled, null to derive it from the job frequency.
+     */
+    @Attribute
+    private Integer timeoutMinutes;
+
     /**
      * Empty Constructor.
      */
@@ -241,6 +248,7 @@ public class JobMetadata implements Serializable, Cloneable {
         this.prophetDailySeasonality = jobMetadata.getProphetDailySeasonality();
         this.prophetWeeklySeasonality = jobMetadata.getProphetWeeklySeasonality();
         this.prophetYearlySeasonality = jobMetadata.getProphetYearlySeasonality();
+        this.timeoutMinutes = jobMetadata.getTimeoutMinutes();
     }
 
     /**
@@ -275,6 +283,7 @@ public class JobMetadata implements Serializable, Cloneable {
         setProphetDailySeasonality(userQuery.getDailySeasonality());
         setProphetWeeklySeasonality(userQuery.getWeeklySeasonality());
         setProphetYearlySeasonality(userQuery.getYearlySeasonality());
+        setTimeoutMinutes(userQuery.getTimeoutMinutes());
     }
 
     /**
@@ -343,6 +352,7 @@ public class JobMetadata implements Serializable, Cloneable {
         setProphetDailySeasonality(newJob.getProphetDailySeasonality());
         setProphetWeeklySeasonality(newJob.getProphetWeeklySeasonality());
         setProphetYearlySeasonality(newJob.getProphetYearlySeasonality());
+        setTimeoutMinutes(newJob.getTimeoutMinutes());
     }
 
     /**
@@ -363,7 +373,8 @@ public class JobMetadata implements Serializable, Cloneable {
      * @return true if the job status is running
      */
     public boolean isRunning() {
-        return JobStatus.RUNNING.getValue().equals(getJobStatus()) || JobStatus.NODATA.getValue().equals(getJobStatus());
+        return JobStatus.RUNNING.getValue().equals(getJobStatus()) || JobStatus.NODATA.getValue().equals(getJobStatus())
+               || JobStatus.TIMEOUT.getValue().equals(getJobStatus());
     }
 
     /**
@@ -93,6 +93,9 @@ public class UserQuery {
     /** Hours of lag associated with the job's cluster. */
     private Integer hoursOfLag;
 
+    /** Minutes a run of the job may take, null to derive it from the frequency. */
+    private Integer timeoutMinutes;
+
     /** Meta Prophet's growth model ("linear"/"flat"). */
     private String growthModel;
 
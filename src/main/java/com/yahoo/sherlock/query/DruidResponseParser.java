@@ -0,0 +1,399 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.query;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.exception.SherlockException;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Streaming parser of a Druid response into time series. The
+ * response is read token by token and the metrics of each row are
+ * appended to the series of their metric and dimension values, so
+ * that neither the response nor its rows are held in memory as a
+ * JSON tree. Only the rows of the datapoint being read are kept.
+ * Responses may be JSON text or Druid's binary Smile encoding of it.
+ * The series are the same as the ones built by {@code JsonTimeSeries}.
+ */
+@Slf4j
+public class DruidResponseParser {
+
+    /**
+     * Dateformat of Druid response timestamp.
+     */
+    private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    /**
+     * Factory of the parsers of JSON responses.
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Factory of the parsers of Smile responses.
+     */
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+
+    /**
+     * Query groupby dimensions, in order.
+     */
+    private final String[] dimensions;
+
+    /**
+     * Metrics names.
+     */
+    private final String[] metrics;
+
+    /**
+     * Position of each dimension and metric in a row, dimensions first.
+     */
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    /**
+     * Time series by metric name and dimension values.
+     */
+    private final Map<String, TimeSeries> timeSeriesMap = new LinkedHashMap<>();
+
+    /**
+     * Dateformat of the timestamps, reused for every datapoint.
+     */
+    private final DateFormat dateFormat;
+
+    /**
+     * Number of datapoints read.
+     */
+    private int dataPointCount = 0;
+
+    /**
+     * Create a parser for the response of a query.
+     *
+     * @param query the query of the response
+     */
+    public DruidResponseParser(Query query) {
+        this.dimensions = query.getGroupByDimensions().toArray(new String[0]);
+        this.metrics = query.getMetricNames().stream().filter(metric -> metric != null).toArray(String[]::new);
+        for (int i = 0; i < dimensions.length; i++) {
+            columns.put(dimensions[i], i);
+        }
+        for (int i = 0; i < metrics.length; i++) {
+            columns.putIfAbsent(metrics[i], dimensions.length + i);
+        }
+        this.dateFormat = new SimpleDateFormat(DATE_FORMAT);
+        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Read a JSON Druid response into time series.
+     *
+     * @param response reader of the response body
+     * @return the time series, in the order they first appear in the response
+     * @throws SherlockException if the response is empty or is not a JSON array
+     * @throws IOException       if an error occurs while reading the response
+     */
+    public List<TimeSeries> parse(Reader response) throws SherlockException, IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(response)) {
+            return parse(parser);
+        }
+    }
+
+    /**
+     * Read a Druid response into time series.
+     *
+     * @param response the response body
+     * @param smile    whether the response is Smile encoded rather than JSON text
+     * @return the time series, in the order they first appear in the response
+     * @throws SherlockException if the response is empty or is not an array
+     * @throws IOException       if an error occurs while reading the response
+     */
+    public List<TimeSeries> parse(InputStream response, boolean smile) throws SherlockException, IOException {
+        try (JsonParser parser = (smile ? SMILE_FACTORY : JSON_FACTORY).createParser(response)) {
+            return parse(parser);
+        }
+    }
+
+    /**
+     * @param parser parser of the response
+     * @return the time series
+     * @throws SherlockException if the response is empty or is not an array
+     * @throws IOException       if an error occurs while reading the response
+     */
+    private List<TimeSeries> parse(JsonParser parser) throws SherlockException, IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            log.error("Error in druid response.");
+            throw new SherlockException("Null druid response!");
+        }
+        if (token != JsonToken.START_ARRAY) {
+            throw new SherlockException("Druid response is not a JSON array: " + token);
+        }
+        while ((token = next(parser)) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+                readDataPoint(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (dataPointCount == 0) {
+            log.error("Query to Druid returned empty response!");
+        }
+        return new ArrayList<>(timeSeriesMap.values());
+    }
+
+    /**
+     * @param parser the response parser
+     * @return the next token
+     * @throws IOException if the response ends before the end of its value
+     */
+    private static JsonToken next(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new EOFException("Unexpected end of the Druid response");
+        }
+        return token;
+    }
+
+    /**
+     * Read a datapoint and append its rows to their time series.
+     * Invalid datapoints are logged and skipped.
+     *
+     * @param parser the response parser, positioned on the start of a datapoint
+     * @throws IOException if an error occurs while reading the response
+     */
+    private void readDataPoint(JsonParser parser) throws IOException {
+        dataPointCount++;
+        String timestamp = null;
+        List<Object[]> rows = null;
+        boolean hasResult = false;
+        boolean hasEvent = false;
+        while (next(parser) == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = next(parser);
+            if ("timestamp".equals(name) && token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                timestamp = parser.getText();
+            } else if ("result".equals(name) && token != JsonToken.VALUE_NULL) {
+                hasResult = true;
+                rows = readRows(parser);
+            } else if ("event".equals(name) && token != JsonToken.VALUE_NULL && !hasResult) {
+                hasEvent = true;
+                rows = token == JsonToken.START_OBJECT ? readRows(parser) : skip(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (timestamp == null || !(hasResult || hasEvent)) {
+            return;
+        }
+        if (rows.isEmpty()) {
+            log.error(hasResult ? "Error in parsing, result is empty!" : "Error in Druid response parsing!");
+            return;
+        }
+        long parsedTimeStamp;
+        try {
+            parsedTimeStamp = parseTimeStamp(timestamp);
+        } catch (SherlockException e) {
+            log.error("Error while processing data point!", e);
+            return;
+        }
+        for (Object[] row : rows) {
+            appendRow(parsedTimeStamp, row);
+        }
+    }
+
+    /**
+     * Skip a value which holds no rows.
+     *
+     * @param parser the response parser
+     * @return no rows
+     * @throws IOException if an error occurs while reading the response
+     */
+    private static List<Object[]> skip(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        return new ArrayList<>(0);
+    }
+
+    /**
+     * Read the rows of a 'result' or 'event' value, which is either
+     * a row or an array of rows.
+     *
+     * @param parser the response parser, positioned on the value
+     * @return the rows
+     * @throws IOException if an error occurs while reading the response
+     */
+    private List<Object[]> readRows(JsonParser parser) throws IOException {
+        List<Object[]> rows = new ArrayList<>();
+        if (parser.currentToken() == JsonToken.START_ARRAY) {
+            JsonToken token;
+            while ((token = next(parser)) != JsonToken.END_ARRAY) {
+                if (token == JsonToken.START_OBJECT) {
+                    readRow(parser, rows);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else if (parser.currentToken() == JsonToken.START_OBJECT) {
+            readRow(parser, rows);
+        } else {
+            parser.skipChildren();
+        }
+        return rows;
+    }
+
+    /**
+     * Read the dimension and metric values of a row, skipping the other fields.
+     * A value is a {@code String} for a dimension, a {@code Float} for a metric,
+     * or an {@code Exception} if it cannot be read.
+     *
+     * @param parser the response parser, positioned on the start of the row
+     * @param rows   the rows of the datapoint
+     * @throws IOException if an error occurs while reading the response
+     */
+    private void readRow(JsonParser parser, List<Object[]> rows) throws IOException {
+        Object[] row = new Object[dimensions.length + metrics.length];
+        boolean empty = true;
+        while (next(parser) == JsonToken.FIELD_NAME) {
+            Integer column = columns.get(parser.getCurrentName());
+            JsonToken token = next(parser);
+            empty = false;
+            if (column == null) {
+                parser.skipChildren();
+            } else if (column < dimensions.length) {
+                row[column] = readDimension(parser, token);
+            } else {
+                row[column] = readMetric(parser, token);
+            }
+        }
+        if (!empty) {
+            rows.add(row);
+        }
+    }
+
+    /**
+     * @param parser the response parser, positioned on a dimension value
+     * @param token  the token of the value
+     * @return the value, "null" for a JSON null
+     * @throws IOException if an error occurs while reading the response
+     */
+    private static Object readDimension(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return "null";
+        }
+        if (!token.isScalarValue() || token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+            parser.skipChildren();
+            return new SherlockException("Dimension value is not a JSON primitive");
+        }
+        return parser.getText();
+    }
+
+    /**
+     * @param parser the response parser, positioned on a metric value
+     * @param token  the token of the value
+     * @return the value as a float
+     * @throws IOException if an error occurs while reading the response
+     */
+    private static Object readMetric(JsonParser parser, JsonToken token) throws IOException {
+        if (!token.isNumeric() && token != JsonToken.VALUE_STRING) {
+            parser.skipChildren();
+            return new SherlockException("Metric value is not a number");
+        }
+        try {
+            // parse the text, as Gson does, so that values round the same way
+            return Float.parseFloat(parser.getText());
+        } catch (NumberFormatException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Append the metrics of a row to the time series of its dimension values.
+     *
+     * @param parsedTimeStamp the timestamp of the row in seconds
+     * @param row             the row values
+     */
+    private void appendRow(long parsedTimeStamp, Object[] row) {
+        StringBuilder dimensionValues = new StringBuilder();
+        for (int i = 0; i < dimensions.length; i++) {
+            if (!(row[i] instanceof String)) {
+                log.error("Error while processing data point!",
+                    row[i] instanceof Exception ? (Exception) row[i] : new SherlockException("Missing dimension " + dimensions[i]));
+                return;
+            }
+            if ("null".equals(row[i])) {
+                return;
+            }
+            if (i > 0) {
+                dimensionValues.append('\n');
+            }
+            dimensionValues.append(dimensions[i]).append(" = '").append(row[i]).append('\'');
+        }
+        String source = dimensionValues.toString();
+        // rows with a 'null' dimension value are dropped, as by JsonTimeSeries
+        if (source.contains("null")) {
+            return;
+        }
+        for (String metricName : metrics) {
+            Object value = row[columns.get(metricName)];
+            try {
+                if (!(value instanceof Float)) {
+                    throw value instanceof Exception ? (Exception) value : new SherlockException("Missing metric " + metricName);
+                }
+                timeSeriesMap.computeIfAbsent(metricName + "|" + source, key -> newTimeSeries(metricName, source))
+                    .append(parsedTimeStamp, (Float) value);
+            } catch (Exception e) {
+                log.error("Error while populating the time series!", e);
+            }
+        }
+    }
+
+    /**
+     * @param metricName      metric name of the new timeseries
+     * @param dimensionValues group by dimension values of the new timeseries
+     * @return a new time series
+     */
+    private static TimeSeries newTimeSeries(String metricName, String dimensionValues) {
+        TimeSeries timeSeries = new TimeSeries();
+        timeSeries.meta.name = metricName;
+        timeSeries.meta.id = UUID.randomUUID().toString();
+        timeSeries.meta.source = dimensionValues;
+        timeSeries.meta.fileName = metricName;
+        return timeSeries;
+    }
+
+    /**
+     * Method to parse Druid timestamp.
+     *
+     * @param timestamp input format 'yyyy-MM-ddTHH:mm:ss.SSSZ'
+     * @return timestamp in seconds
+     * @throws SherlockException if the timestamp cannot be parsed
+     */
+    private long parseTimeStamp(String timestamp) throws SherlockException {
+        try {
+            return dateFormat.parse(timestamp.replace("T", " ").replace("Z", "")).getTime() / 1000;
+        } catch (ParseException e) {
+            log.error("Druid timestamp parsing error!", e);
+            throw new SherlockException(e.getMessage(), e);
+        }
+    }
+}
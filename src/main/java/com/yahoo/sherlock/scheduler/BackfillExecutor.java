@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.enums.BackfillStatus;
+import com.yahoo.sherlock.model.AnomalyReport;
+import com.yahoo.sherlock.model.BackfillProgress;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Shared executors for backfills. Detection of backfill intervals
+ * runs on a single pool bounded by {@code --backfill-threads}, no
+ * matter how many backfills are running, and the chunks of long
+ * backfills are fetched ahead on a small fetch pool. Backfills
+ * started from the debug routes run asynchronously on a small
+ * coordinator pool and their progress is kept here so they may be
+ * inspected and cancelled.
+ */
+@Slf4j
+public class BackfillExecutor {
+
+    /** Number of finished backfills whose progress is kept. */
+    private static final int MAX_FINISHED_PROGRESS = 100;
+
+    /** Number of backfills that may run at once from the debug routes. */
+    private static final int COORDINATOR_THREADS = 2;
+
+    /** Number of backfill chunks that may be fetched at once. */
+    private static final int FETCH_THREADS = 2;
+
+    /** The singleton instance of this class. */
+    private static BackfillExecutor backfillExecutor;
+
+    /** Pool detecting backfill intervals. */
+    private final ThreadPoolExecutor detectionPool;
+
+    /** Pool running asynchronous backfills. */
+    private final ThreadPoolExecutor coordinatorPool;
+
+    /** Pool fetching the data of upcoming backfill chunks. */
+    private final ThreadPoolExecutor fetchPool;
+
+    /** Progress of known backfills by ID. */
+    private final Map<String, BackfillProgress> progressMap = new ConcurrentHashMap<>();
+
+    /**
+     * Create the executor with the given detection pool size.
+     *
+     * @param detectionThreads number of threads detecting intervals, at least one is used
+     */
+    public BackfillExecutor(int detectionThreads) {
+        int size = Math.max(1, detectionThreads);
+        detectionPool = newPool(size, "BackfillWorker-");
+        coordinatorPool = newPool(COORDINATOR_THREADS, "BackfillCoordinator-");
+        fetchPool = newPool(FETCH_THREADS, "BackfillFetcher-");
+    }
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared backfill executor
+     */
+    public static synchronized BackfillExecutor getInstance() {
+        if (backfillExecutor == null) {
+            backfillExecutor = new BackfillExecutor(CLISettings.BACKFILL_THREADS);
+        }
+        return backfillExecutor;
+    }
+
+    /**
+     * Create a fixed size pool of daemon threads.
+     *
+     * @param size   number of threads
+     * @param prefix thread name prefix
+     * @return the pool
+     */
+    private static ThreadPoolExecutor newPool(int size, String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @return a completion service running detection tasks on the shared pool
+     */
+    public CompletionService<List<AnomalyReport>> newCompletionService() {
+        return new ExecutorCompletionService<>(detectionPool);
+    }
+
+    /**
+     * Fetch the data of a backfill chunk in the background.
+     *
+     * @param fetch the fetch to run
+     * @param <T>   type of the fetched data
+     * @return the future fetched data
+     */
+    public <T> Future<T> fetch(Callable<T> fetch) {
+        return fetchPool.submit(fetch);
+    }
+
+    /**
+     * Register a new backfill of a job.
+     *
+     * @param jobId ID of the job to backfill
+     * @return the progress of the new backfill
+     */
+    public BackfillProgress register(Integer jobId) {
+        pruneFinished();
+        BackfillProgress progress = new BackfillProgress(jobId);
+        progressMap.put(progress.getId(), progress);
+        return progress;
+    }
+
+    /**
+     * Run a registered backfill asynchronously.
+     *
+     * @param progress the registered backfill progress
+     * @param backfill the backfill to run
+     */
+    public void submit(BackfillProgress progress, Runnable backfill) {
+        coordinatorPool.execute(() -> {
+            if (progress.isCancelRequested()) {
+                progress.finish(BackfillStatus.CANCELLED, null);
+                return;
+            }
+            try {
+                backfill.run();
+            } catch (Exception e) {
+                log.error("Error while running backfill [{}]!", progress.getId(), e);
+                progress.finish(BackfillStatus.FAILED, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @param id backfill ID
+     * @return the progress of the backfill or null if unknown
+     */
+    public BackfillProgress getProgress(String id) {
+        return progressMap.get(id);
+    }
+
+    /**
+     * @return the progress of all known backfills, newest first
+     */
+    public List<BackfillProgress> getAllProgress() {
+        return progressMap.values().stream()
+            .sorted(Comparator.comparingLong(BackfillProgress::getCreatedAt).reversed())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Request cancellation of a backfill. Intervals that are
+     * already being detected finish, the rest are skipped.
+     *
+     * @param id backfill ID
+     * @return true if the backfill exists and was not finished
+     */
+    public boolean cancel(String id) {
+        BackfillProgress progress = progressMap.get(id);
+        if (progress == null || progress.getStatus().isFinished()) {
+            return false;
+        }
+        log.info("Cancelling backfill [{}] of job [{}]", id, progress.getJobId());
+        progress.setCancelRequested(true);
+        return true;
+    }
+
+    /**
+     * Drop the oldest finished backfills above the kept limit.
+     */
+    private void pruneFinished() {
+        List<BackfillProgress> finished = new ArrayList<>();
+        for (BackfillProgress progress : progressMap.values()) {
+            if (progress.getStatus().isFinished()) {
+                finished.add(progress);
+            }
+        }
+        if (finished.size() < MAX_FINISHED_PROGRESS) {
+            return;
+        }
+        finished.sort(Comparator.comparingLong(BackfillProgress::getFinishedAt));
+        for (int i = 0; i <= finished.size() - MAX_FINISHED_PROGRESS; i++) {
+            progressMap.remove(finished.get(i).getId());
+        }
+    }
+}
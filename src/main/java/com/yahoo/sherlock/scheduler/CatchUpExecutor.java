@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.enums.Granularity;
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.service.JobExecutionService;
+import com.yahoo.sherlock.settings.CLISettings;
+import com.yahoo.sherlock.utils.TimeUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background lane backfilling the runs missed by jobs lagging behind
+ * their schedule, for instance after an outage. Lagging jobs are
+ * rescheduled right away so that their on-time runs go first, and
+ * their missed runs are backfilled here, jobs of shorter frequency
+ * and longer lag first. When many jobs lag at once the lane enters
+ * catch-up mode, in which backfills are started at a limited rate
+ * so that they do not swamp Druid.
+ */
+@Slf4j
+public class CatchUpExecutor {
+
+    /** Thread name prefix. */
+    private static final String THREAD_NAME_PREFIX = "CatchUpWorker-";
+
+    /** The singleton instance of this class. */
+    private static CatchUpExecutor catchUpExecutor;
+
+    /** Pool running the backfills by priority. */
+    private final ThreadPoolExecutor pool;
+
+    /** Number of queued and running backfills from which catch-up mode is entered. */
+    private final int threshold;
+
+    /** Minimum time between two backfill starts in catch-up mode, in nanoseconds. */
+    private final long startIntervalNanos;
+
+    /** Backfills queued or running. */
+    private final Set<Backfill> backlog = ConcurrentHashMap.newKeySet();
+
+    /** Number of backfills running. */
+    private final AtomicInteger running = new AtomicInteger();
+
+    /** Number of backfills done since startup. */
+    private final AtomicLong completed = new AtomicLong();
+
+    /** Number of backfills which failed since startup. */
+    private final AtomicLong failed = new AtomicLong();
+
+    /** Time of the next backfill start allowed in catch-up mode. */
+    private long nextStartNanos = System.nanoTime();
+
+    /** Whether catch-up mode is on. */
+    private volatile boolean catchUpMode = false;
+
+    /**
+     * Create the lane.
+     *
+     * @param threads            number of backfills run at once, at least one is used
+     * @param threshold          number of pending backfills from which catch-up mode is entered
+     * @param backfillsPerMinute number of backfills started per minute in catch-up mode, unlimited if not positive
+     */
+    public CatchUpExecutor(int threads, int threshold, int backfillsPerMinute) {
+        int size = Math.max(1, threads);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.pool = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), threadFactory);
+        this.pool.allowCoreThreadTimeOut(true);
+        this.threshold = Math.max(1, threshold);
+        this.startIntervalNanos = backfillsPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / backfillsPerMinute : 0L;
+    }
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared catch-up lane
+     */
+    public static synchronized CatchUpExecutor getInstance() {
+        if (catchUpExecutor == null) {
+            catchUpExecutor = new CatchUpExecutor(
+                CLISettings.CATCH_UP_THREADS,
+                CLISettings.CATCH_UP_THRESHOLD,
+                CLISettings.CATCH_UP_BACKFILLS_PER_MINUTE
+            );
+        }
+        return catchUpExecutor;
+    }
+
+    /**
+     * Queue the backfill of the runs a lagging job missed, from the
+     * end of the interval of its last report until the given end. The
+     * end is fixed when the job is rescheduled, so that a backfill
+     * started late does not cover the periods of its on-time runs.
+     *
+     * @param job                 copy of the lagging job, before it is rescheduled
+     * @param endMinutes          end of the missed runs, where the rescheduled run starts
+     * @param jobExecutionService service running the backfill
+     */
+    public void submit(JobMetadata job, int endMinutes, JobExecutionService jobExecutionService) {
+        Backfill backfill = new Backfill(job, endMinutes, jobExecutionService);
+        backlog.add(backfill);
+        updateMode();
+        pool.execute(backfill);
+    }
+
+    /**
+     * Enter catch-up mode when the backlog reaches the threshold,
+     * and leave it once the backlog is drained.
+     */
+    private synchronized void updateMode() {
+        int size = backlog.size();
+        if (!catchUpMode && size >= threshold) {
+            catchUpMode = true;
+            log.warn("{} jobs are lagging behind their schedule, entering catch-up mode", size);
+        } else if (catchUpMode && size == 0) {
+            catchUpMode = false;
+            log.info("Catch-up backlog drained, leaving catch-up mode");
+        }
+    }
+
+    /**
+     * Wait until the rate of catch-up mode allows one more backfill to start.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void awaitStart() throws InterruptedException {
+        if (!catchUpMode || startIntervalNanos <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextStartNanos);
+            nextStartNanos = start + startIntervalNanos;
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * @return whether catch-up mode is on
+     */
+    public boolean isCatchUpMode() {
+        return catchUpMode;
+    }
+
+    /**
+     * @return number of backfills queued or running
+     */
+    public int getBacklogSize() {
+        return backlog.size();
+    }
+
+    /**
+     * Get how far behind the recovery is, which is the age of the
+     * oldest missed run still to backfill.
+     *
+     * @return the lag of the oldest pending backfill in minutes, 0 without backlog
+     */
+    public long getBehindMinutes() {
+        long now = TimeUtils.getTimestampMinutes();
+        long behind = 0;
+        for (Backfill backfill : backlog) {
+            behind = Math.max(behind, now - backfill.missedSinceMinutes);
+        }
+        return behind;
+    }
+
+    /**
+     * @return the catch-up statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("catchUpMode", catchUpMode);
+        stats.put("queuedBackfills", backlog.size() - running.get());
+        stats.put("runningBackfills", running.get());
+        stats.put("completedBackfills", completed.get());
+        stats.put("failedBackfills", failed.get());
+        stats.put("behindMinutes", getBehindMinutes());
+        return stats;
+    }
+
+    /**
+     * @return number of backfills done since startup
+     */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * @return number of backfills which failed since startup
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Backfill of a lagging job, ordered by priority.
+     */
+    private class Backfill implements Runnable, Comparable<Backfill> {
+
+        /** Copy of the lagging job. */
+        private final JobMetadata job;
+
+        /** End of the missed runs in minutes. */
+        private final int endMinutes;
+
+        /** Service running the backfill. */
+        private final JobExecutionService jobExecutionService;
+
+        /** Frequency of the job in minutes. */
+        private final int frequencyMinutes;
+
+        /** Time of the first missed run in minutes. */
+        private final long missedSinceMinutes;
+
+        /**
+         * @param job                 copy of the lagging job
+         * @param endMinutes          end of the missed runs in minutes
+         * @param jobExecutionService service running the backfill
+         */
+        Backfill(JobMetadata job, int endMinutes, JobExecutionService jobExecutionService) {
+            this.job = job;
+            this.endMinutes = endMinutes;
+            this.jobExecutionService = jobExecutionService;
+            Granularity frequency = Granularity.getValue(job.getFrequency());
+            this.frequencyMinutes = frequency == null ? Integer.MAX_VALUE : frequency.getMinutes();
+            Integer runTime = job.getEffectiveRunTime();
+            this.missedSinceMinutes = runTime == null ? TimeUtils.getTimestampMinutes() : runTime;
+        }
+
+        @Override
+        public void run() {
+            try {
+                awaitStart();
+                running.incrementAndGet();
+                try {
+                    log.info("Backfilling the missed runs of lagging job [{}]", job.getJobId());
+                    jobExecutionService.backfillJobFromIntervalEnd(job, endMinutes);
+                    completed.incrementAndGet();
+                } finally {
+                    running.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.incrementAndGet();
+            } catch (RuntimeException e) {
+                log.error("Error while backfilling lagging job [{}]!", job.getJobId(), e);
+                failed.incrementAndGet();
+            } finally {
+                backlog.remove(this);
+                updateMode();
+            }
+        }
+
+        @Override
+        public int compareTo(Backfill other) {
+            // Jobs of shorter frequency go first, then the jobs lagging the longest
+            int byFrequency = Integer.compare(frequencyMinutes, other.frequencyMinutes);
+            return byFrequency != 0 ? byFrequency : Long.compare(missedSinceMinutes, other.missedSinceMinutes);
+        }
+    }
+}
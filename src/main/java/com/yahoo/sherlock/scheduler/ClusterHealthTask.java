@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.service.ClusterHealthCache;
+import com.yahoo.sherlock.service.HttpService;
+import com.yahoo.sherlock.store.DruidClusterAccessor;
+import com.yahoo.sherlock.store.Store;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Class for the runnable task polling the health of every Druid cluster.
+ */
+@Slf4j
+public class ClusterHealthTask implements Runnable {
+
+    /**
+     * {@code DruidClusterAccessor} instance.
+     */
+    private DruidClusterAccessor druidClusterAccessor;
+
+    /**
+     * Service querying the brokers.
+     */
+    private HttpService httpService;
+
+    /**
+     * Constructor for initializing.
+     */
+    public ClusterHealthTask() {
+        druidClusterAccessor = Store.getDruidClusterAccessor();
+        httpService = new HttpService();
+    }
+
+    @Override
+    public void run() {
+        try {
+            ClusterHealthCache.getInstance().poll(druidClusterAccessor.getDruidClusterList(), httpService);
+        } catch (Exception e) {
+            log.error("Error while polling the health of the Druid clusters!", e);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.enums.Granularity;
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline of a single job run on the thread running it. When the
+ * deadline expires the thread is interrupted and the blocking calls
+ * registered with {@link #onExpiry}, such as in-flight Druid requests,
+ * are aborted, so that a hung query or model cannot hold a worker
+ * indefinitely. The deadline must be closed once the run is done.
+ * A run whose stages hop between threads starts a detached deadline
+ * and binds it to the thread of each stage with {@link #bind}.
+ */
+@Slf4j
+public class ExecutionDeadline implements AutoCloseable {
+
+    /** Thread name prefix. */
+    private static final String THREAD_NAME_PREFIX = "ExecutionDeadline-";
+
+    /** Deadline of the run on the current thread. */
+    private static final ThreadLocal<ExecutionDeadline> CURRENT = new ThreadLocal<>();
+
+    /** Timer expiring the deadlines. */
+    private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+    /** Thread running the job, or the current stage of it, null between stages. */
+    private Thread thread;
+
+    /** Aborts the blocking calls of the run. */
+    private final List<Runnable> cancellers = new ArrayList<>();
+
+    /** Timer task expiring the deadline, null without a deadline. */
+    private final ScheduledFuture<?> expiry;
+
+    /** Whether the deadline expired. */
+    private boolean expired = false;
+
+    /** Whether the run is done. */
+    private boolean closed = false;
+
+    /**
+     * @param timeoutMillis time the run may take in milliseconds, no deadline if not positive
+     * @param thread        thread running the job, null if detached
+     */
+    private ExecutionDeadline(long timeoutMillis, Thread thread) {
+        this.thread = thread;
+        this.expiry = timeoutMillis > 0 ? TIMER.schedule(this::expire, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+    }
+
+    /**
+     * @return the timer thread pool
+     */
+    private static ScheduledThreadPoolExecutor newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + "timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * Start the deadline of a run on the current thread.
+     *
+     * @param timeoutMillis time the run may take in milliseconds, no deadline if not positive
+     * @return the deadline
+     */
+    public static ExecutionDeadline start(long timeoutMillis) {
+        ExecutionDeadline deadline = new ExecutionDeadline(timeoutMillis, Thread.currentThread());
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    /**
+     * Start the deadline of a run which is not bound to a thread
+     * until one of its stages is run with {@link #bind}.
+     *
+     * @param timeoutMillis time the run may take in milliseconds, no deadline if not positive
+     * @return the deadline
+     */
+    public static ExecutionDeadline detached(long timeoutMillis) {
+        return new ExecutionDeadline(timeoutMillis, null);
+    }
+
+    /**
+     * @return the deadline of the run on the current thread, null if none
+     */
+    public static ExecutionDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind the deadline to the current thread while a stage of the
+     * run executes on it. The returned binding must be closed once
+     * the stage is done, which clears the interrupt the deadline may
+     * have caused on the thread.
+     *
+     * @return the binding
+     */
+    public Binding bind() {
+        Thread current = Thread.currentThread();
+        ExecutionDeadline previous = CURRENT.get();
+        synchronized (this) {
+            thread = current;
+            if (expired) {
+                current.interrupt();
+            }
+        }
+        CURRENT.set(this);
+        return () -> {
+            boolean wasExpired;
+            synchronized (this) {
+                thread = null;
+                wasExpired = expired;
+            }
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+            if (wasExpired) {
+                Thread.interrupted();
+            }
+        };
+    }
+
+    /**
+     * Make the deadline current on a helper thread doing part of the
+     * work of the run, such as a slice of its query, so that the calls
+     * it registers are aborted when the deadline expires. Unlike
+     * {@link #bind}, the run stays bound to its own thread. The
+     * returned binding must be closed once the work is done.
+     *
+     * @return the binding
+     */
+    public Binding attach() {
+        ExecutionDeadline previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * Get the time a job run may take. Jobs may set their own
+     * timeout, otherwise a run may take its frequency period, up
+     * to the configured job timeout.
+     *
+     * @param job the job
+     * @return the timeout in minutes, 0 for no deadline
+     */
+    public static int timeoutMinutesOf(JobMetadata job) {
+        if (job.getTimeoutMinutes() != null && job.getTimeoutMinutes() > 0) {
+            return job.getTimeoutMinutes();
+        }
+        if (CLISettings.JOB_TIMEOUT_MINUTES <= 0) {
+            return 0;
+        }
+        Granularity frequency = Granularity.getValue(job.getFrequency());
+        return frequency == null
+               ? CLISettings.JOB_TIMEOUT_MINUTES
+               : Math.min(frequency.getMinutes(), CLISettings.JOB_TIMEOUT_MINUTES);
+    }
+
+    /**
+     * Register a blocking call of the run on the current thread
+     * to abort when its deadline expires. The returned registration
+     * must be closed once the call returns.
+     *
+     * @param canceller aborts the call
+     * @return the registration
+     */
+    public static Registration onExpiry(Runnable canceller) {
+        ExecutionDeadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return Registration.NONE;
+        }
+        synchronized (deadline) {
+            if (deadline.expired) {
+                canceller.run();
+                return Registration.NONE;
+            }
+            deadline.cancellers.add(canceller);
+        }
+        return () -> {
+            synchronized (deadline) {
+                deadline.cancellers.remove(canceller);
+            }
+        };
+    }
+
+    /**
+     * @return true if the deadline expired
+     */
+    public synchronized boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * Abort the registered calls and interrupt the run.
+     */
+    private synchronized void expire() {
+        if (closed) {
+            return;
+        }
+        expired = true;
+        log.warn("Run on thread [{}] exceeded its deadline, cancelling it", thread == null ? "none" : thread.getName());
+        for (Runnable canceller : cancellers) {
+            try {
+                canceller.run();
+            } catch (RuntimeException e) {
+                log.error("Error while cancelling a call!", e);
+            }
+        }
+        cancellers.clear();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Stop the deadline and clear the interrupt it may have caused.
+     */
+    @Override
+    public void close() {
+        Thread bound;
+        synchronized (this) {
+            closed = true;
+            cancellers.clear();
+            bound = thread;
+        }
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        if (isExpired() && Thread.currentThread() == bound) {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Binding of the deadline to the thread of a stage, removed when closed.
+     */
+    public interface Binding extends AutoCloseable {
+
+        /** Binding of a stage which is not bound to a deadline. */
+        Binding NONE = () -> { };
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Registration of a call to abort, removed when closed.
+     */
+    public interface Registration extends AutoCloseable {
+
+        /** Registration of a call that is not aborted. */
+        Registration NONE = () -> { };
+
+        @Override
+        void close();
+    }
+}
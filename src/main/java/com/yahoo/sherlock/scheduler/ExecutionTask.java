@@ -6,11 +6,11 @@
 package com.yahoo.sherlock.scheduler;
 
 import com.yahoo.sherlock.enums.Granularity;
-import com.yahoo.sherlock.enums.JobStatus;
 import com.yahoo.sherlock.exception.SchedulerException;
 import com.yahoo.sherlock.model.JobMetadata;
 import com.yahoo.sherlock.service.JobExecutionService;
 import com.yahoo.sherlock.service.SchedulerService;
+import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.settings.Constants;
 import com.yahoo.sherlock.store.JobMetadataAccessor;
 import com.yahoo.sherlock.store.JobScheduler;
@@ -19,11 +19,19 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ScheduledExecutorService which polls the backend task queue for
  * any pending tasks that need to be ran and then
- * forwards them to the job execution service.
+ * forwards them to the job execution service. The task acts
+ * as a single dispatcher which hands due jobs over to a bounded
+ * {@code ExecutionWorkerPool} so that jobs run concurrently.
+ * Between two rounds the task sleeps until the earliest queued
+ * job is due, unless woken up by a job scheduled earlier.
  */
 @Slf4j
 public class ExecutionTask implements Runnable {
@@ -51,9 +59,30 @@ public class ExecutionTask implements Runnable {
      * that have been ran.
      */
     private final JobMetadataAccessor jobMetadataAccessor;
+    /**
+     * Worker pool running the jobs popped by this task.
+     */
+    private final ExecutionWorkerPool workerPool;
+    /**
+     * Background lane backfilling the runs missed by lagging jobs.
+     */
+    private CatchUpExecutor catchUpExecutor;
+    /**
+     * Lock guarding the wake up time.
+     */
+    private final Object wakeLock = new Object();
+    /**
+     * Time in milliseconds at which the task should wake up.
+     */
+    private long wakeAtMillis = Long.MAX_VALUE;
+    /**
+     * Whether the task is shut down.
+     */
+    private volatile boolean stopped = false;
 
     /**
-     * Create a new execution task.
+     * Create a new execution task with a worker pool
+     * sized from the command line settings.
      *
      * @param jobExecutionService job execution service instance to use
      * @param schedulerService    scheduler service to use
@@ -65,11 +94,89 @@ public class ExecutionTask implements Runnable {
             SchedulerService schedulerService,
             JobScheduler jobScheduler,
             JobMetadataAccessor jobMetadataAccessor
+    ) {
+        this(jobExecutionService, schedulerService, jobScheduler, jobMetadataAccessor,
+             new ExecutionWorkerPool(CLISettings.EXECUTION_THREADS));
+    }
+
+    /**
+     * Create a new execution task.
+     *
+     * @param jobExecutionService job execution service instance to use
+     * @param schedulerService    scheduler service to use
+     * @param jobScheduler        job scheduler to use
+     * @param jobMetadataAccessor job accessor instance to use
+     * @param workerPool          worker pool to run the jobs on
+     */
+    public ExecutionTask(
+            JobExecutionService jobExecutionService,
+            SchedulerService schedulerService,
+            JobScheduler jobScheduler,
+            JobMetadataAccessor jobMetadataAccessor,
+            ExecutionWorkerPool workerPool
     ) {
         this.jobExecutionService = jobExecutionService;
         this.schedulerService = schedulerService;
         this.jobScheduler = jobScheduler;
         this.jobMetadataAccessor = jobMetadataAccessor;
+        this.workerPool = workerPool;
+        this.catchUpExecutor = CatchUpExecutor.getInstance();
+    }
+
+    /**
+     * @return the worker pool used by this task
+     */
+    public ExecutionWorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Get the number of due jobs which are waiting in the
+     * backend queue for a free worker.
+     *
+     * @return number of due jobs in the queue
+     * @throws IOException if an error occurs while reading the queue
+     */
+    public int getQueueDepth() throws IOException {
+        return jobScheduler.peekQueue(TimeUtils.getTimestampMinutes());
+    }
+
+    /**
+     * Get the number of jobs of this lane claimed by
+     * an instance and not yet done.
+     *
+     * @return number of pending jobs
+     * @throws IOException if an error occurs while reading the pending queue
+     */
+    public int getPendingCount() throws IOException {
+        return jobScheduler.getPendingCount();
+    }
+
+    /**
+     * Wake the task up early if a job is scheduled before
+     * the time it is sleeping until.
+     *
+     * @param runTimeMinutes the run time of the scheduled job in minutes
+     */
+    public void wakeUp(long runTimeMinutes) {
+        synchronized (wakeLock) {
+            long runTimeMillis = TimeUnit.MINUTES.toMillis(runTimeMinutes);
+            if (runTimeMillis < wakeAtMillis) {
+                wakeAtMillis = runTimeMillis;
+                wakeLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stop waiting for jobs and stop the worker pool.
+     */
+    public void shutdown() {
+        stopped = true;
+        synchronized (wakeLock) {
+            wakeLock.notifyAll();
+        }
+        workerPool.shutdown();
     }
 
     /**
@@ -81,12 +188,43 @@ public class ExecutionTask implements Runnable {
         try {
             String name = THREAD_NAME_PREFIX + Thread.currentThread().getName();
             log.info("Running thread {}", name);
-            consumeAndExecuteTasks(TimeUtils.getTimestampMinutes());
+            awaitNextDueJob();
+            if (!stopped) {
+                consumeAndExecuteTasks(TimeUtils.getTimestampMinutes());
+            }
         } catch (Exception e) {
             log.error("Error while running execution task!", e);
         }
     }
 
+    /**
+     * Sleep until the earliest queued job is due, a job is scheduled
+     * earlier through {@link #wakeUp}, or the execution delay elapses.
+     * The delay bounds the sleep so that jobs queued by other instances
+     * and jobs with an expired lease are picked up.
+     *
+     * @throws IOException          if an error occurs while reading the queue
+     * @throws InterruptedException if interrupted while sleeping
+     */
+    private void awaitNextDueJob() throws IOException, InterruptedException {
+        synchronized (wakeLock) {
+            // Jobs scheduled from now on lower the wake up time
+            wakeAtMillis = Long.MAX_VALUE;
+        }
+        long wakeAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CLISettings.EXECUTION_DELAY);
+        Long nextRunTime = jobScheduler.peekNextRunTime();
+        if (nextRunTime != null) {
+            wakeAt = Math.min(wakeAt, TimeUnit.MINUTES.toMillis(nextRunTime));
+        }
+        synchronized (wakeLock) {
+            wakeAtMillis = Math.min(wakeAtMillis, wakeAt);
+            long sleepMillis;
+            while (!stopped && (sleepMillis = wakeAtMillis - System.currentTimeMillis()) > 0) {
+                wakeLock.wait(sleepMillis);
+            }
+        }
+    }
+
     /**
      * This method will attempt to determine whether a job
      * is lagging behind. For example, if there were no workers
@@ -109,45 +247,114 @@ public class ExecutionTask implements Runnable {
 
     /**
      * Given the current time in minutes, pop tasks from the
-     * queue and execute them, then reschedule them.
+     * queue and start them in the job pipeline, which executes
+     * and reschedules them. Jobs are popped in batches sized to
+     * the number of jobs the lane may still start, so a job is only
+     * popped once it can run. Returns once the due jobs are started,
+     * without waiting for them to finish: a job still in flight only
+     * holds its own worker, so it does not hold back the next tick.
      *
      * @param timestampMinutes the current time in minutes
-     * @throws IOException        if an error retrieving the job occurs
-     * @throws SchedulerException if an error rescheduling the job occurs
+     * @throws IOException          if an error retrieving the jobs occurs
+     * @throws InterruptedException if interrupted while waiting for a worker
      */
-    private void consumeAndExecuteTasks(long timestampMinutes) throws IOException, SchedulerException {
-        JobMetadata jobMetadata;
+    private void consumeAndExecuteTasks(long timestampMinutes) throws IOException, InterruptedException {
         // CRITICAL REGION: please verify very carefully if you make change to this part
         log.info("Execution task ping for time " + TimeUtils.getTimeFromSeconds(timestampMinutes * 60L, Constants.TIMESTAMP_FORMAT_NO_SECONDS));
-        while ((jobMetadata = jobScheduler.popQueue(timestampMinutes)) != null) {
-            if (isLaggingJob(jobMetadata, timestampMinutes)) {
-                // Perform a backfill instead and schedule for next start time
-                jobExecutionService.backfillJobFromIntervalEnd(jobMetadata);
-                // The run time that the job would have had if it was executed normally
-                Pair<Integer, Integer> nextTimes = schedulerService.jobScheduleTime(jobMetadata);
-                Integer nextQueryTime = nextTimes.getLeft();
-                Integer nextRunTime = nextTimes.getRight();
-                if (nextRunTime <= timestampMinutes) {
-                    int offset = Granularity.getValue(jobMetadata.getFrequency()).getMinutes();
-                    nextQueryTime += offset;
-                    nextRunTime += offset;
-                }
-                // If the next runtime still less than current time
-                // Terminate the job as "ZOMBIE" job
-                if (nextRunTime <= timestampMinutes) {
-                    jobMetadata.setJobStatus(JobStatus.ZOMBIE.getValue());
-                } else {
-                    jobMetadata.setEffectiveQueryTime(nextQueryTime);
-                    jobMetadata.setEffectiveRunTime(nextRunTime);
-                    jobScheduler.pushQueue(nextRunTime, jobMetadata.getJobId().toString());
-                }
-            } else {
-                // Perform regular job execution and schedule for next time
-                jobExecutionService.execute(jobMetadata);
+        long dispatched = workerPool.getDispatchedCount();
+        List<JobMetadata> jobs;
+        int workers;
+        do {
+            workers = workerPool.acquireAvailable(workerPool.getMaxInFlight());
+            try {
+                jobs = jobScheduler.popQueue(timestampMinutes, workers);
+            } catch (IOException | RuntimeException e) {
+                workerPool.release(workers);
+                throw e;
+            }
+            workerPool.release(workers - jobs.size());
+            for (JobMetadata job : jobs) {
+                workerPool.submitAsync(job, () -> runJob(job, timestampMinutes));
+            }
+            // A short batch means the due part of the queue is drained
+        } while (jobs.size() == workers);
+        log.info("Execution task dispatched {} jobs, last start lag {}s, max start lag {}s",
+                 workerPool.getDispatchedCount() - dispatched, workerPool.getLastLagSeconds(), workerPool.getMaxLagSeconds());
+    }
+
+    /**
+     * Start a single popped job, which is rescheduled and
+     * released from the pending queue once it is done.
+     *
+     * @param jobMetadata      the job to run
+     * @param timestampMinutes the time in minutes of the current tick
+     * @return the future of the job
+     */
+    private CompletableFuture<Void> runJob(JobMetadata jobMetadata, long timestampMinutes) {
+        if (isLaggingJob(jobMetadata, timestampMinutes)) {
+            // The job is rescheduled right away and its missed runs, up to
+            // the rescheduled run, are backfilled in the background catch-up lane
+            JobMetadata laggingJob = new JobMetadata(jobMetadata);
+            return workerPool.runAsync(() -> {
+                rescheduleLaggingJob(jobMetadata, timestampMinutes);
+                catchUpExecutor.submit(laggingJob, jobMetadata.getReportNominalTime(), jobExecutionService);
+                finishJob(jobMetadata);
+            });
+        }
+        // Perform regular job execution and schedule for next time,
+        // on the pipeline thread which wrote the reports
+        return jobExecutionService.executeAsync(jobMetadata).thenRun(() -> {
+            try {
                 schedulerService.rescheduleJob(jobMetadata);
+                finishJob(jobMetadata);
+            } catch (IOException | SchedulerException e) {
+                throw new CompletionException(e);
             }
-            jobMetadataAccessor.putJobMetadata(jobMetadata);
-            jobScheduler.removePending(jobMetadata.getJobId());
+        });
+    }
+
+    /**
+     * Schedule a job lagging several executions behind for its next
+     * start time after the current tick, at the minute of the hour
+     * the job was placed at. The runs it missed are backfilled
+     * separately.
+     *
+     * @param jobMetadata      the lagging job
+     * @param timestampMinutes the time in minutes of the current tick
+     * @throws IOException        if an error updating the job occurs
+     * @throws SchedulerException if an error rescheduling the job occurs
+     */
+    private void rescheduleLaggingJob(JobMetadata jobMetadata, long timestampMinutes) throws IOException, SchedulerException {
+        // The run time that the job would have had if it was executed normally,
+        // at the minute of the hour the job was placed at
+        Integer lastRunTime = jobMetadata.getEffectiveRunTime();
+        Pair<Integer, Integer> nextTimes = lastRunTime == null
+                ? schedulerService.jobScheduleTime(jobMetadata)
+                : schedulerService.jobScheduleTime(jobMetadata, ScheduleSlotAllocator.slotOf(lastRunTime));
+        Integer nextQueryTime = nextTimes.getLeft();
+        Integer nextRunTime = nextTimes.getRight();
+        if (nextRunTime <= timestampMinutes) {
+            // Skip the periods missed during an outage instead of giving up on the job
+            int offset = Granularity.getValue(jobMetadata.getFrequency()).getMinutes();
+            int periods = (int) ((timestampMinutes - nextRunTime) / offset) + 1;
+            nextQueryTime += periods * offset;
+            nextRunTime += periods * offset;
         }
+        jobMetadata.setEffectiveQueryTime(nextQueryTime);
+        jobMetadata.setEffectiveRunTime(nextRunTime);
+        jobScheduler.pushQueue(nextRunTime, jobMetadata.getJobId().toString());
+    }
+
+    /**
+     * Save a job that has run and release it from the pending queue.
+     * If the lease of the job expired while it ran and another node
+     * claimed the job again, its pending entry is left to that node.
+     *
+     * @param jobMetadata the job
+     * @throws IOException if an error updating the job occurs
+     */
+    private void finishJob(JobMetadata jobMetadata) throws IOException {
+        jobMetadataAccessor.putJobMetadata(jobMetadata);
+        jobScheduler.releasePending(jobMetadata.getJobId());
     }
 }
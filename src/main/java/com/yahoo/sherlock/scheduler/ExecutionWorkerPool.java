@@ -0,0 +1,383 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.utils.TimeUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of workers that run due jobs handed over by the
+ * {@code ExecutionTask} dispatcher. The dispatcher must hold a
+ * permit before popping a job from the queue so that jobs stay in
+ * the backend queue until the pool is actually free to run them.
+ * Jobs run either as blocking work on the workers of the pool, or
+ * asynchronously in the job pipeline, in which case the permits
+ * bound the number of jobs in flight rather than the threads.
+ */
+@Slf4j
+public class ExecutionWorkerPool {
+
+    /** Thread name prefix. */
+    private static final String THREAD_NAME_PREFIX = "ExecutionWorker-";
+
+    /** Number of workers in the pool. */
+    private final int size;
+
+    /** Number of jobs which may run at once. */
+    private final int maxInFlight;
+
+    /** Executor running the jobs. */
+    private final ThreadPoolExecutor executor;
+
+    /** One permit per job which may still start. */
+    private final Semaphore permits;
+
+    /** IDs of the jobs currently running. */
+    private final Set<String> runningJobIds = ConcurrentHashMap.newKeySet();
+
+    /** Number of jobs handed to the workers since startup. */
+    private final AtomicLong dispatchedCount = new AtomicLong();
+
+    /** Sum of the start lag of all dispatched jobs, in seconds. */
+    private final AtomicLong totalLagSeconds = new AtomicLong();
+
+    /** Start lag of the most recently started job, in seconds. */
+    private final AtomicLong lastLagSeconds = new AtomicLong();
+
+    /** Largest start lag observed since startup, in seconds. */
+    private final AtomicLong maxLagSeconds = new AtomicLong();
+
+    /**
+     * Create a worker pool with the given number of threads,
+     * running as many jobs at once.
+     *
+     * @param size number of concurrent workers, at least one is used
+     */
+    public ExecutionWorkerPool(int size) {
+        this(size, size);
+    }
+
+    /**
+     * Create a worker pool with the given number of threads
+     * and number of jobs which may run at once.
+     *
+     * @param size        number of concurrent workers, at least one is used
+     * @param maxInFlight number of jobs which may run at once, at least the number of workers
+     */
+    public ExecutionWorkerPool(int size, int maxInFlight) {
+        this.size = Math.max(1, size);
+        this.maxInFlight = Math.max(this.size, maxInFlight);
+        this.permits = new Semaphore(this.maxInFlight);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(
+                this.size,
+                this.size,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Block until a worker is free and reserve it. Every call
+     * must be followed by either {@link #submit} or {@link #release}.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    /**
+     * Block until a worker is free, then reserve it along with
+     * every other worker that is free right now, up to {@code max}.
+     * Every reserved worker must be either given a job with
+     * {@link #submit} or given back with {@link #release(int)}.
+     *
+     * @param max the maximum number of workers to reserve
+     * @return the number of workers reserved, at least one
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int acquireAvailable(int max) throws InterruptedException {
+        permits.acquire();
+        int acquired = 1;
+        while (acquired < max && permits.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    /**
+     * Give back a reserved worker without running a job on it.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Give back reserved workers without running jobs on them.
+     *
+     * @param count the number of workers to give back
+     */
+    public void release(int count) {
+        if (count > 0) {
+            permits.release(count);
+        }
+    }
+
+    /**
+     * Run a job on the worker reserved by {@link #acquire}.
+     * The worker is given back once the job finishes, whether
+     * or not it succeeded.
+     *
+     * @param job  the job being run, used to measure start lag
+     * @param work the work to perform for the job
+     */
+    public void submit(JobMetadata job, JobWork work) {
+        String jobId = String.valueOf(job.getJobId());
+        runningJobIds.add(jobId);
+        try {
+            executor.execute(() -> {
+                try {
+                    recordLag(job);
+                    work.run();
+                } catch (Exception e) {
+                    log.error("Error while executing job [{}]!", job.getJobId(), e);
+                } finally {
+                    runningJobIds.remove(jobId);
+                    permits.release();
+                }
+            });
+            dispatchedCount.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            runningJobIds.remove(jobId);
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Start a job reserved by {@link #acquire} in the job pipeline.
+     * The reservation is given back once the returned future of the
+     * job completes, whether or not it succeeded.
+     *
+     * @param job  the job being run, used to measure start lag
+     * @param work starts the stages of the job without blocking
+     */
+    public void submitAsync(JobMetadata job, AsyncJobWork work) {
+        String jobId = String.valueOf(job.getJobId());
+        runningJobIds.add(jobId);
+        CompletableFuture<?> future;
+        try {
+            recordLag(job);
+            future = work.start();
+            dispatchedCount.incrementAndGet();
+        } catch (Exception e) {
+            log.error("Error while starting job [{}]!", job.getJobId(), e);
+            runningJobIds.remove(jobId);
+            permits.release();
+            return;
+        }
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                log.error("Error while executing job [{}]!", job.getJobId(), error);
+            }
+            runningJobIds.remove(jobId);
+            permits.release();
+        });
+    }
+
+    /**
+     * Run blocking work on a worker of the pool.
+     *
+     * @param work the work to run
+     * @return the future of the work
+     */
+    public CompletableFuture<Void> runAsync(JobWork work) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                work.run();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Block until no job is running.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitIdle() throws InterruptedException {
+        permits.acquire(maxInFlight);
+        permits.release(maxInFlight);
+    }
+
+    /**
+     * Stop accepting jobs and wait a short while for the
+     * running ones, including the jobs in flight in the job
+     * pipeline, to finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)
+                || !permits.tryAcquire(maxInFlight, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                log.warn("Execution workers still busy after shutdown timeout");
+            } else {
+                permits.release(maxInFlight);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Record the lag between the job due time and now.
+     *
+     * @param job job about to start
+     */
+    private void recordLag(JobMetadata job) {
+        if (job.getEffectiveRunTime() == null) {
+            return;
+        }
+        long lag = Math.max(0L, TimeUtils.getTimestampMinutes() * 60L - job.getEffectiveRunTime() * 60L);
+        lastLagSeconds.set(lag);
+        totalLagSeconds.addAndGet(lag);
+        maxLagSeconds.accumulateAndGet(lag, Math::max);
+        if (lag > 0) {
+            log.info("Job [{}] started {}s after its due time", job.getJobId(), lag);
+        }
+    }
+
+    /**
+     * @return number of workers in the pool
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return number of jobs which may run at once
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return number of jobs currently running
+     */
+    public int getActiveCount() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * @return IDs of the jobs currently running
+     */
+    public Set<String> getRunningJobIds() {
+        return new HashSet<>(runningJobIds);
+    }
+
+    /**
+     * @return number of jobs dispatched since startup
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return start lag of the last started job in seconds
+     */
+    public long getLastLagSeconds() {
+        return lastLagSeconds.get();
+    }
+
+    /**
+     * @return largest start lag observed in seconds
+     */
+    public long getMaxLagSeconds() {
+        return maxLagSeconds.get();
+    }
+
+    /**
+     * @return average start lag of dispatched jobs in seconds
+     */
+    public long getAverageLagSeconds() {
+        long count = dispatchedCount.get();
+        return count == 0 ? 0L : totalLagSeconds.get() / count;
+    }
+
+    /**
+     * @return a snapshot of the pool statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", size);
+        stats.put("maxJobsInFlight", maxInFlight);
+        stats.put("activeWorkers", getActiveCount());
+        stats.put("dispatchedJobs", getDispatchedCount());
+        stats.put("lastLagSeconds", getLastLagSeconds());
+        stats.put("maxLagSeconds", getMaxLagSeconds());
+        stats.put("averageLagSeconds", getAverageLagSeconds());
+        return stats;
+    }
+
+    /**
+     * Work performed by a worker for a single job.
+     */
+    @FunctionalInterface
+    public interface JobWork {
+
+        /**
+         * Run the work.
+         *
+         * @throws Exception if the job fails
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Work started for a single job, which completes asynchronously.
+     */
+    @FunctionalInterface
+    public interface AsyncJobWork {
+
+        /**
+         * Start the work without blocking.
+         *
+         * @return the future completed once the job is done
+         * @throws Exception if the job cannot be started
+         */
+        CompletableFuture<?> start() throws Exception;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.settings.CLISettings;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executors of the stages of a job run. Druid queries, anomaly
+ * detection and the writing of reports to the backend each run on
+ * their own pool, so that the number of jobs in flight is not bound
+ * by the number of threads: CPU-bound detection uses a pool sized to
+ * the cores and is never held by a job waiting on the network, while
+ * jobs waiting for Druid or Redis only hold threads of their stage.
+ */
+@Slf4j
+public class JobPipeline {
+
+    /** The singleton instance of this class. */
+    private static JobPipeline jobPipeline;
+
+    /** Pool querying Druid and parsing the responses. */
+    private final ThreadPoolExecutor druidPool;
+
+    /** Pool detecting anomalies. */
+    private final ThreadPoolExecutor detectionPool;
+
+    /** Pool writing reports and job state to the backend and sending emails. */
+    private final ThreadPoolExecutor storePool;
+
+    /**
+     * Create the pipeline with the given pool sizes.
+     *
+     * @param druidThreads     number of threads querying Druid, at least one is used
+     * @param detectionThreads number of threads detecting anomalies, at least one is used
+     * @param storeThreads     number of threads writing to the backend, at least one is used
+     */
+    public JobPipeline(int druidThreads, int detectionThreads, int storeThreads) {
+        druidPool = newPool(Math.max(1, druidThreads), "PipelineDruid-");
+        detectionPool = newPool(Math.max(1, detectionThreads), "PipelineDetection-");
+        storePool = newPool(Math.max(1, storeThreads), "PipelineStore-");
+    }
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared job pipeline
+     */
+    public static synchronized JobPipeline getInstance() {
+        if (jobPipeline == null) {
+            jobPipeline = new JobPipeline(
+                CLISettings.PIPELINE_DRUID_THREADS,
+                CLISettings.PIPELINE_DETECTION_THREADS,
+                CLISettings.PIPELINE_STORE_THREADS
+            );
+        }
+        return jobPipeline;
+    }
+
+    /**
+     * Create a fixed size pool of daemon threads.
+     *
+     * @param size   number of threads
+     * @param prefix thread name prefix
+     * @return the pool
+     */
+    private static ThreadPoolExecutor newPool(int size, String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @return the executor querying Druid
+     */
+    public Executor getDruidExecutor() {
+        return druidPool;
+    }
+
+    /**
+     * @return the executor detecting anomalies
+     */
+    public Executor getDetectionExecutor() {
+        return detectionPool;
+    }
+
+    /**
+     * @return the executor writing to the backend
+     */
+    public Executor getStoreExecutor() {
+        return storePool;
+    }
+
+    /**
+     * @return the threads, busy threads and queued stages of each pool
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("druid", poolStats(druidPool));
+        stats.put("detection", poolStats(detectionPool));
+        stats.put("store", poolStats(storePool));
+        return stats;
+    }
+
+    /**
+     * @param pool a stage pool
+     * @return the statistics of the pool
+     */
+    private static Map<String, Object> poolStats(ThreadPoolExecutor pool) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", pool.getMaximumPoolSize());
+        stats.put("activeThreads", pool.getActiveCount());
+        stats.put("queuedStages", pool.getQueue().size());
+        stats.put("completedStages", pool.getCompletedTaskCount());
+        return stats;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.store.JobScheduler;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Runnable task which renews the lease this instance holds
+ * on the jobs its execution workers are currently running,
+ * so that they are not requeued and picked up by another instance.
+ */
+@Slf4j
+public class LeaseRenewalTask implements Runnable {
+
+    /** Thread name prefix. */
+    private static final String THREAD_NAME_PREFIX = "LeaseRenewalTask-";
+
+    /**
+     * Job scheduler holding the leases.
+     */
+    private final JobScheduler jobScheduler;
+
+    /**
+     * Worker pool whose running jobs are renewed.
+     */
+    private final ExecutionWorkerPool workerPool;
+
+    /**
+     * @param jobScheduler job scheduler holding the leases
+     * @param workerPool   worker pool whose running jobs are renewed
+     */
+    public LeaseRenewalTask(JobScheduler jobScheduler, ExecutionWorkerPool workerPool) {
+        this.jobScheduler = jobScheduler;
+        this.workerPool = workerPool;
+    }
+
+    @Override
+    public void run() {
+        try {
+            log.debug("Running thread {}", THREAD_NAME_PREFIX + Thread.currentThread().getName());
+            renewLeases();
+        } catch (Exception e) {
+            log.error("Error while running lease renewal task!", e);
+        }
+    }
+
+    /**
+     * Renew the lease on every running job.
+     *
+     * @throws IOException if an error occurs while renewing the leases
+     */
+    public void renewLeases() throws IOException {
+        Set<String> jobIds = workerPool.getRunningJobIds();
+        if (jobIds.isEmpty()) {
+            return;
+        }
+        int renewed = jobScheduler.renewLease(jobIds);
+        if (renewed < jobIds.size()) {
+            log.warn("Lease lost on [{}] of [{}] running jobs, they may run twice", jobIds.size() - renewed, jobIds.size());
+        }
+    }
+}
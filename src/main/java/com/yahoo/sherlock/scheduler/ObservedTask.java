@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.utils.LatencyHistogram;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodic task wrapper which records the run durations of the
+ * task, the runs which took longer than the period and the ticks
+ * skipped because of them. A fixed rate executor runs the ticks
+ * missed during a long run back to back once it ends, these
+ * catch-up ticks are skipped instead. A task run with a fixed delay
+ * has no ticks to miss, so only its run durations are recorded.
+ */
+@Slf4j
+public class ObservedTask implements Runnable {
+
+    /** Name of the task. */
+    private final String name;
+
+    /** Type of the task, naming the pool running it. */
+    private final String type;
+
+    /** The wrapped task. */
+    private final Runnable task;
+
+    /** Period of the task in nanoseconds, or its delay between runs. */
+    private final long periodNanos;
+
+    /** Whether the task runs with a fixed delay instead of a fixed rate. */
+    private final boolean fixedDelay;
+
+    /** Run durations. */
+    private final LatencyHistogram durations = new LatencyHistogram(LatencyHistogram.STAGE_BOUNDS_MILLIS);
+
+    /** Number of runs. */
+    private final LongAdder runs = new LongAdder();
+
+    /** Number of runs which threw. */
+    private final LongAdder failures = new LongAdder();
+
+    /** Number of runs longer than the period. */
+    private final LongAdder overruns = new LongAdder();
+
+    /** Number of ticks skipped because of long runs. */
+    private final LongAdder skippedTicks = new LongAdder();
+
+    /** Time of the next tick to run in nanoseconds, the ticks before it are skipped. */
+    private volatile long nextTickNanos = Long.MIN_VALUE;
+
+    /** Duration of the last run in nanoseconds. */
+    private volatile long lastDurationNanos;
+
+    /**
+     * @param name   name of the task
+     * @param type   type of the task
+     * @param task   the task to run
+     * @param period period of the task
+     * @param unit   unit of the period
+     */
+    public ObservedTask(String name, String type, Runnable task, long period, TimeUnit unit) {
+        this(name, type, task, period, unit, false);
+    }
+
+    /**
+     * @param name       name of the task
+     * @param type       type of the task
+     * @param task       the task to run
+     * @param period     period of the task, or its delay between runs
+     * @param unit       unit of the period
+     * @param fixedDelay whether the task runs with a fixed delay instead of a fixed rate
+     */
+    public ObservedTask(String name, String type, Runnable task, long period, TimeUnit unit, boolean fixedDelay) {
+        this.name = name;
+        this.type = type;
+        this.task = task;
+        this.periodNanos = Math.max(1L, unit.toNanos(period));
+        this.fixedDelay = fixedDelay;
+    }
+
+    /**
+     * @return the wrapped task
+     */
+    public Runnable getTask() {
+        return task;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        // Ticks are checked with half a period of slack, the executor may fire slightly before the measured grid
+        if (!fixedDelay && nextTickNanos != Long.MIN_VALUE && start - nextTickNanos < -periodNanos / 2) {
+            skippedTicks.increment();
+            return;
+        }
+        try {
+            task.run();
+        } catch (RuntimeException | Error e) {
+            failures.increment();
+            throw e;
+        } finally {
+            long duration = System.nanoTime() - start;
+            runs.increment();
+            durations.record(duration);
+            lastDurationNanos = duration;
+            if (!fixedDelay) {
+                long ticks = Math.max(1L, (duration + periodNanos - 1) / periodNanos);
+                if (ticks > 1) {
+                    overruns.increment();
+                    log.debug("Task {} ran for {} ms, longer than its period", name, TimeUnit.NANOSECONDS.toMillis(duration));
+                }
+                nextTickNanos = start + ticks * periodNanos;
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the statistics of the task
+     */
+    public Stats getStats() {
+        return new Stats(
+            name,
+            type,
+            TimeUnit.NANOSECONDS.toMillis(periodNanos),
+            runs.sum(),
+            failures.sum(),
+            overruns.sum(),
+            skippedTicks.sum(),
+            lastDurationNanos / (double) TimeUnit.MILLISECONDS.toNanos(1),
+            durations.snapshot()
+        );
+    }
+
+    /**
+     * Point-in-time statistics of a task.
+     */
+    @Data
+    public static class Stats {
+
+        /** Name of the task. */
+        private final String name;
+
+        /** Type of the task. */
+        private final String type;
+
+        /** Period of the task in milliseconds. */
+        private final long periodMillis;
+
+        /** Number of runs. */
+        private final long runs;
+
+        /** Number of runs which threw. */
+        private final long failures;
+
+        /** Number of runs longer than the period. */
+        private final long overruns;
+
+        /** Number of ticks skipped because of long runs. */
+        private final long skippedTicks;
+
+        /** Duration of the last run in milliseconds. */
+        private final double lastDurationMillis;
+
+        /** Run durations. */
+        private final LatencyHistogram.Snapshot durations;
+    }
+}
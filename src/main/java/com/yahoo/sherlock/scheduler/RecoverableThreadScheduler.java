@@ -6,13 +6,16 @@
 
 package com.yahoo.sherlock.scheduler;
 
-import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -29,8 +32,11 @@ public class RecoverableThreadScheduler extends ScheduledThreadPoolExecutor {
     /** Default exception handler, always reschedules. */
     private static final ScheduledExceptionHandler NULL_HANDLER = e -> true;
 
-    /** Map to keep track of all runnables for thread pool schedular. */
-    private final Map<Object, SchedulerParams> runnables = new IdentityHashMap<>();
+    /**
+     * Map to keep track of all runnables for thread pool schedular. Scheduled
+     * futures use identity equality, and the map is updated from the pool threads.
+     */
+    private final Map<Object, SchedulerParams> runnables = new ConcurrentHashMap<>();
 
     /** Exception handler for runnables. */
     private final ScheduledExceptionHandler handler;
@@ -53,6 +59,30 @@ public class RecoverableThreadScheduler extends ScheduledThreadPoolExecutor {
         this.handler = handler;
     }
 
+    /**
+     * Constructor with poolsize param and a name for the threads of the pool.
+     * @param poolSize the number of threads to keep in the pool
+     * @param name prefix of the thread names
+     */
+    public RecoverableThreadScheduler(int poolSize, String name) {
+        super(poolSize, namedThreadFactory(name));
+        this.handler = NULL_HANDLER;
+    }
+
+    /**
+     * @param name prefix of the thread names
+     * @return a factory of threads named after the pool
+     */
+    private static ThreadFactory namedThreadFactory(String name) {
+        ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = defaultFactory.newThread(runnable);
+            thread.setName(name + "-" + count.incrementAndGet());
+            return thread;
+        };
+    }
+
     /**
      * Class to hold scheduling details about runnables.
      */
@@ -61,12 +91,20 @@ public class RecoverableThreadScheduler extends ScheduledThreadPoolExecutor {
         private Runnable runnable;
         private long period;
         private TimeUnit unit;
+        private boolean fixedDelay;
     }
 
     @Override
     public ScheduledFuture<?> scheduleAtFixedRate(Runnable runnable, long initialDelay, long period, TimeUnit unit) {
         ScheduledFuture<?> future = super.scheduleAtFixedRate(runnable, initialDelay, period, unit);
-        runnables.put(future, new SchedulerParams(runnable, period, unit));
+        runnables.put(future, new SchedulerParams(runnable, period, unit, false));
+        return future;
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable runnable, long initialDelay, long delay, TimeUnit unit) {
+        ScheduledFuture<?> future = super.scheduleWithFixedDelay(runnable, initialDelay, delay, unit);
+        runnables.put(future, new SchedulerParams(runnable, delay, unit, true));
         return future;
     }
 
@@ -74,6 +112,7 @@ public class RecoverableThreadScheduler extends ScheduledThreadPoolExecutor {
     protected void afterExecute(Runnable runnable, Throwable throwable) {
         ScheduledFuture future = (ScheduledFuture) runnable;
         if (future.isDone()) {
+            SchedulerParams schedulerParams = runnables.remove(runnable);
             try {
                 future.get();
                 log.info("Task is completed");
@@ -82,12 +121,15 @@ public class RecoverableThreadScheduler extends ScheduledThreadPoolExecutor {
             } catch (ExecutionException e) {
                 log.error("Task is completed with exception!");
                 Throwable t = e.getCause();
-                SchedulerParams schedulerParams = runnables.remove(runnable);
                 if (t != null && schedulerParams != null) {
                     boolean resubmit = handler.exceptionOccurred(t);
                     if (resubmit) {
                         log.info("Resubmitting the runnable task");
-                        scheduleAtFixedRate(schedulerParams.runnable, schedulerParams.period, schedulerParams.period, schedulerParams.unit);
+                        if (schedulerParams.fixedDelay) {
+                            scheduleWithFixedDelay(schedulerParams.runnable, schedulerParams.period, schedulerParams.period, schedulerParams.unit);
+                        } else {
+                            scheduleAtFixedRate(schedulerParams.runnable, schedulerParams.period, schedulerParams.period, schedulerParams.unit);
+                        }
                     }
                 }
             } catch (InterruptedException e) {
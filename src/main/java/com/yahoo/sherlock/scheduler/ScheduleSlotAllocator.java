@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.enums.Triggers;
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.settings.Constants;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns the minute of the hour at which jobs run so that the
+ * queue load is spread evenly over the hour. Each job is placed
+ * in the minute slot where the fewest jobs of its Druid cluster
+ * run, then where the fewest jobs run overall, so that both the
+ * broker query rate and the execution queue stay flat. Ties are
+ * broken by the offset the job would get from its ID, which keeps
+ * the assignment stable on an empty queue.
+ */
+public class ScheduleSlotAllocator {
+
+    /** Cluster key used for jobs without a cluster. */
+    private static final Integer NO_CLUSTER = -1;
+
+    /** Number of jobs running in each minute slot. */
+    private final int[] slotCounts = new int[Constants.MINUTES_IN_HOUR];
+
+    /** Number of jobs running in each minute slot by cluster ID. */
+    private final Map<Integer, int[]> clusterSlotCounts = new HashMap<>();
+
+    /**
+     * Create an allocator with the current occupancy of the queue.
+     *
+     * @param queuedJobs jobs currently in the queue
+     */
+    public ScheduleSlotAllocator(Collection<JobMetadata> queuedJobs) {
+        for (JobMetadata job : queuedJobs) {
+            add(job);
+        }
+    }
+
+    /**
+     * Create an allocator with the number of queued jobs in each
+     * minute slot only. The clusters of the queued jobs are unknown,
+     * so jobs are placed in the least loaded slot overall.
+     *
+     * @param slotCounts number of queued jobs in each minute slot
+     */
+    public ScheduleSlotAllocator(int[] slotCounts) {
+        System.arraycopy(slotCounts, 0, this.slotCounts, 0, Math.min(slotCounts.length, this.slotCounts.length));
+    }
+
+    /**
+     * Get the minute slot of a run time.
+     *
+     * @param runTimeMinutes run time in minutes
+     * @return the minute of the hour
+     */
+    public static int slotOf(int runTimeMinutes) {
+        return Math.floorMod(runTimeMinutes, Constants.MINUTES_IN_HOUR);
+    }
+
+    /**
+     * Get the slot a job gets from its ID alone.
+     *
+     * @param job the job
+     * @return the minute of the hour
+     */
+    public static int hashSlot(JobMetadata job) {
+        int idInt = job.getJobId() == null ? 30 : job.getJobId();
+        return Math.abs(idInt) % Constants.MINUTES_IN_HOUR;
+    }
+
+    /**
+     * @param job a job
+     * @return true if the job runs at a fixed minute slot
+     */
+    private static boolean isSlotted(JobMetadata job) {
+        return job.getFrequency() != null && !job.getFrequency().equalsIgnoreCase(Triggers.MINUTE.toString());
+    }
+
+    /**
+     * Count a queued job in the slot of its run time.
+     *
+     * @param job the queued job
+     */
+    public void add(JobMetadata job) {
+        update(job, 1);
+    }
+
+    /**
+     * Stop counting a queued job, for instance before it is moved.
+     *
+     * @param job the queued job
+     */
+    public void remove(JobMetadata job) {
+        update(job, -1);
+    }
+
+    /**
+     * Choose the least loaded slot for a job and count the job in it.
+     *
+     * @param job the job to place
+     * @return the chosen minute of the hour
+     */
+    public int allocate(JobMetadata job) {
+        int preferred = hashSlot(job);
+        if (!isSlotted(job)) {
+            return preferred;
+        }
+        int[] clusterCounts = clusterCounts(job);
+        int best = preferred;
+        for (int i = 1; i < Constants.MINUTES_IN_HOUR; i++) {
+            int slot = (preferred + i) % Constants.MINUTES_IN_HOUR;
+            if (clusterCounts[slot] < clusterCounts[best]
+                || (clusterCounts[slot] == clusterCounts[best] && slotCounts[slot] < slotCounts[best])) {
+                best = slot;
+            }
+        }
+        slotCounts[best]++;
+        clusterCounts[best]++;
+        return best;
+    }
+
+    /**
+     * @return a copy of the number of jobs in each minute slot
+     */
+    public int[] getSlotCounts() {
+        return slotCounts.clone();
+    }
+
+    /**
+     * @return the number of jobs in the busiest minute slot
+     */
+    public int getMaxSlotCount() {
+        int max = 0;
+        for (int count : slotCounts) {
+            max = Math.max(max, count);
+        }
+        return max;
+    }
+
+    /**
+     * Add a delta to the slot count of a job.
+     *
+     * @param job   the job
+     * @param delta count to add
+     */
+    private void update(JobMetadata job, int delta) {
+        if (!isSlotted(job) || job.getEffectiveRunTime() == null) {
+            return;
+        }
+        int slot = slotOf(job.getEffectiveRunTime());
+        slotCounts[slot] = Math.max(0, slotCounts[slot] + delta);
+        int[] clusterCounts = clusterCounts(job);
+        clusterCounts[slot] = Math.max(0, clusterCounts[slot] + delta);
+    }
+
+    /**
+     * @param job a job
+     * @return the slot counts of the cluster of the job
+     */
+    private int[] clusterCounts(JobMetadata job) {
+        Integer clusterId = job.getClusterId() == null ? NO_CLUSTER : job.getClusterId();
+        return clusterSlotCounts.computeIfAbsent(clusterId, id -> new int[Constants.MINUTES_IN_HOUR]);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the periodic tasks of Sherlock, each type of task in its own
+ * {@code RecoverableThreadScheduler}, so that a slow backup or email
+ * run does not delay the dispatch of jobs. Every task is wrapped in an
+ * {@code ObservedTask} which records its run durations, and for tasks
+ * run at a fixed rate their overruns and skipped ticks.
+ */
+@Slf4j
+public class TaskScheduler {
+
+    /** Thread pool of each task type. */
+    private final Map<String, RecoverableThreadScheduler> pools = new ConcurrentHashMap<>();
+
+    /** Scheduled tasks by name. */
+    private final Map<String, ObservedTask> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * Schedule a task at a fixed rate in the pool of its type. The
+     * pool gets a thread for each of its tasks, so that the tasks of
+     * a type do not wait for each other.
+     *
+     * @param name         unique name of the task
+     * @param type         type of the task, naming its pool
+     * @param task         the task to run
+     * @param initialDelay delay of the first run
+     * @param period       period between runs
+     * @param unit         unit of the delay and period
+     * @return the future of the task
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(String name, String type, Runnable task, long initialDelay, long period, TimeUnit unit) {
+        ObservedTask observedTask = new ObservedTask(name, type, task, period, unit);
+        RecoverableThreadScheduler pool = addTask(name, type, observedTask);
+        log.info("Scheduling task {} in pool {} every {} {}", name, type, period, unit);
+        return pool.scheduleAtFixedRate(observedTask, initialDelay, period, unit);
+    }
+
+    /**
+     * Schedule a task with a fixed delay between the end of a run and
+     * the start of the next in the pool of its type. This suits tasks
+     * which wait inside their runs, whose long runs are not overruns.
+     *
+     * @param name         unique name of the task
+     * @param type         type of the task, naming its pool
+     * @param task         the task to run
+     * @param initialDelay delay of the first run
+     * @param delay        delay between the end of a run and the start of the next
+     * @param unit         unit of the delays
+     * @return the future of the task
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(String name, String type, Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        ObservedTask observedTask = new ObservedTask(name, type, task, delay, unit, true);
+        RecoverableThreadScheduler pool = addTask(name, type, observedTask);
+        log.info("Scheduling task {} in pool {} {} {} after each run", name, type, delay, unit);
+        return pool.scheduleWithFixedDelay(observedTask, initialDelay, delay, unit);
+    }
+
+    /**
+     * Register a task and add a thread for it to the pool of its type.
+     *
+     * @param name         unique name of the task
+     * @param type         type of the task, naming its pool
+     * @param observedTask the wrapped task
+     * @return the pool of the task
+     */
+    private RecoverableThreadScheduler addTask(String name, String type, ObservedTask observedTask) {
+        if (tasks.putIfAbsent(name, observedTask) != null) {
+            throw new IllegalStateException("Task " + name + " is already scheduled");
+        }
+        RecoverableThreadScheduler pool = pools.computeIfAbsent(type, t -> new RecoverableThreadScheduler(0, t));
+        synchronized (pool) {
+            pool.setCorePoolSize(pool.getCorePoolSize() + 1);
+        }
+        return pool;
+    }
+
+    /**
+     * @return the statistics of every scheduled task
+     */
+    public List<ObservedTask.Stats> getStats() {
+        List<ObservedTask.Stats> stats = new ArrayList<>(tasks.size());
+        for (ObservedTask task : tasks.values()) {
+            stats.add(task.getStats());
+        }
+        stats.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return stats;
+    }
+
+    /**
+     * @return the number of threads of each pool by task type
+     */
+    public Map<String, Integer> getPoolSizes() {
+        Map<String, Integer> sizes = new ConcurrentHashMap<>();
+        pools.forEach((type, pool) -> sizes.put(type, pool.getCorePoolSize()));
+        return sizes;
+    }
+
+    /**
+     * Stop every pool and forget the scheduled tasks.
+     */
+    public void shutdown() {
+        for (RecoverableThreadScheduler pool : pools.values()) {
+            pool.shutdown();
+        }
+        pools.clear();
+        tasks.clear();
+    }
+}
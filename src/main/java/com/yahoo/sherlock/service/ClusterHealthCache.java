@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.model.DruidCluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the status of each Druid cluster as of the last poll of the
+ * {@code /status} endpoint of its brokers, so that showing or using
+ * the health of a cluster never waits for a broker. The brokers of
+ * every cluster are polled concurrently, and the brokers found down
+ * are only tried after the healthy ones by the broker selector.
+ */
+@Slf4j
+public class ClusterHealthCache {
+
+    /** Status of a cluster whose brokers all answer. */
+    public static final String OK = "OK";
+
+    /** Status of a cluster of which only some brokers answer. */
+    public static final String DEGRADED = "DEGRADED";
+
+    /** Status of a cluster of which no broker can be contacted. */
+    public static final String ERROR = "ERROR";
+
+    /** Status of a cluster which was not polled yet. */
+    public static final String UNKNOWN = "UNKNOWN";
+
+    /** The singleton instance of this class. */
+    private static ClusterHealthCache clusterHealthCache;
+
+    /** Health of each cluster by cluster ID. */
+    private final Map<Integer, Health> health = new ConcurrentHashMap<>();
+
+    /** Threads polling the brokers. */
+    private final ExecutorService poller = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ClusterHealthPoller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared cluster health cache
+     */
+    public static synchronized ClusterHealthCache getInstance() {
+        if (clusterHealthCache == null) {
+            clusterHealthCache = new ClusterHealthCache();
+        }
+        return clusterHealthCache;
+    }
+
+    /**
+     * Get the health of a cluster as of its last poll.
+     *
+     * @param clusterId ID of the cluster
+     * @return the health of the cluster, or null if it was not polled yet
+     */
+    public Health getHealth(Integer clusterId) {
+        return clusterId == null ? null : health.get(clusterId);
+    }
+
+    /**
+     * Poll the brokers of every cluster concurrently and keep their
+     * status. The health of clusters which are not listed is dropped.
+     *
+     * @param clusters    every Druid cluster
+     * @param httpService service querying the brokers
+     */
+    public void poll(List<DruidCluster> clusters, HttpService httpService) {
+        List<CompletableFuture<Void>> polls = new ArrayList<>(clusters.size());
+        Set<Integer> clusterIds = new HashSet<>();
+        for (DruidCluster cluster : clusters) {
+            if (cluster.getClusterId() != null) {
+                clusterIds.add(cluster.getClusterId());
+                polls.add(poll(cluster, httpService));
+            }
+        }
+        CompletableFuture.allOf(polls.toArray(new CompletableFuture[0])).join();
+        health.keySet().retainAll(clusterIds);
+    }
+
+    /**
+     * Poll the brokers of a cluster concurrently.
+     *
+     * @param cluster     the Druid cluster
+     * @param httpService service querying the brokers
+     * @return the future of the poll, which completes once the health of the cluster is updated
+     */
+    public CompletableFuture<Void> poll(DruidCluster cluster, HttpService httpService) {
+        List<String> baseUrls = cluster.getBaseUrls();
+        List<String> brokerUrls = cluster.getBrokerUrls();
+        List<CompletableFuture<Integer>> statuses = new ArrayList<>(baseUrls.size());
+        for (int i = 0; i < baseUrls.size(); i++) {
+            String baseUrl = baseUrls.get(i);
+            String brokerUrl = brokerUrls.get(i);
+            statuses.add(CompletableFuture.supplyAsync(() -> {
+                Integer status = null;
+                try {
+                    status = httpService.queryDruidBrokerStatus(cluster, baseUrl);
+                } catch (Exception e) {
+                    log.debug("Unable to get the status of broker [{}]", baseUrl, e);
+                }
+                httpService.getBrokerSelector().recordHealth(brokerUrl, status != null && status == HttpStatus.SC_OK);
+                return status;
+            }, poller));
+        }
+        return CompletableFuture.allOf(statuses.toArray(new CompletableFuture[0])).thenRun(() -> {
+            List<Integer> results = new ArrayList<>(statuses.size());
+            statuses.forEach(status -> results.add(status.join()));
+            health.put(cluster.getClusterId(), new Health(statusOf(results), System.currentTimeMillis()));
+        });
+    }
+
+    /**
+     * @param statuses the status code of each broker, the main broker first, null if it could not be contacted
+     * @return the status of the cluster
+     */
+    protected static String statusOf(List<Integer> statuses) {
+        long healthy = statuses.stream().filter(status -> status != null && status == HttpStatus.SC_OK).count();
+        if (healthy == statuses.size()) {
+            return OK;
+        } else if (healthy > 0) {
+            return DEGRADED;
+        }
+        Integer main = statuses.isEmpty() ? null : statuses.get(0);
+        return main == null ? ERROR : String.valueOf(main);
+    }
+
+    /**
+     * Drop the health of a cluster, which is polled again on the next run.
+     *
+     * @param clusterId ID of the cluster
+     */
+    public void invalidate(Integer clusterId) {
+        if (clusterId != null) {
+            health.remove(clusterId);
+        }
+    }
+
+    /**
+     * Status of a cluster at the time of a poll.
+     */
+    public static class Health {
+
+        /** Status of the cluster. */
+        private final String status;
+
+        /** Time of the poll in milliseconds. */
+        private final long checkedAtMillis;
+
+        /**
+         * @param status          status of the cluster
+         * @param checkedAtMillis time of the poll in milliseconds
+         */
+        public Health(String status, long checkedAtMillis) {
+            this.status = status;
+            this.checkedAtMillis = checkedAtMillis;
+        }
+
+        /**
+         * @return the status of the cluster
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the time of the poll in milliseconds
+         */
+        public long getCheckedAtMillis() {
+            return checkedAtMillis;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.model.DruidCluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the queries sent to each Druid cluster to the number of
+ * concurrent queries and the rate configured on the cluster. Queries
+ * over the limit wait for a permit instead of failing, and the time
+ * spent waiting is recorded per cluster. A change of the limits of a
+ * cluster resizes its limit in place, so that the queries running
+ * under the previous limits count against the new ones and release
+ * their permits where they took them.
+ */
+@Slf4j
+public class ClusterQueryLimiter {
+
+    /** The singleton instance of this class. */
+    private static ClusterQueryLimiter clusterQueryLimiter;
+
+    /** Limits of each cluster by cluster ID. */
+    private final Map<Integer, ClusterLimit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared query limiter
+     */
+    public static synchronized ClusterQueryLimiter getInstance() {
+        if (clusterQueryLimiter == null) {
+            clusterQueryLimiter = new ClusterQueryLimiter();
+        }
+        return clusterQueryLimiter;
+    }
+
+    /**
+     * Block until the cluster may take another query. The
+     * returned permit must be closed once the query is done.
+     *
+     * @param cluster the cluster to query
+     * @return the query permit
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit acquire(DruidCluster cluster) throws InterruptedException {
+        if (cluster.getClusterId() == null) {
+            return Permit.NONE;
+        }
+        return limitOf(cluster).acquire();
+    }
+
+    /**
+     * Take a permit only if the cluster may take another query
+     * right away. The returned permit must be closed once the
+     * query is done.
+     *
+     * @param cluster the cluster to query
+     * @return the query permit or null if the cluster is at its limit
+     */
+    public Permit tryAcquire(DruidCluster cluster) {
+        if (cluster.getClusterId() == null) {
+            return Permit.NONE;
+        }
+        return limitOf(cluster).tryAcquire();
+    }
+
+    /**
+     * @param cluster the cluster to query
+     * @return the limit enforcing the current configuration of the cluster
+     */
+    private ClusterLimit limitOf(DruidCluster cluster) {
+        ClusterLimit limit = limits.computeIfAbsent(cluster.getClusterId(), id -> new ClusterLimit(cluster));
+        if (!limit.matches(cluster)) {
+            limit.configure(cluster);
+        }
+        return limit;
+    }
+
+    /**
+     * @return the limiter statistics of each cluster by cluster ID
+     */
+    public Map<Integer, Map<String, Object>> getStats() {
+        Map<Integer, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (Map.Entry<Integer, ClusterLimit> entry : limits.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Permit to run one query, released when closed.
+     */
+    public interface Permit extends AutoCloseable {
+
+        /** Permit of a query that is not limited. */
+        Permit NONE = () -> { };
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Concurrency and rate limit of a single cluster.
+     */
+    private static class ClusterLimit {
+
+        /** Number of permits standing for no concurrency limit. */
+        private static final int UNLIMITED_PERMITS = Integer.MAX_VALUE / 2;
+
+        /** Configured concurrent queries, null for no limit. */
+        private volatile Integer maxConcurrentQueries;
+
+        /** Configured queries per second, null for no limit. */
+        private volatile Double maxQueriesPerSecond;
+
+        /** One permit per query that may run, resized when the limit changes. */
+        private final ResizableSemaphore concurrency;
+
+        /** Number of permits of the semaphore, taken or not. */
+        private int concurrencyPermits;
+
+        /** Tokens currently in the bucket, negative when queries are waiting for one. */
+        private double tokens;
+
+        /** Time of the last refill of the bucket in nanoseconds. */
+        private long lastRefillNanos;
+
+        /** Queries currently running. */
+        private final AtomicInteger running = new AtomicInteger();
+
+        /** Queries currently waiting for a permit. */
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        /** Queries admitted since the limit was created. */
+        private final AtomicLong admitted = new AtomicLong();
+
+        /** Total time spent waiting for a permit in milliseconds. */
+        private final AtomicLong totalWaitMillis = new AtomicLong();
+
+        /** Longest time spent waiting for a permit in milliseconds. */
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+
+        /**
+         * @param cluster the cluster with the limits to enforce
+         */
+        ClusterLimit(DruidCluster cluster) {
+            maxConcurrentQueries = positive(cluster.getMaxConcurrentQueries());
+            maxQueriesPerSecond = positive(cluster.getMaxQueriesPerSecond());
+            concurrencyPermits = maxConcurrentQueries == null ? UNLIMITED_PERMITS : maxConcurrentQueries;
+            concurrency = new ResizableSemaphore(concurrencyPermits);
+            tokens = maxQueriesPerSecond == null ? 0 : burst();
+            lastRefillNanos = System.nanoTime();
+        }
+
+        /**
+         * Enforce the current limits of the cluster. The permits taken
+         * by running queries stay taken, so that a smaller limit admits
+         * new queries only once enough of them are done.
+         *
+         * @param cluster the cluster with the limits to enforce
+         */
+        synchronized void configure(DruidCluster cluster) {
+            if (matches(cluster)) {
+                return;
+            }
+            Integer newMaxConcurrentQueries = positive(cluster.getMaxConcurrentQueries());
+            Double newMaxQueriesPerSecond = positive(cluster.getMaxQueriesPerSecond());
+            int permits = newMaxConcurrentQueries == null ? UNLIMITED_PERMITS : newMaxConcurrentQueries;
+            if (permits > concurrencyPermits) {
+                concurrency.release(permits - concurrencyPermits);
+            } else if (permits < concurrencyPermits) {
+                concurrency.reducePermits(concurrencyPermits - permits);
+            }
+            concurrencyPermits = permits;
+            if (!Objects.equals(maxQueriesPerSecond, newMaxQueriesPerSecond)) {
+                maxQueriesPerSecond = newMaxQueriesPerSecond;
+                tokens = maxQueriesPerSecond == null ? 0 : burst();
+                lastRefillNanos = System.nanoTime();
+            }
+            maxConcurrentQueries = newMaxConcurrentQueries;
+            log.info("Query limits of cluster [{}] changed to {} concurrent and {} per second",
+                     cluster.getClusterId(), maxConcurrentQueries, maxQueriesPerSecond);
+        }
+
+        /**
+         * @param value a configured limit
+         * @param <N>   the limit type
+         * @return the limit or null if it is not positive
+         */
+        private static <N extends Number> N positive(N value) {
+            return value == null || value.doubleValue() <= 0 ? null : value;
+        }
+
+        /**
+         * @param cluster a cluster
+         * @return true if this limit enforces the configuration of the cluster
+         */
+        boolean matches(DruidCluster cluster) {
+            return Objects.equals(maxConcurrentQueries, positive(cluster.getMaxConcurrentQueries()))
+                   && Objects.equals(maxQueriesPerSecond, positive(cluster.getMaxQueriesPerSecond()));
+        }
+
+        /**
+         * @return the number of queries that may be sent at once after an idle period
+         */
+        private double burst() {
+            return Math.max(1.0, maxQueriesPerSecond);
+        }
+
+        /**
+         * Wait for a concurrency slot, then for a rate token.
+         *
+         * @return the query permit
+         * @throws InterruptedException if interrupted while waiting
+         */
+        Permit acquire() throws InterruptedException {
+            long start = System.nanoTime();
+            waiting.incrementAndGet();
+            try {
+                concurrency.acquire();
+                try {
+                    long waitNanos = reserveToken();
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                } catch (InterruptedException e) {
+                    concurrency.release();
+                    throw e;
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            totalWaitMillis.addAndGet(waitMillis);
+            maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+            return admit();
+        }
+
+        /**
+         * Take a concurrency slot and a rate token without waiting.
+         *
+         * @return the query permit or null if either is not available
+         */
+        Permit tryAcquire() {
+            if (!concurrency.tryAcquire()) {
+                return null;
+            }
+            if (!tryReserveToken()) {
+                concurrency.release();
+                return null;
+            }
+            return admit();
+        }
+
+        /**
+         * Count a query holding a concurrency slot and a rate token as running.
+         *
+         * @return the permit releasing the slot to this limit once closed
+         */
+        private Permit admit() {
+            admitted.incrementAndGet();
+            running.incrementAndGet();
+            return () -> {
+                running.decrementAndGet();
+                concurrency.release();
+            };
+        }
+
+        /**
+         * Take a token from the bucket, going into debt if it is empty.
+         *
+         * @return the time to wait before the token is available in nanoseconds
+         */
+        private synchronized long reserveToken() {
+            if (maxQueriesPerSecond == null) {
+                return 0L;
+            }
+            refill();
+            tokens -= 1;
+            return tokens >= 0 ? 0L : (long) (-tokens / maxQueriesPerSecond * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * Take a token from the bucket only if one is available.
+         *
+         * @return true if a token was taken
+         */
+        private synchronized boolean tryReserveToken() {
+            if (maxQueriesPerSecond == null) {
+                return true;
+            }
+            refill();
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        /**
+         * Add the tokens earned since the last refill to the bucket.
+         */
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst(), tokens + (now - lastRefillNanos) * maxQueriesPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefillNanos = now;
+        }
+
+        /**
+         * @return a snapshot of the limit statistics
+         */
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long count = admitted.get();
+            stats.put("maxConcurrentQueries", maxConcurrentQueries);
+            stats.put("maxQueriesPerSecond", maxQueriesPerSecond);
+            stats.put("runningQueries", running.get());
+            stats.put("waitingQueries", waiting.get());
+            stats.put("admittedQueries", count);
+            stats.put("averageWaitMillis", count == 0 ? 0L : totalWaitMillis.get() / count);
+            stats.put("maxWaitMillis", maxWaitMillis.get());
+            return stats;
+        }
+    }
+
+    /**
+     * Fair semaphore whose number of permits may be reduced while
+     * some of them are taken.
+     */
+    private static class ResizableSemaphore extends Semaphore {
+
+        /**
+         * @param permits initial number of permits
+         */
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.yahoo.sherlock.exception.DruidException;
 import com.yahoo.sherlock.exception.SherlockException;
 import com.yahoo.sherlock.model.DetectorResult;
 import com.yahoo.sherlock.enums.Granularity;
+import com.yahoo.sherlock.enums.PipelineStage;
 import com.yahoo.sherlock.model.DruidCluster;
 import com.yahoo.sherlock.model.JobMetadata;
 import com.yahoo.sherlock.query.DetectorConfig;
@@ -24,6 +25,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Service class for anomaly detection.
@@ -56,6 +58,26 @@ public class DetectorService {
      */
     private ProphetAPIService prophetAPIService = new ProphetAPIService();
 
+    /**
+     * Coalescer sharing the Druid query results of jobs with the same query.
+     */
+    private DruidQueryCoalescer queryCoalescer = DruidQueryCoalescer.getInstance();
+
+    /**
+     * Cache of the datasource list of each cluster.
+     */
+    private DruidDatasourceCache datasourceCache = DruidDatasourceCache.getInstance();
+
+    /**
+     * Cache of the time series window of each query, for incremental fetches.
+     */
+    private TimeSeriesWindowCache seriesWindowCache = TimeSeriesWindowCache.getInstance();
+
+    /**
+     * Planner splitting the queries with oversized responses.
+     */
+    private DruidQueryPlanner queryPlanner = DruidQueryPlanner.getInstance();
+
     /**
      * Empty constructor.
      */
@@ -65,6 +87,7 @@ public class DetectorService {
     /**
      * Method to detect anomalies.
      * This method handles the control/data flow between components of detection system.
+     * The time series are shared with other jobs sending the same query to the same cluster.
      *
      * @param cluster           the Druid cluster to issue the query
      * @param jobMetadata       job metadata
@@ -76,9 +99,62 @@ public class DetectorService {
             DruidCluster cluster,
             JobMetadata jobMetadata
     ) throws SherlockException, DruidException {
+        Query query = buildQuery(jobMetadata);
+        List<TimeSeries> timeSeriesList = fetchTimeSeries(cluster, query);
+        return detect(timeSeriesList, query, jobMetadata);
+    }
+
+    /**
+     * Build the Druid query of the current run of a job.
+     *
+     * @param jobMetadata job metadata
+     * @return the query
+     * @throws SherlockException if the query cannot be built
+     */
+    public Query buildQuery(JobMetadata jobMetadata) throws SherlockException {
         Granularity granularity = Granularity.getValue(jobMetadata.getGranularity());
         Query query = queryService.build(jobMetadata.getQuery(), granularity, jobMetadata.getGranularityRange(), jobMetadata.getEffectiveQueryTime(), jobMetadata.getTimeseriesRange());
         log.info("Query generation successful.");
+        return query;
+    }
+
+    /**
+     * Fetch the time series of a query, after checking that its
+     * datasources exist. The time series are shared with other jobs
+     * sending the same query to the same cluster, and only the newest
+     * intervals are fetched if the window of the last run of the
+     * query is cached.
+     *
+     * @param cluster the Druid cluster to issue the query
+     * @param query   the query
+     * @return the time series returned by the query
+     * @throws SherlockException if the response cannot be parsed
+     * @throws DruidException    if an error querying druid occurs
+     */
+    public List<TimeSeries> fetchTimeSeries(DruidCluster cluster, Query query) throws SherlockException, DruidException {
+        checkDatasource(query, cluster);
+        return queryCoalescer.fetch(cluster, query, () ->
+            seriesWindowCache.fetch(cluster, query, windowQuery -> queryAllTimeSeries(windowQuery, cluster))
+                .stream()
+                .filter(parserService.isValidTimeSeries(query))
+                .collect(Collectors.toList())
+        );
+    }
+
+    /**
+     * Detect anomalies in the fetched time series of a job run.
+     *
+     * @param timeSeriesList the time series returned by the query of the job
+     * @param query          the query of the job
+     * @param jobMetadata    job metadata
+     * @return list of anomalies
+     * @throws SherlockException if an error occurs during analysis
+     */
+    public List<Anomaly> detect(
+            List<TimeSeries> timeSeriesList,
+            Query query,
+            JobMetadata jobMetadata
+    ) throws SherlockException {
         // reconstruct DetectorConfig
         DetectorConfig config = DetectorConfig.fromProperties(DetectorConfig.fromFile());
         config.setTsModel(jobMetadata.getTimeseriesModel());
@@ -94,21 +170,47 @@ public class DetectorService {
             config.setTsFramework(DetectorConfig.Framework.Egads.toString());
             log.info("DetectorConfig reconstructed with Egads parameters.");
         }
-        return detect(query, jobMetadata.getSigmaThreshold(), cluster, config, jobMetadata.getFrequency(), jobMetadata.getGranularityRange());
+        return detectTimeSeries(timeSeriesList, query, jobMetadata.getSigmaThreshold(), config, jobMetadata.getFrequency(), jobMetadata.getGranularityRange());
     }
 
     /**
      * Check to ensure that the datasource in the query exists
-     * in the specified cluster.
+     * in the specified cluster. The cached datasource list of the
+     * cluster is used, and reloaded once from the broker if the
+     * datasource is not in it.
      *
      * @param query   the query to check
      * @param cluster the druid cluster to check
      * @throws DruidException if the datasource is not found
      */
     public void checkDatasource(Query query, DruidCluster cluster) throws DruidException {
-        ArrayList<String> inValidDataSources = new ArrayList<>();
         JsonElement datasourceInfo = query.getDatasource();
-        JsonArray druidDataSources = httpService.queryDruidDatasources(cluster);
+        DruidDatasourceCache.Loader loader = () -> httpService.queryDruidDatasources(cluster);
+        List<String> inValidDataSources;
+        try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.DATASOURCE_CHECK)) {
+            JsonArray druidDataSources = datasourceCache.getCached(cluster, loader);
+            inValidDataSources = druidDataSources == null ? null : findUnknownDatasources(datasourceInfo, druidDataSources);
+            if (inValidDataSources == null || !inValidDataSources.isEmpty()) {
+                // the datasource may have been created since the list was cached
+                druidDataSources = datasourceCache.load(cluster, loader);
+                inValidDataSources = findUnknownDatasources(datasourceInfo, druidDataSources);
+            }
+        }
+        if (inValidDataSources.size() > 0) {
+            log.error("Druid datasource {} does not exist!", inValidDataSources.toString());
+            throw new DruidException("Querying unknown datasource: " + inValidDataSources.toString());
+        }
+    }
+
+    /**
+     * Find the datasources of a query missing from a cluster.
+     *
+     * @param datasourceInfo   datasource or datasources of the query
+     * @param druidDataSources datasources of the cluster
+     * @return the unknown datasources
+     */
+    private static List<String> findUnknownDatasources(JsonElement datasourceInfo, JsonArray druidDataSources) {
+        List<String> inValidDataSources = new ArrayList<>();
         if (datasourceInfo.isJsonArray()) {
             JsonArray dataSources = datasourceInfo.getAsJsonArray();
             for (JsonElement dataSource :
@@ -122,11 +224,7 @@ public class DetectorService {
                 inValidDataSources.add(datasourceInfo.getAsString());
             }
         }
-
-        if (inValidDataSources.size() > 0) {
-            log.error("Druid datasource {} does not exist!", inValidDataSources.toString());
-            throw new DruidException("Querying unknown datasource: " + inValidDataSources.toString());
-        }
+        return inValidDataSources;
     }
 
     /**
@@ -167,6 +265,45 @@ public class DetectorService {
         return runDetection(druidResponse, query, sigmaThreshold, null, null, granularityRange);
     }
 
+    /**
+     * Send the query to druid and parse the time series of the
+     * response while it is received.
+     *
+     * @param query   the query to execute
+     * @param cluster the cluster to query
+     * @return the time series returned by the query
+     * @throws DruidException if an error occurs while calling druid or parsing its response
+     */
+    public List<TimeSeries> queryTimeSeries(Query query, DruidCluster cluster) throws DruidException {
+        List<TimeSeries> timeSeriesList = queryAllTimeSeries(query, cluster).stream()
+            .filter(parserService.isValidTimeSeries(query))
+            .collect(Collectors.toList());
+        log.info("Druid response received and parsed into {} time series", timeSeriesList.size());
+        return timeSeriesList;
+    }
+
+    /**
+     * Send the query to druid and parse every time series of the
+     * response, including the incomplete ones. A query whose response
+     * is estimated to be too large is sent as concurrent time slices,
+     * and the queries of minute jobs may be hedged with a second broker.
+     *
+     * @param query   the query to execute
+     * @param cluster the cluster to query
+     * @return the time series returned by the query
+     * @throws DruidException if an error occurs while calling druid or parsing its response
+     */
+    public List<TimeSeries> queryAllTimeSeries(Query query, DruidCluster cluster) throws DruidException {
+        return queryPlanner.fetch(cluster, query, sliceQuery ->
+            httpService.queryDruid(
+                cluster,
+                sliceQuery.getQueryJsonObject(),
+                sliceQuery.getGranularity() == Granularity.MINUTE,
+                (response, smile) -> parserService.readAllTimeSeries(response, smile, sliceQuery)
+            )
+        );
+    }
+
     /**
      * Run detection with a provided Detector configuration and
      * Druid query.
@@ -189,6 +326,29 @@ public class DetectorService {
             Integer granularityRange
     ) throws SherlockException {
         List<TimeSeries> timeSeriesList = parserService.parseTimeSeries(druidResponse, query);
+        return detectTimeSeries(timeSeriesList, query, sigmaThreshold, config, frequency, granularityRange);
+    }
+
+    /**
+     * Run detection on the parsed time series of a query.
+     *
+     * @param timeSeriesList   the time series returned by the query
+     * @param query            the Druid query
+     * @param sigmaThreshold   job sigma threshold
+     * @param config           Detector configuration
+     * @param frequency        frequency of the job
+     * @param granularityRange granularity range to aggregate on
+     * @return anomalies from detection
+     * @throws SherlockException if an error occurs during analysis
+     */
+    private List<Anomaly> detectTimeSeries(
+            List<TimeSeries> timeSeriesList,
+            Query query,
+            Double sigmaThreshold,
+            DetectorConfig config,
+            String frequency,
+            Integer granularityRange
+    ) throws SherlockException {
         // The value of the last timestamp expected to be returned by Druid
         Integer expectedEnd = (query.getRunTime() / 60) - (query.getGranularity().getMinutes() * granularityRange);
         log.info("Expected timestamp of last data point in timeseries: {}", TimeUtils.getFormattedTimeMinutes(expectedEnd));
@@ -274,8 +434,8 @@ public class DetectorService {
             Integer granularityRange
     ) throws SherlockException, DruidException {
         checkDatasource(query, cluster);
-        JsonArray druidResponse = queryDruid(query, cluster);
-        return runDetection(druidResponse, query, sigmaThreshold, config, frequency, granularityRange);
+        List<TimeSeries> timeSeriesList = queryTimeSeries(query, cluster);
+        return detectTimeSeries(timeSeriesList, query, sigmaThreshold, config, frequency, granularityRange);
     }
 
     /**
@@ -301,8 +461,7 @@ public class DetectorService {
     ) throws SherlockException, DruidException, Exception {
         DetectorAPIService detectorAPIService;
         checkDatasource(query, cluster);
-        JsonArray druidResponse = queryDruid(query, cluster);
-        List<TimeSeries> timeSeriesList = parserService.parseTimeSeries(druidResponse, query);
+        List<TimeSeries> timeSeriesList = queryTimeSeries(query, cluster);
         List<DetectorResult> results = new ArrayList<>(timeSeriesList.size());
         if (config.getTsFramework().equals(DetectorConfig.Framework.Prophet.toString())) {
             detectorAPIService = prophetAPIService;
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses the broker each query of a Druid cluster is sent to. Queries
+ * are spread over the brokers of a cluster in turn, and a broker which
+ * failed is only tried after the others until its backoff is over. The
+ * response latencies of each broker are kept to derive the delay after
+ * which a query is hedged with a second broker. The backoff of a
+ * broker is also driven by the background health checks.
+ */
+@Slf4j
+public class DruidBrokerSelector {
+
+    /** Number of latencies kept per broker. */
+    private static final int LATENCY_SAMPLES = 100;
+
+    /** Number of latencies of a cluster needed before hedging its queries. */
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    /** The singleton instance of this class. */
+    private static DruidBrokerSelector druidBrokerSelector;
+
+    /** State of each broker by broker URL. */
+    private final Map<String, Broker> brokers = new ConcurrentHashMap<>();
+
+    /** Counter rotating the brokers of the clusters. */
+    private final AtomicLong rotation = new AtomicLong();
+
+    /** Number of hedged queries. */
+    private final AtomicLong hedgeCount = new AtomicLong();
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared broker selector
+     */
+    public static synchronized DruidBrokerSelector getInstance() {
+        if (druidBrokerSelector == null) {
+            druidBrokerSelector = new DruidBrokerSelector();
+        }
+        return druidBrokerSelector;
+    }
+
+    /**
+     * Get the broker URLs of a cluster in the order to try them: the
+     * available brokers in turn, then the brokers backing off.
+     *
+     * @param cluster the Druid cluster
+     * @return the broker URLs
+     */
+    public List<String> order(DruidCluster cluster) {
+        List<String> urls = new ArrayList<>(cluster.getBrokerUrls());
+        if (urls.size() > 1) {
+            Collections.rotate(urls, -(int) (rotation.getAndIncrement() % urls.size()));
+            long now = System.currentTimeMillis();
+            // stable, so the available brokers keep their turn
+            urls.sort(Comparator.comparing(url -> !isAvailable(url, now)));
+        }
+        return urls;
+    }
+
+    /**
+     * @param url the broker URL
+     * @param now the current time in milliseconds
+     * @return whether the broker is not backing off
+     */
+    private boolean isAvailable(String url, long now) {
+        Broker broker = brokers.get(url);
+        return broker == null || broker.isAvailable(now);
+    }
+
+    /**
+     * Record a response of a broker.
+     *
+     * @param url          the broker URL
+     * @param latencyNanos time the broker took to respond in nanoseconds
+     */
+    public void recordSuccess(String url, long latencyNanos) {
+        brokers.computeIfAbsent(url, key -> new Broker()).success(latencyNanos);
+    }
+
+    /**
+     * Record a failed request to a broker, which backs off.
+     *
+     * @param url the broker URL
+     */
+    public void recordFailure(String url) {
+        long backoffMillis = TimeUnit.SECONDS.toMillis(CLISettings.BROKER_FAILURE_BACKOFF);
+        log.warn("Broker [{}] failed, trying the other brokers first for {} ms", url, backoffMillis);
+        brokers.computeIfAbsent(url, key -> new Broker()).failure(System.currentTimeMillis() + backoffMillis);
+    }
+
+    /**
+     * Record the result of a health check of a broker. A broker found
+     * down backs off, and a broker found up ends its backoff.
+     *
+     * @param url     the broker URL
+     * @param healthy whether the broker answered the health check
+     */
+    public void recordHealth(String url, boolean healthy) {
+        if (healthy) {
+            Broker broker = brokers.get(url);
+            if (broker != null) {
+                broker.recover();
+            }
+        } else {
+            recordFailure(url);
+        }
+    }
+
+    /**
+     * Record that a query was hedged with a second broker.
+     */
+    public void recordHedge() {
+        hedgeCount.incrementAndGet();
+    }
+
+    /**
+     * Get the delay after which a query of a cluster is hedged, which
+     * is the 95th percentile of the latencies of its brokers.
+     *
+     * @param cluster the Druid cluster
+     * @return the delay in milliseconds, or -1 if too few latencies are known
+     */
+    public long hedgeDelayMillis(DruidCluster cluster) {
+        List<Long> latencies = new ArrayList<>();
+        for (String url : cluster.getBrokerUrls()) {
+            Broker broker = brokers.get(url);
+            if (broker != null) {
+                broker.addLatencies(latencies);
+            }
+        }
+        if (latencies.size() < MIN_HEDGE_SAMPLES) {
+            return -1;
+        }
+        Collections.sort(latencies);
+        long p95 = latencies.get((int) Math.ceil(latencies.size() * 0.95) - 1);
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(p95));
+    }
+
+    /**
+     * @return a snapshot of the broker statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        Map<String, Object> brokerStats = new LinkedHashMap<>();
+        brokers.forEach((url, broker) -> brokerStats.put(url, broker.getStats(now)));
+        stats.put("brokers", brokerStats);
+        stats.put("hedgedQueries", hedgeCount.get());
+        return stats;
+    }
+
+    /**
+     * State of a broker.
+     */
+    private static class Broker {
+
+        /** Latest latencies in nanoseconds, as a ring. */
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+
+        /** Number of latencies recorded. */
+        private long latencyCount = 0;
+
+        /** Number of failures since the last response. */
+        private int consecutiveFailures = 0;
+
+        /** Time the backoff of the broker ends in milliseconds. */
+        private long backoffUntilMillis = 0;
+
+        /**
+         * @param latencyNanos time the broker took to respond in nanoseconds
+         */
+        synchronized void success(long latencyNanos) {
+            latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = latencyNanos;
+            recover();
+        }
+
+        /**
+         * End the backoff of the broker.
+         */
+        synchronized void recover() {
+            consecutiveFailures = 0;
+            backoffUntilMillis = 0;
+        }
+
+        /**
+         * @param untilMillis time the backoff ends in milliseconds
+         */
+        synchronized void failure(long untilMillis) {
+            consecutiveFailures++;
+            backoffUntilMillis = untilMillis;
+        }
+
+        /**
+         * @param now the current time in milliseconds
+         * @return whether the broker is not backing off
+         */
+        synchronized boolean isAvailable(long now) {
+            return now >= backoffUntilMillis;
+        }
+
+        /**
+         * @param target list to add the kept latencies to
+         */
+        synchronized void addLatencies(List<Long> target) {
+            Arrays.stream(latencies, 0, (int) Math.min(latencyCount, LATENCY_SAMPLES)).forEach(target::add);
+        }
+
+        /**
+         * @param now the current time in milliseconds
+         * @return the statistics of the broker
+         */
+        synchronized Map<String, Object> getStats(long now) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("available", isAvailable(now));
+            stats.put("consecutiveFailures", consecutiveFailures);
+            stats.put("responses", latencyCount);
+            return stats;
+        }
+    }
+}
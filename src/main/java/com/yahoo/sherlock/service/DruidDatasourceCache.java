@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.google.gson.JsonArray;
+import com.yahoo.sherlock.exception.DruidException;
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the datasource list of each Druid cluster, so that checking
+ * the datasources of a job does not cost a broker request on every
+ * run. A list older than the configured TTL is still served while it
+ * is refreshed in the background. Concurrent loads of the list of a
+ * cluster are sent to the broker once.
+ */
+@Slf4j
+public class DruidDatasourceCache {
+
+    /** The singleton instance of this class. */
+    private static DruidDatasourceCache druidDatasourceCache;
+
+    /** Datasource lists by cluster ID. */
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Loads in flight by cluster ID. */
+    private final Map<Integer, CompletableFuture<JsonArray>> loading = new ConcurrentHashMap<>();
+
+    /** IDs of the clusters whose list is being refreshed in the background. */
+    private final Set<Integer> refreshing = ConcurrentHashMap.newKeySet();
+
+    /** Thread refreshing the stale lists. */
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DatasourceRefresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared datasource cache
+     */
+    public static synchronized DruidDatasourceCache getInstance() {
+        if (druidDatasourceCache == null) {
+            druidDatasourceCache = new DruidDatasourceCache();
+        }
+        return druidDatasourceCache;
+    }
+
+    /**
+     * Get the cached datasource list of a cluster. A list older than
+     * the TTL is returned and refreshed in the background.
+     *
+     * @param cluster the Druid cluster
+     * @param loader  loads the datasource list from the broker
+     * @return the cached datasources, or null if the list of the cluster is not cached
+     */
+    public JsonArray getCached(DruidCluster cluster, Loader loader) {
+        Integer clusterId = cluster.getClusterId();
+        long ttlMillis = TimeUnit.SECONDS.toMillis(CLISettings.DATASOURCE_CACHE_TTL);
+        if (clusterId == null || ttlMillis <= 0) {
+            return null;
+        }
+        Entry entry = entries.get(clusterId);
+        if (entry == null) {
+            return null;
+        }
+        // the refresh is marked before it is queued, so a stale list is refreshed once
+        if (System.currentTimeMillis() - entry.loadedAtMillis > ttlMillis && refreshing.add(clusterId)) {
+            try {
+                refresher.execute(() -> {
+                    try {
+                        load(cluster, loader);
+                    } catch (DruidException e) {
+                        log.warn("Unable to refresh the datasources of cluster [{}], keeping the cached list", clusterId, e);
+                    } finally {
+                        refreshing.remove(clusterId);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                refreshing.remove(clusterId);
+                throw e;
+            }
+        }
+        return entry.datasources;
+    }
+
+    /**
+     * Load the datasource list of a cluster from the broker and cache it.
+     * A caller loading the list of a cluster while another load of the
+     * same cluster is in flight waits for its result.
+     *
+     * @param cluster the Druid cluster
+     * @param loader  loads the datasource list from the broker
+     * @return the datasources of the cluster
+     * @throws DruidException if an error occurs while querying the broker
+     */
+    public JsonArray load(DruidCluster cluster, Loader loader) throws DruidException {
+        Integer clusterId = cluster.getClusterId();
+        if (clusterId == null) {
+            return loader.load();
+        }
+        CompletableFuture<JsonArray> created = new CompletableFuture<>();
+        CompletableFuture<JsonArray> inFlight = loading.putIfAbsent(clusterId, created);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            JsonArray datasources = loader.load();
+            entries.put(clusterId, new Entry(datasources, System.currentTimeMillis()));
+            created.complete(datasources);
+            return datasources;
+        } catch (DruidException | RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(clusterId, created);
+        }
+    }
+
+    /**
+     * Drop the datasource list of a cluster.
+     *
+     * @param clusterId ID of the cluster
+     */
+    public void invalidate(Integer clusterId) {
+        if (clusterId != null) {
+            entries.remove(clusterId);
+        }
+    }
+
+    /**
+     * Wait for a load of another caller.
+     *
+     * @param future the load in flight
+     * @return the datasources of the cluster
+     * @throws DruidException if the load failed
+     */
+    private static JsonArray await(CompletableFuture<JsonArray> future) throws DruidException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DruidException("Interrupted while waiting for the datasource list", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DruidException) {
+                throw (DruidException) cause;
+            }
+            throw new DruidException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Loads the datasource list of a cluster from its broker.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * Query the broker for its datasources.
+         *
+         * @return the datasources of the cluster
+         * @throws DruidException if an error occurs while querying the broker
+         */
+        JsonArray load() throws DruidException;
+    }
+
+    /**
+     * Cached datasource list of a cluster.
+     */
+    private static class Entry {
+
+        /** The datasources. */
+        private final JsonArray datasources;
+
+        /** Time the list was loaded in milliseconds. */
+        private final long loadedAtMillis;
+
+        /**
+         * @param datasources    the datasources
+         * @param loadedAtMillis time the list was loaded in milliseconds
+         */
+        Entry(JsonArray datasources, long loadedAtMillis) {
+            this.datasources = datasources;
+            this.loadedAtMillis = loadedAtMillis;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.yahoo.egads.data.MetricMeta;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.exception.DruidException;
+import com.yahoo.sherlock.exception.SherlockException;
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.query.Query;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the time series fetched from Druid between jobs that send
+ * the same query to the same cluster. The first job to ask for a
+ * query sends it, jobs asking while it is in flight wait for its
+ * result, and the result stays shared for the configured coalescing
+ * window. Each job gets its own copy of the series so that detection
+ * can still run separately for every job.
+ */
+@Slf4j
+public class DruidQueryCoalescer {
+
+    /** The singleton instance of this class. */
+    private static DruidQueryCoalescer druidQueryCoalescer;
+
+    /** Shared results by cluster ID and normalized query. */
+    private final Map<String, SharedResult> results = new ConcurrentHashMap<>();
+
+    /** Number of queries sent to Druid. */
+    private final AtomicLong fetchedCount = new AtomicLong();
+
+    /** Number of queries answered with a shared result. */
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared query coalescer
+     */
+    public static synchronized DruidQueryCoalescer getInstance() {
+        if (druidQueryCoalescer == null) {
+            druidQueryCoalescer = new DruidQueryCoalescer();
+        }
+        return druidQueryCoalescer;
+    }
+
+    /**
+     * Get the time series of a query, sharing the result with
+     * the other jobs sending the same query to the same cluster.
+     *
+     * @param cluster the cluster to query
+     * @param query   the query to send
+     * @param loader  fetches and parses the series if no shared result exists
+     * @return a copy of the time series of the query
+     * @throws SherlockException if the series could not be parsed
+     * @throws DruidException    if an error occurs while querying Druid
+     */
+    public List<TimeSeries> fetch(DruidCluster cluster, Query query, Loader loader) throws SherlockException, DruidException {
+        if (cluster.getClusterId() == null) {
+            fetchedCount.incrementAndGet();
+            return loader.load();
+        }
+        long now = System.currentTimeMillis();
+        long windowMillis = TimeUnit.SECONDS.toMillis(Math.max(0, CLISettings.QUERY_COALESCING_WINDOW));
+        results.values().removeIf(result -> result.isExpired(now, windowMillis));
+        String key = cluster.getClusterId() + ":" + normalize(query.getQueryJsonObject());
+        SharedResult created = new SharedResult();
+        SharedResult result = results.compute(key, (k, current) ->
+            current == null || current.isExpired(now, windowMillis) ? created : current);
+        if (result != created) {
+            sharedCount.incrementAndGet();
+            log.info("Sharing Druid query result with other jobs on cluster [{}]", cluster.getClusterId());
+            return copy(await(result));
+        }
+        fetchedCount.incrementAndGet();
+        try {
+            List<TimeSeries> timeSeriesList = loader.load();
+            created.complete(timeSeriesList);
+            if (windowMillis == 0) {
+                results.remove(key, created);
+            }
+            return copy(timeSeriesList);
+        } catch (SherlockException | DruidException | RuntimeException e) {
+            results.remove(key, created);
+            created.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop every shared result.
+     */
+    public void clear() {
+        results.clear();
+    }
+
+    /**
+     * @return a snapshot of the coalescing statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sharedResults", results.size());
+        stats.put("fetchedQueries", fetchedCount.get());
+        stats.put("sharedQueries", sharedCount.get());
+        return stats;
+    }
+
+    /**
+     * Wait for the result of a query sent by another job.
+     *
+     * @param result the shared result
+     * @return the time series of the query
+     * @throws SherlockException if the other job failed to parse the series
+     * @throws DruidException    if the other job failed to query Druid
+     */
+    private static List<TimeSeries> await(SharedResult result) throws SherlockException, DruidException {
+        try {
+            return result.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SherlockException("Interrupted while waiting for a shared Druid query", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DruidException) {
+                throw (DruidException) cause;
+            }
+            if (cause instanceof SherlockException) {
+                throw (SherlockException) cause;
+            }
+            throw new SherlockException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Write a JSON element with the keys of every object sorted,
+     * so that equal queries built in a different order match.
+     *
+     * @param element the JSON element
+     * @return the normalized JSON string
+     */
+    protected static String normalize(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return "null";
+        }
+        StringBuilder builder = new StringBuilder();
+        if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            builder.append('{');
+            for (String name : new TreeSet<>(object.keySet())) {
+                if (builder.length() > 1) {
+                    builder.append(',');
+                }
+                builder.append('"').append(name).append("\":").append(normalize(object.get(name)));
+            }
+            builder.append('}');
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            builder.append('[');
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(normalize(array.get(i)));
+            }
+            builder.append(']');
+        } else {
+            builder.append(element.toString());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Copy a list of time series so that a job
+     * cannot modify the series shared with others.
+     *
+     * @param timeSeriesList the series to copy
+     * @return a deep copy of the series
+     * @throws SherlockException if a data point cannot be copied
+     */
+    protected static List<TimeSeries> copy(List<TimeSeries> timeSeriesList) throws SherlockException {
+        List<TimeSeries> copies = new ArrayList<>(timeSeriesList.size());
+        for (TimeSeries source : timeSeriesList) {
+            TimeSeries copy = new TimeSeries();
+            copy.meta = new MetricMeta();
+            copy.meta.id = source.meta.id;
+            copy.meta.name = source.meta.name;
+            copy.meta.source = source.meta.source;
+            copy.meta.fileName = source.meta.fileName;
+            try {
+                for (TimeSeries.Entry entry : source.data) {
+                    copy.append(entry.time, entry.value);
+                }
+            } catch (Exception e) {
+                throw new SherlockException(e.getMessage(), e);
+            }
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * Fetches and parses the time series of a query.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * Fetch and parse the series.
+         *
+         * @return the time series of the query
+         * @throws SherlockException if the series could not be parsed
+         * @throws DruidException    if an error occurs while querying Druid
+         */
+        List<TimeSeries> load() throws SherlockException, DruidException;
+    }
+
+    /**
+     * Result of a query shared between jobs.
+     */
+    private static class SharedResult {
+
+        /** The series once the query completes. */
+        private final CompletableFuture<List<TimeSeries>> future = new CompletableFuture<>();
+
+        /** Time the query completed in milliseconds, 0 while in flight. */
+        private volatile long completedAtMillis;
+
+        /**
+         * @param timeSeriesList the series of the completed query
+         */
+        void complete(List<TimeSeries> timeSeriesList) {
+            completedAtMillis = System.currentTimeMillis();
+            future.complete(timeSeriesList);
+        }
+
+        /**
+         * @param now          current time in milliseconds
+         * @param windowMillis the coalescing window in milliseconds
+         * @return true if the result completed longer ago than the window
+         */
+        boolean isExpired(long now, long windowMillis) {
+            return completedAtMillis > 0 && now - completedAtMillis >= windowMillis;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.enums.Granularity;
+import com.yahoo.sherlock.exception.DruidException;
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.query.Query;
+import com.yahoo.sherlock.query.QueryBuilder;
+import com.yahoo.sherlock.scheduler.ExecutionDeadline;
+import com.yahoo.sherlock.settings.CLISettings;
+import com.yahoo.sherlock.settings.QueryConstants;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits Druid queries whose response would be too large into queries
+ * of consecutive time slices of the query window, which are sent
+ * concurrently and whose series are merged back in time order. The
+ * size of a response is estimated as the number of intervals of the
+ * query times the number of dimension value combinations the query
+ * returned on its last run, or its threshold for a topN query.
+ */
+@Slf4j
+public class DruidQueryPlanner {
+
+    /** Number of queries whose cardinality is remembered. */
+    private static final int MAX_CARDINALITIES = 1000;
+
+    /** The singleton instance of this class. */
+    private static DruidQueryPlanner druidQueryPlanner;
+
+    /** Dimension value combinations returned by the last run of each query, least recently used first. */
+    private final Map<String, Integer> cardinalities = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_CARDINALITIES;
+        }
+    };
+
+    /**
+     * Threads sending the slices of split queries. There are at most
+     * as many as threads querying Druid in the job pipeline, and the
+     * slices over that number wait for a free thread.
+     */
+    private final ThreadPoolExecutor sliceExecutor = newSliceExecutor();
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared query planner
+     */
+    public static synchronized DruidQueryPlanner getInstance() {
+        if (druidQueryPlanner == null) {
+            druidQueryPlanner = new DruidQueryPlanner();
+        }
+        return druidQueryPlanner;
+    }
+
+    /**
+     * @return the pool of threads sending the slices of split queries
+     */
+    private static ThreadPoolExecutor newSliceExecutor() {
+        int size = Math.max(1, CLISettings.PIPELINE_DRUID_THREADS);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "DruidQuerySlice");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Fetch the time series of a query, splitting it into time slices
+     * sent concurrently if its response is estimated to be too large.
+     *
+     * @param cluster the cluster to query
+     * @param query   the query
+     * @param fetcher fetches the time series of a query from Druid
+     * @return every time series of the query, including incomplete ones
+     * @throws DruidException if an error occurs while querying Druid
+     */
+    public List<TimeSeries> fetch(DruidCluster cluster, Query query, Fetcher fetcher) throws DruidException {
+        String key = query.getQueryJsonObject() == null ? null : cluster.getClusterId() + ":" + TimeSeriesWindowCache.signature(query);
+        List<Query> slices = plan(query, estimateRows(key, query), CLISettings.QUERY_SPLIT_MAX_ROWS, CLISettings.QUERY_SPLIT_MAX_SLICES);
+        List<TimeSeries> timeSeriesList;
+        if (slices.size() == 1) {
+            timeSeriesList = fetcher.fetch(query);
+        } else {
+            log.info("Splitting the query of cluster [{}] into {} time slices", cluster.getClusterId(), slices.size());
+            timeSeriesList = merge(fetchSlices(slices, fetcher));
+        }
+        if (key != null) {
+            int cardinality = (int) timeSeriesList.stream().map(timeSeries -> timeSeries.meta.source).distinct().count();
+            synchronized (cardinalities) {
+                cardinalities.put(key, cardinality);
+            }
+        }
+        return timeSeriesList;
+    }
+
+    /**
+     * Estimate the number of rows of the response to a query.
+     *
+     * @param key   cluster and signature of the query, or null if it has none
+     * @param query the query
+     * @return the estimated number of rows
+     */
+    protected long estimateRows(String key, Query query) {
+        Integer cardinality = null;
+        if (key != null) {
+            synchronized (cardinalities) {
+                cardinality = cardinalities.get(key);
+            }
+        }
+        long rowsPerInterval = Math.max(1, cardinality == null ? 1 : cardinality);
+        JsonObject queryObj = query.getQueryJsonObject();
+        JsonElement threshold = queryObj == null ? null : queryObj.get(QueryConstants.THRESHOLD);
+        if (isQueryType(queryObj, QueryConstants.TOPN) && threshold != null && threshold.isJsonPrimitive()) {
+            rowsPerInterval = Math.max(rowsPerInterval, threshold.getAsLong());
+        }
+        return intervalCount(query) * rowsPerInterval;
+    }
+
+    /**
+     * Split a query into consecutive time slices of whole intervals,
+     * enough for each slice to stay within the row limit.
+     *
+     * @param query         the query
+     * @param estimatedRows estimated number of rows of the response
+     * @param maxRows       number of rows above which the query is split, 0 to never split
+     * @param maxSlices     maximum number of slices
+     * @return the queries of the slices in time order, or the query itself if it is not split
+     */
+    protected static List<Query> plan(Query query, long estimatedRows, long maxRows, int maxSlices) {
+        List<Query> slices = new ArrayList<>();
+        long intervals = intervalCount(query);
+        if (maxRows <= 0 || estimatedRows <= maxRows || intervals < 2 || !isSplittable(query)) {
+            slices.add(query);
+            return slices;
+        }
+        long sliceCount = Math.min(Math.min(intervals, Math.max(2, maxSlices)), (estimatedRows + maxRows - 1) / maxRows);
+        long intervalsPerSlice = (intervals + sliceCount - 1) / sliceCount;
+        long bucket = bucketSeconds(query);
+        long end = query.getRunTime();
+        for (long start = query.getStartTime(); start < end; start += intervalsPerSlice * bucket) {
+            long sliceEnd = Math.min(end, start + intervalsPerSlice * bucket);
+            JsonObject queryObj = new JsonParser().parse(query.getQueryJsonObject().toString()).getAsJsonObject();
+            queryObj.remove(QueryConstants.INTERVALS);
+            queryObj.addProperty(QueryConstants.INTERVALS, QueryBuilder.asDruidDate(toDate(start)) + '/' + QueryBuilder.asDruidDate(toDate(sliceEnd)));
+            slices.add(new Query(queryObj, (int) start, (int) sliceEnd, query.getGranularity(), query.getGranularityRange()));
+        }
+        return slices;
+    }
+
+    /**
+     * A query can be split in time if its intervals have a fixed length
+     * and none of its rows depend on the rows of other intervals.
+     *
+     * @param query the query
+     * @return whether the query can be split into time slices
+     */
+    private static boolean isSplittable(Query query) {
+        JsonObject queryObj = query.getQueryJsonObject();
+        if (queryObj == null || query.getGranularity() == null || query.getGranularity() == Granularity.MONTH) {
+            return false;
+        }
+        // the limit of a groupBy applies to the rows of every interval together
+        JsonElement limitSpec = queryObj.get(QueryConstants.LIMIT_SPEC);
+        return !(isQueryType(queryObj, QueryConstants.GROUP_BY)
+                 && limitSpec != null && limitSpec.isJsonObject() && limitSpec.getAsJsonObject().has(QueryConstants.LIMIT));
+    }
+
+    /**
+     * @param queryObj  the query
+     * @param queryType a Druid query type
+     * @return whether the query is of the given type
+     */
+    private static boolean isQueryType(JsonObject queryObj, String queryType) {
+        JsonElement type = queryObj == null ? null : queryObj.get(QueryConstants.QUERY_TYPE);
+        return type != null && type.isJsonPrimitive() && queryType.equals(type.getAsString());
+    }
+
+    /**
+     * @param query the query
+     * @return the length of the intervals of the query in seconds
+     */
+    private static long bucketSeconds(Query query) {
+        int granularityRange = query.getGranularityRange() == null ? 1 : query.getGranularityRange();
+        return query.getGranularity().getMinutes() * 60L * granularityRange;
+    }
+
+    /**
+     * @param query the query
+     * @return the number of intervals of the query window
+     */
+    private static long intervalCount(Query query) {
+        if (query.getGranularity() == null || query.getStartTime() == null || query.getRunTime() == null) {
+            return 1;
+        }
+        long bucket = bucketSeconds(query);
+        return Math.max(1, (query.getRunTime() - query.getStartTime() + bucket - 1) / bucket);
+    }
+
+    /**
+     * @param seconds seconds since epoch
+     * @return the UTC date
+     */
+    private static ZonedDateTime toDate(long seconds) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds), ZoneOffset.UTC);
+    }
+
+    /**
+     * Send the slices of a query concurrently. Each slice runs with the
+     * metric tags and the deadline of the calling job, so that its
+     * request is timed for the job and aborted when the job expires.
+     *
+     * @param slices  the queries of the slices
+     * @param fetcher fetches the time series of a query from Druid
+     * @return the time series of each slice, in the order of the slices
+     * @throws DruidException if the query of a slice fails
+     */
+    private List<List<TimeSeries>> fetchSlices(List<Query> slices, Fetcher fetcher) throws DruidException {
+        List<Future<List<TimeSeries>>> futures = new ArrayList<>(slices.size());
+        PipelineMetrics.Tags tags = PipelineMetrics.current();
+        ExecutionDeadline deadline = ExecutionDeadline.current();
+        for (Query slice : slices) {
+            futures.add(sliceExecutor.submit(() -> {
+                try (PipelineMetrics.Scope scope = PipelineMetrics.tag(tags);
+                     ExecutionDeadline.Binding binding = deadline == null ? ExecutionDeadline.Binding.NONE : deadline.attach()) {
+                    return fetcher.fetch(slice);
+                }
+            }));
+        }
+        List<List<TimeSeries>> results = new ArrayList<>(slices.size());
+        try {
+            for (Future<List<TimeSeries>> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DruidException("Interrupted while waiting for the slices of a query", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DruidException) {
+                throw (DruidException) cause;
+            }
+            throw new DruidException(cause.getMessage(), cause);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    /**
+     * Merge the series of consecutive time slices.
+     *
+     * @param sliceSeries the series of each slice, in time order
+     * @return the series of the whole query
+     * @throws DruidException if a data point cannot be added
+     */
+    protected static List<TimeSeries> merge(List<List<TimeSeries>> sliceSeries) throws DruidException {
+        Map<String, TimeSeries> merged = new LinkedHashMap<>();
+        try {
+            for (List<TimeSeries> timeSeriesList : sliceSeries) {
+                for (TimeSeries source : timeSeriesList) {
+                    TimeSeries timeSeries = merged.putIfAbsent(source.meta.name + "|" + source.meta.source, source);
+                    if (timeSeries != null) {
+                        for (TimeSeries.Entry entry : source.data) {
+                            timeSeries.append(entry.time, entry.value);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new DruidException(e.getMessage(), e);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Fetches the time series of a query from Druid.
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+
+        /**
+         * Send the query and parse every series of the response.
+         *
+         * @param query the query to send
+         * @return the time series of the query
+         * @throws DruidException if an error occurs while querying Druid
+         */
+        List<TimeSeries> fetch(Query query) throws DruidException;
+    }
+}
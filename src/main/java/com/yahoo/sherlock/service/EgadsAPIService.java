@@ -12,6 +12,7 @@ import com.yahoo.egads.control.ModelAdapter;
 import com.yahoo.egads.control.AnomalyDetector;
 import com.yahoo.egads.data.Anomaly;
 import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.enums.PipelineStage;
 import com.yahoo.sherlock.exception.SherlockException;
 import com.yahoo.sherlock.model.DetectorResult;
 import com.yahoo.sherlock.utils.EgadsUtils;
@@ -45,6 +46,10 @@ public class EgadsAPIService extends DetectorAPIService {
         List<Anomaly> anomalies = new ArrayList<>();
         try {
             for (TimeSeries ts : timeSeriesList) {
+                // stop between series once the run is cancelled
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new SherlockException("Detection cancelled after " + anomalies.size() + " anomalies");
+                }
                 if (ts.data.isEmpty() || ts.time(ts.size() - 1) != endTimeMinutes * 60L) {
                     anomalies.add(getNoDataAnomaly(ts));
                 } else {
@@ -69,8 +74,14 @@ public class EgadsAPIService extends DetectorAPIService {
     protected List<Anomaly> detectAnomalies(TimeSeries timeseries) throws SherlockException {
         List<Anomaly> anomalies = new ArrayList<>();
         try {
-            ProcessableObject processableObject = getEgadsProcessableObject(timeseries);
-            processableObject.process();
+            ProcessableObject processableObject;
+            try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.MODEL_FILL)) {
+                processableObject = getEgadsProcessableObject(timeseries);
+            }
+            // EGADS trains the model and detects anomalies in one step
+            try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.MODEL_DETECT)) {
+                processableObject.process();
+            }
             anomalies.addAll((ArrayList<Anomaly>) processableObject.result());
         } catch (Exception e) {
             log.error("Exception from EGADS!", e);
@@ -154,7 +154,7 @@ public class EmailService {
             if (isTimeToSend) {
                 List<AnomalyReport> anomalyReports = anomalyReportAccessor.getAnomalyReportsForEmailId(emailMetaData.getEmailId());
                 List<AnomalyReport> filteredReports = anomalyReports.stream()
-                    .filter(a -> !a.getStatus().equalsIgnoreCase(Constants.SUCCESS))
+                    .filter(EmailService::isReportable)
                     .collect(Collectors.toList());
                 log.info("Sending {} anomaly reports to {}", filteredReports.size(), emailMetaData.getEmailId());
                 if (filteredReports.size() > 0) {
@@ -174,7 +174,7 @@ public class EmailService {
      */
     public void processEmailReports(JobMetadata job, List<String> emails, List<AnomalyReport> anomalyReports) {
         anomalyReports = anomalyReports.stream()
-            .filter(a -> !a.getStatus().equalsIgnoreCase(Constants.SUCCESS))
+            .filter(EmailService::isReportable)
             .collect(Collectors.toList());
         if (CLISettings.ENABLE_EMAIL) {
             if (isErrorCase(anomalyReports)) {
@@ -195,6 +195,18 @@ public class EmailService {
         }
     }
 
+    /**
+     * Helper to filter the reports to email. Successful runs have
+     * nothing to report and timed out runs are retried on the next
+     * schedule, so neither is emailed.
+     * @param anomalyReport the anomaly report
+     * @return true if the report should be emailed
+     */
+    private static boolean isReportable(AnomalyReport anomalyReport) {
+        return !anomalyReport.getStatus().equalsIgnoreCase(Constants.SUCCESS)
+            && !anomalyReport.getStatus().equalsIgnoreCase(Constants.TIMEOUT);
+    }
+
     /**
      * Helper to identify Error case in anomaly reports.
      * @param anomalyReports input list of anomaly reports
@@ -279,8 +291,10 @@ public class EmailService {
             log.info("Email sent successfully!");
         } catch (Exception e) {
             log.error("Exception in sending email!", e);
+            PipelineMetrics.count(PipelineMetrics.EMAILS, "failed");
             return false;
         }
+        PipelineMetrics.count(PipelineMetrics.EMAILS, "sent");
         return true;
     }
 }
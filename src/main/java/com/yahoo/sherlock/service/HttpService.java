@@ -6,29 +6,49 @@
 
 package com.yahoo.sherlock.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.yahoo.sherlock.enums.PipelineStage;
 import com.yahoo.sherlock.exception.DetectorServiceException;
 import com.yahoo.sherlock.exception.DruidException;
 import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.scheduler.ExecutionDeadline;
 import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.settings.DruidConstants;
 import com.yahoo.sherlock.utils.SHttpClient;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
 /**
  * Service class for http rest calls.
@@ -36,6 +56,60 @@ import java.io.InputStreamReader;
 @Slf4j
 public class HttpService {
 
+    /**
+     * Content type of Smile encoded queries and responses.
+     */
+    private static final ContentType SMILE = ContentType.create("application/x-jackson-smile");
+
+    /**
+     * Mapper reading the JSON of queries.
+     */
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    /**
+     * Mapper writing the Smile encoding of queries.
+     */
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+    /**
+     * Timer starting the hedged requests.
+     */
+    private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DruidHedgeTimer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Threads sending the hedged requests, created on first use.
+     */
+    private static ThreadPoolExecutor hedgeExecutor;
+
+    /**
+     * Get the threads sending the hedged requests. There are at most
+     * as many as threads querying Druid in the job pipeline, and a
+     * query is not hedged while they are all busy.
+     *
+     * @return the hedge executor
+     */
+    private static synchronized ThreadPoolExecutor getHedgeExecutor() {
+        if (hedgeExecutor == null) {
+            hedgeExecutor = new ThreadPoolExecutor(
+                0,
+                Math.max(1, CLISettings.PIPELINE_DRUID_THREADS),
+                60L,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "DruidHedge");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            );
+        }
+        return hedgeExecutor;
+    }
+
     /**
      * Method to get SHttpClient instance.
      * @return SHttpClient instance
@@ -44,9 +118,26 @@ public class HttpService {
         return SHttpClient.getSHttpClient();
     }
 
+    /**
+     * Method to get the limiter of queries sent to each cluster.
+     * @return ClusterQueryLimiter instance
+     */
+    public ClusterQueryLimiter getQueryLimiter() {
+        return ClusterQueryLimiter.getInstance();
+    }
+
+    /**
+     * Method to get the selector of the broker each query is sent to.
+     * @return DruidBrokerSelector instance
+     */
+    public DruidBrokerSelector getBrokerSelector() {
+        return DruidBrokerSelector.getInstance();
+    }
+
     /**
      *
-     * Service method to call druid.
+     * Service method to call druid. The query waits for a permit
+     * if the cluster is at its configured query limits.
      *
      * @param cluster    the Druid cluster to issue the query
      * @param druidQuery druid query json object
@@ -54,29 +145,338 @@ public class HttpService {
      * @throws DruidException http request exception while querying druid
      */
     public JsonArray queryDruid(DruidCluster cluster, JsonObject druidQuery) throws DruidException {
-        log.info("Calling druid broker.");
-        String url = cluster.getBrokerUrl();
-        HttpClient client = getHttpClient().newHttpClient(cluster.getIsSSLAuth(), cluster.getPrincipalName());
-        HttpPost httpPost = getHttpClient().newHttpPost(url);
+        return queryDruidWithPermit(cluster, druidQuery, false, false, (inputStream, smile) -> {
+            try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.RESPONSE_PARSE)) {
+                // get the response as json array
+                JsonArray jsonArray = new Gson().fromJson(new InputStreamReader(inputStream), JsonArray.class);
+                log.info("Parsed druid response to json array.");
+                return jsonArray;
+            }
+        });
+    }
+
+    /**
+     * Service method to call druid, handing the response body to a
+     * reader as it is received. The response is Smile encoded if the
+     * cluster is set to use Smile. The query waits for a permit if the
+     * cluster is at its configured query limits.
+     *
+     * @param cluster        the Druid cluster to issue the query
+     * @param druidQuery     druid query json object
+     * @param responseReader reader of the response body
+     * @param <T>            type of the read response
+     * @return the read response
+     * @throws DruidException http request exception while querying druid, or if the reader fails
+     */
+    public <T> T queryDruid(DruidCluster cluster, JsonObject druidQuery, ResponseReader<T> responseReader) throws DruidException {
+        return queryDruidWithPermit(cluster, druidQuery, Boolean.TRUE.equals(cluster.getSmileEncoding()), false, responseReader);
+    }
+
+    /**
+     * Service method to call druid for a latency critical query, which
+     * is hedged with a second broker if the cluster is set to hedge
+     * requests. The response is read as it is received.
+     *
+     * @param cluster         the Druid cluster to issue the query
+     * @param druidQuery      druid query json object
+     * @param latencyCritical whether the query may be hedged
+     * @param responseReader  reader of the response body
+     * @param <T>             type of the read response
+     * @return the read response
+     * @throws DruidException http request exception while querying druid, or if the reader fails
+     */
+    public <T> T queryDruid(DruidCluster cluster, JsonObject druidQuery, boolean latencyCritical, ResponseReader<T> responseReader)
+        throws DruidException {
+        boolean hedge = latencyCritical && Boolean.TRUE.equals(cluster.getHedgeRequests());
+        return queryDruidWithPermit(cluster, druidQuery, Boolean.TRUE.equals(cluster.getSmileEncoding()), hedge, responseReader);
+    }
+
+    /**
+     * Wait for a permit to query the cluster, then query it.
+     *
+     * @param cluster        the Druid cluster to issue the query
+     * @param druidQuery     druid query json object
+     * @param smile          whether to ask for a Smile encoded response
+     * @param hedge          whether to hedge the query with a second broker
+     * @param responseReader reader of the response body
+     * @param <T>            type of the read response
+     * @return the read response
+     * @throws DruidException http request exception while querying druid, or if the reader fails
+     */
+    private <T> T queryDruidWithPermit(DruidCluster cluster, JsonObject druidQuery, boolean smile, boolean hedge, ResponseReader<T> responseReader)
+        throws DruidException {
+        ClusterQueryLimiter.Permit permit;
+        try {
+            permit = getQueryLimiter().acquire(cluster);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DruidException("Interrupted while waiting to query the cluster", e);
+        }
+        try {
+            return queryDruidBrokers(cluster, druidQuery, smile, hedge, responseReader);
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Send a query to the brokers of the cluster in the order given by
+     * the broker selector, failing over to the next broker while the
+     * brokers cannot be reached or fail with a server error.
+     *
+     * @param cluster        the Druid cluster to issue the query
+     * @param druidQuery     druid query json object
+     * @param smile          whether to ask for a Smile encoded response
+     * @param hedge          whether to hedge the query with a second broker
+     * @param responseReader reader of the response body
+     * @param <T>            type of the read response
+     * @return the read response
+     * @throws DruidException http request exception while querying druid, or if the reader fails
+     */
+    private <T> T queryDruidBrokers(DruidCluster cluster, JsonObject druidQuery, boolean smile, boolean hedge, ResponseReader<T> responseReader)
+        throws DruidException {
+        List<String> urls = getBrokerSelector().order(cluster);
+        if (urls.isEmpty()) {
+            throw new DruidException("No broker is set for the cluster");
+        }
+        long hedgeDelayMillis = hedge && urls.size() > 1 ? getBrokerSelector().hedgeDelayMillis(cluster) : -1;
+        int next = 0;
+        while (true) {
+            String url = urls.get(next++);
+            try {
+                if (next == 1 && hedgeDelayMillis > 0) {
+                    // the hedged brokers record their own failures
+                    return queryHedged(cluster, url, urls.get(next++), druidQuery, smile, responseReader, hedgeDelayMillis);
+                }
+                try {
+                    return queryDruidBroker(cluster, url, getHttpClient().newHttpPost(url), druidQuery, smile, responseReader, () -> false);
+                } catch (BrokerUnavailableException e) {
+                    getBrokerSelector().recordFailure(url);
+                    throw e;
+                }
+            } catch (BrokerUnavailableException e) {
+                if (next >= urls.size()) {
+                    throw e;
+                }
+                log.warn("Broker [{}] is unavailable, failing over to broker [{}]", url, urls.get(next));
+            }
+        }
+    }
+
+    /**
+     * Send a query to a broker and, if it has not answered after the
+     * hedge delay, to a second broker. The first response is kept and
+     * the other request is aborted. The hedged request runs with the
+     * metric tags of the calling job and is skipped once the deadline
+     * of the job expired. It holds its own query permit of the cluster
+     * and is skipped if the cluster may not take another query at once.
+     *
+     * @param cluster          the Druid cluster to issue the query
+     * @param firstUrl         URL of the first broker
+     * @param secondUrl        URL of the broker to hedge with
+     * @param druidQuery       druid query json object
+     * @param smile            whether to ask for a Smile encoded response
+     * @param responseReader   reader of the response body
+     * @param hedgeDelayMillis delay before hedging in milliseconds
+     * @param <T>              type of the read response
+     * @return the first read response
+     * @throws DruidException if both requests fail
+     */
+    private <T> T queryHedged(
+        DruidCluster cluster,
+        String firstUrl,
+        String secondUrl,
+        JsonObject druidQuery,
+        boolean smile,
+        ResponseReader<T> responseReader,
+        long hedgeDelayMillis
+    ) throws DruidException {
+        HttpPost firstPost = getHttpClient().newHttpPost(firstUrl);
+        HttpPost secondPost = getHttpClient().newHttpPost(secondUrl);
+        CompletableFuture<T> second = new CompletableFuture<>();
+        AtomicBoolean settled = new AtomicBoolean(false);
+        // set by whichever of the hedge and the failover sends the query to the second broker
+        AtomicBoolean secondSent = new AtomicBoolean(false);
+        PipelineMetrics.Tags tags = PipelineMetrics.current();
+        ExecutionDeadline deadline = ExecutionDeadline.current();
+        Runnable hedge = () -> {
+            if (settled.get() || (deadline != null && deadline.isExpired())) {
+                return;
+            }
+            ClusterQueryLimiter.Permit permit = getQueryLimiter().tryAcquire(cluster);
+            if (permit == null) {
+                log.debug("Cluster [{}] is at its query limit, not hedging the query to broker [{}]", cluster.getClusterId(), firstUrl);
+                return;
+            }
+            if (!secondSent.compareAndSet(false, true)) {
+                permit.close();
+                return;
+            }
+            getBrokerSelector().recordHedge();
+            log.info("Broker [{}] did not answer within {} ms, hedging with broker [{}]", firstUrl, hedgeDelayMillis, secondUrl);
+            T result;
+            // the permit is released before the result is handed over
+            try (ClusterQueryLimiter.Permit hedgePermit = permit; PipelineMetrics.Scope scope = PipelineMetrics.tag(tags)) {
+                result = queryDruidBroker(cluster, secondUrl, secondPost, druidQuery, smile, responseReader, settled::get);
+            } catch (DruidException | RuntimeException e) {
+                if (!settled.get() && e instanceof BrokerUnavailableException) {
+                    getBrokerSelector().recordFailure(secondUrl);
+                }
+                second.completeExceptionally(e);
+                return;
+            }
+            if (settled.compareAndSet(false, true)) {
+                firstPost.abort();
+            }
+            second.complete(result);
+        };
+        ScheduledFuture<?> hedgeTask = HEDGE_TIMER.schedule(() -> {
+            try {
+                getHedgeExecutor().execute(hedge);
+            } catch (RejectedExecutionException e) {
+                log.debug("Every hedge thread is busy, not hedging the query to broker [{}]", firstUrl);
+            }
+        }, hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        try (ExecutionDeadline.Registration registration = ExecutionDeadline.onExpiry(secondPost::abort)) {
+            try {
+                T result = queryDruidBroker(cluster, firstUrl, firstPost, druidQuery, smile, responseReader, settled::get);
+                if (settled.compareAndSet(false, true)) {
+                    hedgeTask.cancel(false);
+                    secondPost.abort();
+                    return result;
+                }
+            } catch (BrokerUnavailableException e) {
+                if (settled.get()) {
+                    // aborted by the response of the second broker
+                    return await(second, secondPost);
+                }
+                getBrokerSelector().recordFailure(firstUrl);
+                if (secondSent.compareAndSet(false, true)) {
+                    hedgeTask.cancel(false);
+                    // the second broker is not queried yet, send it the query now
+                    try {
+                        return queryDruidBroker(cluster, secondUrl, secondPost, druidQuery, smile, responseReader, settled::get);
+                    } catch (BrokerUnavailableException secondFailure) {
+                        getBrokerSelector().recordFailure(secondUrl);
+                        throw secondFailure;
+                    }
+                }
+            } catch (DruidException e) {
+                if (settled.compareAndSet(false, true)) {
+                    // the query or the response is at fault, which the second broker would not change
+                    hedgeTask.cancel(false);
+                    secondPost.abort();
+                    throw e;
+                }
+            }
+            return await(second, secondPost);
+        }
+    }
+
+    /**
+     * Wait for the response of a hedged request.
+     *
+     * @param future   the response of the request
+     * @param httpPost the request, aborted if the wait is interrupted
+     * @param <T>      type of the read response
+     * @return the read response
+     * @throws DruidException if the request failed
+     */
+    private static <T> T await(CompletableFuture<T> future, HttpPost httpPost) throws DruidException {
         try {
-            HttpEntity httpEntity = new StringEntity(druidQuery.toString(), ContentType.APPLICATION_JSON);
+            return future.get();
+        } catch (InterruptedException e) {
+            httpPost.abort();
+            Thread.currentThread().interrupt();
+            throw new DruidException("Interrupted while waiting for the hedged query", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DruidException) {
+                throw (DruidException) cause;
+            }
+            throw new DruidException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Send a query to a Druid broker. Compressed responses are
+     * accepted and decompressed by the client as they are read.
+     *
+     * @param cluster        the Druid cluster to issue the query
+     * @param url            URL of the broker
+     * @param httpPost       the request to send the query with
+     * @param druidQuery     druid query json object
+     * @param smile          whether to send the query and ask for the response in Smile
+     * @param responseReader reader of the response body
+     * @param superseded     whether the request was aborted because another broker settled the query
+     * @param <T>            type of the read response
+     * @return the read response
+     * @throws BrokerUnavailableException if the broker cannot be reached or fails with a server error
+     * @throws DruidException             http request exception while querying druid
+     */
+    private <T> T queryDruidBroker(
+        DruidCluster cluster,
+        String url,
+        HttpPost httpPost,
+        JsonObject druidQuery,
+        boolean smile,
+        ResponseReader<T> responseReader,
+        BooleanSupplier superseded
+    ) throws DruidException {
+        log.info("Calling druid broker.");
+        HttpClient client = getHttpClient().getDruidHttpClient(cluster);
+        // abort the request if the job run exceeds its deadline
+        try (ExecutionDeadline.Registration registration = ExecutionDeadline.onExpiry(httpPost::abort)) {
+            HttpEntity httpEntity;
+            if (smile) {
+                // Druid answers in the format of the query, or of the Accept header on recent versions
+                httpEntity = new ByteArrayEntity(SMILE_MAPPER.writeValueAsBytes(JSON_MAPPER.readTree(druidQuery.toString())), SMILE);
+                httpPost.setHeader(HttpHeaders.ACCEPT, SMILE.getMimeType());
+            } else {
+                httpEntity = new StringEntity(druidQuery.toString(), ContentType.APPLICATION_JSON);
+            }
             httpPost.setEntity(httpEntity);
             // Execute query to Druid
-            HttpResponse response = client.execute(httpPost);
+            HttpResponse response;
+            long start = System.nanoTime();
+            try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.DRUID_QUERY)) {
+                response = client.execute(httpPost);
+            } catch (IOException e) {
+                throw new BrokerUnavailableException(e.getMessage(), e);
+            }
             int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                log.error("Post request to broker endpoint failed: {}", response.getStatusLine());
+                throw new BrokerUnavailableException("Post request to broker endpoint failed: " + statusCode, null);
+            }
+            getBrokerSelector().recordSuccess(url, System.nanoTime() - start);
             if (statusCode != HttpStatus.SC_OK) {
                 log.error("Post request to broker endpoint failed: {}", response.getStatusLine());
                 throw new DruidException("Post request to broker endpoint failed: " + statusCode);
             }
             // Read the response body.
             InputStream inputStream = response.getEntity().getContent();
-            Gson gson = new Gson();
-            // get the response as json array
-            JsonArray jsonArray = gson.fromJson(new InputStreamReader(inputStream), JsonArray.class);
-            log.info("Parsed druid response to json array.");
-            return jsonArray;
+            Header contentType = response.getEntity().getContentType();
+            boolean smileResponse = contentType != null && contentType.getValue().startsWith(SMILE.getMimeType());
+            T result = responseReader.read(inputStream, smileResponse);
+            // Read the rest of the body so the connection goes back to the pool
+            EntityUtils.consume(response.getEntity());
+            return result;
+        } catch (BrokerUnavailableException e) {
+            if (superseded.getAsBoolean()) {
+                log.debug("Hedged query to broker [{}] was aborted after another broker answered", url);
+                throw e;
+            }
+            log.error("Error while sending druid query to broker [{}]!", url, e);
+            PipelineMetrics.count(PipelineMetrics.DRUID_QUERY_ERRORS, cluster.getClusterId() == null ? null : cluster.getClusterId().toString());
+            throw e;
         } catch (Exception e) {
+            if (superseded.getAsBoolean()) {
+                log.debug("Hedged query to broker [{}] was aborted after another broker answered", url);
+                throw new DruidException(e.getMessage(), e);
+            }
             log.error("Error while sending druid query!", e);
+            PipelineMetrics.count(PipelineMetrics.DRUID_QUERY_ERRORS, cluster.getClusterId() == null ? null : cluster.getClusterId().toString());
             throw new DruidException(e.getMessage(), e);
         } finally {
             // Release the connection.
@@ -93,9 +493,31 @@ public class HttpService {
      * @throws DruidException when an error occurs sending the request or parsing response
      */
     public JsonArray queryDruidDatasources(DruidCluster cluster) throws DruidException {
+        List<String> urls = getBrokerSelector().order(cluster);
+        DruidException failure = new DruidException("No broker is set for the cluster");
+        for (String url : urls) {
+            try {
+                return queryDruidDatasources(cluster, url);
+            } catch (DruidException e) {
+                getBrokerSelector().recordFailure(url);
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Get the list of datasources from a broker.
+     *
+     * @param cluster   the Druid cluster to query for datasources
+     * @param brokerUrl URL of the broker
+     * @return a JsonArray of datasources on the specified cluster
+     * @throws DruidException when an error occurs sending the request or parsing response
+     */
+    private JsonArray queryDruidDatasources(DruidCluster cluster, String brokerUrl) throws DruidException {
         log.info("Calling Druid broker for datasource list.");
-        String url = cluster.getBrokerUrl() + DruidConstants.DATASOURCES;
-        HttpClient client = getHttpClient().newHttpClient(2000, 2, cluster.getIsSSLAuth(), cluster.getPrincipalName());
+        String url = brokerUrl + DruidConstants.DATASOURCES;
+        HttpClient client = getHttpClient().getDruidHttpClient(cluster, 2000, 2);
         HttpGet httpGet = getHttpClient().newHttpGet(url);
         try {
             HttpResponse response = client.execute(httpGet);
@@ -107,6 +529,7 @@ public class HttpService {
             // Read response body for datasources
             InputStream inputStream = response.getEntity().getContent();
             JsonArray responseArr = new Gson().fromJson(new InputStreamReader(inputStream), JsonArray.class);
+            EntityUtils.consume(response.getEntity());
             log.info("Parsed response from Druid and found {} datasources", responseArr.size());
             return responseArr;
         } catch (Exception e) {
@@ -125,12 +548,37 @@ public class HttpService {
      * @throws DruidException if an error occured while contacting the cluster
      */
     public int queryDruidClusterStatus(DruidCluster cluster) throws DruidException {
+        return queryDruidStatus(cluster, cluster.getBaseUrl());
+    }
+
+    /**
+     * Check the status of a broker of a Druid cluster using the {@code /status} endpoint.
+     *
+     * @param cluster the cluster of the broker
+     * @param baseUrl base URL of the broker
+     * @return the status code from querying the broker
+     * @throws DruidException if an error occured while contacting the broker
+     */
+    public int queryDruidBrokerStatus(DruidCluster cluster, String baseUrl) throws DruidException {
+        return queryDruidStatus(cluster, baseUrl);
+    }
+
+    /**
+     * Query the {@code /status} endpoint of a broker.
+     *
+     * @param cluster the cluster of the broker
+     * @param baseUrl base URL of the broker
+     * @return the status code from querying the broker
+     * @throws DruidException if an error occured while contacting the broker
+     */
+    private int queryDruidStatus(DruidCluster cluster, String baseUrl) throws DruidException {
         log.info("Calling Druid broker for status.");
-        String url = cluster.getBaseUrl() + DruidConstants.STATUS;
+        String url = baseUrl + DruidConstants.STATUS;
         HttpGet httpGet = getHttpClient().newHttpGet(url);
-        HttpClient client = getHttpClient().newHttpClient(300, 0, cluster.getIsSSLAuth(), cluster.getPrincipalName());
+        HttpClient client = getHttpClient().getDruidHttpClient(cluster, 300, 0);
         try {
             HttpResponse response = client.execute(httpGet);
+            EntityUtils.consume(response.getEntity());
             return response.getStatusLine().getStatusCode();
         } catch (IOException e) {
             throw new DruidException(e.getMessage(), e);
@@ -151,8 +599,8 @@ public class HttpService {
     public JsonObject queryProphetService(String prophetUrl, JsonObject prophetQuery) throws DetectorServiceException {
         log.info("Calling Prophet REST Service.");
         HttpPost httpPost = getHttpClient().newHttpPost(prophetUrl);
-        HttpClient client = getHttpClient().newHttpClient(CLISettings.PROPHET_TIMEOUT, 0, false, CLISettings.PROPHET_PRINCIPAL);
-        try {
+        HttpClient client = getHttpClient().getProphetHttpClient(prophetUrl);
+        try (ExecutionDeadline.Registration registration = ExecutionDeadline.onExpiry(httpPost::abort)) {
             HttpEntity httpEntity = new StringEntity(prophetQuery.toString(), ContentType.APPLICATION_JSON);
             httpPost.setEntity(httpEntity);
             // execute query to Prophet Service
@@ -168,6 +616,7 @@ public class HttpService {
             Gson gson = new Gson();
             // get the response as json array
             JsonObject jsonObject = gson.fromJson(new InputStreamReader(inputStream), JsonObject.class);
+            EntityUtils.consume(response.getEntity());
             return jsonObject;
         } catch (Exception e) {
             log.error("Error while sending Prophet Query!", e);
@@ -176,4 +625,38 @@ public class HttpService {
             httpPost.releaseConnection();
         }
     }
+
+    /**
+     * Reads the body of a Druid response.
+     *
+     * @param <T> type of the read response
+     */
+    @FunctionalInterface
+    public interface ResponseReader<T> {
+
+        /**
+         * Read the response body while it is received.
+         *
+         * @param inputStream the response body
+         * @param smile       whether the body is Smile encoded rather than JSON text
+         * @return the read response
+         * @throws Exception if the body cannot be read
+         */
+        T read(InputStream inputStream, boolean smile) throws Exception;
+    }
+
+    /**
+     * Failure of a broker to answer a query, after which the query
+     * can be sent to another broker of the cluster.
+     */
+    private static class BrokerUnavailableException extends DruidException {
+
+        /**
+         * @param message the failure
+         * @param cause   the cause of the failure, or null
+         */
+        BrokerUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 }
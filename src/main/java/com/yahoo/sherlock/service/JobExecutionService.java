@@ -7,22 +7,28 @@
 package com.yahoo.sherlock.service;
 
 import com.beust.jcommander.internal.Lists;
-import com.google.gson.JsonArray;
 import com.yahoo.egads.data.Anomaly;
 import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.enums.BackfillStatus;
 import com.yahoo.sherlock.enums.Granularity;
 import com.yahoo.sherlock.enums.JobStatus;
+import com.yahoo.sherlock.enums.PipelineStage;
 import com.yahoo.sherlock.exception.ClusterNotFoundException;
 import com.yahoo.sherlock.exception.DruidException;
 import com.yahoo.sherlock.exception.SchedulerException;
 import com.yahoo.sherlock.exception.SherlockException;
 import com.yahoo.sherlock.model.AnomalyReport;
+import com.yahoo.sherlock.model.BackfillProgress;
 import com.yahoo.sherlock.model.DruidCluster;
 import com.yahoo.sherlock.model.JobMetadata;
 import com.yahoo.sherlock.query.DetectorConfig;
 import com.yahoo.sherlock.query.Query;
 import com.yahoo.sherlock.query.QueryBuilder;
+import com.yahoo.sherlock.scheduler.BackfillExecutor;
 import com.yahoo.sherlock.scheduler.DetectionTask;
+import com.yahoo.sherlock.scheduler.ExecutionDeadline;
+import com.yahoo.sherlock.scheduler.JobPipeline;
+import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.settings.Constants;
 import com.yahoo.sherlock.store.AnomalyReportAccessor;
 import com.yahoo.sherlock.store.DruidClusterAccessor;
@@ -33,6 +39,8 @@ import com.yahoo.sherlock.utils.TimeUtils;
 
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -42,6 +50,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -76,6 +90,16 @@ public class JobExecutionService {
      */
     private EmailMetadataAccessor emailMetadataAccessor;
 
+    /**
+     * Shared executor running backfill detection tasks.
+     */
+    private BackfillExecutor backfillExecutor;
+
+    /**
+     * Shared executors of the stages of job runs.
+     */
+    private JobPipeline jobPipeline;
+
     /**
      * Create the service and grab references to the necessary
      * accessors and services.
@@ -86,6 +110,8 @@ public class JobExecutionService {
         jobMetadataAccessor = Store.getJobMetadataAccessor();
         anomalyReportAccessor = Store.getAnomalyReportAccessor();
         emailMetadataAccessor = Store.getEmailMetadataAccessor();
+        backfillExecutor = BackfillExecutor.getInstance();
+        jobPipeline = JobPipeline.getInstance();
     }
 
     /**
@@ -96,51 +122,249 @@ public class JobExecutionService {
      */
     public void execute(JobMetadata job) {
         log.debug("Executing job [{}]", job.getJobId());
-        try {
+        try (PipelineMetrics.Scope scope = PipelineMetrics.tag(job);
+             PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.JOB)) {
             List<Anomaly> anomalies;
             List<AnomalyReport> reports = new ArrayList<>();
             job.setJobStatus(JobStatus.RUNNING.getValue());
+            ExecutionDeadline deadline = ExecutionDeadline.start(TimeUnit.MINUTES.toMillis(ExecutionDeadline.timeoutMinutesOf(job)));
             try {
                 anomalies = executeJob(job, druidClusterAccessor.getDruidCluster(job.getClusterId()));
-                reports = getReports(anomalies, job);
+                try (PipelineMetrics.Timer mappingTimer = PipelineMetrics.time(PipelineStage.REPORT_MAPPING)) {
+                    reports = getReports(anomalies, job);
+                }
             } catch (SherlockException | ClusterNotFoundException e) {
-                log.error("Error while executing job: [{}]", job.getJobId(), e);
-                unscheduleErroredJob(job);
+                handleRunError(job, deadline, e);
+            } finally {
+                deadline.close();
             }
-            EmailService emailService = serviceFactory.newEmailServiceInstance();
-            if (reports.isEmpty()) {
-                AnomalyReport report = getSingletonReport(job);
-                reports.add(report);
+            finishRun(job, reports);
+        } catch (IOException e) {
+            log.error("Error while putting anomaly reports to database!", e);
+        }
+    }
+
+    /**
+     * Execute a provided job in the job pipeline without blocking.
+     * The Druid query, the detection and the writing of the reports
+     * run as stages on the executors of the pipeline. The returned
+     * future completes once the reports are written, errors of the
+     * run are handled as in {@link #execute}.
+     *
+     * @param job the job to execute
+     * @return the future of the run
+     */
+    public CompletableFuture<Void> executeAsync(JobMetadata job) {
+        log.debug("Executing job [{}] in the pipeline", job.getJobId());
+        job.setJobStatus(JobStatus.RUNNING.getValue());
+        ExecutionDeadline deadline = ExecutionDeadline.detached(TimeUnit.MINUTES.toMillis(ExecutionDeadline.timeoutMinutesOf(job)));
+        PipelineMetrics.Timer timer;
+        try (PipelineMetrics.Scope scope = PipelineMetrics.tag(job)) {
+            timer = PipelineMetrics.time(PipelineStage.JOB);
+        }
+        DetectorService detectorService = serviceFactory.newDetectorServiceInstance();
+        return CompletableFuture
+            .supplyAsync(() -> runStage(job, deadline, () -> fetchJobData(job, detectorService)), jobPipeline.getDruidExecutor())
+            .thenApplyAsync(data -> runStage(job, deadline, () -> detectJobReports(job, data, detectorService)), jobPipeline.getDetectionExecutor())
+            // The deadline is closed before the reports are written, the last stage is not bound to it
+            .handleAsync((reports, error) -> runStage(job, null, () -> completeRun(job, deadline, reports, error)), jobPipeline.getStoreExecutor())
+            .whenComplete((result, error) -> {
+                deadline.close();
+                timer.close();
+            });
+    }
+
+    /**
+     * First stage of a run in the pipeline: query Druid for the
+     * time series of the job.
+     *
+     * @param job             the job
+     * @param detectorService the detector service of the run
+     * @return the query of the run and its time series
+     * @throws IOException               if the cluster of the job cannot be read
+     * @throws ClusterNotFoundException if the cluster of the job does not exist
+     * @throws SherlockException         if the time series cannot be fetched
+     */
+    private Pair<Query, List<TimeSeries>> fetchJobData(
+            JobMetadata job,
+            DetectorService detectorService
+    ) throws IOException, ClusterNotFoundException, SherlockException {
+        DruidCluster cluster = druidClusterAccessor.getDruidCluster(job.getClusterId());
+        try {
+            Query query = detectorService.buildQuery(job);
+            return new ImmutablePair<>(query, detectorService.fetchTimeSeries(cluster, query));
+        } catch (Exception e) {
+            log.error("Error during job execution [{}]", job.getJobId(), e);
+            throw new SherlockException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Second stage of a run in the pipeline: detect the anomalies
+     * in the time series of the job and map them to reports.
+     *
+     * @param job             the job
+     * @param data            the query of the run and its time series
+     * @param detectorService the detector service of the run
+     * @return the reports of the run, empty if no anomaly was found
+     * @throws SherlockException if an error occurs during detection
+     */
+    private List<AnomalyReport> detectJobReports(
+            JobMetadata job,
+            Pair<Query, List<TimeSeries>> data,
+            DetectorService detectorService
+    ) throws SherlockException {
+        List<Anomaly> anomalies;
+        try {
+            anomalies = detectorService.detect(data.getRight(), data.getLeft(), job);
+        } catch (Exception e) {
+            log.error("Error during job execution [{}]", job.getJobId(), e);
+            throw new SherlockException(e.getMessage(), e);
+        }
+        try (PipelineMetrics.Timer mappingTimer = PipelineMetrics.time(PipelineStage.REPORT_MAPPING)) {
+            return getReports(anomalies, job);
+        }
+    }
+
+    /**
+     * Run a stage of a job run on the current thread of the pipeline,
+     * with the tags and the deadline of the run.
+     *
+     * @param job      the job
+     * @param deadline the deadline of the run, null if the stage is not bound to it
+     * @param stage    the stage
+     * @param <T>      the result type of the stage
+     * @return the result of the stage
+     */
+    private static <T> T runStage(JobMetadata job, ExecutionDeadline deadline, JobStage<T> stage) {
+        try (PipelineMetrics.Scope scope = PipelineMetrics.tag(job);
+             ExecutionDeadline.Binding binding = deadline == null ? ExecutionDeadline.Binding.NONE : deadline.bind()) {
+            return stage.run();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Last stage of a run in the pipeline: set the status of a
+     * failed run, then send the emails and write the reports.
+     *
+     * @param job      the job
+     * @param deadline the deadline of the run
+     * @param reports  the reports of the run, null if it failed
+     * @param error    the error of the run, null if it succeeded
+     * @return nothing
+     */
+    private Void completeRun(JobMetadata job, ExecutionDeadline deadline, List<AnomalyReport> reports, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        try {
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
-            List<String> originalEmailList = job.getOwnerEmail() == null || job.getOwnerEmail().isEmpty() ? new ArrayList<>() :
-                    Arrays.stream(job.getOwnerEmail().split(Constants.COMMA_DELIMITER)).collect(Collectors.toList());
-            List<String> finalEmailList = new ArrayList<>();
-            if (reports.get(0).getStatus().equalsIgnoreCase(Constants.ERROR)) {
-                emailService.processEmailReports(job, originalEmailList, reports);
-                anomalyReportAccessor.putAnomalyReports(reports, finalEmailList);
-            } else if (!((finalEmailList = emailMetadataAccessor.checkEmailsInInstantIndex(originalEmailList)).isEmpty())) {
-                emailService.processEmailReports(job, finalEmailList, reports);
-                originalEmailList.removeAll(finalEmailList);
-                anomalyReportAccessor.putAnomalyReports(reports, originalEmailList);
-            } else {
-                anomalyReportAccessor.putAnomalyReports(reports, originalEmailList);
+            List<AnomalyReport> runReports = reports;
+            if (cause != null) {
+                runReports = new ArrayList<>();
+                handleRunError(job, deadline, cause);
             }
+            deadline.close();
+            finishRun(job, runReports);
         } catch (IOException e) {
             log.error("Error while putting anomaly reports to database!", e);
         }
+        return null;
+    }
+
+    /**
+     * Set the status of a failed run. A timed out run keeps the
+     * job scheduled, other errors unschedule it.
+     *
+     * @param job      the job
+     * @param deadline the deadline of the run
+     * @param error    the error of the run
+     */
+    private void handleRunError(JobMetadata job, ExecutionDeadline deadline, Throwable error) {
+        if (deadline.isExpired()) {
+            log.warn("Job [{}] exceeded its deadline and was cancelled", job.getJobId(), error);
+            job.setJobStatus(JobStatus.TIMEOUT.getValue());
+        } else {
+            log.error("Error while executing job: [{}]", job.getJobId(), error);
+            unscheduleErroredJob(job);
+        }
+    }
+
+    /**
+     * Count the run, then send the report emails and write the
+     * reports of a run, or a singleton report if there are none.
+     *
+     * @param job     the job
+     * @param reports the reports of the run
+     * @throws IOException if an error occurs while writing the reports
+     */
+    private void finishRun(JobMetadata job, List<AnomalyReport> reports) throws IOException {
+        PipelineMetrics.count(PipelineMetrics.JOBS_EXECUTED, job.getJobStatus());
+        EmailService emailService = serviceFactory.newEmailServiceInstance();
+        if (reports.isEmpty()) {
+            AnomalyReport report = getSingletonReport(job);
+            reports.add(report);
+        }
+        List<String> originalEmailList = job.getOwnerEmail() == null || job.getOwnerEmail().isEmpty() ? new ArrayList<>() :
+                Arrays.stream(job.getOwnerEmail().split(Constants.COMMA_DELIMITER)).collect(Collectors.toList());
+        List<String> finalEmailList = new ArrayList<>();
+        if (reports.get(0).getStatus().equalsIgnoreCase(Constants.ERROR)) {
+            sendReportEmails(emailService, job, originalEmailList, reports);
+            writeReports(reports, finalEmailList);
+        } else if (!((finalEmailList = emailMetadataAccessor.checkEmailsInInstantIndex(originalEmailList)).isEmpty())) {
+            sendReportEmails(emailService, job, finalEmailList, reports);
+            originalEmailList.removeAll(finalEmailList);
+            writeReports(reports, originalEmailList);
+        } else {
+            writeReports(reports, originalEmailList);
+        }
+    }
+
+    /**
+     * Send or queue the report emails of a job run.
+     *
+     * @param emailService the email service
+     * @param job          the job
+     * @param emails       the emails to send the reports to
+     * @param reports      the reports of the run
+     */
+    private void sendReportEmails(EmailService emailService, JobMetadata job, List<String> emails, List<AnomalyReport> reports) {
+        try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.EMAIL)) {
+            emailService.processEmailReports(job, emails, reports);
+        }
+    }
+
+    /**
+     * Write the reports of a job run to the database.
+     *
+     * @param reports the reports of the run
+     * @param emails  the emails to queue the reports for
+     * @throws IOException if an error occurs while writing the reports
+     */
+    private void writeReports(List<AnomalyReport> reports, List<String> emails) throws IOException {
+        try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.REPORT_WRITE)) {
+            anomalyReportAccessor.putAnomalyReports(reports, emails);
+        }
     }
 
     /**
      * This method will use the job's query interval end time
-     * as the start time for the backfill job.
+     * as the start time for the backfill job, and backfill
+     * until the given end time. The progress of this internal
+     * backfill is not registered with the debug routes.
      *
-     * @param job metadata of the job to backfill
+     * @param job        metadata of the job to backfill
+     * @param endMinutes the end time of backfilling in minutes
      */
-    public void backfillJobFromIntervalEnd(JobMetadata job) {
+    public void backfillJobFromIntervalEnd(JobMetadata job, Integer endMinutes) {
         Integer timestampMinutes = job.getReportNominalTime();
         ZonedDateTime startTime = TimeUtils.zonedDateTimeFromMinutes(timestampMinutes);
         try {
-            performBackfillJob(job, startTime, null);
+            performBackfillJob(job, startTime, TimeUtils.zonedDateTimeFromMinutes(endMinutes), new BackfillProgress(job.getJobId()));
         } catch (SherlockException e) {
             log.error("Error while backfilling job [{}]!", job.getJobId(), e);
         }
@@ -161,41 +385,243 @@ public class JobExecutionService {
             ZonedDateTime startTime,
             @Nullable ZonedDateTime endTime
     ) throws SherlockException {
+        performBackfillJob(job, startTime, endTime, backfillExecutor.register(job.getJobId()));
+    }
+
+    /**
+     * Check that a backfill of a provided job can start: its interval
+     * is not smaller than the granularity of the job and the cluster
+     * of the job exists.
+     *
+     * @param job       metadata for job to backfill
+     * @param startTime the start time of backfilling as a ZonedDateTime
+     * @param endTime   the end time of backfilling as a ZonedDateTime
+     * @throws SherlockException        if the backfill interval is too small
+     * @throws IOException              if the cluster of the job cannot be read
+     * @throws ClusterNotFoundException if the cluster of the job does not exist
+     */
+    public void validateBackfillJob(
+            JobMetadata job,
+            ZonedDateTime startTime,
+            @Nullable ZonedDateTime endTime
+    ) throws SherlockException, IOException, ClusterNotFoundException {
         Granularity granularity = Granularity.getValue(job.getGranularity());
         if (endTime == null) {
             endTime = ZonedDateTime.now(ZoneOffset.UTC).minusHours(job.getHoursOfLag());
         }
-        Integer intervalEndTime = granularity.getEndTimeForInterval(endTime) + granularity.getMinutes() * (job.getGranularityRange() - 1);
-        Integer jobWindowStart = granularity.getEndTimeForInterval(startTime) + granularity.getMinutes() * (job.getGranularityRange() - 1);
-        if ((intervalEndTime - jobWindowStart) < granularity.getMinutes()) {
+        if (granularity.getEndTimeForInterval(endTime) - granularity.getEndTimeForInterval(startTime) < granularity.getMinutes()) {
             throw new SherlockException("Backfill interval cannot be smaller than granularity!");
         }
+        druidClusterAccessor.getDruidCluster(job.getClusterId());
+    }
+
+    /**
+     * Start a backfill for a provided job in the background.
+     * The returned progress may be used to follow or cancel it.
+     *
+     * @param job       metadata for job to backfill
+     * @param startTime the start time of backfilling as a ZonedDateTime
+     * @param endTime the end time of backfilling as a ZonedDateTime
+     * @return the progress of the started backfill
+     */
+    public BackfillProgress startBackfillJob(
+            JobMetadata job,
+            ZonedDateTime startTime,
+            @Nullable ZonedDateTime endTime
+    ) {
+        BackfillProgress progress = backfillExecutor.register(job.getJobId());
+        backfillExecutor.submit(progress, () -> {
+            try {
+                performBackfillJob(job, startTime, endTime, progress);
+            } catch (SherlockException e) {
+                log.error("Error while backfilling job [{}]!", job.getJobId(), e);
+            }
+        });
+        return progress;
+    }
+
+    /**
+     * Run a backfill for a provided job starting at the given time
+     * and record its progress, which is always finished on return.
+     *
+     * @param job       metadata for job to backfill
+     * @param startTime the start time of backfilling as a ZonedDateTime
+     * @param endTime   the end time of backfilling as a ZonedDateTime
+     * @param progress  progress of the backfill
+     * @throws SherlockException if an error occurs during job execution
+     */
+    public void performBackfillJob(
+            JobMetadata job,
+            ZonedDateTime startTime,
+            @Nullable ZonedDateTime endTime,
+            BackfillProgress progress
+    ) throws SherlockException {
+        progress.setStatus(BackfillStatus.RUNNING);
+        Granularity granularity = Granularity.getValue(job.getGranularity());
+        if (endTime == null) {
+            endTime = ZonedDateTime.now(ZoneOffset.UTC).minusHours(job.getHoursOfLag());
+        }
+        Integer intervalEndTime = granularity.getEndTimeForInterval(endTime) + granularity.getMinutes() * (job.getGranularityRange() - 1);
+        Integer jobWindowStart = granularity.getEndTimeForInterval(startTime) + granularity.getMinutes() * (job.getGranularityRange() - 1);
         int intervals = job.getTimeseriesRange() == null ? granularity.getIntervalsFromSettings() : job.getTimeseriesRange();
-        ZonedDateTime intervalStartTime = granularity.subtractIntervals(TimeUtils.zonedDateTimeFromMinutes(jobWindowStart), intervals, job.getGranularityRange());
+        int chunkMinutes = CLISettings.BACKFILL_CHUNK_INTERVALS * granularity.getMinutes();
+        Exception failure = null;
+        try {
+            if ((intervalEndTime - jobWindowStart) < granularity.getMinutes()) {
+                throw new SherlockException("Backfill interval cannot be smaller than granularity!");
+            }
+            DruidCluster cluster = druidClusterAccessor.getDruidCluster(job.getClusterId());
+            if (chunkMinutes <= 0 || intervalEndTime - jobWindowStart <= chunkMinutes) {
+                performBackfillJob(
+                        job, cluster,
+                        buildBackfillQuery(job, granularity, intervals, jobWindowStart, intervalEndTime),
+                        jobWindowStart,
+                        intervalEndTime,
+                        granularity,
+                        intervals,
+                        progress
+                );
+            } else {
+                performChunkedBackfillJob(job, cluster, jobWindowStart, intervalEndTime, chunkMinutes, granularity, intervals, progress);
+            }
+        } catch (Exception e) {
+            log.info("Error occurred during backfill execution!", e);
+            failure = e;
+            throw e instanceof SherlockException ? (SherlockException) e : new SherlockException(e.getMessage(), e);
+        } finally {
+            finishBackfill(job, progress, failure);
+        }
+    }
+
+    /**
+     * Build the Druid query fetching the data needed to backfill
+     * a window, including the training intervals before it.
+     *
+     * @param job         the job details
+     * @param granularity the data granularity
+     * @param intervals   intervals to lookback
+     * @param start       start of the backfill window
+     * @param end         end of the backfill window
+     * @return the Druid query
+     * @throws SherlockException if the query cannot be built
+     */
+    private Query buildBackfillQuery(
+            JobMetadata job,
+            Granularity granularity,
+            int intervals,
+            Integer start,
+            Integer end
+    ) throws SherlockException {
+        ZonedDateTime intervalStartTime = granularity.subtractIntervals(TimeUtils.zonedDateTimeFromMinutes(start), intervals, job.getGranularityRange());
         log.info("Querying druid starting from {}", intervalStartTime.toString());
-        Query query = QueryBuilder.start()
+        return QueryBuilder.start()
                 .startAt(intervalStartTime)
-                .endAt(intervalEndTime)
+                .endAt(end)
                 .queryString(job.getUserQuery())
                 .granularity(granularity)
                 .granularityRange(job.getGranularityRange())
                 .setIsBackFillQuery(true)
                 .build();
+    }
+
+    /**
+     * Perform a backfill job over a long window by splitting it into
+     * chunks, each queried with its own training window. The next
+     * chunk is fetched while the current one is detected, so that at
+     * most two chunks are held in memory whatever the window length.
+     * The total number of intervals is estimated from the window and
+     * corrected with the number of intervals of each fetched chunk.
+     *
+     * @param job          the job details
+     * @param cluster      the druid cluster for the job
+     * @param start        start of backfill job window
+     * @param end          end of backfill job window
+     * @param chunkMinutes length of a chunk in minutes
+     * @param granularity  the data granularity
+     * @param intervals    intervals to lookback
+     * @param progress     progress of the backfill
+     * @throws SherlockException    if an error occurs during processing
+     * @throws DruidException       if an error occurs during quering druid
+     * @throws InterruptedException if an error occurs in the thread
+     * @throws IOException          if an error occurs while accessing the backend
+     */
+    protected void performChunkedBackfillJob(
+            JobMetadata job,
+            DruidCluster cluster,
+            Integer start,
+            Integer end,
+            int chunkMinutes,
+            Granularity granularity,
+            int intervals,
+            BackfillProgress progress
+    ) throws SherlockException, DruidException, InterruptedException, IOException {
+        log.info("Performing backfill for job [{}] in chunks of {} minutes", job.getJobId(), chunkMinutes);
+        progress.setStatus(BackfillStatus.RUNNING);
+        progress.setTotalIntervals(progress.getTotalIntervals() + (end - start) / granularity.getMinutes());
+        DetectorService detectorService = serviceFactory.newDetectorServiceInstance();
+        TimeSeriesParserService parserService = serviceFactory.newTimeSeriesParserServiceInstance();
+        Future<List<TimeSeries>[]> next = fetchBackfillChunk(job, cluster, start, Math.min(start + chunkMinutes, end), granularity, intervals, detectorService, parserService);
+        Exception failure = null;
         try {
-            DruidCluster cluster = druidClusterAccessor.getDruidCluster(job.getClusterId());
-            performBackfillJob(
-                    job, cluster, query,
-                    jobWindowStart,
-                    intervalEndTime,
-                    granularity,
-                    intervals
-            );
-        } catch (IOException | InterruptedException | ClusterNotFoundException | DruidException e) {
-            log.info("Error occurred during backfill execution!", e);
-            throw new SherlockException(e.getMessage(), e);
+            for (int chunkStart = start; chunkStart < end && !progress.isCancelRequested(); chunkStart += chunkMinutes) {
+                List<TimeSeries>[] fillSeriesList = next.get();
+                next = null;
+                int estimated = (Math.min(chunkStart + chunkMinutes, end) - chunkStart) / granularity.getMinutes();
+                progress.setTotalIntervals(progress.getTotalIntervals() + fillSeriesList.length - estimated);
+                int nextStart = chunkStart + chunkMinutes;
+                if (nextStart < end) {
+                    next = fetchBackfillChunk(job, cluster, nextStart, Math.min(nextStart + chunkMinutes, end), granularity, intervals, detectorService, parserService);
+                }
+                detectBackfillIntervals(job, fillSeriesList, chunkStart, granularity, detectorService, progress);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            failure = cause instanceof Exception ? (Exception) cause : e;
+            if (cause instanceof DruidException) {
+                throw (DruidException) cause;
+            }
+            throw new SherlockException(cause.getMessage(), cause);
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (next != null) {
+                next.cancel(true);
+            }
+            finishBackfill(job, progress, failure);
         }
     }
 
+    /**
+     * Start fetching the data of a backfill chunk in the background.
+     *
+     * @param job             the job details
+     * @param cluster         the druid cluster for the job
+     * @param start           start of the chunk
+     * @param end             end of the chunk
+     * @param granularity     the data granularity
+     * @param intervals       intervals to lookback
+     * @param detectorService detector service used to query Druid
+     * @param parserService   parser service used to slice the response
+     * @return the future time series of each interval in the chunk
+     */
+    private Future<List<TimeSeries>[]> fetchBackfillChunk(
+            JobMetadata job,
+            DruidCluster cluster,
+            Integer start,
+            Integer end,
+            Granularity granularity,
+            int intervals,
+            DetectorService detectorService,
+            TimeSeriesParserService parserService
+    ) {
+        return backfillExecutor.fetch(() -> {
+            Query query = buildBackfillQuery(job, granularity, intervals, start, end);
+            List<TimeSeries> sourceSeries = detectorService.queryTimeSeries(query, cluster);
+            return parserService.subseries(sourceSeries, start, end, granularity, query.getGranularityRange(), intervals);
+        });
+    }
+
     /**
      * Perform a backfill job starting at a date and
      * then at each incremented granularity after that
@@ -221,40 +647,170 @@ public class JobExecutionService {
             Integer end,
             Granularity granularity,
             int intervals
+    ) throws SherlockException, DruidException, InterruptedException, IOException {
+        performBackfillJob(job, cluster, query, start, end, granularity, intervals, backfillExecutor.register(job.getJobId()));
+    }
+
+    /**
+     * Perform a backfill job starting at a date and
+     * then at each incremented granularity after that
+     * date a certain number of times. Intervals are detected
+     * on the shared backfill pool and their reports are written
+     * in batches as they complete. The progress is always finished
+     * on return.
+     *
+     * @param job              the job details
+     * @param cluster          the druid cluster for the job
+     * @param query            druid query to get the data
+     * @param start            start of backfill job window
+     * @param end              end of backfill job window
+     * @param granularity      the data granularity
+     * @param intervals        intervals to lookback
+     * @param progress         progress of the backfill
+     * @throws SherlockException    if an error occurs during processing
+     * @throws DruidException       if an error occurs during quering druid
+     * @throws InterruptedException if an error occurs in the thread
+     * @throws IOException          if an error occurs while accessing the backend
+     */
+    public void performBackfillJob(
+            JobMetadata job,
+            DruidCluster cluster,
+            Query query,
+            Integer start,
+            Integer end,
+            Granularity granularity,
+            int intervals,
+            BackfillProgress progress
     ) throws SherlockException, DruidException, InterruptedException, IOException {
         log.info("Performing backfill for job [{}] for time range ({}, {})", job.getJobId(),
                 TimeUtils.getTimeFromSeconds(start * 60L, Constants.TIMESTAMP_FORMAT_NO_SECONDS),
                 TimeUtils.getTimeFromSeconds(end * 60L, Constants.TIMESTAMP_FORMAT_NO_SECONDS));
         log.info("Job granularity is [{}]", granularity.toString());
-        DetectorService detectorService = serviceFactory.newDetectorServiceInstance();
-        TimeSeriesParserService parserService = serviceFactory.newTimeSeriesParserServiceInstance();
-        JsonArray druidResponse = detectorService.queryDruid(query, cluster);
-        List<TimeSeries> sourceSeries = parserService.parseTimeSeries(druidResponse, query);
-        List<TimeSeries>[] fillSeriesList = parserService.subseries(sourceSeries, start, end, granularity, query.getGranularityRange(), intervals);
-        List<Thread> threads = new ArrayList<>(fillSeriesList.length);
-        List<DetectionTask> tasks = new ArrayList<>(fillSeriesList.length);
+        progress.setStatus(BackfillStatus.RUNNING);
+        Exception failure = null;
+        try {
+            DetectorService detectorService = serviceFactory.newDetectorServiceInstance();
+            TimeSeriesParserService parserService = serviceFactory.newTimeSeriesParserServiceInstance();
+            List<TimeSeries> sourceSeries = detectorService.queryTimeSeries(query, cluster);
+            List<TimeSeries>[] fillSeriesList = parserService.subseries(sourceSeries, start, end, granularity, query.getGranularityRange(), intervals);
+            progress.setTotalIntervals(progress.getTotalIntervals() + fillSeriesList.length);
+            detectBackfillIntervals(job, fillSeriesList, start, granularity, detectorService, progress);
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            finishBackfill(job, progress, failure);
+        }
+    }
+
+    /**
+     * Detect anomalies in consecutive backfill intervals on the shared
+     * backfill pool and write their reports in batches as they complete.
+     *
+     * @param job             the job details
+     * @param fillSeriesList  time series of each interval
+     * @param start           start of the first interval
+     * @param granularity     the data granularity
+     * @param detectorService the detector service instance to use
+     * @param progress        progress of the backfill
+     * @throws SherlockException    if an error occurs during detection
+     * @throws InterruptedException if an error occurs in the thread
+     * @throws IOException          if an error occurs while writing the reports
+     */
+    private void detectBackfillIntervals(
+            JobMetadata job,
+            List<TimeSeries>[] fillSeriesList,
+            Integer start,
+            Granularity granularity,
+            DetectorService detectorService,
+            BackfillProgress progress
+    ) throws SherlockException, InterruptedException, IOException {
+        CompletionService<List<AnomalyReport>> completionService = backfillExecutor.newCompletionService();
+        List<Future<List<AnomalyReport>>> futures = new ArrayList<>(fillSeriesList.length);
         Integer singleInterval = granularity.getMinutes();
         Integer subEnd = start + singleInterval;
-        for (List<TimeSeries> fillSeries : fillSeriesList) {
+        for (int i = 0; i < fillSeriesList.length; i++) {
             DetectionTask task = createTask(
                     job,
                     subEnd,
-                    fillSeries,
+                    fillSeriesList[i],
                     detectorService
             );
-            tasks.add(task);
-            Thread thread = new Thread(task);
-            thread.start();
-            threads.add(thread);
+            // Drop the reference so that detected intervals may be collected
+            fillSeriesList[i] = null;
+            futures.add(completionService.submit(() -> {
+                task.run();
+                return task.getReports();
+            }));
             subEnd += singleInterval;
         }
         List<AnomalyReport> reports = new ArrayList<>();
-        for (int i = 0; i < threads.size(); i++) {
-            threads.get(i).join();
-            reports.addAll(tasks.get(i).getReports());
+        try {
+            int completed = 0;
+            while (completed < futures.size()) {
+                if (progress.isCancelRequested()) {
+                    log.info("Backfill [{}] of job [{}] is cancelled", progress.getId(), job.getJobId());
+                    break;
+                }
+                Future<List<AnomalyReport>> done = completionService.poll(1, TimeUnit.SECONDS);
+                if (done == null) {
+                    continue;
+                }
+                completed++;
+                reports.addAll(done.get());
+                progress.intervalCompleted();
+                if (reports.size() >= Constants.BACKFILL_REPORT_BATCH_SIZE) {
+                    writeBackfillReports(reports, progress);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new SherlockException(e.getMessage(), e);
+        } finally {
+            for (Future<List<AnomalyReport>> future : futures) {
+                future.cancel(true);
+            }
+            writeBackfillReports(reports, progress);
+        }
+    }
+
+    /**
+     * Mark a backfill failed, cancelled or completed once it stops.
+     * A backfill that is already finished keeps its first status.
+     *
+     * @param job      the job details
+     * @param progress progress of the backfill
+     * @param failure  the exception that stopped the backfill or null
+     */
+    private void finishBackfill(JobMetadata job, BackfillProgress progress, @Nullable Exception failure) {
+        if (progress.getStatus().isFinished()) {
+            return;
+        }
+        if (failure != null) {
+            progress.finish(BackfillStatus.FAILED, failure.getMessage() != null ? failure.getMessage() : failure.toString());
+            log.info("Backfill [{}] of job [{}] failed", progress.getId(), job.getJobId());
+        } else if (progress.isCancelRequested()) {
+            progress.finish(BackfillStatus.CANCELLED, null);
+            log.info("Backfill [{}] of job [{}] is cancelled", progress.getId(), job.getJobId());
+        } else {
+            progress.finish(BackfillStatus.COMPLETED, null);
+            log.info("Backfill is complete");
+        }
+    }
+
+    /**
+     * Write a batch of backfill reports and clear the batch.
+     *
+     * @param reports  the reports to write
+     * @param progress progress of the backfill
+     * @throws IOException if an error occurs while writing the reports
+     */
+    private void writeBackfillReports(List<AnomalyReport> reports, BackfillProgress progress) throws IOException {
+        if (reports.isEmpty()) {
+            return;
         }
         anomalyReportAccessor.putAnomalyReports(reports, new ArrayList<>());
-        log.info("Backfill is complete");
+        progress.reportsWritten(reports.size());
+        reports.clear();
     }
 
     /**
@@ -360,6 +916,23 @@ public class JobExecutionService {
         }
     }
 
+    /**
+     * Stage of a job run in the pipeline.
+     *
+     * @param <T> the result type of the stage
+     */
+    @FunctionalInterface
+    private interface JobStage<T> {
+
+        /**
+         * Run the stage.
+         *
+         * @return the result of the stage
+         * @throws Exception if the stage fails
+         */
+        T run() throws Exception;
+    }
+
     /**
      * Get reports at a specified report generation time.
      *
@@ -397,7 +970,7 @@ public class JobExecutionService {
      * or if the job errored.
      *
      * @param job the detection job
-     * @return a SUCCESS or ERROR or NODATA report
+     * @return a SUCCESS or ERROR or NODATA or TIMEOUT report
      */
     public synchronized AnomalyReport getSingletonReport(JobMetadata job) {
         AnomalyReport report = new AnomalyReport();
@@ -411,6 +984,9 @@ public class JobExecutionService {
         if (JobStatus.ERROR.getValue().equals(job.getJobStatus())) {
             log.info("Job [{}] completed with error", job.getJobId());
             report.setStatus(Constants.ERROR);
+        } else if (JobStatus.TIMEOUT.getValue().equals(job.getJobStatus())) {
+            log.info("Job [{}] timed out", job.getJobId());
+            report.setStatus(Constants.TIMEOUT);
         } else if (JobStatus.NODATA.getValue().equals(job.getJobStatus())) {
             log.info("No data returned from druid for Job [{}]", job.getJobId());
             report.setStatus(Constants.NODATA);
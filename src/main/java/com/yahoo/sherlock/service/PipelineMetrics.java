@@ -0,0 +1,288 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.enums.PipelineStage;
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.utils.LatencyHistogram;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the latency of each stage of a job run in histograms
+ * tagged by the frequency, cluster, detection framework and model of
+ * the job, and counts the events of job runs. The tags are taken from
+ * the job run on the current thread, so that the stages deep in the
+ * services do not need the job.
+ */
+public class PipelineMetrics {
+
+    /** Tag value of stages run outside of a job. */
+    public static final String UNTAGGED = "none";
+
+    /** Counter of job runs by final job status. */
+    public static final String JOBS_EXECUTED = "jobs_executed";
+
+    /** Counter of failed Druid queries by cluster ID. */
+    public static final String DRUID_QUERY_ERRORS = "druid_query_errors";
+
+    /** Counter of report emails by result. */
+    public static final String EMAILS = "emails";
+
+    /** The singleton instance of this class. */
+    private static PipelineMetrics pipelineMetrics;
+
+    /** Tags of the job run on the current thread. */
+    private static final ThreadLocal<Tags> CURRENT = new ThreadLocal<>();
+
+    /** Histograms by stage and tags. */
+    private final Map<Series, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /** Counters by name and label. */
+    private final Map<String, Map<String, LongAdder>> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared pipeline metrics
+     */
+    public static synchronized PipelineMetrics getInstance() {
+        if (pipelineMetrics == null) {
+            pipelineMetrics = new PipelineMetrics();
+        }
+        return pipelineMetrics;
+    }
+
+    /**
+     * Tag the stages timed on the current thread with a job until
+     * the returned scope is closed.
+     *
+     * @param job the job being run
+     * @return the tagging scope
+     */
+    public static Scope tag(JobMetadata job) {
+        return tag(new Tags(
+            job.getFrequency() == null ? UNTAGGED : job.getFrequency(),
+            job.getClusterId() == null ? UNTAGGED : job.getClusterId().toString(),
+            job.getTimeseriesFramework() == null ? UNTAGGED : job.getTimeseriesFramework(),
+            job.getTimeseriesModel() == null ? UNTAGGED : job.getTimeseriesModel()
+        ));
+    }
+
+    /**
+     * Tag the stages timed on the current thread with the tags
+     * captured on another thread until the returned scope is closed.
+     *
+     * @param tags the tags of the job, null if run outside of a job
+     * @return the tagging scope
+     */
+    public static Scope tag(Tags tags) {
+        Tags previous = CURRENT.get();
+        if (tags == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(tags);
+        }
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * @return the tags of the job run on the current thread, null if none
+     */
+    public static Tags current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Start timing a stage on the current thread. The stage is
+     * recorded with the tags of the current job when the returned
+     * timer is closed.
+     *
+     * @param stage the stage
+     * @return the stage timer
+     */
+    public static Timer time(PipelineStage stage) {
+        PipelineMetrics metrics = getInstance();
+        Tags tags = CURRENT.get();
+        long start = System.nanoTime();
+        return () -> metrics.record(stage, tags, System.nanoTime() - start);
+    }
+
+    /**
+     * Increment a counter.
+     *
+     * @param counter the counter name
+     * @param label   the label of the counted event
+     */
+    public static void count(String counter, String label) {
+        getInstance().increment(counter, label == null ? UNTAGGED : label);
+    }
+
+    /**
+     * Record the duration of a stage.
+     *
+     * @param stage         the stage
+     * @param tags          tags of the job, null if run outside of a job
+     * @param durationNanos duration of the stage in nanoseconds
+     */
+    public void record(PipelineStage stage, Tags tags, long durationNanos) {
+        Series series = new Series(stage, tags == null ? Tags.NONE : tags);
+        histograms.computeIfAbsent(series, s -> new LatencyHistogram(LatencyHistogram.STAGE_BOUNDS_MILLIS)).record(durationNanos);
+    }
+
+    /**
+     * @param counter the counter name
+     * @param label   the label of the counted event
+     */
+    public void increment(String counter, String label) {
+        counters.computeIfAbsent(counter, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(label, l -> new LongAdder())
+                .increment();
+    }
+
+    /**
+     * Drop every recorded histogram and counter.
+     */
+    public void clear() {
+        histograms.clear();
+        counters.clear();
+    }
+
+    /**
+     * @return a snapshot of every histogram, sorted by key
+     */
+    public List<Snapshot> getSnapshots() {
+        List<Snapshot> snapshots = new ArrayList<>(histograms.size());
+        for (Map.Entry<Series, LatencyHistogram> entry : histograms.entrySet()) {
+            Series series = entry.getKey();
+            snapshots.add(new Snapshot(series.getStage(), series.getTags(), entry.getValue().snapshot()));
+        }
+        snapshots.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+        return snapshots;
+    }
+
+    /**
+     * @return the value of each counter by name and label, sorted by name and label
+     */
+    public Map<String, Map<String, Long>> getCounters() {
+        Map<String, Map<String, Long>> values = new TreeMap<>();
+        for (Map.Entry<String, Map<String, LongAdder>> counter : counters.entrySet()) {
+            Map<String, Long> labels = new TreeMap<>();
+            counter.getValue().forEach((label, adder) -> labels.put(label, adder.sum()));
+            values.put(counter.getKey(), labels);
+        }
+        return values;
+    }
+
+    /**
+     * @return the count, mean, estimated percentiles and maximum of each histogram
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (Snapshot snapshot : getSnapshots()) {
+            LatencyHistogram.Snapshot histogram = snapshot.getHistogram();
+            Map<String, Object> seriesStats = new LinkedHashMap<>();
+            seriesStats.put("count", histogram.getCount());
+            seriesStats.put("averageMillis", histogram.getMeanMillis());
+            seriesStats.put("p50Millis", histogram.percentileMillis(0.5));
+            seriesStats.put("p95Millis", histogram.percentileMillis(0.95));
+            seriesStats.put("p99Millis", histogram.percentileMillis(0.99));
+            seriesStats.put("maxMillis", histogram.getMaxMillis());
+            stats.put(snapshot.getKey(), seriesStats);
+        }
+        return stats;
+    }
+
+    /**
+     * Scope of the tags of a job run, restored when closed.
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Timer of a stage, recorded when closed.
+     */
+    public interface Timer extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Tags of a job run.
+     */
+    @Data
+    public static class Tags {
+
+        /** Tags of stages run outside of a job. */
+        static final Tags NONE = new Tags(UNTAGGED, UNTAGGED, UNTAGGED, UNTAGGED);
+
+        /** Frequency of the job. */
+        private final String frequency;
+
+        /** Druid cluster ID of the job. */
+        private final String cluster;
+
+        /** Detection framework of the job. */
+        private final String framework;
+
+        /** Time series model of the job. */
+        private final String model;
+    }
+
+    /**
+     * Key of a histogram.
+     */
+    @Data
+    private static class Series {
+
+        /** The timed stage. */
+        private final PipelineStage stage;
+
+        /** Tags of the job. */
+        private final Tags tags;
+    }
+
+    /**
+     * Point-in-time copy of the histogram of a stage.
+     */
+    @Data
+    public static class Snapshot {
+
+        /** The timed stage. */
+        private final PipelineStage stage;
+
+        /** Tags of the job. */
+        private final Tags tags;
+
+        /** The stage latencies. */
+        private final LatencyHistogram.Snapshot histogram;
+
+        /**
+         * @return readable key of the histogram
+         */
+        public String getKey() {
+            return stage + "{frequency=" + tags.getFrequency() + ",cluster=" + tags.getCluster()
+                   + ",framework=" + tags.getFramework() + ",model=" + tags.getModel() + "}";
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.enums.ExecutionLane;
+import com.yahoo.sherlock.scheduler.CatchUpExecutor;
+import com.yahoo.sherlock.scheduler.ExecutionTask;
+import com.yahoo.sherlock.scheduler.ExecutionWorkerPool;
+import com.yahoo.sherlock.scheduler.ObservedTask;
+import com.yahoo.sherlock.store.core.RedisCommandLatencyCollector;
+import com.yahoo.sherlock.utils.LatencyHistogram;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the Sherlock telemetry in the Prometheus text exposition
+ * format: the queue depth, pending jobs and workers of each execution
+ * lane, the runs of the periodic tasks, the catch-up backfills of
+ * lagging jobs, the job runs by status, the
+ * stage latencies of job runs, the
+ * Druid query errors, the Redis command latencies, the report emails
+ * and the JVM memory and garbage collection.
+ */
+@Slf4j
+public class PrometheusExporter {
+
+    /** Content type of the exposition format. */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Prefix of the Sherlock metric names. */
+    private static final String PREFIX = "sherlock_";
+
+    /** Scheduler service running the execution lanes. */
+    private final SchedulerService schedulerService;
+
+    /** Stage latencies and job run counters. */
+    private final PipelineMetrics pipelineMetrics;
+
+    /** Redis command latencies. */
+    private final RedisCommandLatencyCollector redisLatencies;
+
+    /** Background lane backfilling lagging jobs. */
+    private final CatchUpExecutor catchUpExecutor;
+
+    /**
+     * @param schedulerService scheduler service running the execution lanes
+     * @param pipelineMetrics  stage latencies and job run counters
+     * @param redisLatencies   Redis command latencies
+     * @param catchUpExecutor  background lane backfilling lagging jobs
+     */
+    public PrometheusExporter(
+            SchedulerService schedulerService,
+            PipelineMetrics pipelineMetrics,
+            RedisCommandLatencyCollector redisLatencies,
+            CatchUpExecutor catchUpExecutor
+    ) {
+        this.schedulerService = schedulerService;
+        this.pipelineMetrics = pipelineMetrics;
+        this.redisLatencies = redisLatencies;
+        this.catchUpExecutor = catchUpExecutor;
+    }
+
+    /**
+     * @return every metric in the Prometheus text format
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        writeLanes(out);
+        writeTasks(out);
+        writeCatchUp(out);
+        writeCounters(out);
+        writeStages(out);
+        writeRedis(out);
+        writeJvm(out);
+        return out.toString();
+    }
+
+    /**
+     * Write the queue and worker metrics of each execution lane.
+     *
+     * @param out the output
+     */
+    private void writeLanes(StringBuilder out) {
+        Map<ExecutionLane, ExecutionTask> tasks = schedulerService == null ? null : schedulerService.getExecutionTasks();
+        if (tasks == null || tasks.isEmpty()) {
+            return;
+        }
+        StringBuilder queue = new StringBuilder();
+        StringBuilder pending = new StringBuilder();
+        StringBuilder workers = new StringBuilder();
+        StringBuilder active = new StringBuilder();
+        StringBuilder dispatched = new StringBuilder();
+        StringBuilder lag = new StringBuilder();
+        for (Map.Entry<ExecutionLane, ExecutionTask> entry : tasks.entrySet()) {
+            String labels = labels("lane", entry.getKey().toString());
+            ExecutionWorkerPool pool = entry.getValue().getWorkerPool();
+            try {
+                sample(queue, "queue_due_jobs", labels, entry.getValue().getQueueDepth());
+                sample(pending, "queue_pending_jobs", labels, entry.getValue().getPendingCount());
+            } catch (IOException e) {
+                log.error("Error while reading the queue of lane [{}]!", entry.getKey(), e);
+            }
+            sample(workers, "workers", labels, pool.getSize());
+            sample(active, "workers_active", labels, pool.getActiveCount());
+            sample(dispatched, "jobs_dispatched_total", labels, pool.getDispatchedCount());
+            sample(lag, "dispatch_lag_seconds_max", labels, pool.getMaxLagSeconds());
+        }
+        family(out, "queue_due_jobs", "gauge", "Due jobs waiting in the queue of the lane.", queue);
+        family(out, "queue_pending_jobs", "gauge", "Jobs of the lane claimed by an instance and not yet done.", pending);
+        family(out, "workers", "gauge", "Worker threads of the lane.", workers);
+        family(out, "workers_active", "gauge", "Jobs of the lane running, in the job pipeline or on a worker.", active);
+        family(out, "jobs_dispatched_total", "counter", "Jobs dispatched to the workers of the lane.", dispatched);
+        family(out, "dispatch_lag_seconds_max", "gauge", "Longest delay between the run time and the start of a job.", lag);
+    }
+
+    /**
+     * Write the run durations, failures, overruns and skipped ticks of each periodic task.
+     *
+     * @param out the output
+     */
+    private void writeTasks(StringBuilder out) {
+        List<ObservedTask.Stats> tasks = schedulerService == null ? null : schedulerService.getTaskStats();
+        if (tasks == null || tasks.isEmpty()) {
+            return;
+        }
+        StringBuilder durations = new StringBuilder();
+        StringBuilder failures = new StringBuilder();
+        StringBuilder overruns = new StringBuilder();
+        StringBuilder skipped = new StringBuilder();
+        for (ObservedTask.Stats task : tasks) {
+            String labels = labels("task", task.getName(), "pool", task.getType());
+            histogram(durations, "task_duration_seconds", labels, task.getDurations());
+            sample(failures, "task_failures_total", labels, task.getFailures());
+            sample(overruns, "task_overruns_total", labels, task.getOverruns());
+            sample(skipped, "task_skipped_ticks_total", labels, task.getSkippedTicks());
+        }
+        family(out, "task_duration_seconds", "histogram", "Run duration of the periodic tasks.", durations);
+        family(out, "task_failures_total", "counter", "Runs of the periodic task which threw.", failures);
+        family(out, "task_overruns_total", "counter", "Runs of the periodic task longer than its period.", overruns);
+        family(out, "task_skipped_ticks_total", "counter", "Ticks of the periodic task skipped after a run longer than its period.", skipped);
+    }
+
+    /**
+     * Write the backlog, lag and mode of the catch-up lane.
+     *
+     * @param out the output
+     */
+    private void writeCatchUp(StringBuilder out) {
+        if (catchUpExecutor == null) {
+            return;
+        }
+        StringBuilder samples = new StringBuilder();
+        sample(samples, "catch_up_mode", "", catchUpExecutor.isCatchUpMode() ? 1 : 0);
+        family(out, "catch_up_mode", "gauge", "Whether backfills of lagging jobs are rate limited in catch-up mode.", samples);
+        samples = new StringBuilder();
+        sample(samples, "catch_up_backlog", "", catchUpExecutor.getBacklogSize());
+        family(out, "catch_up_backlog", "gauge", "Backfills of lagging jobs queued or running.", samples);
+        samples = new StringBuilder();
+        sample(samples, "catch_up_behind_seconds", "", TimeUnit.MINUTES.toSeconds(catchUpExecutor.getBehindMinutes()));
+        family(out, "catch_up_behind_seconds", "gauge", "Age of the oldest missed run still to backfill.", samples);
+        samples = new StringBuilder();
+        sample(samples, "catch_up_backfills_total", labels("result", "completed"), catchUpExecutor.getCompletedCount());
+        sample(samples, "catch_up_backfills_total", labels("result", "failed"), catchUpExecutor.getFailedCount());
+        family(out, "catch_up_backfills_total", "counter", "Backfills of lagging jobs by result.", samples);
+    }
+
+    /**
+     * Write the job run counters.
+     *
+     * @param out the output
+     */
+    private void writeCounters(StringBuilder out) {
+        Map<String, Map<String, Long>> counters = pipelineMetrics.getCounters();
+        writeCounter(out, counters, PipelineMetrics.JOBS_EXECUTED, "status", "Job runs by final job status.");
+        writeCounter(out, counters, PipelineMetrics.DRUID_QUERY_ERRORS, "cluster", "Failed Druid queries by cluster ID.");
+        writeCounter(out, counters, PipelineMetrics.EMAILS, "result", "Report emails by result.");
+    }
+
+    /**
+     * @param out      the output
+     * @param counters every counter
+     * @param name     the counter to write
+     * @param label    name of the counter label
+     * @param help     description of the counter
+     */
+    private static void writeCounter(StringBuilder out, Map<String, Map<String, Long>> counters, String name, String label, String help) {
+        Map<String, Long> values = counters.get(name);
+        if (values == null) {
+            return;
+        }
+        StringBuilder samples = new StringBuilder();
+        values.forEach((value, count) -> sample(samples, name + "_total", labels(label, value), count));
+        family(out, name + "_total", "counter", help, samples);
+    }
+
+    /**
+     * Write the latency histogram of each job run stage.
+     *
+     * @param out the output
+     */
+    private void writeStages(StringBuilder out) {
+        StringBuilder samples = new StringBuilder();
+        for (PipelineMetrics.Snapshot snapshot : pipelineMetrics.getSnapshots()) {
+            PipelineMetrics.Tags tags = snapshot.getTags();
+            String labels = labels(
+                "stage", snapshot.getStage().toString(),
+                "frequency", tags.getFrequency(),
+                "cluster", tags.getCluster(),
+                "framework", tags.getFramework(),
+                "model", tags.getModel()
+            );
+            histogram(samples, "stage_duration_seconds", labels, snapshot.getHistogram());
+        }
+        family(out, "stage_duration_seconds", "histogram", "Duration of the stages of job runs.", samples);
+    }
+
+    /**
+     * Write the latency histogram of each Redis command type.
+     *
+     * @param out the output
+     */
+    private void writeRedis(StringBuilder out) {
+        StringBuilder samples = new StringBuilder();
+        redisLatencies.getSnapshots().forEach((command, histogram) ->
+            histogram(samples, "redis_command_duration_seconds", labels("command", command), histogram));
+        family(out, "redis_command_duration_seconds", "histogram", "Completion time of Redis commands.", samples);
+    }
+
+    /**
+     * Write the JVM memory, thread and garbage collection metrics.
+     *
+     * @param out the output
+     */
+    private static void writeJvm(StringBuilder out) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        StringBuilder used = new StringBuilder();
+        StringBuilder committed = new StringBuilder();
+        StringBuilder max = new StringBuilder();
+        sample(used, "jvm_memory_bytes_used", labels("area", "heap"), heap.getUsed());
+        sample(used, "jvm_memory_bytes_used", labels("area", "nonheap"), nonHeap.getUsed());
+        sample(committed, "jvm_memory_bytes_committed", labels("area", "heap"), heap.getCommitted());
+        sample(committed, "jvm_memory_bytes_committed", labels("area", "nonheap"), nonHeap.getCommitted());
+        sample(max, "jvm_memory_bytes_max", labels("area", "heap"), heap.getMax());
+        sample(max, "jvm_memory_bytes_max", labels("area", "nonheap"), nonHeap.getMax());
+        family(out, "jvm_memory_bytes_used", "gauge", "Used JVM memory.", used);
+        family(out, "jvm_memory_bytes_committed", "gauge", "Committed JVM memory.", committed);
+        family(out, "jvm_memory_bytes_max", "gauge", "Maximum JVM memory, -1 if undefined.", max);
+        StringBuilder threads = new StringBuilder();
+        sample(threads, "jvm_threads_current", "", ManagementFactory.getThreadMXBean().getThreadCount());
+        family(out, "jvm_threads_current", "gauge", "Live JVM threads.", threads);
+        StringBuilder collections = new StringBuilder();
+        StringBuilder collectionTime = new StringBuilder();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String labels = labels("gc", gc.getName());
+            sample(collections, "jvm_gc_collections_total", labels, gc.getCollectionCount());
+            sample(collectionTime, "jvm_gc_collection_seconds_total", labels, gc.getCollectionTime() / 1000.0);
+        }
+        family(out, "jvm_gc_collections_total", "counter", "Garbage collections by collector.", collections);
+        family(out, "jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collection by collector.", collectionTime);
+    }
+
+    /**
+     * Write the buckets, sum and count of a histogram.
+     *
+     * @param out       the output
+     * @param name      the metric name
+     * @param labels    the formatted labels of the histogram
+     * @param histogram the histogram
+     */
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot histogram) {
+        double[] bounds = histogram.getBoundsMillis();
+        long[] counts = histogram.getBucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            sample(out, name + "_bucket", withLabel(labels, "le", format(bounds[i] / TimeUnit.SECONDS.toMillis(1))), cumulative);
+        }
+        sample(out, name + "_bucket", withLabel(labels, "le", "+Inf"), histogram.getCount());
+        sample(out, name + "_sum", labels, histogram.getSumMillis() / TimeUnit.SECONDS.toMillis(1));
+        sample(out, name + "_count", labels, histogram.getCount());
+    }
+
+    /**
+     * Write a metric family if it has samples.
+     *
+     * @param out     the output
+     * @param name    the metric name without prefix
+     * @param type    the metric type
+     * @param help    description of the metric
+     * @param samples the formatted samples
+     */
+    private static void family(StringBuilder out, String name, String type, String help, StringBuilder samples) {
+        if (samples.length() == 0) {
+            return;
+        }
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+        out.append(samples);
+    }
+
+    /**
+     * @param out    the output
+     * @param name   the metric name without prefix
+     * @param labels the formatted labels
+     * @param value  the sample value
+     */
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(PREFIX).append(name).append(labels).append(' ').append(format(value)).append('\n');
+    }
+
+    /**
+     * @param namesAndValues label names each followed by its value
+     * @return the formatted labels
+     */
+    protected static String labels(String... namesAndValues) {
+        StringBuilder labels = new StringBuilder("{");
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (i > 0) {
+                labels.append(',');
+            }
+            labels.append(namesAndValues[i]).append("=\"").append(escape(namesAndValues[i + 1])).append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    /**
+     * @param labels formatted labels
+     * @param name   label to add
+     * @param value  value of the label
+     * @return the formatted labels with the added label
+     */
+    private static String withLabel(String labels, String name, String value) {
+        String added = name + "=\"" + escape(value) + "\"";
+        return labels.isEmpty() ? "{" + added + "}" : labels.substring(0, labels.length() - 1) + "," + added + "}";
+    }
+
+    /**
+     * @param value a label value
+     * @return the value with backslashes, quotes and line feeds escaped
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * @param value a sample value
+     * @return the value without a fraction if it is whole
+     */
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -10,6 +10,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.yahoo.egads.data.TimeSeries;
 import com.yahoo.egads.control.AnomalyDetector;
+import com.yahoo.sherlock.enums.PipelineStage;
 import com.yahoo.sherlock.exception.SherlockException;
 import com.yahoo.sherlock.model.DetectorResult;
 import com.yahoo.sherlock.settings.CLISettings;
@@ -91,23 +92,30 @@ public class ProphetAPIService extends DetectorAPIService  {
         List<TimeSeries> filledTSList = new ArrayList<>();
         try {
             // fill missing data
-            for (TimeSeries ts : timeSeriesList) {
-                filledTSList.add(EgadsUtils.fillMissingData(ts, p));
+            try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.MODEL_FILL)) {
+                for (TimeSeries ts : timeSeriesList) {
+                    filledTSList.add(EgadsUtils.fillMissingData(ts, p));
+                }
             }
             // Convert time series to Json
             JsonObject jsonTSList = listParamsToJson(p.getProperty(PROPHET_GROWTH_MODEL), p.getProperty(PROPHET_YEARLY_SEASONALITY),
                     p.getProperty(PROPHET_WEEKLY_SEASONALITY), p.getProperty(PROPHET_DAILY_SEASONALITY), filledTSList);
             // query Prophet Service for expected time-series
-            JsonObject expectedJsonList = httpService.queryProphetService(prophetFullUrl, jsonTSList);
+            JsonObject expectedJsonList;
+            try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.MODEL_TRAIN)) {
+                expectedJsonList = httpService.queryProphetService(prophetFullUrl, jsonTSList);
+            }
             List<TimeSeries.DataSequence> expectedList = jsonToDataSequenceList(expectedJsonList);
             // Anomaly Detection
-            for (int i = 0; i < filledTSList.size(); i++) {
-                TimeSeries originalTS = timeSeriesList.get(i);
-                if (originalTS.data.isEmpty() || originalTS.time(originalTS.size() - 1) != endTimeMinutes * 60L) {
-                    anomalies.add(getNoDataAnomaly(originalTS));
-                } else {
-                    AnomalyDetector ad = EgadsUtils.getAnomalyDetector(filledTSList.get(i), p);
-                    anomalies.addAll(getAnomalies(ad, filledTSList.get(i), expectedList.get(i)));
+            try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.MODEL_DETECT)) {
+                for (int i = 0; i < filledTSList.size(); i++) {
+                    TimeSeries originalTS = timeSeriesList.get(i);
+                    if (originalTS.data.isEmpty() || originalTS.time(originalTS.size() - 1) != endTimeMinutes * 60L) {
+                        anomalies.add(getNoDataAnomaly(originalTS));
+                    } else {
+                        AnomalyDetector ad = EgadsUtils.getAnomalyDetector(filledTSList.get(i), p);
+                        anomalies.addAll(getAnomalies(ad, filledTSList.get(i), expectedList.get(i)));
+                    }
                 }
             }
         } catch (Exception e) {
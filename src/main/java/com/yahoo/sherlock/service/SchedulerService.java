@@ -6,15 +6,21 @@
 
 package com.yahoo.sherlock.service;
 
+import com.yahoo.sherlock.enums.ExecutionLane;
 import com.yahoo.sherlock.enums.Granularity;
 import com.yahoo.sherlock.enums.JobStatus;
 import com.yahoo.sherlock.enums.Triggers;
 import com.yahoo.sherlock.exception.SchedulerException;
 import com.yahoo.sherlock.model.JobMetadata;
 import com.yahoo.sherlock.scheduler.BackupTask;
+import com.yahoo.sherlock.scheduler.ClusterHealthTask;
 import com.yahoo.sherlock.scheduler.EmailSenderTask;
 import com.yahoo.sherlock.scheduler.ExecutionTask;
-import com.yahoo.sherlock.scheduler.RecoverableThreadScheduler;
+import com.yahoo.sherlock.scheduler.ExecutionWorkerPool;
+import com.yahoo.sherlock.scheduler.LeaseRenewalTask;
+import com.yahoo.sherlock.scheduler.ObservedTask;
+import com.yahoo.sherlock.scheduler.ScheduleSlotAllocator;
+import com.yahoo.sherlock.scheduler.TaskScheduler;
 import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.settings.Constants;
 import com.yahoo.sherlock.store.JobScheduler;
@@ -29,7 +35,12 @@ import java.io.IOException;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -54,9 +65,9 @@ public class SchedulerService {
     private JobExecutionService jobExecutionService;
 
     /**
-     * ScheduledExecutorService interface for pinging the backend priority queue.
+     * Periodic task scheduler, with a thread pool per task type.
      */
-    private RecoverableThreadScheduler recoverableThreadScheduler;
+    private TaskScheduler taskScheduler;
 
     /**
      * Class job scheduler instance that communicates with the
@@ -65,9 +76,9 @@ public class SchedulerService {
     private JobScheduler jobScheduler;
 
     /**
-     * Class execution task instance.
+     * Execution task of each lane.
      */
-    private ExecutionTask executionTask;
+    private Map<ExecutionLane, ExecutionTask> executionTasks;
 
     /**
      * Class backup task instance.
@@ -79,16 +90,22 @@ public class SchedulerService {
      */
     private EmailSenderTask emailSenderTask;
 
+    /**
+     * Class cluster health task instance.
+     */
+    private ClusterHealthTask clusterHealthTask;
+
     /**
      * Private singleton constructor.
      */
     private SchedulerService() {
         jobExecutionService = new JobExecutionService();
         jobScheduler = Store.getJobScheduler();
-        recoverableThreadScheduler = null;
-        executionTask = null;
+        taskScheduler = null;
+        executionTasks = new EnumMap<>(ExecutionLane.class);
         backupTask = null;
         emailSenderTask = null;
+        clusterHealthTask = null;
     }
 
     /**
@@ -104,38 +121,63 @@ public class SchedulerService {
     }
 
     /**
-     * Create the recoverableThreadScheduler instance.
+     * Create the task scheduler instance.
      */
     public void instantiateMainScheduler() {
         log.info("Instantiating timer instance");
-        if (recoverableThreadScheduler != null) {
+        if (taskScheduler != null) {
             log.info("Timer is already instantiated");
             return;
         }
-        recoverableThreadScheduler = new RecoverableThreadScheduler(6);
+        taskScheduler = new TaskScheduler();
+    }
+
+    /**
+     * @return the run statistics of every periodic task, empty if none is started
+     */
+    public List<ObservedTask.Stats> getTaskStats() {
+        return taskScheduler == null ? Collections.emptyList() : taskScheduler.getStats();
     }
 
     /**
-     * Start the execution task.
+     * @return the running execution task of each lane, empty if they are not started
+     */
+    public Map<ExecutionLane, ExecutionTask> getExecutionTasks() {
+        return Collections.unmodifiableMap(executionTasks);
+    }
+
+    /**
+     * Start an execution task for each lane, with its own
+     * queue and workers.
      */
     public void startMainScheduler() {
-        log.info("Starting execution task");
-        if (executionTask != null) {
-            log.info("Execution task has already been started");
+        log.info("Starting execution tasks");
+        if (!executionTasks.isEmpty()) {
+            log.info("Execution tasks have already been started");
             return;
         }
-        if (recoverableThreadScheduler == null) {
+        if (taskScheduler == null) {
             instantiateMainScheduler();
         }
-        executionTask = new ExecutionTask(
-                jobExecutionService,
-                this,
-                jobScheduler,
-                Store.getJobMetadataAccessor()
-        );
-        int period = CLISettings.EXECUTION_DELAY;
-        int delay = 0;
-        recoverableThreadScheduler.scheduleAtFixedRate(executionTask, delay, period, TimeUnit.SECONDS);
+        for (ExecutionLane lane : ExecutionLane.values()) {
+            JobScheduler laneScheduler = jobScheduler.getLane(lane);
+            ExecutionTask executionTask = new ExecutionTask(
+                    jobExecutionService,
+                    this,
+                    laneScheduler,
+                    Store.getJobMetadataAccessor(),
+                    new ExecutionWorkerPool(lane.getThreads(), CLISettings.MAX_JOBS_IN_FLIGHT)
+            );
+            executionTasks.put(lane, executionTask);
+            // The task sleeps until the next job is due, the delay only restarts it after it returns
+            int restartDelay = 1;
+            int delay = 0;
+            taskScheduler.scheduleWithFixedDelay("execution-" + lane, "execution", executionTask, delay, restartDelay, TimeUnit.SECONDS);
+            LeaseRenewalTask leaseRenewalTask = new LeaseRenewalTask(laneScheduler, executionTask.getWorkerPool());
+            int renewalPeriod = Math.max(1, CLISettings.JOB_LEASE_SECONDS / 3);
+            taskScheduler.scheduleAtFixedRate(
+                "lease-renewal-" + lane, "lease-renewal", leaseRenewalTask, renewalPeriod, renewalPeriod, TimeUnit.SECONDS);
+        }
     }
 
     /**
@@ -147,13 +189,13 @@ public class SchedulerService {
             log.info("Email sender task has already been started");
             return;
         }
-        if (recoverableThreadScheduler == null) {
+        if (taskScheduler == null) {
             instantiateMainScheduler();
         }
         emailSenderTask = new EmailSenderTask();
         int period = Constants.SECONDS_IN_MINUTE;
         int delay = 10;
-        recoverableThreadScheduler.scheduleAtFixedRate(emailSenderTask, delay, period, TimeUnit.SECONDS);
+        taskScheduler.scheduleAtFixedRate("email-sender", "email", emailSenderTask, delay, period, TimeUnit.SECONDS);
     }
 
     /**
@@ -165,60 +207,121 @@ public class SchedulerService {
             log.info("Backup task has already been started");
             return;
         }
-        if (recoverableThreadScheduler == null) {
+        if (taskScheduler == null) {
             instantiateMainScheduler();
         }
         backupTask = new BackupTask();
         int period = Constants.SECONDS_IN_MINUTE;
         int delay = 20;
-        recoverableThreadScheduler.scheduleAtFixedRate(backupTask, delay, period, TimeUnit.SECONDS);
+        taskScheduler.scheduleAtFixedRate("backup", "backup", backupTask, delay, period, TimeUnit.SECONDS);
     }
 
     /**
-     * Stop the execution task.
+     * Start the task polling the health of the Druid clusters.
+     */
+    public void startClusterHealthScheduler() {
+        log.info("Starting cluster health task");
+        if (clusterHealthTask != null) {
+            log.info("Cluster health task has already been started");
+            return;
+        }
+        if (taskScheduler == null) {
+            instantiateMainScheduler();
+        }
+        clusterHealthTask = new ClusterHealthTask();
+        int period = Math.max(1, CLISettings.CLUSTER_HEALTH_INTERVAL);
+        int delay = 0;
+        taskScheduler.scheduleAtFixedRate("cluster-health", "cluster-health", clusterHealthTask, delay, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop the execution tasks.
      */
     public void shutdownMainScheduler() {
-        if (executionTask == null) {
-            log.info("Execution task already stopped");
+        if (executionTasks.isEmpty()) {
+            log.info("Execution tasks already stopped");
             return;
         }
-        executionTask = null;
-        recoverableThreadScheduler.shutdown();
+        taskScheduler.shutdown();
+        shutdownExecutionTasks();
     }
 
     /**
-     * Destroy the execution task and the timer.
+     * Destroy the execution tasks and the timer.
      */
     public void destroyMainScheduler() {
-        if (executionTask != null) {
-            recoverableThreadScheduler.shutdown();
-            executionTask = null;
+        if (!executionTasks.isEmpty()) {
+            taskScheduler.shutdown();
+            shutdownExecutionTasks();
         }
-        if (recoverableThreadScheduler != null) {
-            recoverableThreadScheduler.shutdown();
-            recoverableThreadScheduler = null;
+        if (taskScheduler != null) {
+            taskScheduler.shutdown();
+            taskScheduler = null;
         }
     }
 
+    /**
+     * Stop the execution task of every lane.
+     */
+    private void shutdownExecutionTasks() {
+        for (ExecutionTask executionTask : executionTasks.values()) {
+            executionTask.shutdown();
+        }
+        executionTasks.clear();
+    }
+
     /**
      * Schedule a job. This method will assign a next run time and
-     * place the job in the backend priority queue.
+     * place the job in the backend priority queue of its lane. The
+     * job is placed by the number of queued jobs in each minute,
+     * without loading the queued jobs.
      *
      * @param jobMetadata job metadata object to schedule
      * @throws SchedulerException if an error occurs while scheduling the job
      */
     public void scheduleJob(JobMetadata jobMetadata) throws SchedulerException {
-        Pair<Integer, Integer> nextTimes = jobScheduleTime(jobMetadata);
+        int offset = newSlotCountAllocator().allocate(jobMetadata);
+        Pair<Integer, Integer> nextTimes = jobScheduleTime(jobMetadata, offset);
         Integer nextQueryTime = nextTimes.getLeft();
         Integer nextRunTime = nextTimes.getRight();
         jobMetadata.setEffectiveQueryTime(nextQueryTime);
         jobMetadata.setEffectiveRunTime(nextRunTime);
         try {
-            jobScheduler.pushQueue(nextRunTime, jobMetadata.getJobId().toString());
+            jobScheduler.pushQueue(nextRunTime, jobMetadata);
         } catch (IOException e) {
             log.error("Error while adding job to queue", e);
             throw new SchedulerException(e.getMessage(), e);
         }
+        wakeUpExecution(jobMetadata, nextRunTime);
+    }
+
+    /**
+     * Schedule a batch of jobs. The queue occupancy is read once for
+     * the whole batch, and each job is placed after the jobs of the
+     * batch before it.
+     *
+     * @param jobs jobs to schedule
+     * @throws SchedulerException if an error occurs while scheduling the jobs
+     */
+    public void scheduleJobs(List<JobMetadata> jobs) throws SchedulerException {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        ScheduleSlotAllocator allocator = newSlotAllocator(jobs);
+        for (JobMetadata job : jobs) {
+            Pair<Integer, Integer> nextTimes = jobScheduleTime(job, allocator.allocate(job));
+            job.setEffectiveQueryTime(nextTimes.getLeft());
+            job.setEffectiveRunTime(nextTimes.getRight());
+        }
+        try {
+            jobScheduler.pushJobs(jobs);
+        } catch (IOException e) {
+            log.error("Error while adding jobs to queue", e);
+            throw new SchedulerException(e.getMessage(), e);
+        }
+        for (JobMetadata job : jobs) {
+            wakeUpExecution(job, job.getEffectiveRunTime());
+        }
     }
 
     /**
@@ -236,11 +339,12 @@ public class SchedulerService {
             jobMetadata.setEffectiveQueryTime(nextQueryTime);
             jobMetadata.setEffectiveRunTime(nextRunTime);
             try {
-                jobScheduler.pushQueue(nextRunTime, jobMetadata.getJobId().toString());
+                jobScheduler.pushQueue(nextRunTime, jobMetadata);
             } catch (IOException e) {
                 log.error("Error while adding job to queue", e);
                 throw new SchedulerException(e.getMessage(), e);
             }
+            wakeUpExecution(jobMetadata, nextRunTime);
         }
     }
 
@@ -301,26 +405,151 @@ public class SchedulerService {
     public void stopAndReschedule(List<JobMetadata> jobs) throws SchedulerException {
         log.info("Stopping and then rescheduling [{}] jobs", jobs.size());
         List<String> jobIds = new ArrayList<>(jobs.size());
-        List<Pair<Integer, String>> jobsAndTimes = new ArrayList<>(jobs.size());
+        List<JobMetadata> scheduledJobs = new ArrayList<>(jobs.size());
+        ScheduleSlotAllocator allocator = newSlotAllocator(jobs);
         for (JobMetadata job : jobs) {
-            if (job.getJobStatus().equals(JobStatus.NODATA.getValue()) ||
-                job.getJobStatus().equals(JobStatus.RUNNING.getValue())) {
+            if (job.isRunning()) {
                 jobIds.add(job.getJobId().toString());
-                Pair<Integer, Integer> nextTimes = jobScheduleTime(job);
+                Pair<Integer, Integer> nextTimes = jobScheduleTime(job, allocator.allocate(job));
                 Integer nextQueryTime = nextTimes.getLeft();
                 Integer nextRunTime = nextTimes.getRight();
                 job.setEffectiveQueryTime(nextQueryTime);
                 job.setEffectiveRunTime(nextRunTime);
-                jobsAndTimes.add(new ImmutablePair<>(nextRunTime, job.getJobId().toString()));
+                scheduledJobs.add(job);
             }
         }
+        requeue(jobIds, scheduledJobs);
+    }
+
+    /**
+     * Spread the queued jobs evenly over the minutes of the hour.
+     * Each job keeps the period it is queued for and only moves
+     * within its hour, so that no period is run twice or skipped.
+     * A job is only moved if it is still queued at the run time it
+     * was read at, so that a job popped or rescheduled meanwhile
+     * is left alone.
+     *
+     * @return the jobs that were moved, whose run time should be saved
+     * @throws SchedulerException if an error occurs while rescheduling the jobs
+     */
+    public List<JobMetadata> rebalanceJobs() throws SchedulerException {
+        List<JobMetadata> queuedJobs;
+        try {
+            queuedJobs = jobScheduler.getAllQueue();
+        } catch (IOException e) {
+            log.error("Error while reading the queue!", e);
+            throw new SchedulerException(e.getMessage(), e);
+        }
+        ScheduleSlotAllocator before = new ScheduleSlotAllocator(queuedJobs);
+        ScheduleSlotAllocator allocator = new ScheduleSlotAllocator(Collections.emptyList());
+        List<JobMetadata> movedJobs = new ArrayList<>();
+        try {
+            for (JobMetadata job : queuedJobs) {
+                Integer runTime = job.getEffectiveRunTime();
+                if (runTime == null || job.getFrequency().equalsIgnoreCase(Triggers.MINUTE.toString())) {
+                    continue;
+                }
+                int slot = allocator.allocate(job);
+                int newRunTime = runTime - ScheduleSlotAllocator.slotOf(runTime) + slot;
+                if (newRunTime != runTime && jobScheduler.moveQueue(job, runTime, newRunTime)) {
+                    job.setEffectiveRunTime(newRunTime);
+                    movedJobs.add(job);
+                    wakeUpExecution(job, newRunTime);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error while rescheduling jobs!", e);
+            throw new SchedulerException(e.getMessage(), e);
+        }
+        log.info("Moved [{}] jobs, busiest minute went from [{}] to [{}] jobs",
+                 movedJobs.size(), before.getMaxSlotCount(), allocator.getMaxSlotCount());
+        return movedJobs;
+    }
+
+    /**
+     * Remove jobs from the queue and push them back
+     * at their new effective run times.
+     *
+     * @param jobIds IDs of the jobs to remove
+     * @param jobs   the jobs with their new run times
+     * @throws SchedulerException if an error occurs while rescheduling the jobs
+     */
+    private void requeue(List<String> jobIds, List<JobMetadata> jobs) throws SchedulerException {
+        if (jobIds.isEmpty()) {
+            return;
+        }
         try {
             jobScheduler.removeQueue(jobIds);
-            jobScheduler.pushQueue(jobsAndTimes);
+            jobScheduler.pushJobs(jobs);
         } catch (IOException e) {
             log.error("Error while rescheduling jobs!", e);
             throw new SchedulerException(e.getMessage(), e);
         }
+        for (JobMetadata job : jobs) {
+            wakeUpExecution(job, job.getEffectiveRunTime());
+        }
+    }
+
+    /**
+     * Wake the execution task of the lane of a job up early
+     * if the job was queued before the time it is sleeping until.
+     *
+     * @param job            the queued job
+     * @param runTimeMinutes run time of the queued job in minutes
+     */
+    private void wakeUpExecution(JobMetadata job, long runTimeMinutes) {
+        ExecutionTask task = executionTasks.get(ExecutionLane.of(job.getFrequency()));
+        if (task != null) {
+            task.wakeUp(runTimeMinutes);
+        }
+    }
+
+    /**
+     * Create a slot allocator with the number of queued jobs in each
+     * minute of the hour, read from the run times in the queue alone.
+     * If load smoothing is disabled or the queue cannot be read, the
+     * allocator starts empty and jobs fall back to the offset given
+     * by their ID.
+     *
+     * @return the slot allocator
+     */
+    protected ScheduleSlotAllocator newSlotCountAllocator() {
+        if (CLISettings.DISABLE_LOAD_SMOOTHING) {
+            return new ScheduleSlotAllocator(Collections.emptyList());
+        }
+        try {
+            return new ScheduleSlotAllocator(jobScheduler.getSlotCounts());
+        } catch (IOException e) {
+            log.warn("Could not read the queue occupancy, using default job offsets", e);
+            return new ScheduleSlotAllocator(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Create a slot allocator with the occupancy of the queue, leaving
+     * out the jobs about to be scheduled. If load smoothing is disabled
+     * or the queue cannot be read, the allocator starts empty and jobs
+     * fall back to the offset given by their ID.
+     *
+     * @param scheduledJobs jobs about to be scheduled
+     * @return the slot allocator
+     */
+    protected ScheduleSlotAllocator newSlotAllocator(Collection<JobMetadata> scheduledJobs) {
+        if (CLISettings.DISABLE_LOAD_SMOOTHING) {
+            return new ScheduleSlotAllocator(Collections.emptyList());
+        }
+        Set<Integer> scheduledIds = new HashSet<>();
+        for (JobMetadata job : scheduledJobs) {
+            scheduledIds.add(job.getJobId());
+        }
+        try {
+            List<JobMetadata> queuedJobs = jobScheduler.getAllQueue();
+            queuedJobs.removeIf(job -> scheduledIds.contains(job.getJobId()));
+            return new ScheduleSlotAllocator(queuedJobs);
+        } catch (IOException e) {
+            log.warn("Could not read the queue occupancy, using default job offsets", e);
+            return new ScheduleSlotAllocator(Collections.emptyList());
+        }
     }
 
     /**
@@ -332,6 +561,19 @@ public class SchedulerService {
      * @return timestamp in minutes
      */
     public Pair<Integer, Integer> jobScheduleTime(JobMetadata job) {
+        return jobScheduleTime(job, ScheduleSlotAllocator.hashSlot(job));
+    }
+
+    /**
+     * Return an execution time in Unix timestamp minutes
+     * based on the supplied job, running at the given minute
+     * of the hour.
+     *
+     * @param job    the job for which to get an execution time
+     * @param offset minute of the hour at which the job runs
+     * @return timestamp in minutes
+     */
+    public Pair<Integer, Integer> jobScheduleTime(JobMetadata job, int offset) {
         Integer hoursOfLag = job.getHoursOfLag();
         Granularity granularity = Granularity.getValue(job.getFrequency());
         if (granularity == null) {
@@ -345,11 +587,11 @@ public class SchedulerService {
         // Take the current time, subtract the hours of lag
         // and then floor to the nearest granularity
         Integer effectiveQueryTime = granularity.getEndTimeForInterval(ZonedDateTime.now(ZoneOffset.UTC).minusHours(hoursOfLag));
-        // Obtain a hash value between 0 and 60 (minutes) to offset the job
-        int idInt = job.getJobId() == null ? 30 : job.getJobId();
         // Return the effective run time as the effective query time plus
-        // the hours of lag (in minutes)
-        Integer offset = job.getFrequency().equalsIgnoreCase(Triggers.MINUTE.toString()) ? Triggers.MINUTE.getMinutes() : Math.abs(idInt) % Constants.MINUTES_IN_HOUR;
+        // the hours of lag (in minutes) and the offset within the hour
+        if (job.getFrequency().equalsIgnoreCase(Triggers.MINUTE.toString())) {
+            offset = Triggers.MINUTE.getMinutes();
+        }
         Integer effectiveRunTime = effectiveQueryTime + hoursOfLag * 60 + offset;
         return new ImmutablePair<>(effectiveQueryTime, effectiveRunTime);
     }
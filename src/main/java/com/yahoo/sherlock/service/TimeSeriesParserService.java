@@ -8,17 +8,21 @@ package com.yahoo.sherlock.service;
 
 import com.google.gson.JsonArray;
 import com.yahoo.sherlock.exception.LambdaException;
+import com.yahoo.sherlock.query.DruidResponseParser;
 import com.yahoo.sherlock.query.JsonTimeSeries;
 import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.utils.EgadsUtils;
 import com.yahoo.egads.data.MetricMeta;
 import com.yahoo.egads.data.TimeSeries;
 import com.yahoo.sherlock.enums.Granularity;
+import com.yahoo.sherlock.enums.PipelineStage;
 import com.yahoo.sherlock.exception.SherlockException;
 import com.yahoo.sherlock.query.Query;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -49,7 +53,8 @@ public class TimeSeriesParserService {
         if (timeseriesJson == null) {
             log.error("Error in druid response.");
             throw new SherlockException("Null druid response!");
-        } else {
+        }
+        try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.TIMESERIES_ASSEMBLY)) {
             // deserialize timeseriesJson to JsonDataSequence
             JsonTimeSeries jsonTimeSeries = new JsonTimeSeries(timeseriesJson, query);
             log.info("Deserialization to json data sequence successful.");
@@ -72,6 +77,41 @@ public class TimeSeriesParserService {
         return timeSeriesList;
     }
 
+    /**
+     * Method to generate timeseries straight from the body of a druid
+     * response, without building the response as a json array.
+     *
+     * @param response druid response body
+     * @param smile    whether the response is Smile encoded rather than JSON text
+     * @param query    associated query object
+     * @return list of timeseries
+     * @throws SherlockException exception in druid response parsing
+     * @throws IOException       if an error occurs while reading the response
+     */
+    public List<TimeSeries> readTimeSeries(InputStream response, boolean smile, Query query) throws SherlockException, IOException {
+        return readAllTimeSeries(response, smile, query).stream()
+            .filter(isValidTimeSeries(query))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Method to generate timeseries straight from the body of a druid
+     * response, keeping the timeseries which are incomplete.
+     *
+     * @param response druid response body
+     * @param smile    whether the response is Smile encoded rather than JSON text
+     * @param query    associated query object
+     * @return list of every timeseries in the response
+     * @throws SherlockException exception in druid response parsing
+     * @throws IOException       if an error occurs while reading the response
+     */
+    public List<TimeSeries> readAllTimeSeries(InputStream response, boolean smile, Query query) throws SherlockException, IOException {
+        log.info("Parsing druid response.");
+        try (PipelineMetrics.Timer timer = PipelineMetrics.time(PipelineStage.TIMESERIES_ASSEMBLY)) {
+            return new DruidResponseParser(query).parse(response, smile);
+        }
+    }
+
     /**
      * Filter for bad timeseries.
      * @param query input Query for timeseries
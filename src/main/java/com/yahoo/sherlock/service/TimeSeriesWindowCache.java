@@ -0,0 +1,305 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.yahoo.egads.data.MetricMeta;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.enums.Granularity;
+import com.yahoo.sherlock.exception.DruidException;
+import com.yahoo.sherlock.exception.SherlockException;
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.query.Query;
+import com.yahoo.sherlock.query.QueryBuilder;
+import com.yahoo.sherlock.settings.CLISettings;
+import com.yahoo.sherlock.settings.QueryConstants;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the time series window fetched by the last run of each query,
+ * so that the next run only queries Druid for the intervals after the
+ * cached window. A configurable number of trailing intervals of the
+ * cached window is fetched again to pick up late data, and the fetched
+ * tail is merged into the window, whose oldest points are dropped.
+ * Windows are kept per cluster and query, without the query interval,
+ * so that the jobs sharing a query share its window.
+ */
+@Slf4j
+public class TimeSeriesWindowCache {
+
+    /** The singleton instance of this class. */
+    private static TimeSeriesWindowCache timeSeriesWindowCache;
+
+    /** Cached windows by cluster ID and query, least recently used first. */
+    private final Map<String, Window> windows = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Number of windows fetched in full. */
+    private final AtomicLong fullFetchCount = new AtomicLong();
+
+    /** Number of windows completed with a fetch of their tail. */
+    private final AtomicLong incrementalFetchCount = new AtomicLong();
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared window cache
+     */
+    public static synchronized TimeSeriesWindowCache getInstance() {
+        if (timeSeriesWindowCache == null) {
+            timeSeriesWindowCache = new TimeSeriesWindowCache();
+        }
+        return timeSeriesWindowCache;
+    }
+
+    /**
+     * Get the time series of a query, only fetching the tail of its
+     * window if the window of a previous run of the query is cached.
+     *
+     * @param cluster the cluster to query
+     * @param query   the query
+     * @param fetcher fetches the time series of a query from Druid
+     * @return every time series of the query window, including incomplete ones
+     * @throws SherlockException if the series could not be parsed
+     * @throws DruidException    if an error occurs while querying Druid
+     */
+    public List<TimeSeries> fetch(DruidCluster cluster, Query query, Fetcher fetcher) throws SherlockException, DruidException {
+        int maxWindows = CLISettings.SERIES_WINDOW_CACHE_SIZE;
+        if (maxWindows <= 0 || cluster.getClusterId() == null || query.getQueryJsonObject() == null) {
+            fullFetchCount.incrementAndGet();
+            return fetcher.fetch(query);
+        }
+        String key = cluster.getClusterId() + ":" + signature(query);
+        Window cached;
+        synchronized (this) {
+            cached = windows.get(key);
+        }
+        Query tailQuery = cached == null ? null : tailQuery(cached, query, CLISettings.SERIES_WINDOW_TAIL_INTERVALS);
+        List<TimeSeries> timeSeriesList;
+        if (tailQuery == null) {
+            fullFetchCount.incrementAndGet();
+            timeSeriesList = fetcher.fetch(query);
+        } else {
+            incrementalFetchCount.incrementAndGet();
+            log.info("Fetching the window of the query from {} instead of {}", tailQuery.getStartTime(), query.getStartTime());
+            timeSeriesList = merge(cached.timeSeriesList, fetcher.fetch(tailQuery), query.getStartTime(), tailQuery.getStartTime());
+        }
+        Window window = new Window(query.getStartTime(), query.getRunTime(), DruidQueryCoalescer.copy(timeSeriesList));
+        synchronized (this) {
+            Window current = windows.get(key);
+            if (current == null || current.endTime <= window.endTime) {
+                windows.put(key, window);
+            }
+            Iterator<Window> iterator = windows.values().iterator();
+            while (windows.size() > maxWindows && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return timeSeriesList;
+    }
+
+    /**
+     * Build the query of the intervals of a run which are not in the
+     * cached window, plus the trailing intervals to fetch again.
+     *
+     * @param cached        the cached window of the query
+     * @param query         the query of the run
+     * @param tailIntervals number of trailing intervals of the window to fetch again
+     * @return the query of the tail of the window, or null if the whole window must be fetched
+     */
+    protected static Query tailQuery(Window cached, Query query, int tailIntervals) {
+        Granularity granularity = query.getGranularity();
+        // months do not have a fixed length, so their windows do not line up
+        if (granularity == null || granularity == Granularity.MONTH) {
+            return null;
+        }
+        int granularityRange = query.getGranularityRange() == null ? 1 : query.getGranularityRange();
+        long bucket = granularity.getMinutes() * 60L * granularityRange;
+        long start = query.getStartTime();
+        long end = query.getRunTime();
+        if (start < cached.startTime || end < cached.endTime || start >= cached.endTime || (start - cached.startTime) % bucket != 0) {
+            return null;
+        }
+        long tailStart = cached.endTime - Math.max(0, tailIntervals) * bucket;
+        // align the tail on the buckets of the query
+        tailStart = start + Math.floorDiv(tailStart - start, bucket) * bucket;
+        if (tailStart <= start || tailStart >= end) {
+            return null;
+        }
+        JsonObject queryObj = new JsonParser().parse(query.getQueryJsonObject().toString()).getAsJsonObject();
+        queryObj.remove(QueryConstants.INTERVALS);
+        queryObj.addProperty(QueryConstants.INTERVALS, QueryBuilder.asDruidDate(toDate(tailStart)) + '/' + QueryBuilder.asDruidDate(toDate(end)));
+        return new Query(queryObj, (int) tailStart, (int) end, granularity, granularityRange);
+    }
+
+    /**
+     * @param seconds seconds since epoch
+     * @return the UTC date
+     */
+    private static ZonedDateTime toDate(long seconds) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds), ZoneOffset.UTC);
+    }
+
+    /**
+     * Merge the fetched tail of a window into the cached window.
+     *
+     * @param cachedSeries the series of the cached window
+     * @param tailSeries   the series of the fetched tail
+     * @param start        start of the new window in seconds
+     * @param tailStart    start of the tail in seconds
+     * @return the series of the new window
+     * @throws SherlockException if a data point cannot be added
+     */
+    protected static List<TimeSeries> merge(List<TimeSeries> cachedSeries, List<TimeSeries> tailSeries, long start, long tailStart)
+        throws SherlockException {
+        Map<String, TimeSeries> merged = new LinkedHashMap<>();
+        try {
+            for (TimeSeries source : cachedSeries) {
+                TimeSeries timeSeries = merged.computeIfAbsent(source.meta.name + "|" + source.meta.source, key -> newTimeSeries(source.meta));
+                for (TimeSeries.Entry entry : source.data) {
+                    if (entry.time >= start && entry.time < tailStart) {
+                        timeSeries.append(entry.time, entry.value);
+                    }
+                }
+            }
+            for (TimeSeries source : tailSeries) {
+                TimeSeries timeSeries = merged.computeIfAbsent(source.meta.name + "|" + source.meta.source, key -> newTimeSeries(source.meta));
+                for (TimeSeries.Entry entry : source.data) {
+                    if (entry.time >= tailStart) {
+                        timeSeries.append(entry.time, entry.value);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new SherlockException(e.getMessage(), e);
+        }
+        List<TimeSeries> timeSeriesList = new ArrayList<>(merged.size());
+        for (TimeSeries timeSeries : merged.values()) {
+            // series which had no data in the new window are dropped
+            if (timeSeries.size() > 0) {
+                timeSeriesList.add(timeSeries);
+            }
+        }
+        return timeSeriesList;
+    }
+
+    /**
+     * @param meta metadata of the source series
+     * @return an empty series with the same metadata
+     */
+    private static TimeSeries newTimeSeries(MetricMeta meta) {
+        TimeSeries timeSeries = new TimeSeries();
+        timeSeries.meta = new MetricMeta();
+        timeSeries.meta.id = meta.id;
+        timeSeries.meta.name = meta.name;
+        timeSeries.meta.source = meta.source;
+        timeSeries.meta.fileName = meta.fileName;
+        return timeSeries;
+    }
+
+    /**
+     * Write a query without its interval and granularity origin, which
+     * change with every run, so that the runs of a query match.
+     *
+     * @param query the query
+     * @return the query signature
+     */
+    protected static String signature(Query query) {
+        JsonObject queryObj = new JsonParser().parse(query.getQueryJsonObject().toString()).getAsJsonObject();
+        queryObj.remove(QueryConstants.INTERVALS);
+        JsonElement granularity = queryObj.get(QueryConstants.GRANULARITY);
+        if (granularity != null && granularity.isJsonObject()) {
+            granularity.getAsJsonObject().remove(QueryConstants.ORIGIN);
+        }
+        return query.getGranularity() + ":" + query.getGranularityRange() + ":" + DruidQueryCoalescer.normalize(queryObj);
+    }
+
+    /**
+     * Drop the windows of a cluster.
+     *
+     * @param clusterId ID of the cluster
+     */
+    public synchronized void invalidate(Integer clusterId) {
+        if (clusterId != null) {
+            windows.keySet().removeIf(key -> key.startsWith(clusterId + ":"));
+        }
+    }
+
+    /**
+     * Drop every window.
+     */
+    public synchronized void clear() {
+        windows.clear();
+    }
+
+    /**
+     * @return a snapshot of the window cache statistics
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachedWindows", windows.size());
+        stats.put("fullFetches", fullFetchCount.get());
+        stats.put("incrementalFetches", incrementalFetchCount.get());
+        return stats;
+    }
+
+    /**
+     * Fetches the time series of a query from Druid.
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+
+        /**
+         * Fetch and parse the series, keeping the incomplete ones.
+         *
+         * @param query the query to send
+         * @return the time series of the query
+         * @throws SherlockException if the series could not be parsed
+         * @throws DruidException    if an error occurs while querying Druid
+         */
+        List<TimeSeries> fetch(Query query) throws SherlockException, DruidException;
+    }
+
+    /**
+     * Time series window of the last run of a query.
+     */
+    protected static class Window {
+
+        /** Start of the window in seconds. */
+        private final long startTime;
+
+        /** End of the window in seconds. */
+        private final long endTime;
+
+        /** The series of the window. */
+        private final List<TimeSeries> timeSeriesList;
+
+        /**
+         * @param startTime      start of the window in seconds
+         * @param endTime        end of the window in seconds
+         * @param timeSeriesList the series of the window
+         */
+        protected Window(long startTime, long endTime, List<TimeSeries> timeSeriesList) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.timeSeriesList = timeSeriesList;
+        }
+    }
+}
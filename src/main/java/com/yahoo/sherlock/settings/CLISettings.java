@@ -142,9 +142,153 @@ public class CLISettings {
     /**
      * Job execution delay.
      */
-    @Parameter(names = "--execution-delay", description = "the number of seconds between each check(ping to redis) on jobs. (default 30)")
+    @Parameter(names = "--execution-delay", description = "the maximum number of seconds between each check(ping to redis) on jobs. (default 30)")
     public static int EXECUTION_DELAY = 30;
 
+    /**
+     * Number of jobs executed concurrently.
+     */
+    @Parameter(names = "--execution-threads", description = "the number of worker threads executing due daily, weekly and monthly jobs concurrently. (default 4)")
+    public static int EXECUTION_THREADS = 4;
+
+    /**
+     * Number of minute jobs executed concurrently.
+     */
+    @Parameter(names = "--minute-lane-threads", description = "the number of worker threads executing due minute jobs concurrently. (default 2)")
+    public static int MINUTE_LANE_THREADS = 2;
+
+    /**
+     * Number of hourly jobs executed concurrently.
+     */
+    @Parameter(names = "--hour-lane-threads", description = "the number of worker threads executing due hourly jobs concurrently. (default 2)")
+    public static int HOUR_LANE_THREADS = 2;
+
+    /**
+     * Number of jobs of a lane running at once in the job pipeline.
+     */
+    @Parameter(names = "--max-jobs-in-flight", description = "the number of jobs of each lane which may run at once in the job pipeline. (default 64)")
+    public static int MAX_JOBS_IN_FLIGHT = 64;
+
+    /**
+     * Number of threads querying Druid for job runs.
+     */
+    @Parameter(names = "--pipeline-druid-threads", description = "the number of threads shared by all job runs to query Druid. (default 16)")
+    public static int PIPELINE_DRUID_THREADS = 16;
+
+    /**
+     * Number of threads detecting anomalies for job runs.
+     */
+    @Parameter(names = "--pipeline-detection-threads", description = "the number of threads shared by all job runs to detect anomalies. (default number of cores)")
+    public static int PIPELINE_DETECTION_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of threads writing the results of job runs.
+     */
+    @Parameter(names = "--pipeline-store-threads", description = "the number of threads shared by all job runs to write reports to Redis and send emails. (default 4)")
+    public static int PIPELINE_STORE_THREADS = 4;
+
+    /**
+     * Number of threads backfilling the runs missed by lagging jobs.
+     */
+    @Parameter(names = "--catch-up-threads", description = "the number of threads backfilling the runs missed by lagging jobs. (default 2)")
+    public static int CATCH_UP_THREADS = 2;
+
+    /**
+     * Number of lagging jobs from which catch-up mode is entered.
+     */
+    @Parameter(names = "--catch-up-threshold", description = "the number of lagging jobs from which catch-up mode is entered. (default 10)")
+    public static int CATCH_UP_THRESHOLD = 10;
+
+    /**
+     * Number of backfills of lagging jobs started per minute in catch-up mode.
+     */
+    @Parameter(names = "--catch-up-backfills-per-minute", description = "the number of backfills of lagging jobs started per minute in catch-up mode, 0 for no limit. (default 6)")
+    public static int CATCH_UP_BACKFILLS_PER_MINUTE = 6;
+
+    /**
+     * Maximum number of minutes a job run may take.
+     */
+    @Parameter(names = "--job-timeout-minutes", description = "the number of minutes a job run may take before it is cancelled, unless the job sets its own timeout. Runs of jobs with a shorter frequency may take their period. 0 disables the deadline. (default 60)")
+    public static int JOB_TIMEOUT_MINUTES = 60;
+
+    /**
+     * ID identifying this instance as the owner of claimed jobs.
+     */
+    @Parameter(names = "--node-id", description = "unique ID of this instance when several instances share one Redis. (default <pid>@<hostname>)")
+    public static String NODE_ID = null;
+
+    /**
+     * Lease length of claimed jobs in seconds.
+     */
+    @Parameter(names = "--job-lease-seconds", description = "the number of seconds a claimed job is leased to an instance before it is requeued. (default 300)")
+    public static int JOB_LEASE_SECONDS = 300;
+
+    /**
+     * Whether to place jobs at the least loaded minute of the hour.
+     */
+    @Parameter(names = "--disable-load-smoothing", description = "Set to true to place jobs in the hour by job ID instead of by queue and cluster load")
+    public static boolean DISABLE_LOAD_SMOOTHING = false;
+
+    /**
+     * Number of threads detecting backfill intervals.
+     */
+    @Parameter(names = "--backfill-threads", description = "the number of threads shared by all backfills to detect intervals. (default number of cores)")
+    public static int BACKFILL_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of intervals fetched by a single backfill query.
+     */
+    @Parameter(names = "--backfill-chunk-intervals", description = "the number of granularity intervals fetched by a single backfill query, longer backfills are split in chunks. 0 disables chunking. (default 500)")
+    public static int BACKFILL_CHUNK_INTERVALS = 500;
+
+    /**
+     * Number of seconds the result of a Druid query is shared by jobs with the same query.
+     */
+    @Parameter(names = "--query-coalescing-window", description = "the number of seconds a Druid query result is shared with other jobs sending the same query to the same cluster. 0 only shares queries in flight. (default 60)")
+    public static int QUERY_COALESCING_WINDOW = 60;
+
+    /**
+     * Number of seconds the datasource list of a Druid cluster is cached.
+     */
+    @Parameter(names = "--datasource-cache-ttl", description = "the number of seconds the datasource list of a Druid cluster is cached before it is refreshed in the background. 0 disables the cache. (default 300)")
+    public static int DATASOURCE_CACHE_TTL = 300;
+
+    /**
+     * Number of query windows whose time series are cached for incremental fetches.
+     */
+    @Parameter(names = "--series-window-cache-size", description = "the number of query windows whose time series are kept so that the next run of the query only fetches the newest intervals. 0 disables incremental fetches. (default 200)")
+    public static int SERIES_WINDOW_CACHE_SIZE = 200;
+
+    /**
+     * Number of trailing intervals of a cached window fetched again for late data.
+     */
+    @Parameter(names = "--series-window-tail-intervals", description = "the number of trailing intervals of a cached query window which are fetched again to pick up late data. (default 2)")
+    public static int SERIES_WINDOW_TAIL_INTERVALS = 2;
+
+    /**
+     * Estimated number of response rows above which a Druid query is split.
+     */
+    @Parameter(names = "--query-split-max-rows", description = "the estimated number of rows of a Druid response above which the query is split into time slices sent concurrently. 0 disables splitting. (default 500000)")
+    public static long QUERY_SPLIT_MAX_ROWS = 500000;
+
+    /**
+     * Maximum number of time slices a Druid query is split into.
+     */
+    @Parameter(names = "--query-split-max-slices", description = "the maximum number of time slices a Druid query is split into. (default 8)")
+    public static int QUERY_SPLIT_MAX_SLICES = 8;
+
+    /**
+     * Seconds a failed Druid broker is only tried after the other brokers of its cluster.
+     */
+    @Parameter(names = "--broker-failure-backoff", description = "the number of seconds a Druid broker which failed is only tried after the other brokers of its cluster. (default 30)")
+    public static int BROKER_FAILURE_BACKOFF = 30;
+
+    /**
+     * Seconds between two polls of the health of the Druid clusters.
+     */
+    @Parameter(names = "--cluster-health-interval", description = "the number of seconds between two polls of the status of every Druid cluster. (default 30)")
+    public static int CLUSTER_HEALTH_INTERVAL = 30;
+
     /**
      * Comma-delimited list of valid email domains.
      */
@@ -227,6 +371,18 @@ public class CLISettings {
     @Parameter(names = "--http-client-timeout", description = "Timeout for http client. (default 20000)")
     public static int HTTP_CLIENT_TIMEOUT = 20000;
 
+    /**
+     * Maximum number of pooled connections to each host of a Druid cluster or Prophet endpoint.
+     */
+    @Parameter(names = "--http-max-connections-per-route", description = "Maximum number of pooled HTTP connections to each Druid or Prophet host. (default 20)")
+    public static int HTTP_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    /**
+     * Seconds an idle pooled HTTP connection is kept alive.
+     */
+    @Parameter(names = "--http-keep-alive-seconds", description = "Seconds an idle pooled HTTP connection is kept alive. (default 30)")
+    public static int HTTP_KEEP_ALIVE_SECONDS = 30;
+
     /**
      * Backup redis DB local json dump file path.
      */
@@ -209,11 +209,21 @@ public final class Constants {
      */
     public static final int HOURS_IN_DAY = 24;
 
+    /**
+     * The number of backfill reports written to the backend at once.
+     */
+    public static final int BACKFILL_REPORT_BATCH_SIZE = 500;
+
     /**
      * Constant for 'nodata' key in UI params.
      */
     public static final String NODATA = "nodata";
 
+    /**
+     * Constant for 'timeout' report status.
+     */
+    public static final String TIMEOUT = "timeout";
+
     /**
      * Delimiter constant for comma.
      */
@@ -35,4 +35,10 @@ public class QueryConstants {
     public static final String OUTPUT_NAME = "outputName";
     public static final String UNKNOWN = "unknown";
     public static final String UNION = "union";
+    public static final String QUERY_TYPE = "queryType";
+    public static final String TOPN = "topN";
+    public static final String GROUP_BY = "groupBy";
+    public static final String THRESHOLD = "threshold";
+    public static final String LIMIT_SPEC = "limitSpec";
+    public static final String LIMIT = "limit";
 }
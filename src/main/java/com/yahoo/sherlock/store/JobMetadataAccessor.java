@@ -56,6 +56,16 @@ public interface JobMetadataAccessor {
      */
     void putJobMetadata(List<JobMetadata> jobs) throws IOException;
 
+    /**
+     * Save the effective run time of existing jobs, leaving their
+     * other fields untouched, for instance after the jobs were moved
+     * in the queue.
+     *
+     * @param jobs the jobs with their new effective run times
+     * @throws IOException if an error occurs while saving the run times
+     */
+    void putEffectiveRunTimes(List<JobMetadata> jobs) throws IOException;
+
     /**
      * Delete a {@code JobMetadata} object from the store.
      *
@@ -5,11 +5,14 @@
  */
 package com.yahoo.sherlock.store;
 
+import com.yahoo.sherlock.enums.ExecutionLane;
 import com.yahoo.sherlock.model.JobMetadata;
 
+import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -50,6 +53,43 @@ public interface JobScheduler {
      */
     void pushQueue(List<Pair<Integer, String>> jobsAndTimes) throws IOException;
 
+    /**
+     * Schedule a job in the queue of its execution lane.
+     *
+     * @param timestampMinutes the job run time in minutes since epoch
+     * @param job              the job to run
+     * @throws IOException if an error occurs while scheduling the job
+     */
+    default void pushQueue(long timestampMinutes, JobMetadata job) throws IOException {
+        pushQueue(timestampMinutes, job.getJobId().toString());
+    }
+
+    /**
+     * Schedule jobs at their effective run time in the
+     * queues of their execution lanes.
+     *
+     * @param jobs the jobs to run
+     * @throws IOException if an error occurs while scheduling the jobs
+     */
+    default void pushJobs(Collection<JobMetadata> jobs) throws IOException {
+        List<Pair<Integer, String>> jobsAndTimes = new ArrayList<>(jobs.size());
+        for (JobMetadata job : jobs) {
+            jobsAndTimes.add(new ImmutablePair<>(job.getEffectiveRunTime(), job.getJobId().toString()));
+        }
+        pushQueue(jobsAndTimes);
+    }
+
+    /**
+     * Get the scheduler of the queue of a single execution
+     * lane. A scheduler with a single queue is its own lane.
+     *
+     * @param lane the execution lane
+     * @return the scheduler of the lane
+     */
+    default JobScheduler getLane(ExecutionLane lane) {
+        return this;
+    }
+
     /**
      * Remove a job from the priority queue, so that it will
      * not longer be executed. This method shoul be an atomic operation.
@@ -87,6 +127,42 @@ public interface JobScheduler {
      */
     void removeAllQueue() throws IOException;
 
+    /**
+     * Move a queued job to a new run time, but only if it is still
+     * queued at the expected run time. A job popped or rescheduled
+     * since its run time was read is left untouched. This method
+     * should be an atomic operation.
+     *
+     * @param jobId       the job ID to move
+     * @param fromMinutes the run time the job is expected to be queued at
+     * @param toMinutes   the new run time of the job
+     * @return true if the job was moved
+     * @throws IOException if an error occurs while moving the job
+     */
+    boolean moveQueue(String jobId, long fromMinutes, long toMinutes) throws IOException;
+
+    /**
+     * Move a queued job in the queue of its execution lane.
+     *
+     * @param job         the job to move
+     * @param fromMinutes the run time the job is expected to be queued at
+     * @param toMinutes   the new run time of the job
+     * @return true if the job was moved
+     * @throws IOException if an error occurs while moving the job
+     */
+    default boolean moveQueue(JobMetadata job, long fromMinutes, long toMinutes) throws IOException {
+        return moveQueue(job.getJobId().toString(), fromMinutes, toMinutes);
+    }
+
+    /**
+     * Get the number of queued jobs in each minute of the hour,
+     * from their run times alone, without loading the jobs.
+     *
+     * @return the number of queued jobs by minute of the hour
+     * @throws IOException if an error occurs while reading the queue
+     */
+    int[] getSlotCounts() throws IOException;
+
     /**
      * Get an ordered list of all job IDs in the queue sorted
      * from highest timestamp to lowest timestamp.
@@ -109,6 +185,23 @@ public interface JobScheduler {
      */
     int peekQueue(long timestampMinutes) throws IOException;
 
+    /**
+     * Get the execution time of the earliest job in the queue.
+     *
+     * @return the earliest execution time in minutes or null if the queue is empty
+     * @throws IOException if an error occurs during peeking
+     */
+    Long peekNextRunTime() throws IOException;
+
+    /**
+     * Get the number of jobs claimed by an instance
+     * and not yet done, which are in the pending queue.
+     *
+     * @return the number of pending jobs
+     * @throws IOException if an error occurs during peeking
+     */
+    int getPendingCount() throws IOException;
+
     /**
      * Pop the next job from the queue whose execution time
      * is equal to or less than the provided time. This method
@@ -120,6 +213,31 @@ public interface JobScheduler {
      */
     JobMetadata popQueue(long timestampMinutes) throws IOException;
 
+    /**
+     * Pop up to {@code limit} jobs from the queue whose execution
+     * time is equal to or less than the provided time. The jobs
+     * are moved to the pending queue in a single atomic operation.
+     * This method returns an empty list if there are no such jobs.
+     *
+     * @param timestampMinutes the current time in minutes
+     * @param limit            the maximum number of jobs to pop
+     * @return the next jobs to execute, in queue order
+     * @throws IOException if an error occurs while getting the jobs
+     */
+    List<JobMetadata> popQueue(long timestampMinutes, int limit) throws IOException;
+
+    /**
+     * Popped jobs are held in the pending queue under a lease owned
+     * by this node. This method extends the lease on the given jobs
+     * so that they are not put back on the queue while they are still
+     * running. Leases held by another node are left untouched.
+     *
+     * @param jobIds IDs of the jobs being run by this node
+     * @return the number of leases that were renewed
+     * @throws IOException if an error occurs while renewing the leases
+     */
+    int renewLease(Collection<String> jobIds) throws IOException;
+
     /**
      * When jobs are popped from the job queue, they may be added
      * to a pending queue in case a job runner fails. This method
@@ -147,4 +265,27 @@ public interface JobScheduler {
      * @throws IOException if an error occurs while removing from the queue
      */
     void removePending(Collection<String> jobIds) throws IOException;
+
+    /**
+     * Remove a job run by this node from the pending queue once it
+     * is done, but only while this node still holds its lease. A job
+     * whose lease expired and which was claimed again by another node
+     * is left to that node.
+     *
+     * @param jobId the job id that has completed
+     * @return true if the job was removed, false if its lease is no longer held by this node
+     * @throws IOException if an error occurs while removing from the queue
+     */
+    boolean releasePending(String jobId) throws IOException;
+
+    /**
+     * Wrapper for integer job ID value.
+     *
+     * @param jobId ID as an integer value
+     * @return true if the job was removed, false if its lease is no longer held by this node
+     * @throws IOException if an error occurs while removing from the queue
+     */
+    default boolean releasePending(Integer jobId) throws IOException {
+        return releasePending(jobId.toString());
+    }
 }
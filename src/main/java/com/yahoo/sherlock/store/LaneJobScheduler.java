@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+package com.yahoo.sherlock.store;
+
+import com.yahoo.sherlock.enums.ExecutionLane;
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.settings.Constants;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Job scheduler which keeps a separate queue for each execution
+ * lane. Jobs are pushed to the queue of the lane of their frequency,
+ * jobs pushed by ID alone go to the day lane, and reads and removals
+ * cover every lane. Each lane is popped by its own dispatcher through
+ * {@link #getLane}.
+ */
+public class LaneJobScheduler implements JobScheduler {
+
+    /**
+     * Scheduler of each lane.
+     */
+    private final Map<ExecutionLane, JobScheduler> lanes;
+
+    /**
+     * @param lanes the scheduler of each lane, one for every lane
+     */
+    public LaneJobScheduler(Map<ExecutionLane, JobScheduler> lanes) {
+        this.lanes = new EnumMap<>(lanes);
+    }
+
+    @Override
+    public JobScheduler getLane(ExecutionLane lane) {
+        return lanes.get(lane);
+    }
+
+    @Override
+    public void pushQueue(long timestampMinutes, String jobId) throws IOException {
+        lanes.get(ExecutionLane.DAY).pushQueue(timestampMinutes, jobId);
+    }
+
+    @Override
+    public void pushQueue(long timestampMinutes, JobMetadata job) throws IOException {
+        lanes.get(ExecutionLane.of(job.getFrequency())).pushQueue(timestampMinutes, job);
+    }
+
+    @Override
+    public void pushQueue(List<Pair<Integer, String>> jobsAndTimes) throws IOException {
+        lanes.get(ExecutionLane.DAY).pushQueue(jobsAndTimes);
+    }
+
+    @Override
+    public void pushJobs(Collection<JobMetadata> jobs) throws IOException {
+        Map<ExecutionLane, List<JobMetadata>> laneJobs = new EnumMap<>(ExecutionLane.class);
+        for (JobMetadata job : jobs) {
+            laneJobs.computeIfAbsent(ExecutionLane.of(job.getFrequency()), lane -> new ArrayList<>()).add(job);
+        }
+        for (Map.Entry<ExecutionLane, List<JobMetadata>> entry : laneJobs.entrySet()) {
+            lanes.get(entry.getKey()).pushJobs(entry.getValue());
+        }
+    }
+
+    @Override
+    public void removeQueue(String jobId) throws IOException {
+        for (JobScheduler lane : lanes.values()) {
+            lane.removeQueue(jobId);
+        }
+    }
+
+    @Override
+    public void removeQueue(Collection<String> jobIds) throws IOException {
+        for (JobScheduler lane : lanes.values()) {
+            lane.removeQueue(jobIds);
+        }
+    }
+
+    @Override
+    public void removeAllQueue() throws IOException {
+        for (JobScheduler lane : lanes.values()) {
+            lane.removeAllQueue();
+        }
+    }
+
+    @Override
+    public boolean moveQueue(String jobId, long fromMinutes, long toMinutes) throws IOException {
+        for (JobScheduler lane : lanes.values()) {
+            if (lane.moveQueue(jobId, fromMinutes, toMinutes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean moveQueue(JobMetadata job, long fromMinutes, long toMinutes) throws IOException {
+        return lanes.get(ExecutionLane.of(job.getFrequency())).moveQueue(job, fromMinutes, toMinutes);
+    }
+
+    /**
+     * Minute jobs do not run at a fixed minute of the hour,
+     * so the minute lane is left out of the count.
+     *
+     * @return the number of queued jobs by minute of the hour
+     * @throws IOException if an error occurs while reading the queues
+     */
+    @Override
+    public int[] getSlotCounts() throws IOException {
+        int[] counts = new int[Constants.MINUTES_IN_HOUR];
+        for (Map.Entry<ExecutionLane, JobScheduler> lane : lanes.entrySet()) {
+            if (lane.getKey() == ExecutionLane.MINUTE) {
+                continue;
+            }
+            int[] laneCounts = lane.getValue().getSlotCounts();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += laneCounts[i];
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public List<JobMetadata> getAllQueue() throws IOException {
+        List<JobMetadata> jobs = new ArrayList<>();
+        for (JobScheduler lane : lanes.values()) {
+            jobs.addAll(lane.getAllQueue());
+        }
+        return jobs;
+    }
+
+    @Override
+    public int peekQueue(long timestampMinutes) throws IOException {
+        int count = 0;
+        for (JobScheduler lane : lanes.values()) {
+            count += lane.peekQueue(timestampMinutes);
+        }
+        return count;
+    }
+
+    @Override
+    public int getPendingCount() throws IOException {
+        int count = 0;
+        for (JobScheduler lane : lanes.values()) {
+            count += lane.getPendingCount();
+        }
+        return count;
+    }
+
+    @Override
+    public Long peekNextRunTime() throws IOException {
+        Long next = null;
+        for (JobScheduler lane : lanes.values()) {
+            Long laneNext = lane.peekNextRunTime();
+            if (laneNext != null && (next == null || laneNext < next)) {
+                next = laneNext;
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public JobMetadata popQueue(long timestampMinutes) throws IOException {
+        for (JobScheduler lane : lanes.values()) {
+            JobMetadata job = lane.popQueue(timestampMinutes);
+            if (job != null) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<JobMetadata> popQueue(long timestampMinutes, int limit) throws IOException {
+        List<JobMetadata> jobs = new ArrayList<>();
+        for (JobScheduler lane : lanes.values()) {
+            if (jobs.size() >= limit) {
+                break;
+            }
+            jobs.addAll(lane.popQueue(timestampMinutes, limit - jobs.size()));
+        }
+        return jobs;
+    }
+
+    @Override
+    public int renewLease(Collection<String> jobIds) throws IOException {
+        int renewed = 0;
+        for (JobScheduler lane : lanes.values()) {
+            renewed += lane.renewLease(jobIds);
+        }
+        return renewed;
+    }
+
+    @Override
+    public void removePending(String jobId) throws IOException {
+        for (JobScheduler lane : lanes.values()) {
+            lane.removePending(jobId);
+        }
+    }
+
+    @Override
+    public void removePending(Collection<String> jobIds) throws IOException {
+        for (JobScheduler lane : lanes.values()) {
+            lane.removePending(jobIds);
+        }
+    }
+
+    @Override
+    public boolean releasePending(String jobId) throws IOException {
+        boolean released = false;
+        for (JobScheduler lane : lanes.values()) {
+            released |= lane.releasePending(jobId);
+        }
+        return released;
+    }
+}
@@ -6,6 +6,7 @@
 
 package com.yahoo.sherlock.store;
 
+import com.yahoo.sherlock.enums.ExecutionLane;
 import com.yahoo.sherlock.service.SecretProviderService;
 import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.settings.Constants;
@@ -21,6 +22,9 @@ import com.yahoo.sherlock.store.redis.LettuceJsonDumper;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  * This class is responsible for initializing and holding
  * the accessor instances for each data type that must be
@@ -161,7 +165,13 @@ public class Store {
             case JOB_METADATA:
                 return new LettuceJobMetadataAccessor(params);
             case JOB_SCHEDULER:
-                return new LettuceJobScheduler(params);
+                Map<ExecutionLane, JobScheduler> lanes = new EnumMap<>(ExecutionLane.class);
+                for (ExecutionLane lane : ExecutionLane.values()) {
+                    StoreParams laneParams = getParamsFor(type);
+                    laneParams.put(DatabaseConstants.QUEUE_JOB_SCHEDULE, lane.getQueueName(params.get(DatabaseConstants.QUEUE_JOB_SCHEDULE)));
+                    lanes.put(lane, new LettuceJobScheduler(laneParams));
+                }
+                return new LaneJobScheduler(lanes);
             case JSON_DUMPER:
                 return new LettuceJsonDumper(params);
             case EMAIL_METADATA:
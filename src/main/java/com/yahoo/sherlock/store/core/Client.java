@@ -11,6 +11,9 @@ import io.lettuce.core.RedisURI;
 import io.lettuce.core.cluster.ClusterClientOptions;
 import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
 import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.event.DefaultEventPublisherOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
 import com.yahoo.sherlock.exception.StoreException;
 import com.yahoo.sherlock.settings.DatabaseConstants;
 import com.yahoo.sherlock.store.StoreParams;
@@ -38,6 +41,7 @@ public class Client {
 
     private RedisClient redisClient;
     private RedisClusterClient redisClusterClient;
+    private ClientResources clientResources;
 
     /**
      * @param hostname Redis hostname to validate
@@ -126,7 +130,7 @@ public class Client {
         if (redisClient != null) {
             return;
         }
-        redisClient = RedisClient.create(produceURI(params));
+        redisClient = RedisClient.create(getClientResources(), produceURI(params));
     }
 
     /**
@@ -138,7 +142,7 @@ public class Client {
         if (redisClusterClient != null) {
             return;
         }
-        redisClusterClient = RedisClusterClient.create(produceURI(params));
+        redisClusterClient = RedisClusterClient.create(getClientResources(), produceURI(params));
         // Adaptive cluster topology refresh for redis cluster client
         ClusterTopologyRefreshOptions topologyRefreshOptions = ClusterTopologyRefreshOptions.builder()
             .enablePeriodicRefresh(true)
@@ -154,6 +158,22 @@ public class Client {
                                           .build());
     }
 
+    /**
+     * Get the resources shared by the clients, which record
+     * the latency of each command.
+     *
+     * @return the client resources
+     */
+    protected synchronized ClientResources getClientResources() {
+        if (clientResources == null) {
+            clientResources = DefaultClientResources.builder()
+                .commandLatencyCollector(RedisCommandLatencyCollector.getInstance())
+                .commandLatencyPublisherOptions(DefaultEventPublisherOptions.disabled())
+                .build();
+        }
+        return clientResources;
+    }
+
     /**
      * @return the RedisClient instance
      */
@@ -180,6 +200,10 @@ public class Client {
             redisClusterClient.shutdown();
             redisClusterClient = null;
         }
+        if (clientResources != null) {
+            clientResources.shutdown();
+            clientResources = null;
+        }
     }
 
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.store.core;
+
+import com.yahoo.sherlock.utils.LatencyHistogram;
+
+import io.lettuce.core.metrics.CommandLatencyCollector;
+import io.lettuce.core.metrics.CommandLatencyId;
+import io.lettuce.core.metrics.CommandMetrics;
+import io.lettuce.core.protocol.ProtocolKeyword;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the completion latency of the Redis commands sent by
+ * Lettuce in a histogram per command type. The latency collector
+ * bundled with Lettuce needs HdrHistogram and LatencyUtils, which
+ * are not dependencies of Sherlock, so it is replaced by this one.
+ */
+public class RedisCommandLatencyCollector implements CommandLatencyCollector {
+
+    /** The singleton instance of this class. */
+    private static RedisCommandLatencyCollector redisCommandLatencyCollector;
+
+    /** Histograms by command type. */
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * @return the shared collector
+     */
+    public static synchronized RedisCommandLatencyCollector getInstance() {
+        if (redisCommandLatencyCollector == null) {
+            redisCommandLatencyCollector = new RedisCommandLatencyCollector();
+        }
+        return redisCommandLatencyCollector;
+    }
+
+    @Override
+    public void recordCommandLatency(
+            SocketAddress local,
+            SocketAddress remote,
+            ProtocolKeyword commandType,
+            long firstResponseLatency,
+            long completionLatency
+    ) {
+        histograms.computeIfAbsent(commandType.name(), type -> new LatencyHistogram(LatencyHistogram.COMMAND_BOUNDS_MILLIS))
+                  .record(completionLatency);
+    }
+
+    /**
+     * @return a snapshot of the latency histogram of each command type, sorted by type
+     */
+    public Map<String, LatencyHistogram.Snapshot> getSnapshots() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        histograms.forEach((type, histogram) -> snapshots.put(type, histogram.snapshot()));
+        return snapshots;
+    }
+
+    /**
+     * Latencies are read with {@link #getSnapshots()} instead.
+     *
+     * @return an empty map
+     */
+    @Override
+    public Map<CommandLatencyId, CommandMetrics> retrieveMetrics() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
@@ -65,6 +65,14 @@ public interface SyncCommands<K> extends AutoCloseable {
      */
     Map<K, K> hgetall(K key);
 
+    /**
+     * @param key    hash key
+     * @param fields fields to remove
+     * @return number of removed fields
+     * @see io.lettuce.core.api.sync.RedisCommands#hdel(Object, Object[])
+     */
+    Long hdel(K key, K... fields);
+
     /**
      * @param key   sorted set key
      * @param score value score
@@ -118,6 +126,24 @@ public interface SyncCommands<K> extends AutoCloseable {
      */
     <T> T eval(String script, ScriptOutputType type, K[] keys, K... values);
 
+    /**
+     * @param script String of the script to load
+     * @return SHA1 digest of the script
+     * @see io.lettuce.core.api.sync.RedisCommands#scriptLoad(Object)
+     */
+    String scriptLoad(K script);
+
+    /**
+     * @param digest SHA1 digest of a loaded script
+     * @param type   script return value type token
+     * @param keys   keys operated on by the script
+     * @param values script arguments
+     * @param <T>    script return type
+     * @return script results
+     * @see io.lettuce.core.api.sync.RedisCommands#evalsha(String, ScriptOutputType, Object[], Object[])
+     */
+    <T> T evalsha(String digest, ScriptOutputType type, K[] keys, K... values);
+
     /**
      * @param key key name
      * @param seconds time in seconds
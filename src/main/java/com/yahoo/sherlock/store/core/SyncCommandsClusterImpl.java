@@ -61,6 +61,11 @@ public class SyncCommandsClusterImpl<K> implements SyncCommands<K> {
         return commands.hgetall(key);
     }
 
+    @Override
+    public Long hdel(K key, K... fields) {
+        return commands.hdel(key, fields);
+    }
+
     @Override
     public Long zadd(K key, double score, K value) {
         return commands.zadd(key, score, value);
@@ -91,6 +96,16 @@ public class SyncCommandsClusterImpl<K> implements SyncCommands<K> {
         return commands.eval(script, type, keys, values);
     }
 
+    @Override
+    public String scriptLoad(K script) {
+        return commands.scriptLoad(script);
+    }
+
+    @Override
+    public <T> T evalsha(String digest, ScriptOutputType type, K[] keys, K... values) {
+        return commands.evalsha(digest, type, keys, values);
+    }
+
     @Override
     public Boolean expire(K key, long seconds) {
         return commands.expire(key, seconds);
@@ -28,6 +28,7 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -311,6 +312,23 @@ public class LettuceJobMetadataAccessor
         }
     }
 
+    @Override
+    public void putEffectiveRunTimes(List<JobMetadata> jobs) throws IOException {
+        log.info("Putting the effective run time of [{}] jobs", jobs.size());
+        try (RedisConnection<String> conn = connect()) {
+            AsyncCommands<String> cmd = conn.async();
+            cmd.setAutoFlushCommands(false);
+            RedisFuture[] futures = new RedisFuture[jobs.size()];
+            int i = 0;
+            for (JobMetadata job : jobs) {
+                Map<String, String> runTime = Collections.singletonMap("effectiveRunTime", String.valueOf(job.getEffectiveRunTime()));
+                futures[i++] = cmd.hmset(key(job.getJobId().toString()), runTime);
+            }
+            cmd.flushCommands();
+            await(futures);
+        }
+    }
+
     @Override
     public void deleteJobMetadata(String jobId) throws IOException, JobNotFoundException {
         log.info("Deleting job with ID [{}]", jobId);
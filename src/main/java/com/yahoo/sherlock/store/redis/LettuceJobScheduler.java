@@ -7,10 +7,11 @@
 package com.yahoo.sherlock.store.redis;
 
 import io.lettuce.core.Range;
+import io.lettuce.core.RedisNoScriptException;
 import io.lettuce.core.ScoredValue;
 import io.lettuce.core.ScriptOutputType;
-import com.yahoo.sherlock.exception.JobNotFoundException;
 import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.settings.Constants;
 import com.yahoo.sherlock.settings.DatabaseConstants;
 import com.yahoo.sherlock.store.JobMetadataAccessor;
@@ -25,10 +26,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Job scheduling using a priority queue on clusters.
@@ -39,32 +46,97 @@ public class LettuceJobScheduler
         implements JobScheduler {
 
     /**
-     * Redis command {@code ZREMRANGEBYSCORE} lacks {@code LIMIT}.
-     * Modified from https://github.com/antirez/redis/issues/180.
-     * Scripts are executed atomically.
+     * Atomically claims up to {@code ARGV[2]} due jobs for this node. Claimed
+     * jobs are moved to the pending queue, scored by their lease expiry in
+     * seconds, and the lease hash records the owner and the original run time.
+     * Pending jobs whose lease has expired are first put back on the queue
+     * with their original run time. Pending entries without a lease, left over
+     * from the old pending queue format, are requeued with their own score.
      */
-    public static final String SCRIPT_ZREMRANGEBYSCORE =
-            "local entry = redis.call('zrangebyscore', KEYS[1], 0, tonumber(ARGV[1]), 'WITHSCORES', 'LIMIT', 0, 1);\n" +
-                    "local pending = redis.call('zrangebyscore', KEYS[2], 0, tonumber(ARGV[1]) - 5, 'WITHSCORES');\n" +
-                    "for i = 1, #pending, 2 do\n" +
-                    "\tredis.call('zrem', KEYS[2], pending[i]);\n" +
-                    "\tredis.call('zadd', KEYS[1], pending[i + 1], pending[i]);\n" +
+    public static final String SCRIPT_ZPOPRANGEBYSCORE =
+            "local expired = redis.call('zrangebyscore', KEYS[2], 0, tonumber(ARGV[3]), 'WITHSCORES');\n" +
+                    "for i = 1, #expired, 2 do\n" +
+                    "\tlocal time = expired[i + 1];\n" +
+                    "\tlocal lease = redis.call('hget', KEYS[3], expired[i]);\n" +
+                    "\tif lease then\n" +
+                    "\t\ttime = string.match(lease, '|([^|]*)$');\n" +
+                    "\tend\n" +
+                    "\tredis.call('zrem', KEYS[2], expired[i]);\n" +
+                    "\tredis.call('hdel', KEYS[3], expired[i]);\n" +
+                    "\tredis.call('zadd', KEYS[1], time, expired[i]);\n" +
                     "end\n" +
-                    "if #entry < 2 then\n" +
-                    "\treturn {};\n" +
+                    "local entries = redis.call('zrangebyscore', KEYS[1], 0, tonumber(ARGV[1]), 'WITHSCORES', 'LIMIT', 0, tonumber(ARGV[2]));\n" +
+                    "local jobIds = {};\n" +
+                    "for i = 1, #entries, 2 do\n" +
+                    "\tredis.call('zrem', KEYS[1], entries[i]);\n" +
+                    "\tredis.call('zadd', KEYS[2], tonumber(ARGV[4]), entries[i]);\n" +
+                    "\tredis.call('hset', KEYS[3], entries[i], ARGV[5] .. '|' .. entries[i + 1]);\n" +
+                    "\tjobIds[#jobIds + 1] = entries[i];\n" +
                     "end\n" +
-                    "local jobId = entry[1];\n" +
-                    "local time = entry[2];\n" +
-                    "redis.call('zrem', KEYS[1], jobId);\n" +
-                    "redis.call('zadd', KEYS[2], time, jobId);\n" +
-                    "return {jobId, time};";
+                    "return jobIds;";
+
+    /**
+     * Pushes the lease expiry of pending jobs to {@code ARGV[2]}, but only
+     * for jobs whose lease is still held by owner {@code ARGV[1]}.
+     * Returns the number of renewed leases.
+     */
+    public static final String SCRIPT_RENEW_LEASE =
+            "local prefix = ARGV[1] .. '|';\n" +
+                    "local renewed = 0;\n" +
+                    "for i = 3, #ARGV do\n" +
+                    "\tlocal lease = redis.call('hget', KEYS[2], ARGV[i]);\n" +
+                    "\tif lease and string.sub(lease, 1, string.len(prefix)) == prefix then\n" +
+                    "\t\tredis.call('zadd', KEYS[1], tonumber(ARGV[2]), ARGV[i]);\n" +
+                    "\t\trenewed = renewed + 1;\n" +
+                    "\tend\n" +
+                    "end\n" +
+                    "return renewed;";
+
+    /**
+     * Removes job {@code ARGV[2]} from the pending queue, but only if its
+     * lease is still held by owner {@code ARGV[1]}. Returns 1 if the job
+     * was removed and 0 otherwise.
+     */
+    public static final String SCRIPT_RELEASE_PENDING =
+            "local prefix = ARGV[1] .. '|';\n" +
+                    "local lease = redis.call('hget', KEYS[2], ARGV[2]);\n" +
+                    "if lease and string.sub(lease, 1, string.len(prefix)) == prefix then\n" +
+                    "\tredis.call('zrem', KEYS[1], ARGV[2]);\n" +
+                    "\tredis.call('hdel', KEYS[2], ARGV[2]);\n" +
+                    "\treturn 1;\n" +
+                    "end\n" +
+                    "return 0;";
+
+    /**
+     * Moves job {@code ARGV[1]} to run time {@code ARGV[3]}, but only if it
+     * is still in the queue with run time {@code ARGV[2]}. Returns 1 if the
+     * job was moved and 0 otherwise.
+     */
+    public static final String SCRIPT_MOVE_QUEUE =
+            "local score = redis.call('zscore', KEYS[1], ARGV[1]);\n" +
+                    "if score and tonumber(score) == tonumber(ARGV[2]) then\n" +
+                    "\tredis.call('zadd', KEYS[1], tonumber(ARGV[3]), ARGV[1]);\n" +
+                    "\treturn 1;\n" +
+                    "end\n" +
+                    "return 0;";
 
     private String queueName;
     private String pendingQueueName;
+    private String leaseName;
     private final JobMetadataAccessor jobAccessor;
 
     /**
-     * Uses hash tags on the pending queue and queue name to
+     * ID of this node, recorded as the owner of the jobs it claims.
+     */
+    private String ownerId;
+
+    /**
+     * Cached SHA1 digests of the scripts.
+     */
+    private final Map<String, String> scriptShas = new ConcurrentHashMap<>();
+
+    /**
+     * Uses hash tags on the pending queue, lease and queue name to
      * ensure that the script executes.
      *
      * @param params store params
@@ -73,9 +145,13 @@ public class LettuceJobScheduler
         super(params);
         this.queueName = params.get(DatabaseConstants.QUEUE_JOB_SCHEDULE);
         this.pendingQueueName = params.get(DatabaseConstants.QUEUE_JOB_SCHEDULE) + "Pending";
+        this.leaseName = params.get(DatabaseConstants.QUEUE_JOB_SCHEDULE) + "Lease";
         jobAccessor = Store.getJobMetadataAccessor();
         queueName = String.format("{queue}.%s", queueName);
         pendingQueueName = String.format("{queue}.%s", pendingQueueName);
+        leaseName = String.format("{queue}.%s", leaseName);
+        ownerId = CLISettings.NODE_ID != null ? CLISettings.NODE_ID : ManagementFactory.getRuntimeMXBean().getName();
+        log.info("Claiming jobs as owner [{}]", ownerId);
     }
 
     @Override
@@ -121,10 +197,36 @@ public class LettuceJobScheduler
     public void removeAllQueue() throws IOException {
         log.info("Removing all jobs from the queue");
         try (RedisConnection<String> conn = connect()) {
-            conn.sync().del(queueName, pendingQueueName);
+            conn.sync().del(queueName, pendingQueueName, leaseName);
         }
     }
 
+    @Override
+    public boolean moveQueue(String jobId, long fromMinutes, long toMinutes) throws IOException {
+        try (RedisConnection<String> conn = connect()) {
+            String[] keys = {queueName};
+            Long moved = evalScript(
+                    conn.sync(), SCRIPT_MOVE_QUEUE, ScriptOutputType.INTEGER, keys,
+                    jobId, String.valueOf(fromMinutes), String.valueOf(toMinutes));
+            if (moved == null || moved == 0) {
+                log.info("Job [{}] is no longer queued at [{}], leaving it in place", jobId, fromMinutes);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public int[] getSlotCounts() throws IOException {
+        int[] counts = new int[Constants.MINUTES_IN_HOUR];
+        try (RedisConnection<String> conn = connect()) {
+            for (ScoredValue<String> job : conn.sync().zrangeWithScores(queueName, 0, -1)) {
+                counts[Math.floorMod((int) job.getScore(), Constants.MINUTES_IN_HOUR)]++;
+            }
+        }
+        return counts;
+    }
+
     @Override
     public List<JobMetadata> getAllQueue() throws IOException {
         log.info("Retrieving all jobs from the queue");
@@ -146,28 +248,117 @@ public class LettuceJobScheduler
         }
     }
 
+    @Override
+    public int getPendingCount() throws IOException {
+        try (RedisConnection<String> conn = connect()) {
+            return conn.sync().zcount(pendingQueueName, Range.<Double>unbounded()).intValue();
+        }
+    }
+
+    @Override
+    public Long peekNextRunTime() throws IOException {
+        try (RedisConnection<String> conn = connect()) {
+            List<ScoredValue<String>> head = conn.sync().zrangeWithScores(queueName, 0, 0);
+            return head.isEmpty() ? null : (long) head.get(0).getScore();
+        }
+    }
+
     @Override
     public JobMetadata popQueue(long timestampMinutes) throws IOException {
-        log.debug("Popping one job from the queue with time [{}]", timestampMinutes);
+        List<JobMetadata> jobs = popQueue(timestampMinutes, 1);
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
+    @Override
+    public List<JobMetadata> popQueue(long timestampMinutes, int limit) throws IOException {
+        log.debug("Popping up to [{}] jobs from the queue with time [{}]", limit, timestampMinutes);
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
         try (RedisConnection<String> conn = connect()) {
             SyncCommands<String> syncCmd = conn.sync();
-            String[] keys = {queueName, pendingQueueName};
-            List<Object> result = syncCmd.eval(
-                    SCRIPT_ZREMRANGEBYSCORE,
+            String[] keys = {queueName, pendingQueueName, leaseName};
+            long now = TimeUtils.getTimestampSeconds();
+            List<Object> result = evalScript(
+                    syncCmd,
+                    SCRIPT_ZPOPRANGEBYSCORE,
                     ScriptOutputType.MULTI,
-                    keys, String.valueOf(timestampMinutes));
+                    keys,
+                    String.valueOf(timestampMinutes),
+                    String.valueOf(limit),
+                    String.valueOf(now),
+                    String.valueOf(now + CLISettings.JOB_LEASE_SECONDS),
+                    ownerId);
             if (result.isEmpty()) {
-                return null;
+                return Collections.emptyList();
+            }
+            Set<String> jobIds = new LinkedHashSet<>();
+            for (Object jobId : result) {
+                jobIds.add((String) jobId);
             }
-            String jobId = (String) result.get(0);
-            try {
-                log.info("Found job [{}] on queue for time [{}]", jobId, TimeUtils
-                    .getTimeFromSeconds(timestampMinutes * 60L, Constants.TIMESTAMP_FORMAT_NO_SECONDS));
-                return jobAccessor.getJobMetadata(jobId);
-            } catch (JobNotFoundException e) {
+            log.info("Found [{}] jobs on queue for time [{}]", jobIds.size(), TimeUtils
+                .getTimeFromSeconds(timestampMinutes * 60L, Constants.TIMESTAMP_FORMAT_NO_SECONDS));
+            List<JobMetadata> jobs = new ArrayList<>(jobIds.size());
+            Set<String> missing = new HashSet<>(jobIds);
+            for (JobMetadata job : jobAccessor.getJobMetadata(jobIds)) {
+                if (job != null && job.getJobId() != null) {
+                    missing.remove(job.getJobId().toString());
+                    jobs.add(job);
+                }
+            }
+            for (String jobId : missing) {
+                log.error("Job [{}] popped from the queue does not exist", jobId);
                 syncCmd.zrem(pendingQueueName, jobId);
-                return null;
+                syncCmd.hdel(leaseName, jobId);
             }
+            return jobs;
+        }
+    }
+
+    @Override
+    public int renewLease(Collection<String> jobIds) throws IOException {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        log.debug("Renewing lease on [{}] jobs", jobIds.size());
+        try (RedisConnection<String> conn = connect()) {
+            String[] args = new String[jobIds.size() + 2];
+            args[0] = ownerId;
+            args[1] = String.valueOf(TimeUtils.getTimestampSeconds() + CLISettings.JOB_LEASE_SECONDS);
+            int i = 2;
+            for (String jobId : jobIds) {
+                args[i++] = jobId;
+            }
+            String[] keys = {pendingQueueName, leaseName};
+            Long renewed = evalScript(conn.sync(), SCRIPT_RENEW_LEASE, ScriptOutputType.INTEGER, keys, args);
+            return renewed == null ? 0 : renewed.intValue();
+        }
+    }
+
+    /**
+     * Run a script by its cached digest. If Redis has lost the
+     * script, for instance after a restart or on another cluster
+     * node, it is sent in full once, which caches it again.
+     *
+     * @param syncCmd sync commands to use
+     * @param script  the script to run
+     * @param type    script return value type
+     * @param keys    keys operated on by the script
+     * @param args    script arguments
+     * @param <T>     script return type
+     * @return script results
+     */
+    private <T> T evalScript(SyncCommands<String> syncCmd, String script, ScriptOutputType type, String[] keys, String... args) {
+        String sha = scriptShas.get(script);
+        if (sha == null) {
+            sha = syncCmd.scriptLoad(script);
+            scriptShas.put(script, sha);
+        }
+        try {
+            return syncCmd.evalsha(sha, type, keys, args);
+        } catch (RedisNoScriptException e) {
+            log.info("Script is not cached by Redis, sending it in full");
+            return syncCmd.eval(script, type, keys, args);
         }
     }
 
@@ -175,7 +366,23 @@ public class LettuceJobScheduler
     public void removePending(String jobId) throws IOException {
         log.info("Removing job [{}] from the pending queue", jobId);
         try (RedisConnection<String> conn = connect()) {
-            conn.sync().zrem(pendingQueueName, jobId);
+            SyncCommands<String> syncCmd = conn.sync();
+            syncCmd.zrem(pendingQueueName, jobId);
+            syncCmd.hdel(leaseName, jobId);
+        }
+    }
+
+    @Override
+    public boolean releasePending(String jobId) throws IOException {
+        log.info("Releasing job [{}] from the pending queue", jobId);
+        try (RedisConnection<String> conn = connect()) {
+            String[] keys = {pendingQueueName, leaseName};
+            Long released = evalScript(conn.sync(), SCRIPT_RELEASE_PENDING, ScriptOutputType.INTEGER, keys, ownerId, jobId);
+            if (released == null || released == 0) {
+                log.warn("Job [{}] is no longer leased by owner [{}], leaving it pending", jobId, ownerId);
+                return false;
+            }
+            return true;
         }
     }
 
@@ -186,6 +393,7 @@ public class LettuceJobScheduler
             SyncCommands<String> syncCmd = conn.sync();
             for (String id : jobIds) {
                 syncCmd.zrem(pendingQueueName, id);
+                syncCmd.hdel(leaseName, id);
             }
         }
     }
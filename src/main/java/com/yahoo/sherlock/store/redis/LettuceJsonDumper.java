@@ -13,6 +13,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import io.lettuce.core.RedisFuture;
 import io.lettuce.core.ScoredValue;
+import com.yahoo.sherlock.enums.ExecutionLane;
 import com.yahoo.sherlock.enums.JobStatus;
 import com.yahoo.sherlock.model.AnomalyReport;
 import com.yahoo.sherlock.model.DruidCluster;
@@ -93,33 +94,25 @@ public class LettuceJsonDumper
             AsyncCommands<byte[]> bin = binary.async();
             cmd.setAutoFlushCommands(false);
             bin.setAutoFlushCommands(false);
-            StoreParams params = Store.getParamsFor(Store.AccessorType.ANOMALY_REPORT);
-            String queueName = DatabaseConstants.QUEUE_JOB_SCHEDULE;
-            String pendingQueueName = queueName + "Pending";
-            queueName = String.format("{queue}.%s", queueName);
-            pendingQueueName = String.format("{queue}.%s", pendingQueueName);
-            RedisFuture<List<ScoredValue<String>>> jobQueue = cmd.zrangeWithScores(
-                queueName, 0, -1
-            );
-            RedisFuture<List<ScoredValue<String>>> pendingQueue = cmd.zrangeWithScores(
-                pendingQueueName + "Pending", 0, -1
-            );
-            futures.add(jobQueue);
-            futures.add(pendingQueue);
+            // The queue and pending queue of every execution lane
+            List<RedisFuture<List<ScoredValue<String>>>> queues = new ArrayList<>();
+            for (ExecutionLane lane : ExecutionLane.values()) {
+                String queueName = lane.getQueueName(DatabaseConstants.QUEUE_JOB_SCHEDULE);
+                queues.add(cmd.zrangeWithScores(String.format("{queue}.%s", queueName), 0, -1));
+                queues.add(cmd.zrangeWithScores(String.format("{queue}.%sPending", queueName), 0, -1));
+            }
+            futures.addAll(queues);
             cmd.flushCommands();
             awaitRaw(futures);
             futures.clear();
             Gson gson = new Gson();
             List<ImmutablePair<String, String>> result = new ArrayList<>();
-            JsonElement queueEl = gson.toJsonTree(jobQueue.get(), new TypeToken<List<ScoredValue<String>>>() { }.getType());
-            JsonElement pendingEl = gson.toJsonTree(pendingQueue.get(), new TypeToken<List<ScoredValue<String>>>() { }.getType());
-            JsonArray queueArray = queueEl.getAsJsonArray();
-            JsonArray pendingQueueArray = pendingEl.getAsJsonArray();
-            for (int i = 0; i < queueArray.size(); i++) {
-                result.add(extractJobDetails(queueArray.get(i)));
-            }
-            for (int i = 0; i < pendingQueueArray.size(); i++) {
-                result.add(extractJobDetails(pendingQueueArray.get(i)));
+            for (RedisFuture<List<ScoredValue<String>>> queue : queues) {
+                JsonElement queueEl = gson.toJsonTree(queue.get(), new TypeToken<List<ScoredValue<String>>>() { }.getType());
+                JsonArray queueArray = queueEl.getAsJsonArray();
+                for (int i = 0; i < queueArray.size(); i++) {
+                    result.add(extractJobDetails(queueArray.get(i)));
+                }
             }
             return result;
         } catch (InterruptedException | ExecutionException e) {
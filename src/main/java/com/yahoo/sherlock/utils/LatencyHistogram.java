@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.utils;
+
+import lombok.Data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe latency histogram with fixed buckets. Recording only
+ * increments counters, so it may be used on every request.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Bucket upper bounds in milliseconds for job stages,
+     * from a millisecond to five minutes.
+     */
+    public static final double[] STAGE_BOUNDS_MILLIS = {
+        1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 300000
+    };
+
+    /**
+     * Bucket upper bounds in milliseconds for single commands,
+     * from a tenth of a millisecond to five seconds.
+     */
+    public static final double[] COMMAND_BOUNDS_MILLIS = {
+        0.1, 0.25, 0.5, 1, 2.5, 5, 10, 25, 50, 100, 250, 1000, 5000
+    };
+
+    /** Upper bounds of the buckets in milliseconds, the last bucket counts everything above. */
+    private final double[] boundsMillis;
+
+    /** Upper bounds of the buckets in nanoseconds. */
+    private final long[] boundsNanos;
+
+    /** Number of durations in each bucket. */
+    private final LongAdder[] buckets;
+
+    /** Sum of the durations in nanoseconds. */
+    private final LongAdder sumNanos = new LongAdder();
+
+    /** Longest duration in nanoseconds. */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param boundsMillis ascending upper bounds of the buckets in milliseconds
+     */
+    public LatencyHistogram(double[] boundsMillis) {
+        this.boundsMillis = boundsMillis.clone();
+        this.boundsNanos = new long[boundsMillis.length];
+        this.buckets = new LongAdder[boundsMillis.length + 1];
+        for (int i = 0; i < boundsMillis.length; i++) {
+            boundsNanos[i] = (long) (boundsMillis[i] * TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param durationNanos duration to record in nanoseconds
+     */
+    public void record(long durationNanos) {
+        long nanos = Math.max(0L, durationNanos);
+        int bucket = 0;
+        while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return a copy of the histogram
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        double nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+        return new Snapshot(boundsMillis.clone(), counts, count, sumNanos.sum() / nanosPerMilli, maxNanos.get() / nanosPerMilli);
+    }
+
+    /**
+     * Point-in-time copy of a histogram.
+     */
+    @Data
+    public static class Snapshot {
+
+        /** Upper bounds of the buckets in milliseconds. */
+        private final double[] boundsMillis;
+
+        /** Number of durations in each bucket, not cumulative, with the overflow bucket last. */
+        private final long[] bucketCounts;
+
+        /** Number of recorded durations. */
+        private final long count;
+
+        /** Sum of the recorded durations in milliseconds. */
+        private final double sumMillis;
+
+        /** Longest recorded duration in milliseconds. */
+        private final double maxMillis;
+
+        /**
+         * @return the mean duration in milliseconds, 0 if nothing was recorded
+         */
+        public double getMeanMillis() {
+            return count == 0 ? 0.0 : sumMillis / count;
+        }
+
+        /**
+         * Estimate a percentile as the upper bound of the bucket
+         * it falls in, or the maximum for the overflow bucket.
+         *
+         * @param quantile the quantile between 0 and 1
+         * @return the estimated percentile in milliseconds
+         */
+        public double percentileMillis(double quantile) {
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < boundsMillis.length; i++) {
+                seen += bucketCounts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(boundsMillis[i], maxMillis);
+                }
+            }
+            return maxMillis;
+        }
+    }
+}
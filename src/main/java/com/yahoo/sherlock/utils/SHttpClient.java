@@ -6,25 +6,49 @@
 
 package com.yahoo.sherlock.utils;
 
+import com.yahoo.sherlock.model.DruidCluster;
 import com.yahoo.sherlock.settings.CLISettings;
 
+import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * HttpClient provider class.
+ * HttpClient provider class. Druid clusters and Prophet endpoints
+ * get long-lived clients sharing a pool of kept-alive connections,
+ * so that queries do not pay the TCP and TLS handshakes each time.
  */
+@Slf4j
 public class SHttpClient {
 
     /** Singleton. **/
     private static SHttpClient sHttpClient;
 
-    /** SSslUtils instance. **/
-    private SSslUtils sSslUtils = new SSslUtils();
+    /** Connection pools by Druid cluster or Prophet endpoint. **/
+    private final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
 
     private SHttpClient() {
 
@@ -34,7 +58,7 @@ public class SHttpClient {
      * Method to retrieve HttpClient instance.
      * @return SHttpClient instance
      */
-    public static SHttpClient getSHttpClient() {
+    public static synchronized SHttpClient getSHttpClient() {
         if (sHttpClient == null) {
             sHttpClient = new SHttpClient();
         }
@@ -60,15 +84,118 @@ public class SHttpClient {
             .setRetryHandler(new DefaultHttpRequestRetryHandler(retries, false))
             .setDefaultRequestConfig(config);
         if (sslAuth) {
-            if (principal != null && !principal.isEmpty()) {
-                return httpClientBuilder.setSSLSocketFactory(sSslUtils.createConnectionSocketFactoryWithCustomImpl(sSslUtils.buildSSLConfigs(principal), CLISettings.CUSTOM_SSL_CONTEXT_PROVIDER_CLASS)).build();
-            }
-            DefaultSslContextProvider defaultSSLContext = new DefaultSslContextProvider(sSslUtils.buildSSLConfigs(principal));
-            return httpClientBuilder.setSSLSocketFactory(defaultSSLContext.createConnectionSocketFactory()).build();
+            return httpClientBuilder.setSSLSocketFactory(sslSocketFactory(principal)).build();
         }
         return httpClientBuilder.build();
     }
 
+    /**
+     * Method to get the cached SSL socket factory of a principal.
+     *
+     * @param principal ssl auth principal string value, the default SSL context is used if empty
+     * @return the socket factory
+     */
+    private SSLConnectionSocketFactory sslSocketFactory(String principal) {
+        return SslContextCache.getInstance().getSocketFactory(principal);
+    }
+
+    /**
+     * Get the pooled client of a Druid cluster. The pool of the cluster
+     * is created on first use and kept until the cluster is updated
+     * or deleted. A cluster which is not saved yet gets a new client.
+     *
+     * @param cluster the Druid cluster
+     * @param timeout the connection timeout
+     * @param retries the number of times the client should reattempt connections
+     * @return HttpClient object
+     */
+    public HttpClient getDruidHttpClient(DruidCluster cluster, int timeout, int retries) {
+        if (cluster.getClusterId() == null) {
+            return newHttpClient(timeout, retries, cluster.getIsSSLAuth(), cluster.getPrincipalName());
+        }
+        return pooledHttpClient(
+            druidPoolName(cluster.getClusterId()), cluster.getBrokers().size(), timeout, retries, cluster.getIsSSLAuth(), cluster.getPrincipalName());
+    }
+
+    /**
+     * Get the pooled client of a Druid cluster with a {@link CLISettings#HTTP_CLIENT_TIMEOUT} timeout.
+     *
+     * @param cluster the Druid cluster
+     * @return HttpClient object
+     */
+    public HttpClient getDruidHttpClient(DruidCluster cluster) {
+        return getDruidHttpClient(cluster, CLISettings.HTTP_CLIENT_TIMEOUT, 3);
+    }
+
+    /**
+     * Get the pooled client of the Prophet endpoint of a URL.
+     *
+     * @param prophetUrl URL of the Prophet service
+     * @return HttpClient object
+     */
+    public HttpClient getProphetHttpClient(String prophetUrl) {
+        URI uri = URI.create(prophetUrl);
+        String name = "prophet:" + uri.getScheme() + "://" + uri.getAuthority();
+        return pooledHttpClient(name, 1, CLISettings.PROPHET_TIMEOUT, 0, false, CLISettings.PROPHET_PRINCIPAL);
+    }
+
+    /**
+     * Retire the pooled clients of a Druid cluster, so that they are
+     * rebuilt with the new settings of the cluster on next use. The
+     * queries running on the retired pool are left to complete.
+     *
+     * @param clusterId ID of the cluster
+     */
+    public void closeDruidHttpClients(Integer clusterId) {
+        ConnectionPool pool = pools.remove(druidPoolName(clusterId));
+        if (pool != null) {
+            log.info("Retiring the HTTP connections of Druid cluster {}", clusterId);
+            pool.retire();
+        }
+    }
+
+    /**
+     * @param clusterId ID of a Druid cluster
+     * @return the name of the connection pool of the cluster
+     */
+    private static String druidPoolName(Integer clusterId) {
+        return "druid:" + clusterId;
+    }
+
+    /**
+     * Get a client of a connection pool, creating the pool if needed.
+     * The pool is replaced if its SSL settings or SSL context changed,
+     * and the replaced pool is retired.
+     *
+     * @param name      name of the pool
+     * @param hosts     number of hosts the pool connects to
+     * @param timeout   the connection timeout
+     * @param retries   the number of times the client should reattempt connections
+     * @param sslAuth   enable/disable ssl auth
+     * @param principal ssl auth principal string value
+     * @return HttpClient object
+     */
+    private HttpClient pooledHttpClient(String name, int hosts, int timeout, int retries, boolean sslAuth, String principal) {
+        // The cached factory changes when the key or cert files of the principal change
+        SSLConnectionSocketFactory sslSocketFactory = sslAuth ? sslSocketFactory(principal) : null;
+        ConnectionPool pool = pools.get(name);
+        if (pool == null || !pool.hasSettings(hosts, sslAuth, principal, sslSocketFactory)) {
+            synchronized (pools) {
+                pool = pools.get(name);
+                if (pool == null || !pool.hasSettings(hosts, sslAuth, principal, sslSocketFactory)) {
+                    log.info("Creating HTTP connection pool {}", name);
+                    ConnectionPool replaced = pool;
+                    pool = new ConnectionPool(hosts, sslAuth, principal, sslSocketFactory);
+                    pools.put(name, pool);
+                    if (replaced != null) {
+                        replaced.retire();
+                    }
+                }
+            }
+        }
+        return pool.client(timeout, retries);
+    }
+
     /**
      * Get a new {@code HttpClient} with a {@link CLISettings#HTTP_CLIENT_TIMEOUT} timeout.
      *
@@ -108,4 +235,150 @@ public class SHttpClient {
     public HttpGet newHttpGet(String url) {
         return new HttpGet(url);
     }
+
+    /**
+     * Pool of kept-alive connections shared by clients of different timeouts.
+     */
+    private static class ConnectionPool {
+
+        /** How often a retired pool checks whether its connections were returned. **/
+        private static final long RETIRE_CHECK_MILLIS = 1000;
+
+        /** Thread closing the retired pools. **/
+        private static final ScheduledExecutorService RETIRER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-pool-retirer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        /** Number of hosts the connections go to. **/
+        private final int hosts;
+
+        /** Whether the connections use ssl auth. **/
+        private final boolean sslAuth;
+
+        /** The ssl auth principal. **/
+        private final String principal;
+
+        /** Socket factory of the ssl auth principal, may be null. **/
+        private final SSLConnectionSocketFactory sslSocketFactory;
+
+        /** The pooled connections. **/
+        private final PoolingHttpClientConnectionManager manager;
+
+        /** Thread closing the expired and idle connections. **/
+        private final IdleConnectionEvictor evictor;
+
+        /** Clients by timeout and retries. **/
+        private final Map<String, CloseableHttpClient> clients = new ConcurrentHashMap<>();
+
+        /** Longest time a request of the clients may take, in milliseconds. **/
+        private final AtomicLong maxRequestMillis = new AtomicLong();
+
+        /**
+         * @param hosts            number of hosts the connections go to
+         * @param sslAuth          whether the connections use ssl auth
+         * @param principal        the ssl auth principal
+         * @param sslSocketFactory socket factory of the ssl auth principal, may be null
+         */
+        ConnectionPool(int hosts, boolean sslAuth, String principal, SSLConnectionSocketFactory sslSocketFactory) {
+            this.hosts = Math.max(1, hosts);
+            this.sslAuth = sslAuth;
+            this.principal = principal;
+            this.sslSocketFactory = sslSocketFactory;
+            long keepAliveSeconds = Math.max(1, CLISettings.HTTP_KEEP_ALIVE_SECONDS);
+            int maxPerRoute = Math.max(1, CLISettings.HTTP_MAX_CONNECTIONS_PER_ROUTE);
+            manager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    // Same fallback as a client built without a socket factory
+                    .register("https", sslSocketFactory == null ? SSLConnectionSocketFactory.getSocketFactory() : sslSocketFactory)
+                    .build(),
+                null, null, null, keepAliveSeconds, TimeUnit.SECONDS
+            );
+            manager.setDefaultMaxPerRoute(maxPerRoute);
+            // Room for every host, and for a router in front of them
+            manager.setMaxTotal((this.hosts + 1) * maxPerRoute);
+            evictor = new IdleConnectionEvictor(manager, keepAliveSeconds, TimeUnit.SECONDS, keepAliveSeconds, TimeUnit.SECONDS);
+            evictor.start();
+        }
+
+        /**
+         * @param hosts            number of hosts the connections go to
+         * @param sslAuth          whether the connections use ssl auth
+         * @param principal        the ssl auth principal
+         * @param sslSocketFactory socket factory of the ssl auth principal
+         * @return whether the pool was created with these settings
+         */
+        boolean hasSettings(int hosts, boolean sslAuth, String principal, SSLConnectionSocketFactory sslSocketFactory) {
+            return this.hosts == Math.max(1, hosts) && this.sslAuth == sslAuth && Objects.equals(this.principal, principal) && this.sslSocketFactory == sslSocketFactory;
+        }
+
+        /**
+         * @param timeout the connection timeout
+         * @param retries the number of times the client should reattempt connections
+         * @return a client using the pooled connections
+         */
+        HttpClient client(int timeout, int retries) {
+            return clients.computeIfAbsent(timeout + ":" + retries, key -> {
+                // A request may wait for a connection, then for the socket, on every attempt
+                maxRequestMillis.accumulateAndGet(2L * timeout * (retries + 1), Math::max);
+                RequestConfig config = RequestConfig.custom()
+                    .setConnectTimeout(timeout)
+                    .setSocketTimeout(timeout)
+                    .setConnectionRequestTimeout(timeout)
+                    .build();
+                long keepAliveMillis = TimeUnit.SECONDS.toMillis(Math.max(1, CLISettings.HTTP_KEEP_ALIVE_SECONDS));
+                // Keep connections alive as long as the server allows, up to the configured time
+                ConnectionKeepAliveStrategy keepAlive = (response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+                };
+                return HttpClientBuilder.create()
+                    .setConnectionManager(manager)
+                    .setConnectionManagerShared(true)
+                    .setKeepAliveStrategy(keepAlive)
+                    .setRetryHandler(new DefaultHttpRequestRetryHandler(retries, false))
+                    .setDefaultRequestConfig(config)
+                    .build();
+            });
+        }
+
+        /**
+         * Retire the pool once it is no longer handed out. Its idle
+         * connections are closed now, the pool is closed once the leased
+         * connections are returned, or after the longest time a request
+         * of its clients may take.
+         */
+        void retire() {
+            manager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+            long deadline = System.currentTimeMillis() + maxRequestMillis.get();
+            RETIRER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (manager.getTotalStats().getLeased() == 0 || System.currentTimeMillis() >= deadline) {
+                        close();
+                    } else {
+                        manager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+                        RETIRER.schedule(this, RETIRE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }, RETIRE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Close the clients and the pooled connections.
+         */
+        void close() {
+            evictor.shutdown();
+            for (CloseableHttpClient client : clients.values()) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    log.warn("Error while closing HTTP client", e);
+                }
+            }
+            manager.shutdown();
+        }
+    }
 }
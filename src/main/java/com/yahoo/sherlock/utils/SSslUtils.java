@@ -108,7 +108,7 @@ public class SSslUtils {
         try {
             synchronized (SSslUtils.class) {
                 sslContext = SSL_CONTEXT_MAP.get(hashKey);
-                if (sslContext != null) {
+                if (sslContext == null) {
                     setKeyStoreContext(builder, sSslConfigs);
                     setTrustStoreContext(builder, sSslConfigs);
                     sslContext = builder.build();
@@ -123,6 +123,13 @@ public class SSslUtils {
         return new SSLConnectionSocketFactory(Objects.requireNonNull(sslContext), getHostNameVerifier(sSslConfigs));
     }
 
+    /**
+     * Method to forget the cached SSLContexts, so that the key and trust stores are read again.
+     **/
+    public static void clearCachedContexts() {
+        SSL_CONTEXT_MAP.clear();
+    }
+
     /**
      * Method to load keystore.
      * @param builder ssl context builder
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.utils;
+
+import com.yahoo.sherlock.settings.CLISettings;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the SSL socket factories of mTLS connections, one per
+ * principal. A factory is built once, so that its key and trust
+ * stores are read from disk once and its {@code SSLContext}, with
+ * its cache of TLS sessions, is reused by every handshake. The
+ * directories of the key and cert files are watched, and the
+ * factory of a principal is rebuilt on next use once one of its
+ * files changes on disk.
+ */
+@Slf4j
+public class SslContextCache {
+
+    /** The singleton instance of this class. **/
+    private static SslContextCache sslContextCache;
+
+    /** SSL utilities. **/
+    private final SSslUtils sSslUtils = new SSslUtils();
+
+    /** Cached factories by principal, the empty principal uses the key and trust stores. **/
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Watched directories. **/
+    private final Set<Path> watchedDirs = ConcurrentHashMap.newKeySet();
+
+    /** Watcher of the key and cert files, created on first use. **/
+    private WatchService watchService;
+
+    /**
+     * Get the single instance of this class.
+     *
+     * @return the shared SSL context cache
+     */
+    public static synchronized SslContextCache getInstance() {
+        if (sslContextCache == null) {
+            sslContextCache = new SslContextCache();
+        }
+        return sslContextCache;
+    }
+
+    /**
+     * Get the SSL socket factory of a principal, building it if it is
+     * not cached or if its files changed since it was built.
+     *
+     * @param principal ssl auth principal string value, the key and trust stores are used if empty
+     * @return the socket factory, or null if none can be built from the settings
+     */
+    public SSLConnectionSocketFactory getSocketFactory(String principal) {
+        String name = principal == null ? "" : principal;
+        Entry entry = entries.get(name);
+        if (entry != null) {
+            return entry.factory;
+        }
+        synchronized (this) {
+            entry = entries.get(name);
+            if (entry == null) {
+                log.info("Building SSL context for principal [{}]", name);
+                SSslConfigs configs = sSslUtils.buildSSLConfigs(name);
+                entry = new Entry(name, build(name, configs), configs);
+                watch(entry);
+                entries.put(name, entry);
+            }
+            return entry.factory;
+        }
+    }
+
+    /**
+     * @param principal the principal
+     * @param configs   ssl configs of the principal
+     * @return the socket factory
+     */
+    private SSLConnectionSocketFactory build(String principal, SSslConfigs configs) {
+        if (!principal.isEmpty()) {
+            return sSslUtils.createConnectionSocketFactoryWithCustomImpl(configs, CLISettings.CUSTOM_SSL_CONTEXT_PROVIDER_CLASS);
+        }
+        return new DefaultSslContextProvider(configs).createConnectionSocketFactory();
+    }
+
+    /**
+     * Watch the directories of the files of a cache entry.
+     *
+     * @param entry the cache entry
+     */
+    private void watch(Entry entry) {
+        if (!entry.principal.isEmpty()) {
+            watchDir(CLISettings.KEY_DIR);
+            watchDir(CLISettings.CERT_DIR);
+        } else {
+            watchDir(parentOf(entry.keyStorePath));
+            watchDir(parentOf(entry.trustStorePath));
+        }
+    }
+
+    /**
+     * @param file a file path, may be null
+     * @return the directory of the file, or null
+     */
+    private static String parentOf(String file) {
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        Path parent = Paths.get(file).toAbsolutePath().getParent();
+        return parent == null ? null : parent.toString();
+    }
+
+    /**
+     * Register a directory with the watcher, starting the watcher if needed.
+     *
+     * @param dir the directory, may be null
+     */
+    private void watchDir(String dir) {
+        if (dir == null || dir.isEmpty()) {
+            return;
+        }
+        Path path = Paths.get(dir).toAbsolutePath().normalize();
+        if (!path.toFile().isDirectory() || !watchedDirs.add(path)) {
+            return;
+        }
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                WatchService service = watchService;
+                Thread thread = new Thread(() -> processEvents(service), "SslFileWatcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            path.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE
+            );
+            log.info("Watching {} for changes of SSL key and cert files", path);
+        } catch (IOException e) {
+            watchedDirs.remove(path);
+            log.error("Unable to watch {}, SSL contexts will not be reloaded on changes", path, e);
+        }
+    }
+
+    /**
+     * Invalidate the cache entries of the changed files until the watcher is closed.
+     *
+     * @param service the watcher
+     */
+    private void processEvents(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path) {
+                        fileChanged(dir.resolve((Path) event.context()));
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.debug("SSL file watcher closed");
+        }
+    }
+
+    /**
+     * Invalidate the cache entries which depend on a file.
+     *
+     * @param file the changed file
+     */
+    protected void fileChanged(Path file) {
+        boolean removed = entries.values().removeIf(entry -> {
+            if (entry.dependsOn(file)) {
+                log.info("{} changed, reloading the SSL context of principal [{}]", file, entry.principal);
+                return true;
+            }
+            return false;
+        });
+        if (removed) {
+            // The key and trust stores are read again by the next build
+            SSslUtils.clearCachedContexts();
+        }
+    }
+
+    /**
+     * Stop watching the files and forget the cached factories.
+     */
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Error while closing the SSL file watcher", e);
+            }
+            watchService = null;
+        }
+        watchedDirs.clear();
+        entries.clear();
+    }
+
+    /**
+     * Cached factory of a principal.
+     */
+    private static class Entry {
+
+        /** The principal. **/
+        private final String principal;
+
+        /** The socket factory, may be null. **/
+        private final SSLConnectionSocketFactory factory;
+
+        /** Key store path of the default principal. **/
+        private final String keyStorePath;
+
+        /** Trust store path of the default principal. **/
+        private final String trustStorePath;
+
+        /**
+         * @param principal the principal
+         * @param factory   the socket factory
+         * @param configs   ssl configs of the principal
+         */
+        Entry(String principal, SSLConnectionSocketFactory factory, SSslConfigs configs) {
+            this.principal = principal;
+            this.factory = factory;
+            this.keyStorePath = configs.getKeyStorePath();
+            this.trustStorePath = configs.getTrustStorePath();
+        }
+
+        /**
+         * The files of a principal are the files of the key and cert
+         * directories named after it, including files added later.
+         *
+         * @param file a changed file
+         * @return whether the factory was built from the file
+         */
+        boolean dependsOn(Path file) {
+            if (!principal.isEmpty()) {
+                return file.getFileName().toString().contains(principal);
+            }
+            return isFile(file, keyStorePath) || isFile(file, trustStorePath);
+        }
+
+        /**
+         * @param file a file
+         * @param path a path, may be null
+         * @return whether the path is the file
+         */
+        private static boolean isFile(Path file, String path) {
+            return path != null && !path.isEmpty() && Paths.get(path).toAbsolutePath().normalize().equals(file.toAbsolutePath().normalize());
+        }
+    }
+}
@@ -39,6 +39,7 @@ function calendarHeatmap() {
     colorMap.set("warning", '#ffcc00');
     colorMap.set("error", '#ff0000');
     colorMap.set("nodata", '#f39b9b');
+    colorMap.set("timeout", '#ff9900');
     var tooltipEnabled = true;
     var legendEnabled = true;
     var onClick = null;
@@ -51,6 +52,7 @@ function calendarHeatmap() {
         Error: 'Error',
         NoAnomaly: 'No Anomaly',
         NoData: 'No Data for Timeseries',
+        Timeout: 'Timed Out',
         for_period: 'for period'
     };
     var locale_hour = {
@@ -61,6 +63,7 @@ function calendarHeatmap() {
         Error: 'Error',
         NoAnoamly: 'No Anomaly',
         NoData: 'No Data for Timeseries',
+        Timeout: 'Timed Out',
         for_period: 'for period'
     };
 
@@ -276,7 +279,7 @@ function calendarHeatmap() {
 
                 legendGroup.append('text')
                     .attr('class', 'calendar-heatmap-legend-text calendar-heatmap-legend-text-less')
-                    .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : locale.defaultMsg)))); })
+                    .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : (d.key === 'timeout' ? locale.Timeout : locale.defaultMsg))))); })
                     .attr('x', function (d, i) { return ((SQUARE_LENGTH + SQUARE_PADDING) * (1 + i * legendSpacing)) + v_legendSpacing; })
                     .attr('y', height - 2 * SQUARE_PADDING)
             }
@@ -407,7 +410,7 @@ function calendarHeatmap() {
 
                 legendGroup.append('text')
                     .attr('class', 'calendar-heatmap-legend-text calendar-heatmap-legend-text-less')
-                    .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : locale.defaultMsg)))); })
+                    .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : (d.key === 'timeout' ? locale.Timeout : locale.defaultMsg))))); })
                     .attr('x', function (d, i) { return (SQUARE_LENGTH + SQUARE_PADDING) + i * ((SQUARE_LENGTH + SQUARE_PADDING) * legendSpacing) + v_legendSpacing; })
                     .attr('y', height - 2 * SQUARE_PADDING)
             }
@@ -539,7 +542,7 @@ function calendarHeatmap() {
 
                 legendGroup.append('text')
                     .attr('class', 'calendar-heatmap-legend-text calendar-heatmap-legend-text-less')
-                    .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : locale.defaultMsg)))); })
+                    .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : (d.key === 'timeout' ? locale.Timeout : locale.defaultMsg))))); })
                     .attr('x', function (d, i) { return (SQUARE_LENGTH + SQUARE_PADDING) + i * ((SQUARE_LENGTH + SQUARE_PADDING) * legendSpacing) + v_legendSpacing; })
                     .attr('y', height - 2 * SQUARE_PADDING)
             }
@@ -681,7 +684,7 @@ function calendarHeatmap() {
 
                 legendGroup.append('text')
                     .attr('class', 'calendar-heatmap-legend-text calendar-heatmap-legend-text-less')
-                    .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : locale.defaultMsg)))); })
+                    .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : (d.key === 'timeout' ? locale.Timeout : locale.defaultMsg))))); })
                     .attr('x', function (d, i) { return (SQUARE_LENGTH + SQUARE_PADDING) + i * ((SQUARE_LENGTH + SQUARE_PADDING) * legendSpacing) + v_legendSpacing; })
                     .attr('y', height - 2 * SQUARE_PADDING)
             }
@@ -817,7 +820,7 @@ function calendarHeatmap() {
 
                 legendGroup.append('text')
                   .attr('class', 'calendar-heatmap-legend-text calendar-heatmap-legend-text-less')
-                  .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : locale.defaultMsg)))); })
+                  .text(function(d) { return (d.key === 'warning' ? locale.Anomaly : (d.key === 'success' ? locale.NoAnomaly : (d.key === 'error' ? locale.Error : (d.key === 'nodata' ? locale.NoData : (d.key === 'timeout' ? locale.Timeout : locale.defaultMsg))))); })
                   .attr('x', function (d, i) { return (SQUARE_LENGTH + SQUARE_PADDING) + i * ((SQUARE_LENGTH + SQUARE_PADDING) * legendSpacing) + v_legendSpacing; })
                   .attr('y', height - 2 * SQUARE_PADDING)
             }
@@ -865,7 +868,8 @@ function calendarHeatmap() {
                + (type === 'warning' ? locale.Anomaly :
                  (type === 'success' ? locale.NoAnomaly :
                  (type === 'error' ? locale.Error :
-                 (type === 'nodata' ? locale.NoData : locale.defaultMsg))))
+                 (type === 'nodata' ? locale.NoData :
+                 (type === 'timeout' ? locale.Timeout : locale.defaultMsg)))))
                + ' ' + '</strong></span>' + locale.for_period + ' ' + start + ' to ' + end + '</span>';
     }
 
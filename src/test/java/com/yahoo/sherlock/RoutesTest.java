@@ -18,6 +18,7 @@ import com.yahoo.sherlock.exception.JobNotFoundException;
 import com.yahoo.sherlock.exception.SchedulerException;
 import com.yahoo.sherlock.exception.SherlockException;
 import com.yahoo.sherlock.model.AnomalyReport;
+import com.yahoo.sherlock.model.BackfillProgress;
 import com.yahoo.sherlock.model.DruidCluster;
 import com.yahoo.sherlock.model.DetectorResult;
 import com.yahoo.sherlock.model.EmailMetaData;
@@ -25,6 +26,7 @@ import com.yahoo.sherlock.model.JobMetadata;
 import com.yahoo.sherlock.model.JobTimeline;
 import com.yahoo.sherlock.query.DetectorConfig;
 import com.yahoo.sherlock.query.Query;
+import com.yahoo.sherlock.scheduler.BackfillExecutor;
 import com.yahoo.sherlock.service.JobExecutionService;
 import com.yahoo.sherlock.service.SchedulerService;
 import com.yahoo.sherlock.service.DetectorService;
@@ -52,8 +54,6 @@ import spark.template.thymeleaf.ThymeleafTemplateEngine;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -70,7 +70,6 @@ import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doAnswer;
-import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -1014,20 +1013,65 @@ public class RoutesTest {
         when(req.body()).thenReturn("{\"query\":\"{}\",\"granularity\":\"day\",\"jobId\":\"1,2\",\"fillStartTime\":\"2017-10-08T02:00\"}");
         JobMetadata jm = mock(JobMetadata.class);
         when(jma.getJobMetadata(anyString())).thenReturn(jm);
-        when(jm.getHoursOfLag()).thenReturn(0);
-        when(jm.getGranularity()).thenReturn("day");
-        when(jm.getClusterId()).thenReturn(1);
-        when(jm.getGranularityRange()).thenReturn(1);
-        TestUtilities.inject(jes, JobExecutionService.class, "druidClusterAccessor", dca);
-        String queryString = new String(Files.readAllBytes(Paths.get("src/test/resources/druid_query_2.json")));
-        when(jm.getUserQuery()).thenReturn(queryString);
-        DruidCluster dc = mock(DruidCluster.class);
-        when(dca.getDruidCluster(anyString())).thenReturn(dc);
-        doCallRealMethod().when(jes).performBackfillJob(any(), any(), any());
-        assertEquals(Routes.debugRunBackfillJob(req, res), "Success");
-        verify(dca, times(2)).getDruidCluster(anyInt());
+        BackfillProgress first = new BackfillProgress(1);
+        BackfillProgress second = new BackfillProgress(2);
+        when(jes.startBackfillJob(any(), any(), any())).thenReturn(first, second);
+        assertEquals(Routes.debugRunBackfillJob(req, res), "[\"" + first.getId() + "\",\"" + second.getId() + "\"]");
         verify(jma, times(2)).getJobMetadata(anyString());
-        verify(jes, times(2)).performBackfillJob(any(), any(), any(), anyInt(), anyInt(), any(), anyInt());
+        verify(jes, times(2)).validateBackfillJob(any(), any(), any());
+        verify(jes, times(2)).startBackfillJob(any(), any(), any());
+    }
+
+    @Test
+    public void testDebugRunBackfillJobInvalid() throws Exception {
+        mocks();
+        when(req.body()).thenReturn("{\"query\":\"{}\",\"granularity\":\"day\",\"jobId\":\"1,2\",\"fillStartTime\":\"2017-10-08T02:00\"}");
+        JobMetadata jm = mock(JobMetadata.class);
+        when(jma.getJobMetadata(anyString())).thenReturn(jm);
+        doNothing().doThrow(new ClusterNotFoundException("3")).when(jes).validateBackfillJob(any(), any(), any());
+        assertEquals(Routes.debugRunBackfillJob(req, res), ClusterNotFoundException.EXEPTION_MSG);
+        verify(res).status(400);
+        verify(jes, times(0)).startBackfillJob(any(), any(), any());
+        doThrow(new SherlockException("Backfill interval cannot be smaller than granularity!")).when(jes).validateBackfillJob(any(), any(), any());
+        assertEquals(Routes.debugRunBackfillJob(req, res), "Backfill interval cannot be smaller than granularity!");
+        verify(res, times(2)).status(400);
+        verify(jes, times(0)).startBackfillJob(any(), any(), any());
+    }
+
+    @Test
+    public void testDebugRebalanceJobs() throws Exception {
+        mocks();
+        inject("schedulerService", ss);
+        List<JobMetadata> moved = Collections.singletonList(new JobMetadata());
+        when(ss.rebalanceJobs()).thenReturn(moved);
+        assertEquals(Routes.debugRebalanceJobs(req, res), "Rebalanced 1 jobs");
+        verify(jma, times(1)).putEffectiveRunTimes(moved);
+        when(ss.rebalanceJobs()).thenThrow(new SchedulerException("error", new IOException("error")));
+        assertEquals(Routes.debugRebalanceJobs(req, res), "error");
+        verify(res).status(500);
+    }
+
+    @Test
+    public void testDebugBackfillProgress() {
+        mocks();
+        BackfillProgress progress = BackfillExecutor.getInstance().register(7);
+        when(req.params(Constants.ID)).thenReturn(progress.getId());
+        assertTrue(Routes.debugBackfillProgress(req, res).contains(progress.getId()));
+        when(req.params(Constants.ID)).thenReturn(null);
+        assertTrue(Routes.debugBackfillProgress(req, res).contains(progress.getId()));
+        when(req.params(Constants.ID)).thenReturn("unknown");
+        assertEquals(Routes.debugBackfillProgress(req, res), "Unknown backfill");
+    }
+
+    @Test
+    public void testDebugCancelBackfill() {
+        mocks();
+        BackfillProgress progress = BackfillExecutor.getInstance().register(7);
+        when(req.params(Constants.ID)).thenReturn(progress.getId());
+        assertEquals(Routes.debugCancelBackfill(req, res), Constants.SUCCESS);
+        assertTrue(progress.isCancelRequested());
+        when(req.params(Constants.ID)).thenReturn("unknown");
+        assertEquals(Routes.debugCancelBackfill(req, res), "No running backfill with this ID");
     }
 
     @Test
@@ -1184,12 +1228,13 @@ public class RoutesTest {
         when(jma.getJobMetadata("3")).thenReturn(job3);
         DruidCluster cluster = DBTestHelper.getNewDruidCluster();
         when(dca.getDruidCluster(anyInt())).thenReturn(cluster);
-        doNothing().when(ss).scheduleJob(any(JobMetadata.class));
         when(jma.putJobMetadata(any(JobMetadata.class))).thenReturn("");
         assertEquals(Routes.launchSelectedJobs(req, res), Constants.SUCCESS);
         verify(res, times(1)).status(200);
         verify(jma, times(1)).putJobMetadata(any(JobMetadata.class));
-        verify(ss, times(1)).scheduleJob(any(JobMetadata.class));
+        // the jobs are scheduled as one batch
+        verify(ss, times(1)).scheduleJobs(Collections.singletonList(job3));
+        verify(ss, times(0)).scheduleJob(any(JobMetadata.class));
         assertEquals(job3.getJobStatus(), "RUNNING");
         job3.setJobStatus("CREATED");
         when(jma.putJobMetadata(any(JobMetadata.class))).thenThrow(new IOException("io error"));
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.enums;
+
+import com.yahoo.sherlock.settings.CLISettings;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class ExecutionLaneTest {
+
+    @Test
+    public void testOf() {
+        assertEquals(ExecutionLane.of("minute"), ExecutionLane.MINUTE);
+        assertEquals(ExecutionLane.of("HOUR"), ExecutionLane.HOUR);
+        assertEquals(ExecutionLane.of("day"), ExecutionLane.DAY);
+        assertEquals(ExecutionLane.of("week"), ExecutionLane.DAY);
+        assertEquals(ExecutionLane.of("month"), ExecutionLane.DAY);
+        assertEquals(ExecutionLane.of(null), ExecutionLane.DAY);
+    }
+
+    @Test
+    public void testGetQueueName() {
+        assertEquals(ExecutionLane.MINUTE.getQueueName("jobQueue"), "jobQueue.minute");
+        assertEquals(ExecutionLane.HOUR.getQueueName("jobQueue"), "jobQueue.hour");
+        assertEquals(ExecutionLane.DAY.getQueueName("jobQueue"), "jobQueue");
+    }
+
+    @Test
+    public void testGetThreads() {
+        assertEquals(ExecutionLane.MINUTE.getThreads(), CLISettings.MINUTE_LANE_THREADS);
+        assertEquals(ExecutionLane.HOUR.getThreads(), CLISettings.HOUR_LANE_THREADS);
+        assertEquals(ExecutionLane.DAY.getThreads(), CLISettings.EXECUTION_THREADS);
+        assertEquals(ExecutionLane.MINUTE.toString(), "minute");
+    }
+}
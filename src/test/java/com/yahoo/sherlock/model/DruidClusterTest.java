@@ -65,15 +65,6 @@ public class DruidClusterTest {
         assertEquals(c.getPrincipalName(), "");
     }
 
-    @Test
-    public void testGetStatusReturnsErrorOnFailedConnection() {
-        DruidCluster c = new DruidCluster();
-        c.setBrokerHost("localdfffhost");
-        c.setBrokerPort(1);
-        c.setBrokerEndpoint("asefg");
-        assertEquals("ERROR", c.getStatus());
-    }
-
     @Test
     public void testGetBaseUrl() {
         DruidCluster c = new DruidCluster();
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.query;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.enums.Granularity;
+import com.yahoo.sherlock.exception.SherlockException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class for the streaming Druid response parser.
+ */
+public class DruidResponseParserTest {
+
+    private final Gson gson = new Gson();
+
+    private Query query(String file) throws Exception {
+        String queryString = new String(Files.readAllBytes(Paths.get("src/test/resources/" + file)));
+        return new Query(gson.fromJson(queryString, JsonObject.class), 123, 1234, Granularity.HOUR, 1);
+    }
+
+    private static Map<String, TimeSeries> bySeries(Iterable<TimeSeries> timeSeriesList) {
+        Map<String, TimeSeries> series = new HashMap<>();
+        for (TimeSeries timeSeries : timeSeriesList) {
+            series.put(timeSeries.meta.name + "|" + timeSeries.meta.source, timeSeries);
+        }
+        return series;
+    }
+
+    private void assertSameAsJsonTimeSeries(String responseFile, String queryFile) throws Exception {
+        String response = new String(Files.readAllBytes(Paths.get("src/test/resources/" + responseFile)));
+        Query query = query(queryFile);
+        JsonTimeSeries jsonTimeSeries = new JsonTimeSeries(gson.fromJson(response, JsonArray.class), query);
+        jsonTimeSeries.getJsonDataSequence().stream()
+            .filter(JsonTimeSeries.combinedFilters())
+            .forEach(jsonDataPoint -> {
+                try {
+                    jsonTimeSeries.processJsonDataPoint(jsonDataPoint);
+                } catch (SherlockException e) {
+                    Assert.fail(e.toString());
+                }
+            });
+        Map<String, TimeSeries> expected = bySeries(jsonTimeSeries.getUniqueTimeSeriesMap().values());
+        Map<String, TimeSeries> actual = bySeries(new DruidResponseParser(query).parse(new StringReader(response)));
+        Assert.assertFalse(actual.isEmpty());
+        Assert.assertEquals(actual.keySet(), expected.keySet());
+        for (Map.Entry<String, TimeSeries> entry : expected.entrySet()) {
+            TimeSeries timeSeries = actual.get(entry.getKey());
+            Assert.assertEquals(timeSeries.meta.fileName, entry.getValue().meta.fileName);
+            Assert.assertEquals(timeSeries.data.size(), entry.getValue().data.size());
+            for (int i = 0; i < timeSeries.data.size(); i++) {
+                Assert.assertEquals(timeSeries.data.get(i).time, entry.getValue().data.get(i).time);
+                Assert.assertEquals(timeSeries.data.get(i).value, entry.getValue().data.get(i).value);
+            }
+        }
+    }
+
+    @Test
+    public void testParseMatchesJsonTimeSeries() throws Exception {
+        assertSameAsJsonTimeSeries("druid_valid_response_1.json", "druid_query_1.json");
+        assertSameAsJsonTimeSeries("druid_valid_response_2.json", "druid_query_2.json");
+        assertSameAsJsonTimeSeries("druid_valid_response_3.json", "druid_query_3.json");
+    }
+
+    @Test
+    public void testParseSmileMatchesJson() throws Exception {
+        byte[] response = Files.readAllBytes(Paths.get("src/test/resources/druid_valid_response_2.json"));
+        byte[] smileResponse = new ObjectMapper(new SmileFactory()).writeValueAsBytes(new ObjectMapper().readTree(response));
+        Query query = query("druid_query_2.json");
+        Map<String, TimeSeries> expected = bySeries(new DruidResponseParser(query).parse(new ByteArrayInputStream(response), false));
+        Map<String, TimeSeries> actual = bySeries(new DruidResponseParser(query).parse(new ByteArrayInputStream(smileResponse), true));
+        Assert.assertFalse(actual.isEmpty());
+        Assert.assertEquals(actual.keySet(), expected.keySet());
+        for (Map.Entry<String, TimeSeries> entry : expected.entrySet()) {
+            TimeSeries timeSeries = actual.get(entry.getKey());
+            Assert.assertEquals(timeSeries.data.size(), entry.getValue().data.size());
+            for (int i = 0; i < timeSeries.data.size(); i++) {
+                Assert.assertEquals(timeSeries.data.get(i).time, entry.getValue().data.get(i).time);
+                Assert.assertEquals(timeSeries.data.get(i).value, entry.getValue().data.get(i).value);
+            }
+        }
+    }
+
+    @Test
+    public void testParseSkipsInvalidRows() throws Exception {
+        String response = "[{\"event\":{\"dim2\":\"v1\",\"dim1\":\"v1\",\"m1\":1,\"other\":{\"a\":[1]}},\"timestamp\":\"2017-10-23T00:00:00.000Z\"},"
+            + "{\"timestamp\":\"2017-10-23T01:00:00.000Z\",\"event\":{\"dim1\":\"v1\",\"dim2\":\"v1\",\"m1\":\"2.5\"}},"
+            + "{\"timestamp\":\"2017-10-23T00:00:00.000Z\",\"event\":{\"dim1\":null,\"dim2\":\"v1\",\"m1\":3}},"
+            + "{\"timestamp\":\"2017-10-23T00:00:00.000Z\",\"event\":{\"dim1\":\"v2\",\"dim2\":\"v1\"}},"
+            + "{\"timestamp\":\"bad\",\"event\":{\"dim1\":\"v3\",\"dim2\":\"v1\",\"m1\":3}},"
+            + "{\"timestamp\":\"2017-10-23T00:00:00.000Z\"}, null]";
+        List<TimeSeries> timeSeriesList = new DruidResponseParser(query("druid_query_1.json")).parse(new StringReader(response));
+        Assert.assertEquals(timeSeriesList.size(), 1);
+        TimeSeries timeSeries = timeSeriesList.get(0);
+        Assert.assertEquals(timeSeries.meta.name, "m1");
+        Assert.assertEquals(timeSeries.meta.source, "dim1 = 'v1'\ndim2 = 'v1'");
+        Assert.assertEquals(timeSeries.data.size(), 2);
+        Assert.assertEquals(timeSeries.data.get(0).time, 1508716800L);
+        Assert.assertEquals(timeSeries.data.get(1).value, 2.5f);
+    }
+
+    @Test
+    public void testParseEmptyResponse() throws Exception {
+        Assert.assertTrue(new DruidResponseParser(query("druid_query_1.json")).parse(new StringReader("[]")).isEmpty());
+        try {
+            new DruidResponseParser(query("druid_query_1.json")).parse(new StringReader(""));
+            Assert.fail();
+        } catch (SherlockException e) {
+            Assert.assertEquals(e.getMessage(), "Null druid response!");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.enums.BackfillStatus;
+import com.yahoo.sherlock.model.AnomalyReport;
+import com.yahoo.sherlock.model.BackfillProgress;
+
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class BackfillExecutorTest {
+
+    @Test
+    public void testRegisterAndCancel() {
+        BackfillExecutor executor = new BackfillExecutor(1);
+        BackfillProgress progress = executor.register(5);
+        assertEquals(executor.getProgress(progress.getId()), progress);
+        assertEquals(progress.getStatus(), BackfillStatus.QUEUED);
+        assertTrue(executor.cancel(progress.getId()));
+        assertTrue(progress.isCancelRequested());
+        progress.finish(BackfillStatus.CANCELLED, null);
+        assertFalse(executor.cancel(progress.getId()));
+        assertFalse(executor.cancel("unknown"));
+        assertNull(executor.getProgress("unknown"));
+    }
+
+    @Test
+    public void testSubmitRunsInBackground() throws InterruptedException {
+        BackfillExecutor executor = new BackfillExecutor(1);
+        BackfillProgress progress = executor.register(1);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.submit(progress, () -> {
+            progress.finish(BackfillStatus.COMPLETED, null);
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(progress.getStatus(), BackfillStatus.COMPLETED);
+    }
+
+    @Test
+    public void testSubmitFailureMarksFailed() throws InterruptedException {
+        BackfillExecutor executor = new BackfillExecutor(1);
+        BackfillProgress progress = executor.register(1);
+        executor.submit(progress, () -> {
+            throw new IllegalStateException("error");
+        });
+        for (int i = 0; i < 50 && !progress.getStatus().isFinished(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(progress.getStatus(), BackfillStatus.FAILED);
+        assertEquals(progress.getMessage(), "error");
+    }
+
+    @Test
+    public void testCancelledBeforeStart() throws InterruptedException {
+        BackfillExecutor executor = new BackfillExecutor(1);
+        BackfillProgress progress = executor.register(1);
+        progress.setCancelRequested(true);
+        boolean[] ran = {false};
+        executor.submit(progress, () -> ran[0] = true);
+        for (int i = 0; i < 50 && !progress.getStatus().isFinished(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(progress.getStatus(), BackfillStatus.CANCELLED);
+        assertFalse(ran[0]);
+    }
+
+    @Test
+    public void testCompletionService() throws Exception {
+        BackfillExecutor executor = new BackfillExecutor(2);
+        CompletionService<List<AnomalyReport>> completion = executor.newCompletionService();
+        completion.submit(() -> Collections.singletonList(new AnomalyReport()));
+        assertEquals(completion.take().get().size(), 1);
+    }
+
+    @Test
+    public void testFinishedProgressIsPruned() {
+        BackfillExecutor executor = new BackfillExecutor(1);
+        BackfillProgress first = executor.register(0);
+        first.finish(BackfillStatus.COMPLETED, null);
+        for (int i = 1; i < 150; i++) {
+            executor.register(i).finish(BackfillStatus.COMPLETED, null);
+        }
+        BackfillProgress running = executor.register(200);
+        assertNull(executor.getProgress(first.getId()));
+        assertEquals(executor.getProgress(running.getId()), running);
+        assertTrue(executor.getAllProgress().size() <= 101);
+        assertEquals(executor.getAllProgress().get(0).getCreatedAt() >= first.getCreatedAt(), true);
+    }
+}
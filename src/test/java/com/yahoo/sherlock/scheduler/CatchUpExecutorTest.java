@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.service.JobExecutionService;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test class for the catch-up lane of lagging jobs.
+ */
+public class CatchUpExecutorTest {
+
+    private static JobMetadata job(int id, String frequency, int runTime) {
+        JobMetadata job = new JobMetadata();
+        job.setJobId(id);
+        job.setFrequency(frequency);
+        job.setEffectiveRunTime(runTime);
+        return job;
+    }
+
+    private static void awaitDrained(CatchUpExecutor executor) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getBacklogSize() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(executor.getBacklogSize(), 0);
+    }
+
+    @Test
+    public void testBackfillsRunByPriority() throws Exception {
+        CatchUpExecutor executor = new CatchUpExecutor(1, 100, 0);
+        JobExecutionService service = mock(JobExecutionService.class);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            JobMetadata job = (JobMetadata) invocation.getArguments()[0];
+            if (job.getJobId() == 0) {
+                blocked.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            order.add(job.getJobId());
+            return null;
+        }).when(service).backfillJobFromIntervalEnd(any(JobMetadata.class), anyInt());
+        executor.submit(job(0, "day", 100), 1000, service);
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        executor.submit(job(1, "day", 100), 1000, service);
+        executor.submit(job(2, "hour", 500), 1000, service);
+        executor.submit(job(3, "hour", 200), 1000, service);
+        Assert.assertEquals(executor.getStats().get("queuedBackfills"), 3);
+        Assert.assertEquals(executor.getStats().get("runningBackfills"), 1);
+        release.countDown();
+        awaitDrained(executor);
+        // Hourly jobs go before daily jobs, the job lagging the longest first
+        Assert.assertEquals(order.toString(), "[0, 3, 2, 1]");
+        Assert.assertEquals(executor.getCompletedCount(), 4);
+        Assert.assertEquals(executor.getFailedCount(), 0);
+    }
+
+    @Test
+    public void testCatchUpModeLimitsTheRate() throws Exception {
+        CatchUpExecutor executor = new CatchUpExecutor(2, 2, 600);
+        JobExecutionService service = mock(JobExecutionService.class);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(service).backfillJobFromIntervalEnd(any(JobMetadata.class), anyInt());
+        executor.submit(job(1, "hour", 100), 1000, service);
+        Assert.assertFalse(executor.isCatchUpMode());
+        executor.submit(job(2, "hour", 100), 1000, service);
+        Assert.assertTrue(executor.isCatchUpMode());
+        Assert.assertTrue(executor.getBehindMinutes() > 0);
+        long start = System.nanoTime();
+        release.countDown();
+        executor.submit(job(3, "hour", 100), 1000, service);
+        executor.submit(job(4, "hour", 100), 1000, service);
+        awaitDrained(executor);
+        // 600 backfills per minute start at most one every 100 ms
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assert.assertFalse(executor.isCatchUpMode());
+        Assert.assertEquals(executor.getBehindMinutes(), 0);
+        Assert.assertEquals(executor.getCompletedCount(), 4);
+    }
+
+    @Test
+    public void testFailedBackfillIsCounted() throws Exception {
+        CatchUpExecutor executor = new CatchUpExecutor(1, 10, 0);
+        JobExecutionService service = mock(JobExecutionService.class);
+        doAnswer(invocation -> {
+            throw new IllegalStateException("druid down");
+        }).when(service).backfillJobFromIntervalEnd(any(JobMetadata.class), anyInt());
+        executor.submit(job(1, "hour", 100), 1000, service);
+        awaitDrained(executor);
+        Assert.assertEquals(executor.getFailedCount(), 1);
+        Assert.assertEquals(executor.getCompletedCount(), 0);
+    }
+
+    @Test
+    public void testDelayedBackfillKeepsItsEnd() throws Exception {
+        // One backfill per second once in catch-up mode
+        CatchUpExecutor executor = new CatchUpExecutor(1, 1, 60);
+        JobExecutionService service = mock(JobExecutionService.class);
+        List<Integer> ends = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            ends.add((Integer) invocation.getArguments()[1]);
+            return null;
+        }).when(service).backfillJobFromIntervalEnd(any(JobMetadata.class), anyInt());
+        executor.submit(job(1, "hour", 100), 1000, service);
+        executor.submit(job(2, "hour", 100), 2000, service);
+        long start = System.nanoTime();
+        awaitDrained(executor);
+        // The second backfill starts late but stops where it was told to
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertEquals(ends.toString(), "[1000, 2000]");
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for execution deadlines.
+ */
+public class ExecutionDeadlineTest {
+
+    private int jobTimeoutMinutes;
+
+    @BeforeMethod
+    public void setUp() {
+        jobTimeoutMinutes = CLISettings.JOB_TIMEOUT_MINUTES;
+        CLISettings.JOB_TIMEOUT_MINUTES = 60;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        CLISettings.JOB_TIMEOUT_MINUTES = jobTimeoutMinutes;
+        Thread.interrupted();
+    }
+
+    private static JobMetadata job(String frequency, Integer timeoutMinutes) {
+        JobMetadata job = new JobMetadata();
+        job.setFrequency(frequency);
+        job.setTimeoutMinutes(timeoutMinutes);
+        return job;
+    }
+
+    @Test
+    public void testExpiryInterruptsAndCancels() throws Exception {
+        AtomicInteger cancelled = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutionDeadline deadline = ExecutionDeadline.start(50);
+        try (ExecutionDeadline.Registration registration = ExecutionDeadline.onExpiry(cancelled::incrementAndGet)) {
+            latch.await(5, TimeUnit.SECONDS);
+            Assert.fail("Run was not interrupted");
+        } catch (InterruptedException e) {
+            Assert.assertTrue(deadline.isExpired());
+            Assert.assertEquals(cancelled.get(), 1);
+        }
+        // calls registered after expiry are aborted right away
+        ExecutionDeadline.onExpiry(cancelled::incrementAndGet).close();
+        Assert.assertEquals(cancelled.get(), 2);
+        Thread.currentThread().interrupt();
+        deadline.close();
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+        ExecutionDeadline.onExpiry(cancelled::incrementAndGet).close();
+        Assert.assertEquals(cancelled.get(), 2);
+    }
+
+    @Test
+    public void testClosedDeadlineDoesNotExpire() throws Exception {
+        AtomicInteger cancelled = new AtomicInteger();
+        ExecutionDeadline deadline = ExecutionDeadline.start(50);
+        ExecutionDeadline.onExpiry(cancelled::incrementAndGet).close();
+        deadline.close();
+        Thread.sleep(150);
+        Assert.assertFalse(deadline.isExpired());
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+        Assert.assertEquals(cancelled.get(), 0);
+    }
+
+    @Test
+    public void testDetachedDeadlineBindsStages() throws Exception {
+        AtomicInteger cancelled = new AtomicInteger();
+        ExecutionDeadline deadline = ExecutionDeadline.detached(100);
+        // calls outside of a bound stage are not aborted
+        ExecutionDeadline.onExpiry(cancelled::incrementAndGet).close();
+        try (ExecutionDeadline.Binding binding = deadline.bind()) {
+            ExecutionDeadline.onExpiry(cancelled::incrementAndGet);
+            new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+            Assert.fail("Stage was not interrupted");
+        } catch (InterruptedException e) {
+            Assert.assertTrue(deadline.isExpired());
+        }
+        Assert.assertEquals(cancelled.get(), 1);
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+        // a stage bound after expiry is interrupted right away, and cleared once done
+        try (ExecutionDeadline.Binding binding = deadline.bind()) {
+            Assert.assertTrue(Thread.currentThread().isInterrupted());
+        }
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+        deadline.close();
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testNoDeadline() throws Exception {
+        AtomicInteger cancelled = new AtomicInteger();
+        try (ExecutionDeadline deadline = ExecutionDeadline.start(0)) {
+            ExecutionDeadline.onExpiry(cancelled::incrementAndGet);
+            Thread.sleep(50);
+            Assert.assertFalse(deadline.isExpired());
+        }
+        Assert.assertEquals(cancelled.get(), 0);
+    }
+
+    @Test
+    public void testTimeoutMinutesOf() {
+        Assert.assertEquals(ExecutionDeadline.timeoutMinutesOf(job("minute", null)), 1);
+        Assert.assertEquals(ExecutionDeadline.timeoutMinutesOf(job("hour", null)), 60);
+        Assert.assertEquals(ExecutionDeadline.timeoutMinutesOf(job("day", null)), 60);
+        Assert.assertEquals(ExecutionDeadline.timeoutMinutesOf(job("day", 0)), 60);
+        Assert.assertEquals(ExecutionDeadline.timeoutMinutesOf(job("day", 300)), 300);
+        CLISettings.JOB_TIMEOUT_MINUTES = 0;
+        Assert.assertEquals(ExecutionDeadline.timeoutMinutesOf(job("minute", null)), 0);
+        Assert.assertEquals(ExecutionDeadline.timeoutMinutesOf(job("minute", 5)), 5);
+    }
+}
@@ -15,17 +15,26 @@ import com.yahoo.sherlock.service.SchedulerService;
 import com.yahoo.sherlock.store.JobMetadataAccessor;
 import com.yahoo.sherlock.store.JobScheduler;
 
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.testng.Assert.fail;
 
@@ -49,35 +58,112 @@ public class ExecutionTaskTest {
         SchedulerService ss = Mockito.mock(SchedulerService.class);
         JobMetadataAccessor jma = Mockito.mock(JobMetadataAccessor.class);
         EmailService ems = Mockito.mock(EmailService.class);
-        ExecutionTask et = new ExecutionTask(jes, ss, js, jma);
-        JobMetadata jm = new JobMetadata();
-        Integer[] idPtr = new Integer[] {5};
-        jm.setJobId(idPtr[0]);
-        jm.setEffectiveRunTime(12340);
-        jm.setGranularity(Granularity.HOUR.toString());
-        jm.setFrequency(Granularity.HOUR.toString());
-        jm.setJobStatus(JobStatus.RUNNING.getValue());
-        Mockito.when(js.popQueue(anyLong())).then(new Answer<Object>() {
+        ExecutionTask et = new ExecutionTask(jes, ss, js, jma, new ExecutionWorkerPool(3));
+        int[] remaining = new int[] {4};
+        Mockito.when(js.popQueue(anyLong(), anyInt())).then(new Answer<Object>() {
             @Override
             public Object answer(InvocationOnMock iom) throws Throwable {
-                Mockito.doAnswer(this).when(js).popQueue(anyLong());
-                idPtr[0]--;
-                jm.setJobId(idPtr[0]);
-                if (idPtr[0] <= 0) {
-                    return null;
-                } else {
-                    return jm;
+                int limit = (Integer) iom.getArguments()[1];
+                List<JobMetadata> jobs = new ArrayList<>();
+                while (remaining[0] > 0 && jobs.size() < limit) {
+                    JobMetadata jm = new JobMetadata();
+                    jm.setJobId(remaining[0]--);
+                    jm.setEffectiveRunTime(12340);
+                    jm.setGranularity(Granularity.HOUR.toString());
+                    jm.setFrequency(Granularity.HOUR.toString());
+                    jm.setJobStatus(JobStatus.RUNNING.getValue());
+                    jobs.add(jm);
                 }
+                return jobs;
             }
         });
         Mockito.doNothing().when(ems).sendConsolidatedEmail(any(), any());
+        Mockito.when(jes.executeAsync(any(JobMetadata.class))).thenReturn(CompletableFuture.completedFuture(null));
         Method m = et.getClass().getDeclaredMethod("consumeAndExecuteTasks", long.class);
         m.setAccessible(true);
         m.invoke(et, 12345);
-        Mockito.verify(js, Mockito.times(5)).popQueue(12345);
-        Mockito.verify(jes, Mockito.times(4)).execute(any(JobMetadata.class));
+        Mockito.verify(js, Mockito.atLeast(2)).popQueue(Mockito.eq(12345L), anyInt());
+        Mockito.verify(js, Mockito.times(0)).popQueue(anyLong());
+        Mockito.verify(jes, Mockito.times(4)).executeAsync(any(JobMetadata.class));
         Mockito.verify(ss, Mockito.times(4)).rescheduleJob(any(JobMetadata.class));
         Mockito.verify(jma, Mockito.times(4)).putJobMetadata(any(JobMetadata.class));
+        Mockito.verify(js, Mockito.times(4)).releasePending(anyInt());
+        et.shutdown();
+    }
+
+    @Test
+    public void testLaggingJobIsBackfilledUpToItsRescheduledRun() throws Exception {
+        JobExecutionService jes = Mockito.mock(JobExecutionService.class);
+        JobScheduler js = Mockito.mock(JobScheduler.class);
+        SchedulerService ss = Mockito.mock(SchedulerService.class);
+        CatchUpExecutor catchUp = Mockito.mock(CatchUpExecutor.class);
+        ExecutionTask et = new ExecutionTask(jes, ss, js, Mockito.mock(JobMetadataAccessor.class), new ExecutionWorkerPool(1));
+        inject(et, "catchUpExecutor", catchUp);
+        JobMetadata jm = new JobMetadata();
+        jm.setJobId(1);
+        jm.setEffectiveQueryTime(12000);
+        jm.setEffectiveRunTime(12000);
+        jm.setGranularity(Granularity.HOUR.toString());
+        jm.setGranularityRange(1);
+        jm.setFrequency(Granularity.HOUR.toString());
+        Mockito.when(js.popQueue(anyLong(), anyInt())).thenReturn(Collections.singletonList(jm), Collections.emptyList());
+        Mockito.when(ss.jobScheduleTime(any(JobMetadata.class), anyInt())).thenReturn(new ImmutablePair<>(12060, 12060));
+        Method m = et.getClass().getDeclaredMethod("consumeAndExecuteTasks", long.class);
+        m.setAccessible(true);
+        m.invoke(et, 12345);
+        et.shutdown();
+        // The missed periods are skipped to the run after the tick, and the backfill stops where that run starts
+        Assert.assertEquals(jm.getEffectiveQueryTime(), (Integer) 12360);
+        ArgumentCaptor<JobMetadata> lagging = ArgumentCaptor.forClass(JobMetadata.class);
+        Mockito.verify(catchUp).submit(lagging.capture(), Mockito.eq(12300), Mockito.eq(jes));
+        Assert.assertEquals(lagging.getValue().getEffectiveQueryTime(), (Integer) 12000);
+        Mockito.verify(js).pushQueue(12360L, "1");
+        Mockito.verify(jes, Mockito.times(0)).executeAsync(any(JobMetadata.class));
+    }
+
+    @Test
+    public void testRunWakesUpForEarlierJob() throws Exception {
+        JobScheduler js = Mockito.mock(JobScheduler.class);
+        ExecutionTask et = new ExecutionTask(
+            Mockito.mock(JobExecutionService.class),
+            Mockito.mock(SchedulerService.class),
+            js,
+            Mockito.mock(JobMetadataAccessor.class)
+        );
+        Mockito.when(js.peekNextRunTime()).thenReturn(Long.MAX_VALUE / 120000L);
+        Mockito.when(js.popQueue(anyLong(), anyInt())).thenReturn(Collections.emptyList());
+        Thread runner = new Thread(et);
+        runner.start();
+        Thread.sleep(200);
+        Mockito.verify(js, Mockito.times(0)).popQueue(anyLong(), anyInt());
+        // A job later than the one the task waits for does not wake it
+        et.wakeUp(Long.MAX_VALUE / 60000L);
+        Thread.sleep(100);
+        Mockito.verify(js, Mockito.times(0)).popQueue(anyLong(), anyInt());
+        et.wakeUp(0L);
+        runner.join(5000);
+        Assert.assertFalse(runner.isAlive());
+        Mockito.verify(js, Mockito.times(1)).popQueue(anyLong(), anyInt());
+        et.shutdown();
+    }
+
+    @Test
+    public void testShutdownStopsWaiting() throws Exception {
+        JobScheduler js = Mockito.mock(JobScheduler.class);
+        ExecutionTask et = new ExecutionTask(
+            Mockito.mock(JobExecutionService.class),
+            Mockito.mock(SchedulerService.class),
+            js,
+            Mockito.mock(JobMetadataAccessor.class)
+        );
+        Mockito.when(js.peekNextRunTime()).thenReturn(null);
+        Thread runner = new Thread(et);
+        runner.start();
+        Thread.sleep(100);
+        et.shutdown();
+        runner.join(5000);
+        Assert.assertFalse(runner.isAlive());
+        Mockito.verify(js, Mockito.times(0)).popQueue(anyLong(), anyInt());
     }
 
     @Test
@@ -87,12 +173,101 @@ public class ExecutionTaskTest {
         SchedulerService ss = Mockito.mock(SchedulerService.class);
         JobMetadataAccessor jma = Mockito.mock(JobMetadataAccessor.class);
         ExecutionTask et = new ExecutionTask(jes, ss, js, jma);
-        Mockito.when(js.popQueue(anyLong())).thenThrow(new IOException());
+        Mockito.when(js.popQueue(anyLong(), anyInt())).thenThrow(new IOException());
+        Mockito.when(js.peekNextRunTime()).thenReturn(0L);
         et.run();
-        Mockito.verify(jes, Mockito.times(0)).execute(any(JobMetadata.class));
+        Mockito.verify(jes, Mockito.times(0)).executeAsync(any(JobMetadata.class));
         Mockito.verify(ss, Mockito.times(0)).rescheduleJob(any(JobMetadata.class));
-        Mockito.verify(js, Mockito.times(1)).popQueue(anyLong());
+        Mockito.verify(js, Mockito.times(1)).popQueue(anyLong(), anyInt());
         Mockito.verify(jma, Mockito.times(0)).putJobMetadata(any(JobMetadata.class));
     }
 
+    @Test
+    public void testJobFailureDoesNotStopDispatch() throws Exception {
+        JobExecutionService jes = Mockito.mock(JobExecutionService.class);
+        JobScheduler js = Mockito.mock(JobScheduler.class);
+        SchedulerService ss = Mockito.mock(SchedulerService.class);
+        JobMetadataAccessor jma = Mockito.mock(JobMetadataAccessor.class);
+        ExecutionWorkerPool pool = new ExecutionWorkerPool(2);
+        ExecutionTask et = new ExecutionTask(jes, ss, js, jma, pool);
+        JobMetadata failing = new JobMetadata();
+        failing.setJobId(1);
+        failing.setEffectiveRunTime(12340);
+        failing.setFrequency(Granularity.HOUR.toString());
+        failing.setJobStatus(JobStatus.RUNNING.getValue());
+        JobMetadata passing = new JobMetadata(failing);
+        passing.setJobId(2);
+        Mockito.when(js.popQueue(anyLong(), anyInt())).thenReturn(Arrays.asList(failing, passing), Collections.emptyList());
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("error"));
+        Mockito.when(jes.executeAsync(failing)).thenReturn(failed);
+        Mockito.when(jes.executeAsync(passing)).thenReturn(CompletableFuture.completedFuture(null));
+        Method m = et.getClass().getDeclaredMethod("consumeAndExecuteTasks", long.class);
+        m.setAccessible(true);
+        m.invoke(et, 12345);
+        Mockito.verify(js, Mockito.times(2)).popQueue(Mockito.eq(12345L), anyInt());
+        Mockito.verify(jes, Mockito.times(2)).executeAsync(any(JobMetadata.class));
+        Mockito.verify(js, Mockito.times(0)).releasePending(1);
+        Mockito.verify(js, Mockito.times(1)).releasePending(2);
+        Assert.assertEquals(pool.getDispatchedCount(), 2);
+        Assert.assertEquals(pool.getActiveCount(), 0);
+        et.shutdown();
+    }
+
+    @Test
+    public void testHungJobDoesNotBlockDispatch() throws Exception {
+        JobExecutionService jes = Mockito.mock(JobExecutionService.class);
+        JobScheduler js = Mockito.mock(JobScheduler.class);
+        SchedulerService ss = Mockito.mock(SchedulerService.class);
+        JobMetadataAccessor jma = Mockito.mock(JobMetadataAccessor.class);
+        ExecutionWorkerPool pool = new ExecutionWorkerPool(2);
+        ExecutionTask et = new ExecutionTask(jes, ss, js, jma, pool);
+        JobMetadata hung = new JobMetadata();
+        hung.setJobId(1);
+        hung.setEffectiveRunTime(12340);
+        hung.setFrequency(Granularity.HOUR.toString());
+        hung.setJobStatus(JobStatus.RUNNING.getValue());
+        Mockito.when(js.popQueue(anyLong(), anyInt())).thenReturn(Collections.singletonList(hung), Collections.emptyList());
+        CompletableFuture<Void> running = new CompletableFuture<>();
+        Mockito.when(jes.executeAsync(hung)).thenReturn(running);
+        Method m = et.getClass().getDeclaredMethod("consumeAndExecuteTasks", long.class);
+        m.setAccessible(true);
+        // returns while the job is still in flight
+        m.invoke(et, 12345);
+        Assert.assertEquals(pool.getActiveCount(), 1);
+        Mockito.verify(js, Mockito.times(0)).releasePending(anyInt());
+        // the next tick pops with the remaining worker
+        m.invoke(et, 12346);
+        Mockito.verify(js, Mockito.times(1)).popQueue(Mockito.eq(12346L), Mockito.eq(1));
+        running.complete(null);
+        Mockito.verify(js, Mockito.times(1)).releasePending(1);
+        Assert.assertEquals(pool.getActiveCount(), 0);
+        et.shutdown();
+    }
+
+    @Test
+    public void testLostLeaseLeavesPendingEntry() throws Exception {
+        JobExecutionService jes = Mockito.mock(JobExecutionService.class);
+        JobScheduler js = Mockito.mock(JobScheduler.class);
+        SchedulerService ss = Mockito.mock(SchedulerService.class);
+        JobMetadataAccessor jma = Mockito.mock(JobMetadataAccessor.class);
+        ExecutionTask et = new ExecutionTask(jes, ss, js, jma, new ExecutionWorkerPool(1));
+        JobMetadata job = new JobMetadata();
+        job.setJobId(1);
+        job.setEffectiveRunTime(12340);
+        job.setFrequency(Granularity.HOUR.toString());
+        job.setJobStatus(JobStatus.RUNNING.getValue());
+        Mockito.when(js.popQueue(anyLong(), anyInt())).thenReturn(Collections.singletonList(job), Collections.emptyList());
+        Mockito.when(jes.executeAsync(job)).thenReturn(CompletableFuture.completedFuture(null));
+        // another node claimed the job again after its lease expired
+        Mockito.when(js.releasePending(1)).thenReturn(false);
+        Method m = et.getClass().getDeclaredMethod("consumeAndExecuteTasks", long.class);
+        m.setAccessible(true);
+        m.invoke(et, 12345);
+        Mockito.verify(jma, Mockito.times(1)).putJobMetadata(job);
+        Mockito.verify(js, Mockito.times(1)).releasePending(1);
+        Mockito.verify(js, Mockito.times(0)).removePending(anyInt());
+        Mockito.verify(js, Mockito.times(0)).removePending(Mockito.anyString());
+        et.shutdown();
+    }
 }
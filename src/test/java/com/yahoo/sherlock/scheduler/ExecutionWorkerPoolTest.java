@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.utils.TimeUtils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for the execution worker pool.
+ */
+public class ExecutionWorkerPoolTest {
+
+    private static JobMetadata job(int id, Integer runTime) {
+        JobMetadata job = new JobMetadata();
+        job.setJobId(id);
+        job.setEffectiveRunTime(runTime);
+        return job;
+    }
+
+    @Test
+    public void testJobsRunConcurrently() throws InterruptedException {
+        ExecutionWorkerPool pool = new ExecutionWorkerPool(3);
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch finish = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            pool.acquire();
+            pool.submit(job(i, null), () -> {
+                started.countDown();
+                finish.await();
+            });
+        }
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(pool.getActiveCount(), 3);
+        finish.countDown();
+        pool.awaitIdle();
+        Assert.assertEquals(pool.getActiveCount(), 0);
+        Assert.assertEquals(pool.getDispatchedCount(), 3);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFailedJobReleasesWorker() throws InterruptedException {
+        ExecutionWorkerPool pool = new ExecutionWorkerPool(1);
+        AtomicInteger runs = new AtomicInteger();
+        pool.acquire();
+        pool.submit(job(1, null), () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("error");
+        });
+        pool.acquire();
+        pool.submit(job(2, null), runs::incrementAndGet);
+        pool.awaitIdle();
+        Assert.assertEquals(runs.get(), 2);
+        Assert.assertEquals(pool.getActiveCount(), 0);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testLagStatistics() throws InterruptedException {
+        ExecutionWorkerPool pool = new ExecutionWorkerPool(1);
+        int now = (int) TimeUtils.getTimestampMinutes();
+        pool.acquire();
+        pool.submit(job(1, now - 10), () -> { });
+        pool.awaitIdle();
+        pool.acquire();
+        pool.submit(job(2, now + 10), () -> { });
+        pool.awaitIdle();
+        Assert.assertTrue(pool.getMaxLagSeconds() >= 600);
+        Assert.assertEquals(pool.getLastLagSeconds(), 0);
+        Assert.assertTrue(pool.getAverageLagSeconds() >= 300);
+        Assert.assertEquals(pool.getStats().get("workers"), 1);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testAsyncJobsInFlight() throws Exception {
+        ExecutionWorkerPool pool = new ExecutionWorkerPool(1, 3);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        Assert.assertEquals(pool.acquireAvailable(pool.getMaxInFlight()), 3);
+        for (int i = 0; i < 3; i++) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            futures.add(future);
+            pool.submitAsync(job(i, null), () -> future);
+        }
+        // The jobs hold no worker thread while in flight
+        Assert.assertEquals(pool.getActiveCount(), 3);
+        Assert.assertEquals(pool.getRunningJobIds().size(), 3);
+        futures.get(0).completeExceptionally(new IllegalStateException("error"));
+        futures.get(1).complete(null);
+        futures.get(2).complete(null);
+        pool.awaitIdle();
+        Assert.assertEquals(pool.getActiveCount(), 0);
+        Assert.assertTrue(pool.getRunningJobIds().isEmpty());
+        Assert.assertEquals(pool.getDispatchedCount(), 3);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testAsyncJobFailingToStartReleasesPermit() throws Exception {
+        ExecutionWorkerPool pool = new ExecutionWorkerPool(1, 2);
+        pool.acquire();
+        pool.submitAsync(job(1, null), () -> {
+            throw new IllegalStateException("error");
+        });
+        Assert.assertEquals(pool.getActiveCount(), 0);
+        Assert.assertEquals(pool.getDispatchedCount(), 0);
+        pool.runAsync(() -> { }).get(5, TimeUnit.SECONDS);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testMinimumSize() {
+        Assert.assertEquals(new ExecutionWorkerPool(0).getSize(), 1);
+        Assert.assertEquals(new ExecutionWorkerPool(2, 1).getMaxInFlight(), 2);
+    }
+}
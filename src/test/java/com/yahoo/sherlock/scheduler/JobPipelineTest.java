@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for the job pipeline.
+ */
+public class JobPipelineTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStagesRunOnTheirPools() throws Exception {
+        JobPipeline pipeline = new JobPipeline(2, 0, 1);
+        String threads = CompletableFuture
+            .supplyAsync(() -> Thread.currentThread().getName(), pipeline.getDruidExecutor())
+            .thenApplyAsync(name -> name + "," + Thread.currentThread().getName(), pipeline.getDetectionExecutor())
+            .thenApplyAsync(name -> name + "," + Thread.currentThread().getName(), pipeline.getStoreExecutor())
+            .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(threads, "PipelineDruid-1,PipelineDetection-1,PipelineStore-1");
+        Map<String, Object> stats = pipeline.getStats();
+        Assert.assertEquals(((Map<String, Object>) stats.get("druid")).get("threads"), 2);
+        Assert.assertEquals(((Map<String, Object>) stats.get("detection")).get("threads"), 1);
+    }
+}
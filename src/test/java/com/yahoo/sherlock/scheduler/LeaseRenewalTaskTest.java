@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.store.JobScheduler;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LeaseRenewalTaskTest {
+
+    @Test
+    public void testNothingRunning() throws IOException {
+        JobScheduler js = mock(JobScheduler.class);
+        LeaseRenewalTask task = new LeaseRenewalTask(js, new ExecutionWorkerPool(1));
+        task.run();
+        verify(js, times(0)).renewLease(anyCollection());
+    }
+
+    @Test
+    public void testRenewsRunningJobs() throws Exception {
+        JobScheduler js = mock(JobScheduler.class);
+        when(js.renewLease(anyCollection())).thenReturn(1);
+        ExecutionWorkerPool pool = new ExecutionWorkerPool(2);
+        CountDownLatch finish = new CountDownLatch(1);
+        for (int id = 1; id <= 2; id++) {
+            JobMetadata job = new JobMetadata();
+            job.setJobId(id);
+            pool.acquire();
+            pool.submit(job, finish::await);
+        }
+        LeaseRenewalTask task = new LeaseRenewalTask(js, pool);
+        task.run();
+        verify(js).renewLease(new HashSet<>(Arrays.asList("1", "2")));
+        finish.countDown();
+        pool.awaitIdle();
+        task.run();
+        verify(js, times(1)).renewLease(anyCollection());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testRenewFailureIsCaught() throws Exception {
+        JobScheduler js = mock(JobScheduler.class);
+        when(js.renewLease(anyCollection())).thenThrow(new IOException("error"));
+        ExecutionWorkerPool pool = new ExecutionWorkerPool(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        JobMetadata job = new JobMetadata();
+        job.setJobId(1);
+        pool.acquire();
+        pool.submit(job, finish::await);
+        new LeaseRenewalTask(js, pool).run();
+        finish.countDown();
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test for {@code ObservedTask}.
+ */
+public class ObservedTaskTest {
+
+    @Test
+    public void testRunRecordsDuration() {
+        AtomicInteger runs = new AtomicInteger();
+        ObservedTask task = new ObservedTask("backup", "backup", runs::incrementAndGet, 1, TimeUnit.MINUTES);
+        task.run();
+        ObservedTask.Stats stats = task.getStats();
+        Assert.assertEquals(runs.get(), 1);
+        Assert.assertEquals(stats.getRuns(), 1);
+        Assert.assertEquals(stats.getDurations().getCount(), 1);
+        Assert.assertEquals(stats.getOverruns(), 0);
+        Assert.assertEquals(stats.getSkippedTicks(), 0);
+        Assert.assertEquals(stats.getPeriodMillis(), 60000);
+    }
+
+    @Test
+    public void testOverrunSkipsCatchUpTicks() {
+        AtomicInteger runs = new AtomicInteger();
+        ObservedTask task = new ObservedTask("email-sender", "email", () -> {
+            runs.incrementAndGet();
+            try {
+                Thread.sleep(120);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        task.run();
+        // The executor runs the missed ticks right away
+        task.run();
+        task.run();
+        ObservedTask.Stats stats = task.getStats();
+        Assert.assertEquals(runs.get(), 1);
+        Assert.assertEquals(stats.getRuns(), 1);
+        Assert.assertEquals(stats.getOverruns(), 1);
+        Assert.assertEquals(stats.getSkippedTicks(), 2);
+        Assert.assertTrue(stats.getLastDurationMillis() >= 120);
+    }
+
+    @Test
+    public void testFixedDelayRunsAreNotOverruns() {
+        AtomicInteger runs = new AtomicInteger();
+        ObservedTask task = new ObservedTask("execution-minute", "execution", () -> {
+            runs.incrementAndGet();
+            try {
+                Thread.sleep(120);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 100, TimeUnit.MILLISECONDS, true);
+        task.run();
+        // The next run starts after the delay, none of its runs is skipped
+        task.run();
+        ObservedTask.Stats stats = task.getStats();
+        Assert.assertEquals(runs.get(), 2);
+        Assert.assertEquals(stats.getRuns(), 2);
+        Assert.assertEquals(stats.getOverruns(), 0);
+        Assert.assertEquals(stats.getSkippedTicks(), 0);
+        Assert.assertEquals(stats.getPeriodMillis(), 100);
+    }
+
+    @Test
+    public void testFailureIsCountedAndRethrown() {
+        ObservedTask task = new ObservedTask("backup", "backup", () -> {
+            throw new IllegalStateException("error");
+        }, 1, TimeUnit.MINUTES);
+        try {
+            task.run();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "error");
+        }
+        Assert.assertEquals(task.getStats().getFailures(), 1);
+        Assert.assertEquals(task.getStats().getRuns(), 1);
+    }
+}
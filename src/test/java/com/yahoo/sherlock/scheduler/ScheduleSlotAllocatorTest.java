@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import com.yahoo.sherlock.model.JobMetadata;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Test class for the schedule slot allocator.
+ */
+public class ScheduleSlotAllocatorTest {
+
+    private static JobMetadata job(Integer id, Integer clusterId, String frequency, Integer runTime) {
+        JobMetadata job = new JobMetadata();
+        job.setJobId(id);
+        job.setClusterId(clusterId);
+        job.setFrequency(frequency);
+        job.setEffectiveRunTime(runTime);
+        return job;
+    }
+
+    @Test
+    public void testEmptyQueueUsesIdOffset() {
+        ScheduleSlotAllocator allocator = new ScheduleSlotAllocator(Collections.emptyList());
+        Assert.assertEquals(allocator.allocate(job(75, 1, "hour", null)), 15);
+        Assert.assertEquals(allocator.allocate(job(null, 1, "day", null)), 30);
+        Assert.assertEquals(allocator.getSlotCounts()[15], 1);
+    }
+
+    @Test
+    public void testAllocatesLeastLoadedClusterSlot() {
+        ScheduleSlotAllocator allocator = new ScheduleSlotAllocator(Arrays.asList(
+            job(1, 1, "hour", 600 + 15),
+            job(2, 2, "hour", 600 + 16),
+            job(3, 2, "minute", 600 + 17)
+        ));
+        Assert.assertEquals(allocator.getSlotCounts()[17], 0);
+        // Slot 15 is taken by cluster 1, slot 16 is free for cluster 1 but taken overall
+        Assert.assertEquals(allocator.allocate(job(15, 1, "hour", null)), 17);
+        // Cluster 3 has no jobs, slot 15 is busy overall
+        Assert.assertEquals(allocator.allocate(job(15, 3, "hour", null)), 18);
+        Assert.assertEquals(allocator.getMaxSlotCount(), 1);
+    }
+
+    @Test
+    public void testMinuteJobsAreNotPlaced() {
+        ScheduleSlotAllocator allocator = new ScheduleSlotAllocator(Collections.emptyList());
+        Assert.assertEquals(allocator.allocate(job(5, 1, "minute", null)), 5);
+        Assert.assertEquals(allocator.getMaxSlotCount(), 0);
+    }
+
+    @Test
+    public void testRemove() {
+        JobMetadata job = job(1, 1, "hour", 61);
+        ScheduleSlotAllocator allocator = new ScheduleSlotAllocator(Collections.singletonList(job));
+        Assert.assertEquals(allocator.getSlotCounts()[1], 1);
+        allocator.remove(job);
+        allocator.remove(job);
+        Assert.assertEquals(allocator.getSlotCounts()[1], 0);
+        Assert.assertEquals(ScheduleSlotAllocator.slotOf(-1), 59);
+    }
+}
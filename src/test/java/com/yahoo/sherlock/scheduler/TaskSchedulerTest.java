@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.scheduler;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test for {@code TaskScheduler}.
+ */
+public class TaskSchedulerTest {
+
+    private TaskScheduler taskScheduler;
+
+    @BeforeMethod
+    public void setUp() {
+        taskScheduler = new TaskScheduler();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    public void testPoolPerTaskType() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch ran = new CountDownLatch(2);
+        taskScheduler.scheduleAtFixedRate("backup", "backup", () -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0, 1, TimeUnit.SECONDS);
+        taskScheduler.scheduleAtFixedRate("execution-minute", "execution", ran::countDown, 0, 10, TimeUnit.MILLISECONDS);
+        taskScheduler.scheduleAtFixedRate("execution-hour", "execution", ran::countDown, 0, 10, TimeUnit.MILLISECONDS);
+        // The blocked backup task does not hold back the execution tasks
+        Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+        blocked.countDown();
+        Map<String, Integer> poolSizes = taskScheduler.getPoolSizes();
+        Assert.assertEquals(poolSizes.get("backup").intValue(), 1);
+        Assert.assertEquals(poolSizes.get("execution").intValue(), 2);
+        List<ObservedTask.Stats> stats = taskScheduler.getStats();
+        Assert.assertEquals(stats.size(), 3);
+        Assert.assertEquals(stats.get(0).getName(), "backup");
+        Assert.assertEquals(stats.get(1).getType(), "execution");
+    }
+
+    @Test
+    public void testFixedDelayTaskSharesItsTypePool() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(3);
+        taskScheduler.scheduleAtFixedRate("lease-renewal-minute", "lease-renewal", () -> { }, 1, 1, TimeUnit.MINUTES);
+        taskScheduler.scheduleWithFixedDelay("execution-minute", "execution", ran::countDown, 0, 10, TimeUnit.MILLISECONDS);
+        taskScheduler.scheduleWithFixedDelay("execution-hour", "execution", () -> { }, 0, 10, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(taskScheduler.getPoolSizes().get("execution").intValue(), 2);
+        Assert.assertEquals(taskScheduler.getStats().size(), 3);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testDuplicateTaskName() {
+        taskScheduler.scheduleAtFixedRate("backup", "backup", () -> { }, 1, 1, TimeUnit.MINUTES);
+        taskScheduler.scheduleAtFixedRate("backup", "backup", () -> { }, 1, 1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.exception.DruidException;
+import com.yahoo.sherlock.model.DruidCluster;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the cache of the health of the Druid clusters.
+ */
+public class ClusterHealthCacheTest {
+
+    private static DruidCluster cluster(int clusterId) {
+        DruidCluster cluster = new DruidCluster();
+        cluster.setClusterId(clusterId);
+        cluster.setBrokerHost("broker1");
+        cluster.setBrokerPort(8082);
+        cluster.setBrokerEndpoint("druid/v2");
+        cluster.setAdditionalBrokers("broker2:8082,broker3:8082");
+        return cluster;
+    }
+
+    @Test
+    public void testStatusOf() {
+        Assert.assertEquals(ClusterHealthCache.statusOf(Arrays.asList(200, 200)), ClusterHealthCache.OK);
+        Assert.assertEquals(ClusterHealthCache.statusOf(Arrays.asList(null, 200)), ClusterHealthCache.DEGRADED);
+        Assert.assertEquals(ClusterHealthCache.statusOf(Arrays.asList(503, null)), "503");
+        Assert.assertEquals(ClusterHealthCache.statusOf(Arrays.asList(null, null)), ClusterHealthCache.ERROR);
+    }
+
+    @Test
+    public void testPoll() throws Exception {
+        ClusterHealthCache cache = new ClusterHealthCache();
+        DruidBrokerSelector selector = new DruidBrokerSelector();
+        HttpService httpService = mock(HttpService.class);
+        when(httpService.getBrokerSelector()).thenReturn(selector);
+        DruidCluster cluster = cluster(1);
+        when(httpService.queryDruidBrokerStatus(any(DruidCluster.class), eq("http://broker1:8082/"))).thenReturn(200);
+        when(httpService.queryDruidBrokerStatus(any(DruidCluster.class), eq("http://broker2:8082/"))).thenThrow(new DruidException("down"));
+        when(httpService.queryDruidBrokerStatus(any(DruidCluster.class), eq("http://broker3:8082/"))).thenReturn(200);
+        long before = System.currentTimeMillis();
+        cache.poll(Arrays.asList(cluster, cluster(2)), httpService);
+        Assert.assertEquals(cache.getHealth(1).getStatus(), ClusterHealthCache.DEGRADED);
+        Assert.assertTrue(cache.getHealth(1).getCheckedAtMillis() >= before);
+        Assert.assertNotNull(cache.getHealth(2));
+        // the broker found down is tried last
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(selector.order(cluster).get(2), "http://broker2:8082/druid/v2/");
+        }
+        // clusters which are no longer listed are dropped
+        cache.poll(Collections.singletonList(cluster), httpService);
+        Assert.assertNull(cache.getHealth(2));
+        cache.invalidate(1);
+        Assert.assertNull(cache.getHealth(1));
+    }
+
+    @Test
+    public void testClusterStatus() throws Exception {
+        DruidCluster cluster = cluster(-1);
+        Assert.assertEquals(cluster.getStatus(), ClusterHealthCache.UNKNOWN);
+        Assert.assertEquals(cluster.getStatusCheckedAt(), "never");
+        HttpService httpService = mock(HttpService.class);
+        when(httpService.getBrokerSelector()).thenReturn(new DruidBrokerSelector());
+        when(httpService.queryDruidBrokerStatus(any(DruidCluster.class), any())).thenReturn(200);
+        ClusterHealthCache cache = ClusterHealthCache.getInstance();
+        try {
+            cache.poll(cluster, httpService).get();
+            Assert.assertEquals(cluster.getStatus(), ClusterHealthCache.OK);
+            Assert.assertEquals(cluster.getStatusCheckedAt(), Instant.ofEpochMilli(cache.getHealth(-1).getCheckedAtMillis()).toString());
+        } finally {
+            cache.invalidate(-1);
+        }
+        Assert.assertEquals(cluster.getStatus(), ClusterHealthCache.UNKNOWN);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.model.DruidCluster;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for the per cluster query limiter.
+ */
+public class ClusterQueryLimiterTest {
+
+    private static DruidCluster cluster(Integer id, Integer maxConcurrentQueries, Double maxQueriesPerSecond) {
+        DruidCluster cluster = new DruidCluster();
+        cluster.setClusterId(id);
+        cluster.setMaxConcurrentQueries(maxConcurrentQueries);
+        cluster.setMaxQueriesPerSecond(maxQueriesPerSecond);
+        return cluster;
+    }
+
+    @Test
+    public void testConcurrencyLimitQueuesQueries() throws Exception {
+        ClusterQueryLimiter limiter = new ClusterQueryLimiter();
+        DruidCluster cluster = cluster(1, 1, null);
+        ClusterQueryLimiter.Permit permit = limiter.acquire(cluster);
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try (ClusterQueryLimiter.Permit second = limiter.acquire(cluster)) {
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        Assert.assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(limiter.getStats().get(1).get("waitingQueries"), 1);
+        permit.close();
+        Assert.assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        Map<String, Object> stats = limiter.getStats().get(1);
+        Assert.assertEquals(stats.get("admittedQueries"), 2L);
+        Assert.assertEquals(stats.get("runningQueries"), 0);
+        Assert.assertTrue((Long) stats.get("maxWaitMillis") >= 150L);
+    }
+
+    @Test
+    public void testTryAcquireDoesNotWait() throws Exception {
+        ClusterQueryLimiter limiter = new ClusterQueryLimiter();
+        DruidCluster cluster = cluster(4, 1, null);
+        ClusterQueryLimiter.Permit permit = limiter.tryAcquire(cluster);
+        Assert.assertNotNull(permit);
+        Assert.assertNull(limiter.tryAcquire(cluster));
+        permit.close();
+        limiter.tryAcquire(cluster).close();
+        Assert.assertEquals(limiter.getStats().get(4).get("admittedQueries"), 2L);
+        Assert.assertEquals(limiter.getStats().get(4).get("runningQueries"), 0);
+        // a query over the rate does not take a slot
+        DruidCluster rated = cluster(5, 2, 1.0);
+        limiter.tryAcquire(rated).close();
+        Assert.assertNull(limiter.tryAcquire(rated));
+        Assert.assertEquals(limiter.getStats().get(5).get("runningQueries"), 0);
+        Assert.assertEquals(limiter.getStats().get(5).get("admittedQueries"), 1L);
+        Assert.assertEquals(limiter.tryAcquire(cluster(null, 1, 1.0)), ClusterQueryLimiter.Permit.NONE);
+    }
+
+    @Test
+    public void testRateLimitSpacesQueries() throws Exception {
+        ClusterQueryLimiter limiter = new ClusterQueryLimiter();
+        DruidCluster cluster = cluster(2, null, 10.0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 15; i++) {
+            limiter.acquire(cluster).close();
+        }
+        // The first 10 queries use the burst, the next 5 wait 100ms each
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 400L);
+    }
+
+    @Test
+    public void testUnlimitedAndReconfigured() throws Exception {
+        ClusterQueryLimiter limiter = new ClusterQueryLimiter();
+        limiter.acquire(cluster(null, 1, 1.0)).close();
+        Assert.assertTrue(limiter.getStats().isEmpty());
+        DruidCluster cluster = cluster(3, 1, null);
+        ClusterQueryLimiter.Permit permit = limiter.acquire(cluster);
+        cluster.setMaxConcurrentQueries(2);
+        limiter.acquire(cluster).close();
+        permit.close();
+        Map<String, Object> stats = limiter.getStats().get(3);
+        Assert.assertEquals(stats.get("maxConcurrentQueries"), 2);
+        Assert.assertEquals(stats.get("admittedQueries"), 2L);
+        Assert.assertEquals(stats.get("runningQueries"), 0);
+    }
+
+    @Test
+    public void testResizedLimitCountsRunningQueries() throws Exception {
+        ClusterQueryLimiter limiter = new ClusterQueryLimiter();
+        DruidCluster cluster = cluster(6, 2, null);
+        ClusterQueryLimiter.Permit first = limiter.acquire(cluster);
+        ClusterQueryLimiter.Permit second = limiter.acquire(cluster);
+        // the queries running under the old limit count against the smaller one
+        cluster.setMaxConcurrentQueries(1);
+        Assert.assertNull(limiter.tryAcquire(cluster));
+        first.close();
+        Assert.assertNull(limiter.tryAcquire(cluster));
+        second.close();
+        ClusterQueryLimiter.Permit third = limiter.tryAcquire(cluster);
+        Assert.assertNotNull(third);
+        // a query waiting under the old limit is admitted once the limit grows
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try (ClusterQueryLimiter.Permit fourth = limiter.acquire(cluster)) {
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        Assert.assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        cluster.setMaxConcurrentQueries(2);
+        // the next query of the cluster applies the new limit, racing the waiter for the new slot
+        ClusterQueryLimiter.Permit fifth = limiter.tryAcquire(cluster);
+        if (fifth != null) {
+            fifth.close();
+        }
+        Assert.assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        third.close();
+        Map<String, Object> stats = limiter.getStats().get(6);
+        Assert.assertEquals(stats.get("maxConcurrentQueries"), 2);
+        Assert.assertEquals(stats.get("runningQueries"), 0);
+    }
+}
@@ -400,7 +400,7 @@ public class DetectorServiceTest {
         List<TimeSeries> tslist = Lists.newArrayList(
                 new TimeSeries(), new TimeSeries(), new TimeSeries(), new TimeSeries(), new TimeSeries()
         );
-        when(mockTimeSeriesParserService.parseTimeSeries(any(), any())).thenReturn(tslist);
+        when(detectorService.queryTimeSeries(any(), any())).thenReturn(tslist);
         when(detectorService.detectWithResults(any(), any(), any(), any(), any())).thenCallRealMethod();
         Query query = new Query(null, 150000000, 159999999, Granularity.DAY, 1);
         DetectorConfig config = DetectorConfig.fromProperties(DetectorConfig.fromFile());
@@ -430,7 +430,7 @@ public class DetectorServiceTest {
         List<TimeSeries> tslist = Lists.newArrayList(
                 new TimeSeries(), new TimeSeries(), new TimeSeries(), new TimeSeries(), new TimeSeries()
         );
-        when(mockTimeSeriesParserService.parseTimeSeries(any(), any())).thenReturn(tslist);
+        when(detectorService.queryTimeSeries(any(), any())).thenReturn(tslist);
         when(detectorService.detectWithResults(any(), any(), any(), any(), any())).thenCallRealMethod();
         Query query = new Query(null, 150000000, 159999999, Granularity.DAY, 1);
         DetectorConfig config = DetectorConfig.fromProperties(DetectorConfig.fromFile());
@@ -456,7 +456,7 @@ public class DetectorServiceTest {
         List<TimeSeries> tslist = Lists.newArrayList(
                 new TimeSeries(), new TimeSeries(), new TimeSeries(), new TimeSeries(), new TimeSeries()
         );
-        when(mockTimeSeriesParserService.parseTimeSeries(any(), any())).thenReturn(tslist);
+        when(detectorService.queryTimeSeries(any(), any())).thenReturn(tslist);
         when(detectorService.detectWithResults(any(), any(), any(), any(), any())).thenCallRealMethod();
         Query query = new Query(null, 150000000, 159999999, Granularity.DAY, 1);
         DetectorConfig config = DetectorConfig.fromProperties(DetectorConfig.fromFile());
@@ -483,7 +483,7 @@ public class DetectorServiceTest {
         List<TimeSeries> tslist = Lists.newArrayList(
                 new TimeSeries(), new TimeSeries(), new TimeSeries(), new TimeSeries(), new TimeSeries()
         );
-        when(mockTimeSeriesParserService.parseTimeSeries(any(), any())).thenReturn(tslist);
+        when(detectorService.queryTimeSeries(any(), any())).thenReturn(tslist);
         when(detectorService.detectWithResults(any(), any(), any(), any(), any())).thenCallRealMethod();
         Query query = new Query(null, 150000000, 159999999, Granularity.DAY, 1);
         DetectorConfig config = DetectorConfig.fromProperties(DetectorConfig.fromFile());
@@ -538,4 +538,26 @@ public class DetectorServiceTest {
         }
     }
 
+    @Test
+    public void testCheckDataSourceReloadsCachedListOnce() throws Exception {
+        String queryString = new String(Files.readAllBytes(Paths.get("src/test/resources/druid_query_4.json")));
+        JsonObject queryJsonObject = gson.fromJson(queryString, JsonObject.class);
+        Query query = new Query(queryJsonObject, 1, 1234, Granularity.HOUR, 1);
+        DruidCluster dc = new DruidCluster();
+        dc.setClusterId(91);
+        HttpService mockHttpService = mock(HttpService.class);
+        when(mockHttpService.queryDruidDatasources(Mockito.anyObject()))
+            .thenReturn(gson.fromJson("[\"s3\"]", JsonArray.class))
+            .thenReturn(gson.fromJson("[\"s1\", \"s2\", \"s3\"]", JsonArray.class));
+        DetectorService detectorService = new MockDetectorService();
+        inject(detectorService, "httpService", mockHttpService);
+        DruidDatasourceCache datasourceCache = new DruidDatasourceCache();
+        inject(detectorService, "datasourceCache", datasourceCache);
+        datasourceCache.load(dc, () -> mockHttpService.queryDruidDatasources(dc));
+        // s1 and s2 are not in the cached list, which is reloaded once
+        detectorService.checkDatasource(query, dc);
+        detectorService.checkDatasource(query, dc);
+        Mockito.verify(mockHttpService, Mockito.times(2)).queryDruidDatasources(dc);
+    }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for the choice of the broker of each Druid query.
+ */
+public class DruidBrokerSelectorTest {
+
+    private DruidCluster cluster;
+    private int backoff;
+
+    @BeforeMethod
+    public void setUp() {
+        cluster = new DruidCluster();
+        cluster.setClusterId(1);
+        cluster.setBrokerHost("broker1");
+        cluster.setBrokerPort(8082);
+        cluster.setBrokerEndpoint("druid/v2");
+        cluster.setAdditionalBrokers(" broker2:8082, ,broker3:8082,broker1:8082");
+        backoff = CLISettings.BROKER_FAILURE_BACKOFF;
+        CLISettings.BROKER_FAILURE_BACKOFF = 30;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        CLISettings.BROKER_FAILURE_BACKOFF = backoff;
+    }
+
+    @Test
+    public void testBrokerUrls() {
+        Assert.assertEquals(cluster.getBrokerUrls(), Arrays.asList(
+            "http://broker1:8082/druid/v2/",
+            "http://broker2:8082/druid/v2/",
+            "http://broker3:8082/druid/v2/"
+        ));
+        cluster.setAdditionalBrokers(null);
+        Assert.assertEquals(cluster.getBrokerUrls(), Arrays.asList("http://broker1:8082/druid/v2/"));
+    }
+
+    @Test
+    public void testQueriesAreSpreadOverTheBrokers() {
+        DruidBrokerSelector selector = new DruidBrokerSelector();
+        Set<String> firstBrokers = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            List<String> order = selector.order(cluster);
+            Assert.assertEquals(order.size(), 3);
+            firstBrokers.add(order.get(0));
+        }
+        Assert.assertEquals(firstBrokers.size(), 3);
+    }
+
+    @Test
+    public void testFailedBrokerIsTriedLast() {
+        DruidBrokerSelector selector = new DruidBrokerSelector();
+        selector.recordFailure("http://broker2:8082/druid/v2/");
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(selector.order(cluster).get(2), "http://broker2:8082/druid/v2/");
+        }
+        // a response ends the backoff
+        selector.recordSuccess("http://broker2:8082/druid/v2/", 1000L);
+        Set<String> lastBrokers = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            lastBrokers.add(selector.order(cluster).get(2));
+        }
+        Assert.assertEquals(lastBrokers.size(), 3);
+        // without backoff a failed broker keeps its turn
+        CLISettings.BROKER_FAILURE_BACKOFF = 0;
+        selector.recordFailure("http://broker2:8082/druid/v2/");
+        lastBrokers.clear();
+        for (int i = 0; i < 3; i++) {
+            lastBrokers.add(selector.order(cluster).get(2));
+        }
+        Assert.assertEquals(lastBrokers.size(), 3);
+    }
+
+    @Test
+    public void testHedgeDelayIsTheP95Latency() {
+        DruidBrokerSelector selector = new DruidBrokerSelector();
+        for (int i = 1; i <= 19; i++) {
+            selector.recordSuccess(cluster.getBrokerUrls().get(i % 3), TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        // too few latencies to hedge
+        Assert.assertEquals(selector.hedgeDelayMillis(cluster), -1);
+        selector.recordSuccess(cluster.getBrokerUrls().get(0), TimeUnit.MILLISECONDS.toNanos(20));
+        Assert.assertEquals(selector.hedgeDelayMillis(cluster), 19);
+        // latencies of other clusters are not counted
+        for (int i = 0; i < 100; i++) {
+            selector.recordSuccess("http://other:8082/druid/v2/", TimeUnit.SECONDS.toNanos(10));
+        }
+        Assert.assertEquals(selector.hedgeDelayMillis(cluster), 19);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.yahoo.sherlock.exception.DruidException;
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for the cache of Druid datasource lists.
+ */
+public class DruidDatasourceCacheTest {
+
+    private final Gson gson = new Gson();
+
+    @AfterMethod
+    public void tearDown() {
+        CLISettings.DATASOURCE_CACHE_TTL = 300;
+    }
+
+    private static DruidCluster cluster(Integer id) {
+        DruidCluster cluster = new DruidCluster();
+        cluster.setClusterId(id);
+        return cluster;
+    }
+
+    @Test
+    public void testListIsCachedPerCluster() throws Exception {
+        DruidDatasourceCache cache = new DruidDatasourceCache();
+        AtomicInteger loads = new AtomicInteger();
+        DruidDatasourceCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            return gson.fromJson("[\"s1\"]", JsonArray.class);
+        };
+        Assert.assertNull(cache.getCached(cluster(1), loader));
+        JsonArray loaded = cache.load(cluster(1), loader);
+        Assert.assertSame(cache.getCached(cluster(1), loader), loaded);
+        Assert.assertNull(cache.getCached(cluster(2), loader));
+        // clusters which are not saved are never cached
+        cache.load(cluster(null), loader);
+        Assert.assertNull(cache.getCached(cluster(null), loader));
+        cache.invalidate(1);
+        Assert.assertNull(cache.getCached(cluster(1), loader));
+        Assert.assertEquals(loads.get(), 2);
+        CLISettings.DATASOURCE_CACHE_TTL = 0;
+        cache.load(cluster(3), loader);
+        Assert.assertNull(cache.getCached(cluster(3), loader));
+    }
+
+    @Test
+    public void testStaleListIsRefreshedInBackground() throws Exception {
+        DruidDatasourceCache cache = new DruidDatasourceCache();
+        CountDownLatch refreshed = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        DruidDatasourceCache.Loader loader = () -> {
+            if (loads.incrementAndGet() > 1) {
+                refreshed.countDown();
+                return gson.fromJson("[\"s1\", \"s2\"]", JsonArray.class);
+            }
+            return gson.fromJson("[\"s1\"]", JsonArray.class);
+        };
+        CLISettings.DATASOURCE_CACHE_TTL = 1;
+        JsonArray first = cache.load(cluster(1), loader);
+        Thread.sleep(1100);
+        // the stale list is served while it is refreshed
+        Assert.assertSame(cache.getCached(cluster(1), loader), first);
+        Assert.assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getCached(cluster(1), loader) == first && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(cache.getCached(cluster(1), loader).size(), 2);
+    }
+
+    @Test
+    public void testStaleListIsRefreshedOnce() throws Exception {
+        DruidDatasourceCache cache = new DruidDatasourceCache();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        DruidDatasourceCache.Loader loader = () -> {
+            if (loads.incrementAndGet() > 1) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return gson.fromJson("[\"s1\"]", JsonArray.class);
+        };
+        CLISettings.DATASOURCE_CACHE_TTL = 1;
+        JsonArray first = cache.load(cluster(1), loader);
+        Thread.sleep(1100);
+        // every read of the stale list before the refresh is done shares it
+        for (int i = 0; i < 20; i++) {
+            Assert.assertSame(cache.getCached(cluster(1), loader), first);
+        }
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getCached(cluster(1), loader) == first && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        Assert.assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void testFailedLoadIsReported() {
+        DruidDatasourceCache cache = new DruidDatasourceCache();
+        try {
+            cache.load(cluster(1), () -> {
+                throw new DruidException("broker down");
+            });
+            Assert.fail();
+        } catch (DruidException e) {
+            Assert.assertEquals(e.getMessage(), "broker down");
+        }
+        Assert.assertNull(cache.getCached(cluster(1), () -> null));
+    }
+}
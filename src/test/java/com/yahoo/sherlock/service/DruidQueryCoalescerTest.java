@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.exception.DruidException;
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.query.Query;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the Druid query coalescer.
+ */
+public class DruidQueryCoalescerTest {
+
+    private DruidQueryCoalescer coalescer;
+    private int window;
+
+    @BeforeMethod
+    public void setUp() {
+        coalescer = new DruidQueryCoalescer();
+        window = CLISettings.QUERY_COALESCING_WINDOW;
+        CLISettings.QUERY_COALESCING_WINDOW = 60;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        CLISettings.QUERY_COALESCING_WINDOW = window;
+    }
+
+    private static DruidCluster cluster(Integer id) {
+        DruidCluster cluster = new DruidCluster();
+        cluster.setClusterId(id);
+        return cluster;
+    }
+
+    private static Query query(String json) {
+        Query query = mock(Query.class);
+        when(query.getQueryJsonObject()).thenReturn(new JsonParser().parse(json).getAsJsonObject());
+        return query;
+    }
+
+    private static List<TimeSeries> series() throws Exception {
+        TimeSeries timeSeries = new TimeSeries();
+        timeSeries.meta.id = "id";
+        timeSeries.meta.name = "metric";
+        timeSeries.append(60L, 1.0f);
+        timeSeries.append(120L, 2.0f);
+        return Collections.singletonList(timeSeries);
+    }
+
+    @Test
+    public void testConcurrentQueriesShareOneFetch() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<TimeSeries> source = series();
+        DruidQueryCoalescer.Loader loader = () -> {
+            loads.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return source;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<TimeSeries>> first = executor.submit(() -> coalescer.fetch(cluster(1), query("{\"a\":1,\"b\":2}"), loader));
+            Future<List<TimeSeries>> second = executor.submit(() -> coalescer.fetch(cluster(1), query("{\"b\":2,\"a\":1}"), loader));
+            Thread.sleep(100);
+            release.countDown();
+            List<TimeSeries> firstSeries = first.get(5, TimeUnit.SECONDS);
+            List<TimeSeries> secondSeries = second.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(loads.get(), 1);
+            Assert.assertNotSame(firstSeries.get(0), source.get(0));
+            Assert.assertNotSame(firstSeries.get(0), secondSeries.get(0));
+            Assert.assertEquals(secondSeries.get(0).size(), 2);
+            Assert.assertEquals(secondSeries.get(0).meta.name, "metric");
+            Assert.assertEquals(coalescer.getStats().get("sharedQueries"), 1L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCompletedResultSharedWithinWindow() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        List<TimeSeries> source = series();
+        DruidQueryCoalescer.Loader loader = () -> {
+            loads.incrementAndGet();
+            return source;
+        };
+        coalescer.fetch(cluster(1), query("{\"a\":1}"), loader);
+        coalescer.fetch(cluster(1), query("{\"a\":1}"), loader);
+        Assert.assertEquals(loads.get(), 1);
+        coalescer.fetch(cluster(2), query("{\"a\":1}"), loader);
+        coalescer.fetch(cluster(1), query("{\"a\":2}"), loader);
+        Assert.assertEquals(loads.get(), 3);
+        coalescer.clear();
+        coalescer.fetch(cluster(1), query("{\"a\":1}"), loader);
+        Assert.assertEquals(loads.get(), 4);
+    }
+
+    @Test
+    public void testZeroWindowDoesNotKeepResults() throws Exception {
+        CLISettings.QUERY_COALESCING_WINDOW = 0;
+        AtomicInteger loads = new AtomicInteger();
+        List<TimeSeries> source = series();
+        DruidQueryCoalescer.Loader loader = () -> {
+            loads.incrementAndGet();
+            return source;
+        };
+        coalescer.fetch(cluster(1), query("{\"a\":1}"), loader);
+        coalescer.fetch(cluster(1), query("{\"a\":1}"), loader);
+        Assert.assertEquals(loads.get(), 2);
+        Assert.assertEquals(coalescer.getStats().get("sharedResults"), 0);
+    }
+
+    @Test
+    public void testFailedQueryIsNotShared() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        List<TimeSeries> source = series();
+        try {
+            coalescer.fetch(cluster(1), query("{\"a\":1}"), () -> {
+                loads.incrementAndGet();
+                throw new DruidException("error");
+            });
+            Assert.fail();
+        } catch (DruidException e) {
+            Assert.assertEquals(e.getMessage(), "error");
+        }
+        List<TimeSeries> result = coalescer.fetch(cluster(1), query("{\"a\":1}"), () -> {
+            loads.incrementAndGet();
+            return source;
+        });
+        Assert.assertEquals(loads.get(), 2);
+        Assert.assertEquals(result.size(), 1);
+    }
+
+    @Test
+    public void testNormalize() {
+        JsonObject first = new JsonParser().parse("{\"b\":[{\"d\":1,\"c\":\"x\"}],\"a\":null}").getAsJsonObject();
+        JsonObject second = new JsonParser().parse("{\"a\":null,\"b\":[{\"c\":\"x\",\"d\":1}]}").getAsJsonObject();
+        Assert.assertEquals(DruidQueryCoalescer.normalize(first), DruidQueryCoalescer.normalize(second));
+        Assert.assertEquals(DruidQueryCoalescer.normalize(first), "{\"a\":null,\"b\":[{\"c\":\"x\",\"d\":1}]}");
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.enums.Granularity;
+import com.yahoo.sherlock.exception.DruidException;
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.model.JobMetadata;
+import com.yahoo.sherlock.query.Query;
+import com.yahoo.sherlock.scheduler.ExecutionDeadline;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for the splitting of oversized Druid queries.
+ */
+public class DruidQueryPlannerTest {
+
+    private static final int HOUR = 3600;
+
+    private DruidCluster cluster;
+    private List<Query> sent;
+    private long maxRows;
+    private int maxSlices;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        cluster = new DruidCluster();
+        cluster.setClusterId(1);
+        sent = Collections.synchronizedList(new ArrayList<>());
+        maxRows = CLISettings.QUERY_SPLIT_MAX_ROWS;
+        maxSlices = CLISettings.QUERY_SPLIT_MAX_SLICES;
+        CLISettings.QUERY_SPLIT_MAX_ROWS = 100;
+        CLISettings.QUERY_SPLIT_MAX_SLICES = 8;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        CLISettings.QUERY_SPLIT_MAX_ROWS = maxRows;
+        CLISettings.QUERY_SPLIT_MAX_SLICES = maxSlices;
+    }
+
+    private Query query(String file, Granularity granularity, int intervals) throws Exception {
+        String queryString = new String(Files.readAllBytes(Paths.get("src/test/resources/" + file)));
+        return new DruidQueryService().build(queryString, granularity, 1, 500000 * 60, intervals);
+    }
+
+    /**
+     * Answers a query with a number of series holding a point per hour.
+     */
+    private DruidQueryPlanner.Fetcher fetcher(int seriesCount) {
+        // slices left running by a failed query must not count for the next test
+        List<Query> sentQueries = sent;
+        return query -> {
+            sentQueries.add(query);
+            List<TimeSeries> timeSeriesList = new ArrayList<>();
+            try {
+                for (int i = 0; i < seriesCount; i++) {
+                    TimeSeries timeSeries = new TimeSeries();
+                    timeSeries.meta.name = "m1";
+                    timeSeries.meta.source = "dim1 = 'v" + i + "'";
+                    for (long time = query.getStartTime(); time < query.getRunTime(); time += HOUR) {
+                        timeSeries.append(time, time / HOUR);
+                    }
+                    timeSeriesList.add(timeSeries);
+                }
+            } catch (Exception e) {
+                Assert.fail(e.toString());
+            }
+            return timeSeriesList;
+        };
+    }
+
+    @Test
+    public void testOversizedQueryIsSplitOnTheNextRun() throws Exception {
+        DruidQueryPlanner planner = new DruidQueryPlanner();
+        Query query = query("druid_query_3.json", Granularity.HOUR, 24);
+        // 24 intervals of a single row are within the limit
+        Assert.assertEquals(planner.fetch(cluster, query, fetcher(20)).size(), 20);
+        Assert.assertEquals(sent.size(), 1);
+        // 24 intervals of 20 rows are split into 5 slices of 5 intervals
+        sent.clear();
+        List<TimeSeries> timeSeriesList = planner.fetch(cluster, query, fetcher(20));
+        Assert.assertEquals(sent.size(), 5);
+        sent.sort((a, b) -> a.getStartTime() - b.getStartTime());
+        Assert.assertEquals(sent.get(0).getStartTime(), query.getStartTime());
+        Assert.assertEquals(sent.get(1).getStartTime().intValue(), query.getStartTime() + 5 * HOUR);
+        Assert.assertEquals(sent.get(4).getRunTime(), query.getRunTime());
+        Assert.assertEquals(timeSeriesList.size(), 20);
+        for (TimeSeries timeSeries : timeSeriesList) {
+            Assert.assertEquals(timeSeries.size(), 24);
+            for (int i = 0; i < 24; i++) {
+                Assert.assertEquals(timeSeries.data.get(i).time, (long) query.getStartTime() + i * HOUR);
+            }
+        }
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        Query query = query("druid_query_3.json", Granularity.HOUR, 24);
+        Assert.assertEquals(DruidQueryPlanner.plan(query, 100, 100, 8).size(), 1);
+        Assert.assertEquals(DruidQueryPlanner.plan(query, 1000, 0, 8).size(), 1);
+        List<Query> slices = DruidQueryPlanner.plan(query, 1000000, 100, 8);
+        Assert.assertEquals(slices.size(), 8);
+        Assert.assertEquals(slices.get(0).getQueryJsonObject().get("intervals").getAsString(), "2027-01-14T08:00+00:00/2027-01-14T11:00+00:00");
+        // months do not have a fixed length
+        Assert.assertEquals(DruidQueryPlanner.plan(query("druid_query_3.json", Granularity.MONTH, 6), 1000000, 100, 8).size(), 1);
+        // the limit of a groupBy applies to the whole window
+        Assert.assertEquals(DruidQueryPlanner.plan(query("druid_query_1.json", Granularity.HOUR, 24), 1000000, 100, 8).size(), 1);
+    }
+
+    @Test
+    public void testEstimateRows() throws Exception {
+        DruidQueryPlanner planner = new DruidQueryPlanner();
+        Assert.assertEquals(planner.estimateRows(null, query("druid_query_3.json", Granularity.HOUR, 24)), 24);
+        // a topN returns up to its threshold of rows per interval
+        Assert.assertEquals(planner.estimateRows(null, query("druid_query_2.json", Granularity.DAY, 28)), 28 * 50);
+    }
+
+    @Test
+    public void testSlicesRunWithTheTagsAndDeadlineOfTheJob() throws Exception {
+        DruidQueryPlanner planner = new DruidQueryPlanner();
+        Query query = query("druid_query_3.json", Granularity.HOUR, 24);
+        planner.fetch(cluster, query, fetcher(20));
+        JobMetadata job = new JobMetadata();
+        job.setClusterId(9);
+        List<PipelineMetrics.Tags> sliceTags = Collections.synchronizedList(new ArrayList<>());
+        List<ExecutionDeadline> sliceDeadlines = Collections.synchronizedList(new ArrayList<>());
+        DruidQueryPlanner.Fetcher fetcher = fetcher(20);
+        try (ExecutionDeadline deadline = ExecutionDeadline.start(TimeUnit.MINUTES.toMillis(1));
+             PipelineMetrics.Scope scope = PipelineMetrics.tag(job)) {
+            planner.fetch(cluster, query, slice -> {
+                sliceTags.add(PipelineMetrics.current());
+                sliceDeadlines.add(ExecutionDeadline.current());
+                return fetcher.fetch(slice);
+            });
+            Assert.assertEquals(sliceTags.size(), 5);
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(sliceTags.get(i).getCluster(), "9");
+                Assert.assertSame(sliceDeadlines.get(i), deadline);
+            }
+        }
+    }
+
+    @Test
+    public void testExpiredDeadlineAbortsTheSlices() throws Exception {
+        DruidQueryPlanner planner = new DruidQueryPlanner();
+        Query query = query("druid_query_3.json", Granularity.HOUR, 24);
+        planner.fetch(cluster, query, fetcher(20));
+        CountDownLatch aborted = new CountDownLatch(5);
+        try (ExecutionDeadline deadline = ExecutionDeadline.start(200)) {
+            planner.fetch(cluster, query, slice -> {
+                CountDownLatch abort = new CountDownLatch(1);
+                try (ExecutionDeadline.Registration registration = ExecutionDeadline.onExpiry(abort::countDown)) {
+                    abort.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // the slices are cancelled once the query fails
+                    Thread.currentThread().interrupt();
+                }
+                if (abort.getCount() == 0) {
+                    aborted.countDown();
+                }
+                throw new DruidException("aborted");
+            });
+            Assert.fail();
+        } catch (DruidException e) {
+            Assert.assertTrue(aborted.await(5, TimeUnit.SECONDS));
+        }
+        Thread.interrupted();
+    }
+
+    @Test
+    public void testFailedSliceFailsTheQuery() throws Exception {
+        DruidQueryPlanner planner = new DruidQueryPlanner();
+        Query query = query("druid_query_3.json", Granularity.HOUR, 24);
+        DruidQueryPlanner.Fetcher fetcher = fetcher(20);
+        planner.fetch(cluster, query, fetcher);
+        try {
+            planner.fetch(cluster, query, slice -> {
+                if (slice.getStartTime().equals(query.getStartTime())) {
+                    throw new DruidException("broker timeout");
+                }
+                return fetcher.fetch(slice);
+            });
+            Assert.fail();
+        } catch (DruidException e) {
+            Assert.assertEquals(e.getMessage(), "broker timeout");
+        }
+    }
+}
@@ -36,6 +36,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -145,6 +146,21 @@ public class EmailServiceTest {
         CLISettings.ENABLE_EMAIL = false;
     }
 
+    @Test
+    public void testTimeoutReportIsNotEmailed() {
+        JobMetadata jobMetadata = DBTestHelper.getNewJob();
+        AnomalyReport anomalyReport = DBTestHelper.getNewReport();
+        anomalyReport.setStatus(Constants.TIMEOUT);
+        CLISettings.ENABLE_EMAIL = true;
+        EmailService emailService = mock(EmailService.class);
+        doCallRealMethod().when(emailService).processEmailReports(any(JobMetadata.class), anyList(), anyListOf(AnomalyReport.class));
+        when(emailService.sendEmail(anyString(), anyList(), anyListOf(AnomalyReport.class))).thenReturn(true);
+        emailService.processEmailReports(jobMetadata, emails, Arrays.asList(anomalyReport));
+        CLISettings.ENABLE_EMAIL = false;
+        Mockito.verify(emailService, Mockito.never()).sendEmail(eq(CLISettings.FAILURE_EMAIL), anyList(), anyListOf(AnomalyReport.class));
+        Mockito.verify(emailService).sendEmail(anyString(), anyList(), eq(Collections.emptyList()));
+    }
+
     private EmailMetaData getEmailMetadata(String email) {
         return new EmailMetaData(email);
     }
@@ -6,41 +6,58 @@
 
 package com.yahoo.sherlock.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import com.yahoo.sherlock.TestUtilities;
+import com.sun.net.httpserver.HttpServer;
 import com.yahoo.sherlock.exception.DruidException;
 import com.yahoo.sherlock.exception.DetectorServiceException;
 import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.model.JobMetadata;
 import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.utils.SHttpClient;
-import com.yahoo.sherlock.utils.SSslUtils;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.mockito.ArgumentCaptor;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertEqualsNoOrder;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
@@ -74,13 +91,16 @@ public class HttpServiceTest {
         when(sHttpClient.newHttpClient()).thenReturn(client);
         when(sHttpClient.newHttpClient(anyBoolean(), anyString())).thenReturn(client);
         when(sHttpClient.newHttpClient(anyInt(), anyInt(), anyBoolean(), anyString())).thenReturn(client);
+        when(sHttpClient.getDruidHttpClient(any(DruidCluster.class))).thenReturn(client);
+        when(sHttpClient.getDruidHttpClient(any(DruidCluster.class), anyInt(), anyInt())).thenReturn(client);
+        when(sHttpClient.getProphetHttpClient(anyString())).thenReturn(client);
+        when(httpService.getQueryLimiter()).thenReturn(new ClusterQueryLimiter());
+        when(httpService.getBrokerSelector()).thenReturn(new DruidBrokerSelector());
     }
 
     @Test
     public void testNewHttpClientInstance() {
         mocks();
-        SSslUtils sSslUtils = new SSslUtils();
-        TestUtilities.inject(sHttpClient, SHttpClient.class, "sSslUtils", sSslUtils);
         when(sHttpClient.newHttpClient(anyInt(), anyInt(), anyBoolean(), anyString())).thenCallRealMethod();
         when(sHttpClient.newHttpClient()).thenCallRealMethod();
         HttpClient client = sHttpClient.newHttpClient(1000, 4, false, "");
@@ -101,6 +121,75 @@ public class HttpServiceTest {
         assertNotNull(client);
     }
 
+    @Test
+    public void testPooledClientsAreShared() {
+        SHttpClient pooled = SHttpClient.getSHttpClient();
+        DruidCluster cluster = new DruidCluster(41, "pooled", "", "localhost", 8082, "druid/v2", 0, false, "");
+        HttpClient client = pooled.getDruidHttpClient(cluster);
+        assertTrue(client == pooled.getDruidHttpClient(cluster));
+        assertTrue(client != pooled.getDruidHttpClient(cluster, 300, 0));
+        assertTrue(client == pooled.getDruidHttpClient(new DruidCluster(41, "renamed", "", "otherhost", 8082, "druid/v2", 0, false, "")));
+        // the pool is rebuilt when the cluster is updated
+        pooled.closeDruidHttpClients(41);
+        HttpClient rebuilt = pooled.getDruidHttpClient(cluster);
+        assertTrue(client != rebuilt);
+        // or when its SSL settings change
+        assertTrue(rebuilt != pooled.getDruidHttpClient(new DruidCluster(41, "pooled", "", "localhost", 8082, "druid/v2", 0, true, "")));
+        // or when its number of brokers changes, which sizes the pool
+        DruidCluster brokers = new DruidCluster(41, "pooled", "", "localhost", 8082, "druid/v2", 0, false, "");
+        brokers.setAdditionalBrokers("broker2:8082,broker3:8082");
+        HttpClient larger = pooled.getDruidHttpClient(brokers);
+        assertTrue(larger != pooled.getDruidHttpClient(cluster));
+        pooled.closeDruidHttpClients(41);
+        assertTrue(pooled.getProphetHttpClient("http://prophet:4080/a") == pooled.getProphetHttpClient("http://prophet:4080/b"));
+    }
+
+    @Test
+    public void testRequestInFlightCompletesAfterPoolSwap() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch respond = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/status", exchange -> {
+            received.countDown();
+            try {
+                respond.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        ExecutorService requests = Executors.newSingleThreadExecutor();
+        try {
+            int port = server.getAddress().getPort();
+            SHttpClient pooled = SHttpClient.getSHttpClient();
+            DruidCluster cluster = new DruidCluster(43, "swapped", "", "localhost", port, "druid/v2", 0, false, "");
+            HttpClient client = pooled.getDruidHttpClient(cluster);
+            Future<String> inFlight = requests.submit(() -> {
+                HttpResponse response = client.execute(new HttpGet("http://localhost:" + port + "/status"));
+                return EntityUtils.toString(response.getEntity());
+            });
+            assertTrue(received.await(10, TimeUnit.SECONDS));
+            // the pool is swapped when the brokers of the cluster change, then retired when the cluster is updated
+            DruidCluster brokers = new DruidCluster(43, "swapped", "", "localhost", port, "druid/v2", 0, false, "");
+            brokers.setAdditionalBrokers("broker2:8082");
+            assertTrue(client != pooled.getDruidHttpClient(brokers));
+            pooled.closeDruidHttpClients(43);
+            // let the retired pools check their leased connections
+            Thread.sleep(1500);
+            respond.countDown();
+            assertEquals(inFlight.get(10, TimeUnit.SECONDS), "ok");
+        } finally {
+            respond.countDown();
+            requests.shutdownNow();
+            server.stop(0);
+        }
+    }
+
     @Test
     public void testNewPostMethodInstance() {
         mocks();
@@ -123,8 +212,9 @@ public class HttpServiceTest {
     public void testQueryDruid() throws DruidException, IOException {
         mockGets();
         when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class))).thenCallRealMethod();
+        when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class), any())).thenCallRealMethod();
         DruidCluster cluster = mock(DruidCluster.class);
-        when(cluster.getBrokerUrl()).thenReturn("localhost:9999/druid/v2");
+        when(cluster.getBrokerUrls()).thenReturn(Collections.singletonList("localhost:9999/druid/v2"));
         JsonObject query = new JsonObject();
         query.addProperty("granularity", "hour");
         query.addProperty("something", "else");
@@ -156,12 +246,175 @@ public class HttpServiceTest {
         verify(post, times(1)).releaseConnection();
     }
 
+    @Test
+    public void testQueryDruidSmile() throws Exception {
+        mockGets();
+        when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class), any())).thenCallRealMethod();
+        DruidCluster cluster = mock(DruidCluster.class);
+        when(cluster.getBrokerUrls()).thenReturn(Collections.singletonList("localhost:9999/druid/v2"));
+        when(cluster.getSmileEncoding()).thenReturn(true);
+        StatusLine sl = mock(StatusLine.class);
+        when(res.getStatusLine()).thenReturn(sl);
+        when(sl.getStatusCode()).thenReturn(200);
+        when(client.execute(post)).thenReturn(res);
+        HttpEntity ent = mock(HttpEntity.class);
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        when(ent.getContent()).thenReturn(new ByteArrayInputStream(smileMapper.writeValueAsBytes(new int[]{5, 10, 15})));
+        when(ent.getContentType()).thenReturn(new BasicHeader(HttpHeaders.CONTENT_TYPE, "application/x-jackson-smile"));
+        when(res.getEntity()).thenReturn(ent);
+        JsonObject query = new JsonObject();
+        query.addProperty("granularity", "hour");
+        int[] result = httpService.queryDruid(cluster, query, (inputStream, smile) -> {
+            assertTrue(smile);
+            return smileMapper.readValue(inputStream, int[].class);
+        });
+        assertEquals(result, new int[]{5, 10, 15});
+        verify(post, times(1)).setHeader(HttpHeaders.ACCEPT, "application/x-jackson-smile");
+        ArgumentCaptor<HttpEntity> body = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(post).setEntity(body.capture());
+        assertEquals(body.getValue().getContentType().getValue(), "application/x-jackson-smile");
+        assertEquals(smileMapper.readTree(body.getValue().getContent()).get("granularity").asText(), "hour");
+    }
+
+    @Test
+    public void testQueryDruidFailsOver() throws Exception {
+        mockGets();
+        DruidBrokerSelector selector = new DruidBrokerSelector();
+        when(httpService.getBrokerSelector()).thenReturn(selector);
+        when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class), any())).thenCallRealMethod();
+        DruidCluster cluster = mock(DruidCluster.class);
+        List<String> urls = Arrays.asList("http://broker1:9999/druid/v2/", "http://broker2:9999/druid/v2/");
+        when(cluster.getBrokerUrls()).thenReturn(urls);
+        StatusLine sl = mock(StatusLine.class);
+        when(res.getStatusLine()).thenReturn(sl);
+        when(sl.getStatusCode()).thenReturn(200);
+        HttpEntity ent = mock(HttpEntity.class);
+        when(ent.getContent()).thenReturn(new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)));
+        when(res.getEntity()).thenReturn(ent);
+        when(client.execute(post)).thenThrow(new IOException("connection refused")).thenReturn(res);
+        String result = httpService.queryDruid(cluster, new JsonObject(), (inputStream, smile) -> "read");
+        assertEquals(result, "read");
+        verify(sHttpClient, times(1)).newHttpPost(urls.get(0));
+        verify(sHttpClient, times(1)).newHttpPost(urls.get(1));
+        // the failed broker is tried last
+        assertEquals(selector.order(cluster), Arrays.asList(urls.get(1), urls.get(0)));
+        assertEquals(selector.order(cluster), Arrays.asList(urls.get(1), urls.get(0)));
+    }
+
+    @Test
+    public void testQueryDruidHedged() throws Exception {
+        mockGets();
+        DruidBrokerSelector selector = new DruidBrokerSelector();
+        when(httpService.getBrokerSelector()).thenReturn(selector);
+        when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class), anyBoolean(), any())).thenCallRealMethod();
+        ClusterQueryLimiter limiter = new ClusterQueryLimiter();
+        when(httpService.getQueryLimiter()).thenReturn(limiter);
+        DruidCluster cluster = mock(DruidCluster.class);
+        List<String> urls = Arrays.asList("http://broker1:9999/druid/v2/", "http://broker2:9999/druid/v2/");
+        when(cluster.getBrokerUrls()).thenReturn(urls);
+        when(cluster.getHedgeRequests()).thenReturn(true);
+        when(cluster.getClusterId()).thenReturn(7);
+        when(cluster.getMaxConcurrentQueries()).thenReturn(2);
+        for (int i = 0; i < 20; i++) {
+            selector.recordSuccess(urls.get(i % 2), TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        // the first broker to be picked hangs until its request is aborted
+        HttpPost slowPost = mock(HttpPost.class);
+        HttpPost fastPost = mock(HttpPost.class);
+        String slowUrl = selector.order(cluster).get(1);
+        when(sHttpClient.newHttpPost(slowUrl)).thenReturn(slowPost);
+        when(sHttpClient.newHttpPost(urls.get(1 - urls.indexOf(slowUrl)))).thenReturn(fastPost);
+        CountDownLatch aborted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            aborted.countDown();
+            return null;
+        }).when(slowPost).abort();
+        when(client.execute(slowPost)).thenAnswer(invocation -> {
+            aborted.await(10, TimeUnit.SECONDS);
+            throw new IOException("aborted");
+        });
+        StatusLine sl = mock(StatusLine.class);
+        when(res.getStatusLine()).thenReturn(sl);
+        when(sl.getStatusCode()).thenReturn(200);
+        HttpEntity ent = mock(HttpEntity.class);
+        when(ent.getContent()).thenReturn(new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)));
+        when(res.getEntity()).thenReturn(ent);
+        when(client.execute(fastPost)).thenReturn(res);
+        PipelineMetrics.getInstance().clear();
+        JobMetadata job = new JobMetadata();
+        job.setFrequency("minute");
+        job.setClusterId(7);
+        String result;
+        try (PipelineMetrics.Scope scope = PipelineMetrics.tag(job)) {
+            result = httpService.queryDruid(cluster, new JsonObject(), true, (inputStream, smile) -> "read");
+        }
+        assertEquals(result, "read");
+        assertEquals(aborted.getCount(), 0);
+        // the aborted request is not a Druid error
+        assertFalse(PipelineMetrics.getInstance().getCounters().containsKey(PipelineMetrics.DRUID_QUERY_ERRORS));
+        // the hedged request is timed with the tags of the job
+        assertEquals(PipelineMetrics.getInstance().getSnapshots().size(), 1);
+        assertEquals(PipelineMetrics.getInstance().getSnapshots().get(0).getTags().getCluster(), "7");
+        assertEquals(PipelineMetrics.getInstance().getSnapshots().get(0).getHistogram().getCount(), 2);
+        assertEquals(selector.getStats().get("hedgedQueries"), 1L);
+        // the aborted broker did not fail
+        assertEquals(selector.order(cluster).size(), 2);
+        assertTrue(selector.order(cluster).contains(slowUrl));
+        verify(client, times(1)).execute(fastPost);
+        // the hedge took its own permit and released it
+        assertEquals(limiter.getStats().get(7).get("admittedQueries"), 2L);
+        assertEquals(limiter.getStats().get(7).get("runningQueries"), 0);
+    }
+
+    @Test
+    public void testQueryDruidNotHedgedAtClusterLimit() throws Exception {
+        mockGets();
+        DruidBrokerSelector selector = new DruidBrokerSelector();
+        when(httpService.getBrokerSelector()).thenReturn(selector);
+        ClusterQueryLimiter limiter = new ClusterQueryLimiter();
+        when(httpService.getQueryLimiter()).thenReturn(limiter);
+        when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class), anyBoolean(), any())).thenCallRealMethod();
+        DruidCluster cluster = mock(DruidCluster.class);
+        List<String> urls = Arrays.asList("http://broker1:9999/druid/v2/", "http://broker2:9999/druid/v2/");
+        when(cluster.getBrokerUrls()).thenReturn(urls);
+        when(cluster.getHedgeRequests()).thenReturn(true);
+        when(cluster.getClusterId()).thenReturn(8);
+        when(cluster.getMaxConcurrentQueries()).thenReturn(1);
+        for (int i = 0; i < 20; i++) {
+            selector.recordSuccess(urls.get(i % 2), TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        // the first broker to be picked answers well after the hedge delay
+        HttpPost slowPost = mock(HttpPost.class);
+        HttpPost otherPost = mock(HttpPost.class);
+        String slowUrl = selector.order(cluster).get(1);
+        when(sHttpClient.newHttpPost(slowUrl)).thenReturn(slowPost);
+        when(sHttpClient.newHttpPost(urls.get(1 - urls.indexOf(slowUrl)))).thenReturn(otherPost);
+        StatusLine sl = mock(StatusLine.class);
+        when(res.getStatusLine()).thenReturn(sl);
+        when(sl.getStatusCode()).thenReturn(200);
+        HttpEntity ent = mock(HttpEntity.class);
+        when(ent.getContent()).thenReturn(new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)));
+        when(res.getEntity()).thenReturn(ent);
+        when(client.execute(slowPost)).thenAnswer(invocation -> {
+            Thread.sleep(300);
+            return res;
+        });
+        String result = httpService.queryDruid(cluster, new JsonObject(), true, (inputStream, smile) -> "read");
+        assertEquals(result, "read");
+        // the only permit is held by the first request, so the query is not hedged
+        assertEquals(selector.getStats().get("hedgedQueries"), 0L);
+        verify(client, times(0)).execute(otherPost);
+        assertEquals(limiter.getStats().get(8).get("admittedQueries"), 1L);
+        assertEquals(limiter.getStats().get(8).get("runningQueries"), 0);
+    }
+
     @Test
     public void testQueryDruidBadResponse() throws DruidException, IOException {
         mockGets();
         when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class))).thenCallRealMethod();
+        when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class), any())).thenCallRealMethod();
         DruidCluster cluster = mock(DruidCluster.class);
-        when(cluster.getBrokerUrl()).thenReturn("localhost:9999/druid/v2");
+        when(cluster.getBrokerUrls()).thenReturn(Collections.singletonList("localhost:9999/druid/v2"));
         JsonObject query = new JsonObject();
         query.addProperty("granularity", "hour");
         query.addProperty("something", "else");
@@ -185,8 +438,10 @@ public class HttpServiceTest {
     public void testQueryDruidException() throws DruidException, IOException {
         mockGets();
         when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class))).thenCallRealMethod();
+        when(httpService.queryDruid(any(DruidCluster.class), any(JsonObject.class), any())).thenCallRealMethod();
         when(client.execute(any(HttpPost.class))).thenThrow(new IOException("error"));
         DruidCluster cluster = mock(DruidCluster.class);
+        when(cluster.getBrokerUrls()).thenReturn(Collections.singletonList("localhost:9999/druid/v2"));
         when(cluster.getPrincipalName()).thenReturn("");
         when(cluster.getIsSSLAuth()).thenReturn(false);
         try {
@@ -205,7 +460,7 @@ public class HttpServiceTest {
         when(httpService.queryDruidDatasources(any(DruidCluster.class))).thenCallRealMethod();
         DruidCluster cluster = mock(DruidCluster.class);
         String url = "http://battlelog.battlefield.com/bf3/";
-        when(cluster.getBrokerUrl()).thenReturn(url);
+        when(cluster.getBrokerUrls()).thenReturn(Collections.singletonList(url));
         StatusLine sl = mock(StatusLine.class);
         when(sl.getStatusCode()).thenReturn(200);
         when(res.getStatusLine()).thenReturn(sl);
@@ -237,7 +492,7 @@ public class HttpServiceTest {
         when(httpService.queryDruidDatasources(any(DruidCluster.class))).thenCallRealMethod();
         DruidCluster cluster = mock(DruidCluster.class);
         String url = "http://battlelog.battlefield.com/bf3/";
-        when(cluster.getBrokerUrl()).thenReturn(url);
+        when(cluster.getBrokerUrls()).thenReturn(Collections.singletonList(url));
         StatusLine sl = mock(StatusLine.class);
         when(sl.getStatusCode()).thenReturn(500);
         when(res.getStatusLine()).thenReturn(sl);
@@ -257,8 +512,10 @@ public class HttpServiceTest {
         mockGets();
         when(httpService.queryDruidDatasources(any(DruidCluster.class))).thenCallRealMethod();
         when(client.execute(any(HttpGet.class))).thenThrow(new IOException("error"));
+        DruidCluster cluster = mock(DruidCluster.class);
+        when(cluster.getBrokerUrls()).thenReturn(Collections.singletonList("localhost:9999/druid/v2"));
         try {
-            httpService.queryDruidDatasources(mock(DruidCluster.class));
+            httpService.queryDruidDatasources(cluster);
         } catch (DruidException e) {
             assertEquals(e.getMessage(), "error");
             verify(get, times(1)).releaseConnection();
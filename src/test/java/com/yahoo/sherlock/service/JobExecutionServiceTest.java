@@ -6,23 +6,29 @@
 
 package com.yahoo.sherlock.service;
 
-import com.google.gson.JsonArray;
+import com.yahoo.sherlock.exception.ClusterNotFoundException;
 import com.yahoo.sherlock.exception.DruidException;
 import com.yahoo.sherlock.exception.SherlockException;
 import com.yahoo.sherlock.model.AnomalyReport;
+import com.yahoo.sherlock.model.BackfillProgress;
 import com.yahoo.sherlock.model.DruidCluster;
 import com.yahoo.sherlock.model.JobMetadata;
 import com.yahoo.sherlock.query.Query;
+import com.yahoo.sherlock.scheduler.BackfillExecutor;
 import com.yahoo.sherlock.scheduler.DetectionTask;
+import com.yahoo.sherlock.scheduler.JobPipeline;
+import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.settings.Constants;
 import com.yahoo.sherlock.store.AnomalyReportAccessor;
 import com.yahoo.sherlock.store.DBTestHelper;
 import com.yahoo.sherlock.store.EmailMetadataAccessor;
 import com.yahoo.sherlock.store.JobMetadataAccessor;
+import com.yahoo.sherlock.enums.BackfillStatus;
 import com.yahoo.sherlock.enums.JobStatus;
 import com.yahoo.sherlock.enums.Granularity;
 import com.yahoo.sherlock.query.DetectorConfig;
 import com.yahoo.sherlock.store.DruidClusterAccessor;
+import com.yahoo.sherlock.utils.TimeUtils;
 import com.yahoo.egads.data.Anomaly;
 import com.yahoo.egads.data.MetricMeta;
 import com.yahoo.egads.data.TimeSeries;
@@ -32,10 +38,15 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyDouble;
@@ -44,6 +55,7 @@ import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -101,6 +113,7 @@ public class JobExecutionServiceTest {
         inject(jes, jma);
         inject(jes, "anomalyReportAccessor", ara);
         inject(jes, "emailMetadataAccessor", ema);
+        inject(jes, "backfillExecutor", new BackfillExecutor(2));
         when(sf.newEmailServiceInstance()).thenReturn(es);
         when(sf.newSchedulerServiceInstance()).thenReturn(ss);
         when(sf.newDetectorServiceInstance()).thenReturn(ds);
@@ -162,6 +175,48 @@ public class JobExecutionServiceTest {
         verify(jes, times(1)).unscheduleErroredJob(any());
     }
 
+    @Test
+    public void testExecuteAsync() throws Exception {
+        initMocks();
+        inject(jes, "jobPipeline", new JobPipeline(1, 1, 1));
+        doCallRealMethod().when(jes).executeAsync(any(JobMetadata.class));
+        Query query = mock(Query.class);
+        List<TimeSeries> series = Collections.singletonList(new TimeSeries());
+        List<Anomaly> anomalies = Collections.singletonList(new Anomaly());
+        AnomalyReport anomalyReport = DBTestHelper.getNewReport();
+        anomalyReport.setStatus(Constants.WARNING);
+        when(ds.buildQuery(any(JobMetadata.class))).thenReturn(query);
+        when(ds.fetchTimeSeries(any(), any())).thenReturn(series);
+        when(ds.detect(anyList(), any(Query.class), any(JobMetadata.class))).thenReturn(anomalies);
+        when(jes.getReports(any(), any())).thenReturn(new ArrayList<>(Collections.singletonList(anomalyReport)));
+        when(ema.checkEmailsInInstantIndex(anyList())).thenReturn(new ArrayList());
+        JobMetadata job = DBTestHelper.getNewJob();
+        jes.executeAsync(job).get(5, TimeUnit.SECONDS);
+        assertEquals(job.getJobStatus(), JobStatus.RUNNING.getValue());
+        verify(ds, times(1)).detect(series, query, job);
+        verify(jes, times(1)).getReports(anomalies, job);
+        verify(jes, times(0)).unscheduleErroredJob(any());
+        verify(ara, times(1)).putAnomalyReports(eq(Collections.singletonList(anomalyReport)), anyList());
+    }
+
+    @Test
+    public void testExecuteAsyncDruidError() throws Exception {
+        initMocks();
+        inject(jes, "jobPipeline", new JobPipeline(1, 1, 1));
+        doCallRealMethod().when(jes).executeAsync(any(JobMetadata.class));
+        when(ds.buildQuery(any(JobMetadata.class))).thenReturn(mock(Query.class));
+        when(ds.fetchTimeSeries(any(), any())).thenThrow(new DruidException("error"));
+        AnomalyReport errorReport = new AnomalyReport();
+        errorReport.setStatus(Constants.ERROR);
+        when(jes.getSingletonReport(any())).thenReturn(errorReport);
+        JobMetadata job = DBTestHelper.getNewJob();
+        jes.executeAsync(job).get(5, TimeUnit.SECONDS);
+        verify(ds, times(0)).detect(anyList(), any(Query.class), any(JobMetadata.class));
+        verify(jes, times(1)).unscheduleErroredJob(job);
+        verify(es, times(1)).processEmailReports(any(JobMetadata.class), anyList(), anyListOf(AnomalyReport.class));
+        verify(ara, times(1)).putAnomalyReports(eq(Collections.singletonList(errorReport)), anyList());
+    }
+
     @Test
     public void testUnscheduleJob() throws IOException {
         initMocks();
@@ -237,6 +292,8 @@ public class JobExecutionServiceTest {
         assertEquals(result.getJobId(), (Integer) 1);
         assertEquals(result.getStatus(), Constants.ERROR);
         assertNotNull(result.getUniqueId());
+        job.setJobStatus(JobStatus.TIMEOUT.getValue());
+        assertEquals(jes.getSingletonReport(job).getStatus(), Constants.TIMEOUT);
     }
 
     @SuppressWarnings("unchecked")
@@ -264,17 +321,57 @@ public class JobExecutionServiceTest {
         return a;
     }
 
+    @Test
+    public void testBackfillJobFromIntervalEnd() throws Exception {
+        initMocks();
+        doCallRealMethod().when(jes).backfillJobFromIntervalEnd(any(), any());
+        JobMetadata job = DBTestHelper.getNewJob();
+        job.setGranularity(Granularity.HOUR.toString());
+        job.setGranularityRange(1);
+        job.setEffectiveQueryTime(12000);
+        BackfillExecutor executor = new BackfillExecutor(1);
+        inject(jes, "backfillExecutor", executor);
+        jes.backfillJobFromIntervalEnd(job, 12300);
+        verify(jes).performBackfillJob(eq(job), eq(TimeUtils.zonedDateTimeFromMinutes(11940)), eq(TimeUtils.zonedDateTimeFromMinutes(12300)), any(BackfillProgress.class));
+        assertEquals(executor.getAllProgress().size(), 0);
+    }
+
+    @Test
+    public void testValidateBackfillJob() throws Exception {
+        initMocks();
+        doCallRealMethod().when(jes).validateBackfillJob(any(), any(), any());
+        JobMetadata job = DBTestHelper.getNewJob();
+        job.setGranularity(Granularity.HOUR.toString());
+        job.setClusterId(1);
+        ZonedDateTime start = ZonedDateTime.of(2017, 10, 8, 2, 0, 0, 0, ZoneOffset.UTC);
+        when(dca.getDruidCluster(1)).thenReturn(new DruidCluster());
+        jes.validateBackfillJob(job, start, start.plusHours(3));
+        try {
+            jes.validateBackfillJob(job, start, start.plusMinutes(30));
+            fail();
+        } catch (SherlockException e) {
+            assertEquals(e.getMessage(), "Backfill interval cannot be smaller than granularity!");
+        }
+        when(dca.getDruidCluster(1)).thenThrow(new ClusterNotFoundException("1"));
+        try {
+            jes.validateBackfillJob(job, start, start.plusHours(3));
+            fail();
+        } catch (ClusterNotFoundException e) {
+            assertEquals(e.getMessage(), ClusterNotFoundException.EXEPTION_MSG);
+        }
+    }
+
     @Test
     public void testPerformBackfillJob() throws Exception {
         initMocks();
         Query query = mock(Query.class);
         when(query.getGranularityRange()).thenReturn(1);
-        JsonArray response = new JsonArray();
-        when(ds.queryDruid(any(), any())).thenReturn(response);
+        when(ds.queryTimeSeries(any(), any())).thenReturn(Collections.emptyList());
         @SuppressWarnings("unchecked")
         List<TimeSeries>[] fillSeriesList = (List<TimeSeries>[]) new List[3];
         when(ps.subseries(any(), anyLong(), anyLong(), any(), anyInt(), anyInt())).thenReturn(fillSeriesList);
         doCallRealMethod().when(jes).performBackfillJob(any(), any(), any(), anyInt(), anyInt(), any(), anyInt());
+        doCallRealMethod().when(jes).performBackfillJob(any(), any(), any(), anyInt(), anyInt(), any(), anyInt(), any());
         DetectionTask ftask = mock(DetectionTask.class);
         when(ftask.getReports()).thenReturn(Collections.singletonList(new AnomalyReport()));
         when(jes.createTask(any(), anyInt(), any(), any())).thenReturn(ftask);
@@ -282,6 +379,146 @@ public class JobExecutionServiceTest {
         DruidCluster c = new DruidCluster();
         jes.performBackfillJob(j, c, query, 123, 128, Granularity.HOUR, 10);
         verify(ara, times(1)).putAnomalyReports(any(), anyList());
+        verify(ftask, times(3)).run();
+    }
+
+    @Test
+    public void testPerformBackfillJobWritesBatches() throws Exception {
+        initMocks();
+        Query query = mock(Query.class);
+        when(query.getGranularityRange()).thenReturn(1);
+        when(ds.queryTimeSeries(any(), any())).thenReturn(Collections.emptyList());
+        @SuppressWarnings("unchecked")
+        List<TimeSeries>[] fillSeriesList = (List<TimeSeries>[]) new List[2 * Constants.BACKFILL_REPORT_BATCH_SIZE + 10];
+        when(ps.subseries(any(), anyLong(), anyLong(), any(), anyInt(), anyInt())).thenReturn(fillSeriesList);
+        doCallRealMethod().when(jes).performBackfillJob(any(), any(), any(), anyInt(), anyInt(), any(), anyInt(), any());
+        DetectionTask ftask = mock(DetectionTask.class);
+        when(ftask.getReports()).thenReturn(Collections.singletonList(new AnomalyReport()));
+        when(jes.createTask(any(), anyInt(), any(), any())).thenReturn(ftask);
+        JobMetadata j = DBTestHelper.getNewJob();
+        BackfillProgress progress = new BackfillProgress(j.getJobId());
+        jes.performBackfillJob(j, new DruidCluster(), query, 123, 128, Granularity.HOUR, 10, progress);
+        verify(ara, times(3)).putAnomalyReports(any(), anyList());
+        assertEquals(progress.getStatus(), BackfillStatus.COMPLETED);
+        assertEquals(progress.getTotalIntervals(), fillSeriesList.length);
+        assertEquals(progress.getCompletedIntervals(), fillSeriesList.length);
+        assertEquals(progress.getReportsWritten(), fillSeriesList.length);
+    }
+
+    @Test
+    public void testPerformBackfillJobCancelled() throws Exception {
+        initMocks();
+        Query query = mock(Query.class);
+        when(query.getGranularityRange()).thenReturn(1);
+        when(ds.queryTimeSeries(any(), any())).thenReturn(Collections.emptyList());
+        @SuppressWarnings("unchecked")
+        List<TimeSeries>[] fillSeriesList = (List<TimeSeries>[]) new List[3];
+        when(ps.subseries(any(), anyLong(), anyLong(), any(), anyInt(), anyInt())).thenReturn(fillSeriesList);
+        doCallRealMethod().when(jes).performBackfillJob(any(), any(), any(), anyInt(), anyInt(), any(), anyInt(), any());
+        DetectionTask ftask = mock(DetectionTask.class);
+        when(jes.createTask(any(), anyInt(), any(), any())).thenReturn(ftask);
+        JobMetadata j = DBTestHelper.getNewJob();
+        BackfillProgress progress = new BackfillProgress(j.getJobId());
+        progress.setCancelRequested(true);
+        jes.performBackfillJob(j, new DruidCluster(), query, 123, 128, Granularity.HOUR, 10, progress);
+        assertEquals(progress.getStatus(), BackfillStatus.CANCELLED);
+        assertEquals(progress.getCompletedIntervals(), 0);
+    }
+
+    @Test
+    public void testPerformBackfillJobFailsOnRuntimeException() throws Exception {
+        initMocks();
+        Query query = mock(Query.class);
+        when(ds.queryTimeSeries(any(), any())).thenThrow(new IllegalStateException("bad response"));
+        doCallRealMethod().when(jes).performBackfillJob(any(), any(), any(), anyInt(), anyInt(), any(), anyInt(), any());
+        JobMetadata j = DBTestHelper.getNewJob();
+        BackfillProgress progress = new BackfillProgress(j.getJobId());
+        try {
+            jes.performBackfillJob(j, new DruidCluster(), query, 123, 128, Granularity.HOUR, 10, progress);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "bad response");
+        }
+        assertEquals(progress.getStatus(), BackfillStatus.FAILED);
+        assertEquals(progress.getMessage(), "bad response");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPerformChunkedBackfillJobCountsFetchedIntervals() throws Exception {
+        initMocks();
+        int chunkIntervals = CLISettings.BACKFILL_CHUNK_INTERVALS;
+        CLISettings.BACKFILL_CHUNK_INTERVALS = 2;
+        try {
+            when(dca.getDruidCluster(anyInt())).thenReturn(new DruidCluster());
+            when(ds.queryTimeSeries(any(), any())).thenReturn(Collections.emptyList());
+            // Every chunk is missing its last interval
+            when(ps.subseries(any(), anyLong(), anyLong(), any(), anyInt(), anyInt())).thenAnswer(invocation -> {
+                long start = (Long) invocation.getArguments()[1];
+                long end = (Long) invocation.getArguments()[2];
+                return new List[(int) ((end - start) / Granularity.HOUR.getMinutes()) - 1];
+            });
+            doCallRealMethod().when(jes).performBackfillJob(any(), any(), any(), any(BackfillProgress.class));
+            doCallRealMethod().when(jes).performChunkedBackfillJob(any(), any(), anyInt(), anyInt(), anyInt(), any(), anyInt(), any());
+            DetectionTask ftask = mock(DetectionTask.class);
+            when(ftask.getReports()).thenReturn(Collections.emptyList());
+            when(jes.createTask(any(), anyInt(), any(), any())).thenReturn(ftask);
+            JobMetadata j = DBTestHelper.getNewJob();
+            j.setJobId(1);
+            j.setGranularity(Granularity.HOUR.toString());
+            j.setGranularityRange(1);
+            j.setHoursOfLag(0);
+            j.setTimeseriesRange(3);
+            j.setUserQuery(new String(Files.readAllBytes(Paths.get("src/test/resources/druid_query_2.json"))));
+            ZonedDateTime start = ZonedDateTime.of(2019, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+            BackfillProgress progress = new BackfillProgress(j.getJobId());
+            jes.performBackfillJob(j, start, start.plusHours(5), progress);
+            verify(ftask, times(2)).run();
+            assertEquals(progress.getStatus(), BackfillStatus.COMPLETED);
+            assertEquals(progress.getTotalIntervals(), 2);
+            assertEquals(progress.getCompletedIntervals(), 2);
+        } finally {
+            CLISettings.BACKFILL_CHUNK_INTERVALS = chunkIntervals;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPerformChunkedBackfillJob() throws Exception {
+        initMocks();
+        int chunkIntervals = CLISettings.BACKFILL_CHUNK_INTERVALS;
+        CLISettings.BACKFILL_CHUNK_INTERVALS = 2;
+        try {
+            when(dca.getDruidCluster(anyInt())).thenReturn(new DruidCluster());
+            when(ds.queryTimeSeries(any(), any())).thenReturn(Collections.emptyList());
+            when(ps.subseries(any(), anyLong(), anyLong(), any(), anyInt(), anyInt())).thenAnswer(invocation -> {
+                long start = (Long) invocation.getArguments()[1];
+                long end = (Long) invocation.getArguments()[2];
+                return new List[(int) ((end - start) / Granularity.HOUR.getMinutes())];
+            });
+            doCallRealMethod().when(jes).performBackfillJob(any(), any(), any(), any(BackfillProgress.class));
+            doCallRealMethod().when(jes).performChunkedBackfillJob(any(), any(), anyInt(), anyInt(), anyInt(), any(), anyInt(), any());
+            DetectionTask ftask = mock(DetectionTask.class);
+            when(ftask.getReports()).thenReturn(Collections.singletonList(new AnomalyReport()));
+            when(jes.createTask(any(), anyInt(), any(), any())).thenReturn(ftask);
+            JobMetadata j = DBTestHelper.getNewJob();
+            j.setJobId(1);
+            j.setGranularity(Granularity.HOUR.toString());
+            j.setGranularityRange(1);
+            j.setHoursOfLag(0);
+            j.setTimeseriesRange(3);
+            j.setUserQuery(new String(Files.readAllBytes(Paths.get("src/test/resources/druid_query_2.json"))));
+            ZonedDateTime start = ZonedDateTime.of(2019, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+            BackfillProgress progress = new BackfillProgress(j.getJobId());
+            jes.performBackfillJob(j, start, start.plusHours(5), progress);
+            verify(ds, times(3)).queryTimeSeries(any(), any());
+            verify(ftask, times(5)).run();
+            assertEquals(progress.getStatus(), BackfillStatus.COMPLETED);
+            assertEquals(progress.getTotalIntervals(), 5);
+            assertEquals(progress.getCompletedIntervals(), 5);
+        } finally {
+            CLISettings.BACKFILL_CHUNK_INTERVALS = chunkIntervals;
+        }
     }
 
     @Test
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.enums.PipelineStage;
+import com.yahoo.sherlock.model.JobMetadata;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for the pipeline stage metrics.
+ */
+public class PipelineMetricsTest {
+
+    private PipelineMetrics metrics;
+
+    @BeforeMethod
+    public void setUp() {
+        metrics = new PipelineMetrics();
+    }
+
+    private static JobMetadata job() {
+        JobMetadata job = new JobMetadata();
+        job.setFrequency("hour");
+        job.setClusterId(3);
+        job.setTimeseriesFramework("Egads");
+        job.setTimeseriesModel("OlympicModel");
+        return job;
+    }
+
+    @Test
+    public void testRecordByTags() {
+        PipelineMetrics.Tags tags = new PipelineMetrics.Tags("hour", "3", "Egads", "OlympicModel");
+        metrics.record(PipelineStage.DRUID_QUERY, tags, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.record(PipelineStage.DRUID_QUERY, tags, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.record(PipelineStage.DRUID_QUERY, null, TimeUnit.MILLISECONDS.toNanos(1));
+        List<PipelineMetrics.Snapshot> snapshots = metrics.getSnapshots();
+        Assert.assertEquals(snapshots.size(), 2);
+        PipelineMetrics.Snapshot snapshot = snapshots.get(0);
+        Assert.assertEquals(snapshot.getKey(), "druid_query{frequency=hour,cluster=3,framework=Egads,model=OlympicModel}");
+        Assert.assertEquals(snapshot.getHistogram().getCount(), 2);
+        Assert.assertEquals(snapshots.get(1).getKey(), "druid_query{frequency=none,cluster=none,framework=none,model=none}");
+        Map<String, Object> stats = metrics.getStats().get(snapshot.getKey());
+        Assert.assertEquals(stats.get("count"), 2L);
+        Assert.assertEquals(stats.get("p50Millis"), 5.0);
+        Assert.assertEquals(stats.get("maxMillis"), 5.0);
+    }
+
+    @Test
+    public void testTimerUsesJobTags() {
+        PipelineMetrics.getInstance().clear();
+        try (PipelineMetrics.Scope scope = PipelineMetrics.tag(job())) {
+            PipelineMetrics.time(PipelineStage.REPORT_WRITE).close();
+        }
+        PipelineMetrics.time(PipelineStage.REPORT_WRITE).close();
+        Map<String, Map<String, Object>> stats = PipelineMetrics.getInstance().getStats();
+        Assert.assertEquals(stats.get("report_write{frequency=hour,cluster=3,framework=Egads,model=OlympicModel}").get("count"), 1L);
+        Assert.assertEquals(stats.get("report_write{frequency=none,cluster=none,framework=none,model=none}").get("count"), 1L);
+    }
+
+    @Test
+    public void testCounters() {
+        metrics.increment(PipelineMetrics.JOBS_EXECUTED, "RUNNING");
+        metrics.increment(PipelineMetrics.JOBS_EXECUTED, "RUNNING");
+        metrics.increment(PipelineMetrics.JOBS_EXECUTED, "ERROR");
+        Map<String, Map<String, Long>> counters = metrics.getCounters();
+        Assert.assertEquals(counters.get(PipelineMetrics.JOBS_EXECUTED).get("RUNNING"), (Long) 2L);
+        Assert.assertEquals(counters.get(PipelineMetrics.JOBS_EXECUTED).get("ERROR"), (Long) 1L);
+        metrics.clear();
+        Assert.assertTrue(metrics.getCounters().isEmpty());
+    }
+}
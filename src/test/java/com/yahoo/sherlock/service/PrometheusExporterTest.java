@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.sherlock.enums.ExecutionLane;
+import com.yahoo.sherlock.enums.PipelineStage;
+import com.yahoo.sherlock.scheduler.CatchUpExecutor;
+import com.yahoo.sherlock.scheduler.ExecutionTask;
+import com.yahoo.sherlock.scheduler.ExecutionWorkerPool;
+import com.yahoo.sherlock.scheduler.ObservedTask;
+import com.yahoo.sherlock.store.core.RedisCommandLatencyCollector;
+
+import io.lettuce.core.protocol.CommandType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the Prometheus exporter.
+ */
+public class PrometheusExporterTest {
+
+    @Test
+    public void testScrape() throws IOException {
+        ExecutionTask task = mock(ExecutionTask.class);
+        ExecutionWorkerPool pool = mock(ExecutionWorkerPool.class);
+        when(task.getWorkerPool()).thenReturn(pool);
+        when(task.getQueueDepth()).thenReturn(3);
+        when(task.getPendingCount()).thenReturn(2);
+        when(pool.getSize()).thenReturn(4);
+        when(pool.getActiveCount()).thenReturn(1);
+        Map<ExecutionLane, ExecutionTask> tasks = new EnumMap<>(ExecutionLane.class);
+        tasks.put(ExecutionLane.MINUTE, task);
+        SchedulerService schedulerService = mock(SchedulerService.class);
+        when(schedulerService.getExecutionTasks()).thenReturn(tasks);
+        ObservedTask backup = new ObservedTask("backup", "backup", () -> { }, 1, TimeUnit.MINUTES);
+        backup.run();
+        when(schedulerService.getTaskStats()).thenReturn(Collections.singletonList(backup.getStats()));
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.increment(PipelineMetrics.JOBS_EXECUTED, "RUNNING");
+        metrics.increment(PipelineMetrics.DRUID_QUERY_ERRORS, "7");
+        metrics.record(PipelineStage.MODEL_DETECT, new PipelineMetrics.Tags("day", "7", "Egads", "OlympicModel"), TimeUnit.MILLISECONDS.toNanos(20));
+        RedisCommandLatencyCollector redis = new RedisCommandLatencyCollector();
+        redis.recordCommandLatency(null, null, CommandType.ZADD, 0L, TimeUnit.MICROSECONDS.toNanos(200));
+        String text = new PrometheusExporter(schedulerService, metrics, redis, new CatchUpExecutor(1, 10, 0)).scrape();
+        Assert.assertTrue(text.contains("# TYPE sherlock_queue_due_jobs gauge\nsherlock_queue_due_jobs{lane=\"minute\"} 3\n"));
+        Assert.assertTrue(text.contains("sherlock_queue_pending_jobs{lane=\"minute\"} 2\n"));
+        Assert.assertTrue(text.contains("sherlock_workers_active{lane=\"minute\"} 1\n"));
+        Assert.assertTrue(text.contains("sherlock_task_duration_seconds_count{task=\"backup\",pool=\"backup\"} 1\n"));
+        Assert.assertTrue(text.contains("sherlock_task_overruns_total{task=\"backup\",pool=\"backup\"} 0\n"));
+        Assert.assertTrue(text.contains("# TYPE sherlock_catch_up_mode gauge\nsherlock_catch_up_mode 0\n"));
+        Assert.assertTrue(text.contains("sherlock_catch_up_backlog 0\n"));
+        Assert.assertTrue(text.contains("sherlock_catch_up_backfills_total{result=\"failed\"} 0\n"));
+        Assert.assertTrue(text.contains("sherlock_jobs_executed_total{status=\"RUNNING\"} 1\n"));
+        Assert.assertTrue(text.contains("sherlock_druid_query_errors_total{cluster=\"7\"} 1\n"));
+        Assert.assertFalse(text.contains("sherlock_emails_total"));
+        String labels = "stage=\"model_detect\",frequency=\"day\",cluster=\"7\",framework=\"Egads\",model=\"OlympicModel\"";
+        Assert.assertTrue(text.contains("# TYPE sherlock_stage_duration_seconds histogram\n"));
+        Assert.assertTrue(text.contains("sherlock_stage_duration_seconds_bucket{" + labels + ",le=\"0.01\"} 0\n"));
+        Assert.assertTrue(text.contains("sherlock_stage_duration_seconds_bucket{" + labels + ",le=\"0.025\"} 1\n"));
+        Assert.assertTrue(text.contains("sherlock_stage_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 1\n"));
+        Assert.assertTrue(text.contains("sherlock_stage_duration_seconds_sum{" + labels + "} 0.02\n"));
+        Assert.assertTrue(text.contains("sherlock_stage_duration_seconds_count{" + labels + "} 1\n"));
+        Assert.assertTrue(text.contains("sherlock_redis_command_duration_seconds_bucket{command=\"ZADD\",le=\"2.5E-4\"} 1\n"));
+        Assert.assertTrue(text.contains("sherlock_redis_command_duration_seconds_count{command=\"ZADD\"} 1\n"));
+        Assert.assertTrue(text.contains("# TYPE sherlock_jvm_memory_bytes_used gauge\n"));
+        Assert.assertTrue(text.contains("sherlock_jvm_threads_current "));
+    }
+
+    @Test
+    public void testScrapeWithoutLanes() {
+        SchedulerService schedulerService = mock(SchedulerService.class);
+        when(schedulerService.getExecutionTasks()).thenReturn(Collections.emptyMap());
+        String text = new PrometheusExporter(schedulerService, new PipelineMetrics(), new RedisCommandLatencyCollector(), null).scrape();
+        Assert.assertFalse(text.contains("sherlock_queue_due_jobs"));
+        Assert.assertFalse(text.contains("sherlock_stage_duration_seconds"));
+        Assert.assertFalse(text.contains("sherlock_catch_up_mode"));
+        Assert.assertTrue(text.contains("sherlock_jvm_memory_bytes_used{area=\"heap\"} "));
+    }
+
+    @Test
+    public void testLabelsAreEscaped() {
+        Assert.assertEquals(PrometheusExporter.labels("a", "x\"y\\z\n", "b", "c"), "{a=\"x\\\"y\\\\z\\n\",b=\"c\"}");
+    }
+}
@@ -6,14 +6,18 @@
 
 package com.yahoo.sherlock.service;
 
+import com.yahoo.sherlock.enums.ExecutionLane;
 import com.yahoo.sherlock.enums.Granularity;
 import com.yahoo.sherlock.exception.JobNotFoundException;
 import com.yahoo.sherlock.exception.SchedulerException;
 import com.yahoo.sherlock.model.JobMetadata;
 import com.yahoo.sherlock.scheduler.BackupTask;
+import com.yahoo.sherlock.scheduler.ClusterHealthTask;
 import com.yahoo.sherlock.scheduler.EmailSenderTask;
 import com.yahoo.sherlock.scheduler.ExecutionTask;
-import com.yahoo.sherlock.scheduler.RecoverableThreadScheduler;
+import com.yahoo.sherlock.scheduler.ScheduleSlotAllocator;
+import com.yahoo.sherlock.scheduler.TaskScheduler;
+import com.yahoo.sherlock.settings.CLISettings;
 import com.yahoo.sherlock.settings.Constants;
 import com.yahoo.sherlock.store.JobScheduler;
 import com.yahoo.sherlock.utils.TimeUtils;
@@ -28,16 +32,23 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anySet;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
@@ -59,57 +70,42 @@ public class SchedulerServiceTest {
         }
     }
 
-    private class MockRecoverableThreadScheduler extends RecoverableThreadScheduler {
-
-        public MockRecoverableThreadScheduler(int corePoolSize) {
-            super(corePoolSize);
-        }
-
-        @Override
-        public ScheduledFuture<?> scheduleAtFixedRate(Runnable runnable, long initialDelay, long period, TimeUnit unit) {
-            return null;
-        }
-
-        @Override
-        protected void afterExecute(Runnable runnable, Throwable throwable) {
-
-        }
-    }
-
     private JobScheduler js;
     private SchedulerService ss;
-    private ExecutionTask et;
+    private Map<ExecutionLane, ExecutionTask> ets;
     private BackupTask bt;
     private EmailSenderTask est;
-    private RecoverableThreadScheduler rts;
+    private TaskScheduler ts;
     private JobExecutionService jes;
 
     private void init() {
         js = mock(JobScheduler.class);
         ss = mock(SchedulerService.class);
         jes = mock(JobExecutionService.class);
-        rts = new MockRecoverableThreadScheduler(0);
-        et = null;
+        ts = mock(TaskScheduler.class);
+        ets = new EnumMap<>(ExecutionLane.class);
         bt = null;
         est = null;
-        inject(ss, "recoverableThreadScheduler", rts);
+        inject(ss, "taskScheduler", ts);
         inject(ss, "jobScheduler", js);
-        inject(ss, "executionTask", et);
+        inject(ss, "executionTasks", ets);
         inject(ss, "emailSenderTask", est);
         inject(ss, "backupTask", bt);
+        inject(ss, "clusterHealthTask", null);
         inject(ss, "jobExecutionService", jes);
     }
 
     @Test
     public void testScheduleJob() throws SchedulerException, IOException {
         init();
-        when(ss.jobScheduleTime(any())).thenReturn(new ImmutablePair<>(5, 5));
+        when(ss.newSlotCountAllocator()).thenReturn(new ScheduleSlotAllocator(Collections.emptyList()));
+        when(ss.jobScheduleTime(any(), anyInt())).thenReturn(new ImmutablePair<>(5, 5));
         doCallRealMethod().when(ss).scheduleJob(any());
         ss.scheduleJob(mock(JobMetadata.class));
-        Mockito.verify(ss, Mockito.times(1)).jobScheduleTime(any());
-        Mockito.verify(js, Mockito.times(1)).pushQueue(anyLong(), anyString());
+        Mockito.verify(ss, Mockito.times(1)).jobScheduleTime(any(), anyInt());
+        Mockito.verify(js, Mockito.times(1)).pushQueue(anyLong(), any(JobMetadata.class));
         IOException ioex = new IOException("error");
-        Mockito.doThrow(ioex).when(js).pushQueue(anyLong(), anyString());
+        Mockito.doThrow(ioex).when(js).pushQueue(anyLong(), any(JobMetadata.class));
         try {
             ss.scheduleJob(mock(JobMetadata.class));
         } catch (SchedulerException e) {
@@ -120,6 +116,25 @@ public class SchedulerServiceTest {
         Assert.fail();
     }
 
+    @Test
+    public void testScheduleJobs() throws SchedulerException, IOException {
+        init();
+        when(ss.newSlotAllocator(any())).thenReturn(new ScheduleSlotAllocator(Collections.emptyList()));
+        when(ss.jobScheduleTime(any(), anyInt())).thenReturn(new ImmutablePair<>(5, 6));
+        doCallRealMethod().when(ss).scheduleJobs(any());
+        JobMetadata job1 = new JobMetadata();
+        job1.setJobId(1);
+        JobMetadata job2 = new JobMetadata();
+        job2.setJobId(2);
+        ss.scheduleJobs(Arrays.asList(job1, job2));
+        // the queue is read once for the batch
+        Mockito.verify(ss, Mockito.times(1)).newSlotAllocator(any());
+        Mockito.verify(ss, Mockito.times(2)).jobScheduleTime(any(), anyInt());
+        Mockito.verify(js, Mockito.times(1)).pushJobs(Arrays.asList(job1, job2));
+        Assert.assertEquals(job2.getEffectiveQueryTime(), (Integer) 5);
+        Assert.assertEquals(job2.getEffectiveRunTime(), (Integer) 6);
+    }
+
     @Test
     public void testRescheduleJob() throws SchedulerException, IOException {
         init();
@@ -129,9 +144,9 @@ public class SchedulerServiceTest {
         when(jobMetadata.getJobStatus()).thenReturn("RUNNING");
         ss.rescheduleJob(jobMetadata);
         Mockito.verify(ss, Mockito.times(1)).jobRescheduleTime(any());
-        Mockito.verify(js, Mockito.times(1)).pushQueue(anyLong(), anyString());
+        Mockito.verify(js, Mockito.times(1)).pushQueue(anyLong(), any(JobMetadata.class));
         IOException ioex = new IOException("error");
-        Mockito.doThrow(ioex).when(js).pushQueue(anyLong(), anyString());
+        Mockito.doThrow(ioex).when(js).pushQueue(anyLong(), any(JobMetadata.class));
         try {
             ss.rescheduleJob(jobMetadata);
         } catch (SchedulerException e) {
@@ -213,6 +228,7 @@ public class SchedulerServiceTest {
         jobMetadata.setFrequency("month");
         jobMetadata.setHoursOfLag(hoursOfLag);
         doCallRealMethod().when(ss).jobScheduleTime(jobMetadata);
+        doCallRealMethod().when(ss).jobScheduleTime(any(), anyInt());
         Pair<Integer, Integer> imp = ss.jobScheduleTime(jobMetadata);
         int expectedQueryTime = Granularity.MONTH.getEndTimeForInterval(ZonedDateTime.now(ZoneOffset.UTC).minusHours(hoursOfLag));
         Assert.assertEquals(imp.getLeft(), (Integer) expectedQueryTime);
@@ -240,13 +256,88 @@ public class SchedulerServiceTest {
         Assert.assertEquals(imp.getRight(), (Integer) expectedRunTime);
     }
 
+    private static JobMetadata queuedJob(int id, int clusterId, int runTime) {
+        JobMetadata job = new JobMetadata();
+        job.setJobId(id);
+        job.setClusterId(clusterId);
+        job.setFrequency("hour");
+        job.setEffectiveRunTime(runTime);
+        return job;
+    }
+
+    @Test
+    public void testNewSlotAllocator() throws IOException {
+        init();
+        doCallRealMethod().when(ss).newSlotAllocator(any());
+        when(js.getAllQueue()).thenReturn(new ArrayList<>(Arrays.asList(queuedJob(1, 1, 600), queuedJob(2, 1, 601))));
+        ScheduleSlotAllocator allocator = ss.newSlotAllocator(Collections.singletonList(queuedJob(2, 1, 601)));
+        Assert.assertEquals(allocator.getSlotCounts()[0], 1);
+        Assert.assertEquals(allocator.getSlotCounts()[1], 0);
+        when(js.getAllQueue()).thenThrow(new IOException("error"));
+        Assert.assertEquals(ss.newSlotAllocator(Collections.emptyList()).getMaxSlotCount(), 0);
+    }
+
+    @Test
+    public void testNewSlotCountAllocator() throws IOException {
+        init();
+        doCallRealMethod().when(ss).newSlotCountAllocator();
+        int[] counts = new int[60];
+        counts[0] = 2;
+        when(js.getSlotCounts()).thenReturn(counts);
+        ScheduleSlotAllocator allocator = ss.newSlotCountAllocator();
+        Assert.assertEquals(allocator.getSlotCounts()[0], 2);
+        // the job is not placed in the busy minute of its ID
+        Assert.assertEquals(allocator.allocate(queuedJob(60, 1, 0)), 1);
+        Mockito.verify(js, Mockito.times(0)).getAllQueue();
+        when(js.getSlotCounts()).thenThrow(new IOException("error"));
+        Assert.assertEquals(ss.newSlotCountAllocator().getMaxSlotCount(), 0);
+    }
+
+    @Test
+    public void testRebalanceJobs() throws IOException, SchedulerException {
+        init();
+        doCallRealMethod().when(ss).rebalanceJobs();
+        List<JobMetadata> queue = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            queue.add(queuedJob(i * 60, 1, 600 + 5));
+        }
+        JobMetadata minuteJob = queuedJob(7, 1, 605);
+        minuteJob.setFrequency("minute");
+        queue.add(minuteJob);
+        when(js.getAllQueue()).thenReturn(queue);
+        when(js.moveQueue(any(JobMetadata.class), anyLong(), anyLong())).thenReturn(true);
+        // the job with ID 60 was popped since the queue was read
+        when(js.moveQueue(Mockito.eq(queue.get(1)), anyLong(), anyLong())).thenReturn(false);
+        List<JobMetadata> moved = ss.rebalanceJobs();
+        Assert.assertEquals(moved.size(), 3);
+        Assert.assertFalse(moved.contains(queue.get(1)));
+        Assert.assertEquals((int) queue.get(1).getEffectiveRunTime(), 605);
+        Set<Integer> slots = new HashSet<>();
+        for (JobMetadata job : moved) {
+            Assert.assertTrue(job.getEffectiveRunTime() >= 600 && job.getEffectiveRunTime() < 660);
+            slots.add(job.getEffectiveRunTime());
+            Mockito.verify(js).moveQueue(job, 605L, (long) job.getEffectiveRunTime());
+        }
+        Assert.assertEquals(slots.size(), 3);
+        Assert.assertEquals((int) minuteJob.getEffectiveRunTime(), 605);
+        Mockito.verify(js, Mockito.times(0)).removeQueue(anyCollection());
+        Mockito.verify(js, Mockito.times(0)).pushJobs(anyList());
+    }
+
     @Test
     public void testStartMainScheduler() {
         init();
         doNothing().when(ss).instantiateMainScheduler();
         doCallRealMethod().when(ss).startMainScheduler();
+        when(js.getLane(any())).thenReturn(js);
         ss.startMainScheduler();
         Mockito.verify(ss, times(0)).instantiateMainScheduler();
+        Assert.assertEquals(ets.size(), ExecutionLane.values().length);
+        Assert.assertEquals(ets.get(ExecutionLane.MINUTE).getWorkerPool().getSize(), CLISettings.MINUTE_LANE_THREADS);
+        Assert.assertEquals(ets.get(ExecutionLane.DAY).getWorkerPool().getSize(), CLISettings.EXECUTION_THREADS);
+        Mockito.verify(ts).scheduleWithFixedDelay(eq("execution-minute"), eq("execution"), any(ExecutionTask.class), anyLong(), anyLong(), any());
+        Mockito.verify(ts, times(ExecutionLane.values().length))
+            .scheduleAtFixedRate(anyString(), eq("lease-renewal"), any(Runnable.class), anyLong(), anyLong(), any());
     }
 
     @Test
@@ -256,6 +347,7 @@ public class SchedulerServiceTest {
         doCallRealMethod().when(ss).startEmailSenderScheduler();
         ss.startEmailSenderScheduler();
         Mockito.verify(ss, times(0)).instantiateMainScheduler();
+        Mockito.verify(ts).scheduleAtFixedRate(eq("email-sender"), eq("email"), any(EmailSenderTask.class), anyLong(), anyLong(), any());
     }
 
     @Test
@@ -265,5 +357,16 @@ public class SchedulerServiceTest {
         doCallRealMethod().when(ss).startBackupScheduler();
         ss.startBackupScheduler();
         Mockito.verify(ss, times(0)).instantiateMainScheduler();
+        Mockito.verify(ts).scheduleAtFixedRate(eq("backup"), eq("backup"), any(BackupTask.class), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testStartClusterHealthScheduler() {
+        init();
+        doNothing().when(ss).instantiateMainScheduler();
+        doCallRealMethod().when(ss).startClusterHealthScheduler();
+        ss.startClusterHealthScheduler();
+        Mockito.verify(ss, times(0)).instantiateMainScheduler();
+        Mockito.verify(ts).scheduleAtFixedRate(eq("cluster-health"), eq("cluster-health"), any(ClusterHealthTask.class), anyLong(), anyLong(), any());
     }
 }
@@ -20,11 +20,16 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
 import java.util.List;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -59,6 +64,20 @@ public class TimeSeriesParserServiceTest {
         }
     }
 
+    @Test
+    public void testReadTimeSeries() throws Exception {
+        TimeSeriesParserService tsps = mock(TimeSeriesParserService.class);
+        doCallRealMethod().when(tsps).readTimeSeries(any(InputStream.class), anyBoolean(), any(Query.class));
+        doCallRealMethod().when(tsps).readAllTimeSeries(any(InputStream.class), anyBoolean(), any(Query.class));
+        when(tsps.isValidTimeSeries(query)).thenReturn(timeSeries -> true);
+        InputStream response = new ByteArrayInputStream(jsonArray.toString().getBytes(StandardCharsets.UTF_8));
+        List<TimeSeries> timeSeries = tsps.readTimeSeries(response, false, query);
+        Assert.assertEquals(timeSeries.size(), jsonArray.get(0).getAsJsonObject().getAsJsonArray("result").size());
+        for (int i = 0; i < timeSeries.size(); i++) {
+            Assert.assertEquals(timeSeries.get(i).size(), jsonArray.size());
+        }
+    }
+
     @Test
     public void testExceptions() {
         // test null druid response
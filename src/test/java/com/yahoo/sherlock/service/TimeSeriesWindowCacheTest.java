@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.service;
+
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.sherlock.enums.Granularity;
+import com.yahoo.sherlock.model.DruidCluster;
+import com.yahoo.sherlock.query.Query;
+import com.yahoo.sherlock.settings.CLISettings;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class for the incremental fetches of query windows.
+ */
+public class TimeSeriesWindowCacheTest {
+
+    private static final int HOUR = 3600;
+
+    private String queryString;
+    private DruidCluster cluster;
+    private List<Query> sent;
+    private int cacheSize;
+    private int tailIntervals;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        queryString = new String(Files.readAllBytes(Paths.get("src/test/resources/druid_query_1.json")));
+        cluster = new DruidCluster();
+        cluster.setClusterId(1);
+        sent = new ArrayList<>();
+        cacheSize = CLISettings.SERIES_WINDOW_CACHE_SIZE;
+        tailIntervals = CLISettings.SERIES_WINDOW_TAIL_INTERVALS;
+        CLISettings.SERIES_WINDOW_CACHE_SIZE = 10;
+        CLISettings.SERIES_WINDOW_TAIL_INTERVALS = 2;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        CLISettings.SERIES_WINDOW_CACHE_SIZE = cacheSize;
+        CLISettings.SERIES_WINDOW_TAIL_INTERVALS = tailIntervals;
+    }
+
+    private Query query(Granularity granularity, int endHour, int intervals) throws Exception {
+        return new DruidQueryService().build(queryString, granularity, 1, endHour * 60, intervals);
+    }
+
+    /**
+     * Answers a query with one series holding a point per hour, whose
+     * value is the hour plus an offset standing for the data version.
+     */
+    private TimeSeriesWindowCache.Fetcher fetcher(float version) {
+        return query -> {
+            sent.add(query);
+            TimeSeries timeSeries = new TimeSeries();
+            timeSeries.meta.name = "m1";
+            timeSeries.meta.source = "dim1 = 'v1'";
+            try {
+                for (long time = query.getStartTime(); time < query.getRunTime(); time += HOUR) {
+                    timeSeries.append(time, time / HOUR + version);
+                }
+            } catch (Exception e) {
+                Assert.fail(e.toString());
+            }
+            return Collections.singletonList(timeSeries);
+        };
+    }
+
+    @Test
+    public void testNextRunOnlyFetchesTheTail() throws Exception {
+        TimeSeriesWindowCache cache = new TimeSeriesWindowCache();
+        Query first = query(Granularity.HOUR, 500000, 24);
+        List<TimeSeries> window = cache.fetch(cluster, first, fetcher(0));
+        Assert.assertEquals(window.get(0).size(), 24);
+        Query second = query(Granularity.HOUR, 500001, 24);
+        window = cache.fetch(cluster, second, fetcher(0.5f));
+        Assert.assertEquals(sent.size(), 2);
+        Query tail = sent.get(1);
+        // the new interval and the two trailing intervals of the cached window
+        Assert.assertEquals(tail.getStartTime().intValue(), first.getRunTime() - 2 * HOUR);
+        Assert.assertEquals(tail.getRunTime(), second.getRunTime());
+        Assert.assertEquals(tail.getQueryJsonObject().get("intervals").getAsString(), "2027-01-15T06:00+00:00/2027-01-15T09:00+00:00");
+        TimeSeries timeSeries = window.get(0);
+        Assert.assertEquals(timeSeries.size(), 24);
+        Assert.assertEquals(timeSeries.data.get(0).time, (long) second.getStartTime());
+        Assert.assertEquals(timeSeries.data.get(20).value, timeSeries.data.get(20).time / HOUR + 0f);
+        Assert.assertEquals(timeSeries.data.get(21).value, timeSeries.data.get(21).time / HOUR + 0.5f);
+        Assert.assertEquals(timeSeries.data.get(23).time, (long) second.getRunTime() - HOUR);
+        Assert.assertEquals(cache.getStats().get("incrementalFetches"), 1L);
+    }
+
+    @Test
+    public void testWindowIsFetchedInFull() throws Exception {
+        TimeSeriesWindowCache cache = new TimeSeriesWindowCache();
+        cache.fetch(cluster, query(Granularity.HOUR, 500000, 24), fetcher(0));
+        // an older run of the query
+        Query older = query(Granularity.HOUR, 499990, 24);
+        cache.fetch(cluster, older, fetcher(0));
+        Assert.assertEquals(sent.get(1).getStartTime(), older.getStartTime());
+        // another cluster
+        DruidCluster other = new DruidCluster();
+        other.setClusterId(2);
+        Query next = query(Granularity.HOUR, 500001, 24);
+        cache.fetch(other, next, fetcher(0));
+        Assert.assertEquals(sent.get(2).getStartTime(), next.getStartTime());
+        // months have no fixed length
+        cache.fetch(cluster, query(Granularity.MONTH, 500000, 6), fetcher(0));
+        Query nextMonth = query(Granularity.MONTH, 500000 + 31 * 24, 6);
+        cache.fetch(cluster, nextMonth, fetcher(0));
+        Assert.assertEquals(sent.get(4).getStartTime(), nextMonth.getStartTime());
+        // the windows of an updated cluster are dropped
+        cache.invalidate(1);
+        Query after = query(Granularity.HOUR, 500002, 24);
+        cache.fetch(cluster, after, fetcher(0));
+        Assert.assertEquals(sent.get(5).getStartTime(), after.getStartTime());
+        Assert.assertEquals(cache.getStats().get("incrementalFetches"), 0L);
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        CLISettings.SERIES_WINDOW_CACHE_SIZE = 0;
+        TimeSeriesWindowCache cache = new TimeSeriesWindowCache();
+        cache.fetch(cluster, query(Granularity.HOUR, 500000, 24), fetcher(0));
+        Query next = query(Granularity.HOUR, 500001, 24);
+        cache.fetch(cluster, next, fetcher(0));
+        Assert.assertEquals(sent.get(1).getStartTime(), next.getStartTime());
+        Assert.assertEquals(cache.getStats().get("cachedWindows"), 0);
+    }
+
+    @Test
+    public void testMergeDropsEmptySeries() throws Exception {
+        TimeSeries old = new TimeSeries();
+        old.meta.name = "m1";
+        old.meta.source = "gone";
+        old.append(0L, 1f);
+        TimeSeries fresh = new TimeSeries();
+        fresh.meta.name = "m1";
+        fresh.meta.source = "new";
+        fresh.append(2 * HOUR, 2f);
+        List<TimeSeries> merged = TimeSeriesWindowCache.merge(Collections.singletonList(old), Collections.singletonList(fresh), HOUR, 2 * HOUR);
+        Assert.assertEquals(merged.size(), 1);
+        Assert.assertEquals(merged.get(0).meta.source, "new");
+    }
+}
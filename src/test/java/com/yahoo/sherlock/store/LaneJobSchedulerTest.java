@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.store;
+
+import com.yahoo.sherlock.enums.ExecutionLane;
+import com.yahoo.sherlock.model.JobMetadata;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the job scheduler with a queue per lane.
+ */
+public class LaneJobSchedulerTest {
+
+    private Map<ExecutionLane, JobScheduler> lanes;
+    private LaneJobScheduler scheduler;
+
+    @BeforeMethod
+    public void setUp() {
+        lanes = new EnumMap<>(ExecutionLane.class);
+        for (ExecutionLane lane : ExecutionLane.values()) {
+            lanes.put(lane, mock(JobScheduler.class));
+        }
+        scheduler = new LaneJobScheduler(lanes);
+    }
+
+    private static JobMetadata job(int id, String frequency) {
+        JobMetadata job = new JobMetadata();
+        job.setJobId(id);
+        job.setFrequency(frequency);
+        job.setEffectiveRunTime(100 + id);
+        return job;
+    }
+
+    @Test
+    public void testPushRoutesByFrequency() throws IOException {
+        JobMetadata minuteJob = job(1, "minute");
+        JobMetadata weekJob = job(2, "week");
+        scheduler.pushQueue(10L, minuteJob);
+        scheduler.pushQueue(20L, weekJob);
+        scheduler.pushQueue(30L, "3");
+        verify(lanes.get(ExecutionLane.MINUTE)).pushQueue(10L, minuteJob);
+        verify(lanes.get(ExecutionLane.DAY)).pushQueue(20L, weekJob);
+        verify(lanes.get(ExecutionLane.DAY)).pushQueue(30L, "3");
+        verify(lanes.get(ExecutionLane.HOUR), never()).pushQueue(anyLong(), anyString());
+    }
+
+    @Test
+    public void testMoveRoutesByFrequency() throws IOException {
+        JobMetadata hourJob = job(1, "hour");
+        when(lanes.get(ExecutionLane.HOUR).moveQueue(hourJob, 605L, 601L)).thenReturn(true);
+        Assert.assertTrue(scheduler.moveQueue(hourJob, 605L, 601L));
+        verify(lanes.get(ExecutionLane.DAY), never()).moveQueue(hourJob, 605L, 601L);
+    }
+
+    @Test
+    public void testSlotCountsLeaveOutMinuteLane() throws IOException {
+        for (ExecutionLane lane : ExecutionLane.values()) {
+            int[] counts = new int[60];
+            counts[lane.ordinal()] = 1;
+            when(lanes.get(lane).getSlotCounts()).thenReturn(counts);
+        }
+        int[] counts = scheduler.getSlotCounts();
+        Assert.assertEquals(counts[ExecutionLane.MINUTE.ordinal()], 0);
+        Assert.assertEquals(counts[ExecutionLane.HOUR.ordinal()], 1);
+        Assert.assertEquals(counts[ExecutionLane.DAY.ordinal()], 1);
+    }
+
+    @Test
+    public void testPushJobsGroupsByLane() throws IOException {
+        JobMetadata hourJob = job(1, "hour");
+        JobMetadata otherHourJob = job(2, "hour");
+        JobMetadata dayJob = job(3, "day");
+        scheduler.pushJobs(Arrays.asList(hourJob, dayJob, otherHourJob));
+        verify(lanes.get(ExecutionLane.HOUR)).pushJobs(Arrays.asList(hourJob, otherHourJob));
+        verify(lanes.get(ExecutionLane.DAY)).pushJobs(Collections.singletonList(dayJob));
+    }
+
+    @Test
+    public void testReadsCoverEveryLane() throws IOException {
+        when(lanes.get(ExecutionLane.MINUTE).getAllQueue()).thenReturn(Collections.singletonList(job(1, "minute")));
+        when(lanes.get(ExecutionLane.DAY).getAllQueue()).thenReturn(Collections.singletonList(job(2, "day")));
+        when(lanes.get(ExecutionLane.MINUTE).peekQueue(50L)).thenReturn(2);
+        when(lanes.get(ExecutionLane.HOUR).peekQueue(50L)).thenReturn(3);
+        when(lanes.get(ExecutionLane.MINUTE).peekNextRunTime()).thenReturn(null);
+        when(lanes.get(ExecutionLane.HOUR).peekNextRunTime()).thenReturn(40L);
+        when(lanes.get(ExecutionLane.DAY).peekNextRunTime()).thenReturn(30L);
+        Assert.assertEquals(scheduler.getAllQueue().size(), 2);
+        Assert.assertEquals(scheduler.peekQueue(50L), 5);
+        Assert.assertEquals(scheduler.peekNextRunTime(), Long.valueOf(30L));
+        scheduler.removeQueue("1");
+        scheduler.removePending("1");
+        for (JobScheduler lane : lanes.values()) {
+            verify(lane).removeQueue("1");
+            verify(lane).removePending("1");
+        }
+    }
+
+    @Test
+    public void testReleasePending() throws IOException {
+        Assert.assertFalse(scheduler.releasePending("1"));
+        when(lanes.get(ExecutionLane.HOUR).releasePending("1")).thenReturn(true);
+        Assert.assertTrue(scheduler.releasePending("1"));
+    }
+
+    @Test
+    public void testPopQueueStopsAtLimit() throws IOException {
+        List<JobMetadata> minuteJobs = Arrays.asList(job(1, "minute"), job(2, "minute"));
+        when(lanes.get(ExecutionLane.MINUTE).popQueue(50L, 2)).thenReturn(minuteJobs);
+        Assert.assertEquals(scheduler.popQueue(50L, 2), minuteJobs);
+        verify(lanes.get(ExecutionLane.HOUR), never()).popQueue(anyLong(), anyInt());
+        Assert.assertSame(scheduler.getLane(ExecutionLane.HOUR), lanes.get(ExecutionLane.HOUR));
+    }
+}
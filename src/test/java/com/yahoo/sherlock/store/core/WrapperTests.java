@@ -127,6 +127,8 @@ public class WrapperTests {
         verify(wrapped).smembers("key");
         cmd.hgetall("key");
         verify(wrapped).hgetall("key");
+        cmd.hdel("key", "f1", "f2");
+        verify(wrapped).hdel("key", "f1", "f2");
         cmd.zadd("key", 1.0, "value");
         verify(wrapped).zadd("key", 1.0, "value");
         cmd.zrem("key", "v1", "v2");
@@ -141,6 +143,10 @@ public class WrapperTests {
         verify(wrapped).zcount("key", range);
         cmd.eval("script", ScriptOutputType.MULTI, new String[]{"key1", "key2"}, "v1", "v2");
         verify(wrapped).eval("script", ScriptOutputType.MULTI, new String[]{"key1", "key2"}, "v1", "v2");
+        cmd.scriptLoad("script");
+        verify(wrapped).scriptLoad("script");
+        cmd.evalsha("sha", ScriptOutputType.MULTI, new String[]{"key1", "key2"}, "v1", "v2");
+        verify(wrapped).evalsha("sha", ScriptOutputType.MULTI, new String[]{"key1", "key2"}, "v1", "v2");
     }
 
     @Test
@@ -155,6 +161,8 @@ public class WrapperTests {
         verify(wrapped).smembers("key");
         cmd.hgetall("key");
         verify(wrapped).hgetall("key");
+        cmd.hdel("key", "f1", "f2");
+        verify(wrapped).hdel("key", "f1", "f2");
         cmd.zadd("key", 1.0, "value");
         verify(wrapped).zadd("key", 1.0, "value");
         cmd.zrem("key", "v1", "v2");
@@ -169,6 +177,10 @@ public class WrapperTests {
         verify(wrapped).zcount("key", range);
         cmd.eval("script", ScriptOutputType.MULTI, new String[]{"key1", "key2"}, "v1", "v2");
         verify(wrapped).eval("script", ScriptOutputType.MULTI, new String[]{"key1", "key2"}, "v1", "v2");
+        cmd.scriptLoad("script");
+        verify(wrapped).scriptLoad("script");
+        cmd.evalsha("sha", ScriptOutputType.MULTI, new String[]{"key1", "key2"}, "v1", "v2");
+        verify(wrapped).evalsha("sha", ScriptOutputType.MULTI, new String[]{"key1", "key2"}, "v1", "v2");
     }
 
     @Test
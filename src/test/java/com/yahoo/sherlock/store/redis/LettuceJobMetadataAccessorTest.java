@@ -252,6 +252,18 @@ public class LettuceJobMetadataAccessorTest {
         verify(async, times(12)).sadd(anyString(), anyVararg());
     }
 
+    @Test
+    public void testPutEffectiveRunTimes() throws IOException {
+        mocks();
+        doCallRealMethod().when(jma).putEffectiveRunTimes(anyList());
+        JobMetadata job = make(1, "RUNNING", 123);
+        job.setEffectiveRunTime(601);
+        jma.putEffectiveRunTimes(Lists.newArrayList(job));
+        verify(async).hmset("key:1", Collections.singletonMap("effectiveRunTime", "601"));
+        verify(async, times(0)).srem(anyString(), anyVararg());
+        verify(async, times(0)).sadd(anyString(), anyVararg());
+    }
+
     @Test
     public void testDeleteJobMetadataWrapper() throws IOException, JobNotFoundException {
         mocks();
@@ -8,9 +8,11 @@ package com.yahoo.sherlock.store.redis;
 
 import com.beust.jcommander.internal.Lists;
 import io.lettuce.core.Range;
+import io.lettuce.core.RedisNoScriptException;
 import io.lettuce.core.ScoredValue;
 import io.lettuce.core.ScriptOutputType;
 import com.yahoo.sherlock.exception.JobNotFoundException;
+import com.yahoo.sherlock.model.JobMetadata;
 import com.yahoo.sherlock.settings.DatabaseConstants;
 import com.yahoo.sherlock.store.JobMetadataAccessor;
 import com.yahoo.sherlock.store.Store;
@@ -25,17 +27,20 @@ import org.testng.annotations.Test;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.yahoo.sherlock.TestUtilities.inject;
 import static com.yahoo.sherlock.TestUtilities.obtain;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anySet;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -43,7 +48,9 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 @SuppressWarnings("unchecked")
 public class LettuceJobSchedulerTest {
@@ -58,6 +65,9 @@ public class LettuceJobSchedulerTest {
         inject(sch, LettuceJobScheduler.class, "jobAccessor", jma);
         inject(sch, LettuceJobScheduler.class, "queueName", "{queue}.job");
         inject(sch, LettuceJobScheduler.class, "pendingQueueName", "{queue}.pending");
+        inject(sch, LettuceJobScheduler.class, "leaseName", "{queue}.lease");
+        inject(sch, LettuceJobScheduler.class, "ownerId", "node");
+        inject(sch, LettuceJobScheduler.class, "scriptShas", new ConcurrentHashMap<>());
         inject(sch, AbstractLettuceAccessor.class, "keyName", "key");
         inject(sch, AbstractLettuceAccessor.class, "mapper", new HashMapper());
         RedisConnection<String> conn = (RedisConnection<String>) mock(RedisConnection.class);
@@ -123,7 +133,7 @@ public class LettuceJobSchedulerTest {
         mocks();
         doCallRealMethod().when(sch).removeAllQueue();
         sch.removeAllQueue();
-        verify(sync).del("{queue}.job", "{queue}.pending");
+        verify(sync).del("{queue}.job", "{queue}.pending", "{queue}.lease");
     }
 
     @Test
@@ -148,30 +158,110 @@ public class LettuceJobSchedulerTest {
         assertEquals(5, sch.peekQueue(123455));
     }
 
+    @Test
+    public void testPeekNextRunTime() throws IOException {
+        mocks();
+        when(sch.peekNextRunTime()).thenCallRealMethod();
+        when(sync.zrangeWithScores(anyString(), anyLong(), anyLong())).thenReturn(Collections.emptyList());
+        assertNull(sch.peekNextRunTime());
+        when(sync.zrangeWithScores(anyString(), anyLong(), anyLong())).thenReturn(Lists.newArrayList(
+                ScoredValue.fromNullable(42.0, "1")
+        ));
+        assertEquals(sch.peekNextRunTime(), (Long) 42L);
+        verify(sync, times(2)).zrangeWithScores("{queue}.job", 0, 0);
+    }
+
     @Test
     public void testPopQueueEmpty() throws IOException {
         mocks();
         when(sch.popQueue(anyLong())).thenCallRealMethod();
-        when(sync.eval(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(Collections.emptyList());
+        when(sch.popQueue(anyLong(), anyInt())).thenReturn(Collections.emptyList());
         assertNull(sch.popQueue(123455));
     }
 
     @Test
-    public void testPopQueue() throws IOException, JobNotFoundException {
+    public void testPopQueue() throws IOException {
         mocks();
         when(sch.popQueue(anyLong())).thenCallRealMethod();
-        when(sync.eval(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(Lists.newArrayList("1"));
-        sch.popQueue(1234);
-        verify(jma).getJobMetadata("1");
+        JobMetadata job = new JobMetadata();
+        job.setJobId(1);
+        when(sch.popQueue(anyLong(), anyInt())).thenReturn(Lists.newArrayList(job));
+        assertEquals(sch.popQueue(1234), job);
+        verify(sch).popQueue(1234, 1);
     }
 
     @Test
-    public void testPopQueueNotFound() throws IOException, JobNotFoundException {
+    public void testBatchPopQueueEmpty() throws IOException {
         mocks();
-        when(sch.popQueue(anyLong())).thenCallRealMethod();
-        when(sync.eval(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(Lists.newArrayList("1"));
-        when(jma.getJobMetadata(anyString())).thenThrow(new JobNotFoundException());
-        assertNull(sch.popQueue(1234));
+        when(sch.popQueue(anyLong(), anyInt())).thenCallRealMethod();
+        when(sync.scriptLoad(anyString())).thenReturn("sha");
+        when(sync.evalsha(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(Collections.emptyList());
+        assertTrue(sch.popQueue(123455, 10).isEmpty());
+        verify(jma, times(0)).getJobMetadata(anySet());
+    }
+
+    @Test
+    public void testBatchPopQueue() throws IOException {
+        mocks();
+        when(sch.popQueue(anyLong(), anyInt())).thenCallRealMethod();
+        when(sync.scriptLoad(anyString())).thenReturn("sha");
+        when(sync.evalsha(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(Lists.newArrayList("1", "2", "3"));
+        JobMetadata found = new JobMetadata();
+        found.setJobId(1);
+        JobMetadata other = new JobMetadata();
+        other.setJobId(3);
+        when(jma.getJobMetadata(anySet())).thenReturn(Lists.newArrayList(found, new JobMetadata(), other));
+        List<JobMetadata> jobs = sch.popQueue(1234, 3);
+        assertEquals(jobs.size(), 2);
+        assertEquals(jobs.get(0).getJobId(), (Integer) 1);
+        assertEquals(jobs.get(1).getJobId(), (Integer) 3);
+        verify(sync).evalsha(eq("sha"), eq(ScriptOutputType.MULTI), eq(new String[] {"{queue}.job", "{queue}.pending", "{queue}.lease"}),
+                             eq("1234"), eq("3"), anyString(), anyString(), eq("node"));
+        verify(sync).zrem("{queue}.pending", "2");
+        verify(sync).hdel("{queue}.lease", "2");
+        sch.popQueue(1234, 3);
+        verify(sync, times(1)).scriptLoad(LettuceJobScheduler.SCRIPT_ZPOPRANGEBYSCORE);
+    }
+
+    @Test
+    public void testBatchPopQueueScriptFlushed() throws IOException {
+        mocks();
+        when(sch.popQueue(anyLong(), anyInt())).thenCallRealMethod();
+        when(sync.scriptLoad(anyString())).thenReturn("sha");
+        when(sync.evalsha(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenThrow(new RedisNoScriptException("NOSCRIPT"));
+        when(sync.eval(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(Collections.emptyList());
+        assertTrue(sch.popQueue(1234, 2).isEmpty());
+        verify(sync).eval(eq(LettuceJobScheduler.SCRIPT_ZPOPRANGEBYSCORE), eq(ScriptOutputType.MULTI),
+                          eq(new String[] {"{queue}.job", "{queue}.pending", "{queue}.lease"}),
+                          eq("1234"), eq("2"), anyString(), anyString(), eq("node"));
+    }
+
+    @Test
+    public void testBatchPopQueueZeroLimit() throws IOException {
+        mocks();
+        when(sch.popQueue(anyLong(), anyInt())).thenCallRealMethod();
+        assertTrue(sch.popQueue(1234, 0).isEmpty());
+        verify(sch, times(0)).connect();
+    }
+
+    @Test
+    public void testRenewLease() throws IOException {
+        mocks();
+        when(sch.renewLease(anyCollection())).thenCallRealMethod();
+        when(sync.scriptLoad(anyString())).thenReturn("sha");
+        when(sync.evalsha(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(1L);
+        assertEquals(sch.renewLease(Lists.newArrayList("1", "2")), 1);
+        verify(sync).scriptLoad(LettuceJobScheduler.SCRIPT_RENEW_LEASE);
+        verify(sync).evalsha(eq("sha"), eq(ScriptOutputType.INTEGER), eq(new String[] {"{queue}.pending", "{queue}.lease"}),
+                             eq("node"), anyString(), eq("1"), eq("2"));
+    }
+
+    @Test
+    public void testRenewLeaseEmpty() throws IOException {
+        mocks();
+        when(sch.renewLease(anyCollection())).thenCallRealMethod();
+        assertEquals(sch.renewLease(Collections.emptyList()), 0);
+        verify(sch, times(0)).connect();
     }
 
     @Test
@@ -180,6 +270,57 @@ public class LettuceJobSchedulerTest {
         doCallRealMethod().when(sch).removePending(anyString());
         sch.removePending("1");
         verify(sync).zrem("{queue}.pending", "1");
+        verify(sync).hdel("{queue}.lease", "1");
+    }
+
+    @Test
+    public void testReleasePending() throws IOException {
+        mocks();
+        when(sch.releasePending(anyString())).thenCallRealMethod();
+        when(sync.scriptLoad(anyString())).thenReturn("sha");
+        when(sync.evalsha(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(1L);
+        assertTrue(sch.releasePending("1"));
+        verify(sync).scriptLoad(LettuceJobScheduler.SCRIPT_RELEASE_PENDING);
+        verify(sync).evalsha(eq("sha"), eq(ScriptOutputType.INTEGER), eq(new String[] {"{queue}.pending", "{queue}.lease"}),
+                             eq("node"), eq("1"));
+    }
+
+    @Test
+    public void testReleasePendingLostLease() throws IOException {
+        mocks();
+        when(sch.releasePending(anyString())).thenCallRealMethod();
+        when(sync.scriptLoad(anyString())).thenReturn("sha");
+        // the lease expired and the job was claimed again by another node
+        when(sync.evalsha(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(0L);
+        assertFalse(sch.releasePending("1"));
+        verify(sync, times(0)).zrem(anyString(), anyString());
+        verify(sync, times(0)).hdel(anyString(), anyString());
+    }
+
+    @Test
+    public void testMoveQueue() throws IOException {
+        mocks();
+        when(sch.moveQueue(anyString(), anyLong(), anyLong())).thenCallRealMethod();
+        when(sync.scriptLoad(anyString())).thenReturn("sha");
+        when(sync.evalsha(anyString(), any(ScriptOutputType.class), any(), anyVararg())).thenReturn(1L, 0L);
+        assertTrue(sch.moveQueue("1", 605, 601));
+        verify(sync).scriptLoad(LettuceJobScheduler.SCRIPT_MOVE_QUEUE);
+        verify(sync).evalsha(eq("sha"), eq(ScriptOutputType.INTEGER), eq(new String[] {"{queue}.job"}), eq("1"), eq("605"), eq("601"));
+        // the job is no longer queued at its expected run time
+        assertFalse(sch.moveQueue("1", 605, 601));
+        verify(sync, times(0)).zadd(anyString(), anyDouble(), anyString());
+    }
+
+    @Test
+    public void testGetSlotCounts() throws IOException {
+        mocks();
+        when(sch.getSlotCounts()).thenCallRealMethod();
+        when(sync.zrangeWithScores(anyString(), anyLong(), anyLong())).thenReturn(Lists.newArrayList(
+            ScoredValue.fromNullable(601.0, "1"), ScoredValue.fromNullable(661.0, "2"), ScoredValue.fromNullable(605.0, "3")));
+        int[] counts = sch.getSlotCounts();
+        assertEquals(counts[1], 2);
+        assertEquals(counts[5], 1);
+        verify(jma, times(0)).getJobMetadata(anySet());
     }
 
     @Test
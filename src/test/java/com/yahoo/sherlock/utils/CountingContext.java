@@ -0,0 +1,26 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.utils;
+
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CountingContext implements SslContextProvider {
+
+    public static final AtomicInteger BUILDS = new AtomicInteger();
+
+    public CountingContext(Properties properties) {
+    }
+
+    @Override
+    public SSLConnectionSocketFactory createConnectionSocketFactory() {
+        BUILDS.incrementAndGet();
+        return SSLConnectionSocketFactory.getSocketFactory();
+    }
+}
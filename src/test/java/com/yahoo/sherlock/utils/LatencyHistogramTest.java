@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for the latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testRecordBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram(LatencyHistogram.STAGE_BOUNDS_MILLIS);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(400));
+        histogram.record(TimeUnit.MINUTES.toNanos(10));
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(snapshot.getCount(), 4);
+        Assert.assertEquals(snapshot.getBucketCounts()[1], 2);
+        Assert.assertEquals(snapshot.getBucketCounts()[7], 1);
+        Assert.assertEquals(snapshot.getBucketCounts()[LatencyHistogram.STAGE_BOUNDS_MILLIS.length], 1);
+        Assert.assertEquals(snapshot.getMaxMillis(), 600000.0);
+        Assert.assertEquals(snapshot.getSumMillis(), 600408.0);
+        Assert.assertEquals(snapshot.getMeanMillis(), 150102.0);
+        Assert.assertEquals(snapshot.percentileMillis(0.5), 5.0);
+        Assert.assertEquals(snapshot.percentileMillis(0.75), 500.0);
+        Assert.assertEquals(snapshot.percentileMillis(0.99), 600000.0);
+    }
+
+    @Test
+    public void testFractionalBounds() {
+        LatencyHistogram histogram = new LatencyHistogram(LatencyHistogram.COMMAND_BOUNDS_MILLIS);
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(80));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(300));
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(snapshot.getBucketCounts()[0], 1);
+        Assert.assertEquals(snapshot.getBucketCounts()[2], 1);
+        Assert.assertEquals(snapshot.percentileMillis(0.5), 0.1);
+        Assert.assertEquals(snapshot.percentileMillis(1.0), 0.3);
+    }
+
+    @Test
+    public void testEmptySnapshot() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram(LatencyHistogram.STAGE_BOUNDS_MILLIS).snapshot();
+        Assert.assertEquals(snapshot.getCount(), 0);
+        Assert.assertEquals(snapshot.getMeanMillis(), 0.0);
+        Assert.assertEquals(snapshot.percentileMillis(0.5), 0.0);
+    }
+}
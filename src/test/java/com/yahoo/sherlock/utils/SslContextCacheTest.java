@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017, Yahoo Holdings Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.sherlock.utils;
+
+import com.yahoo.sherlock.settings.CLISettings;
+
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for the cache of SSL contexts.
+ */
+public class SslContextCacheTest {
+
+    private Path dir;
+    private SslContextCache cache;
+    private String providerClass;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("ssl");
+        Files.write(dir.resolve("svc.key.pem"), "key".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("svc.cert.pem"), "cert".getBytes(StandardCharsets.UTF_8));
+        providerClass = CLISettings.CUSTOM_SSL_CONTEXT_PROVIDER_CLASS;
+        CLISettings.CUSTOM_SSL_CONTEXT_PROVIDER_CLASS = CountingContext.class.getName();
+        CLISettings.KEY_DIR = dir.toString();
+        CLISettings.CERT_DIR = dir.toString();
+        CountingContext.BUILDS.set(0);
+        cache = new SslContextCache();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        cache.close();
+        CLISettings.CUSTOM_SSL_CONTEXT_PROVIDER_CLASS = providerClass;
+        for (File file : dir.toFile().listFiles()) {
+            file.delete();
+        }
+        dir.toFile().delete();
+    }
+
+    @Test
+    public void testFactoryIsBuiltOnce() {
+        SSLConnectionSocketFactory factory = cache.getSocketFactory("svc");
+        Assert.assertNotNull(factory);
+        Assert.assertSame(cache.getSocketFactory("svc"), factory);
+        Assert.assertEquals(CountingContext.BUILDS.get(), 1);
+        // files of other principals do not reload the context
+        cache.fileChanged(dir.resolve("other.key.pem"));
+        Assert.assertSame(cache.getSocketFactory("svc"), factory);
+        cache.fileChanged(dir.resolve("svc.key.pem"));
+        Assert.assertNotSame(cache.getSocketFactory("svc"), factory);
+        Assert.assertEquals(CountingContext.BUILDS.get(), 2);
+    }
+
+    @Test
+    public void testFactoryIsReloadedWhenFilesChange() throws Exception {
+        SSLConnectionSocketFactory factory = cache.getSocketFactory("svc");
+        Files.write(dir.resolve("svc.cert.pem"), "new cert".getBytes(StandardCharsets.UTF_8));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (cache.getSocketFactory("svc") == factory && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertNotSame(cache.getSocketFactory("svc"), factory);
+    }
+}